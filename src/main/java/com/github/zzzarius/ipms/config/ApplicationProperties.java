@@ -1,5 +1,7 @@
 package com.github.zzzarius.ipms.config;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -9,4 +11,828 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
  * See {@link tech.jhipster.config.JHipsterProperties} for a good example.
  */
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
-public class ApplicationProperties {}
+public class ApplicationProperties {
+
+    private final Export export = new Export();
+
+    private final TriageSummary triageSummary = new TriageSummary();
+
+    private final BulkImport bulkImport = new BulkImport();
+
+    private final BulkUpdate bulkUpdate = new BulkUpdate();
+
+    private final IncidentDeletion incidentDeletion = new IncidentDeletion();
+
+    private final PatientEvents patientEvents = new PatientEvents();
+
+    private final Sync sync = new Sync();
+
+    private final OfflineUpload offlineUpload = new OfflineUpload();
+
+    private final GroupCommit groupCommit = new GroupCommit();
+
+    private final Journal journal = new Journal();
+
+    private final AdmissionControl admissionControl = new AdmissionControl();
+
+    private final Cache cache = new Cache();
+
+    private final CountCache countCache = new CountCache();
+
+    private final UserInfoCache userInfoCache = new UserInfoCache();
+
+    private final ReadReplicas readReplicas = new ReadReplicas();
+
+    public Export getExport() {
+        return export;
+    }
+
+    public TriageSummary getTriageSummary() {
+        return triageSummary;
+    }
+
+    public BulkImport getBulkImport() {
+        return bulkImport;
+    }
+
+    public BulkUpdate getBulkUpdate() {
+        return bulkUpdate;
+    }
+
+    public IncidentDeletion getIncidentDeletion() {
+        return incidentDeletion;
+    }
+
+    public PatientEvents getPatientEvents() {
+        return patientEvents;
+    }
+
+    public Sync getSync() {
+        return sync;
+    }
+
+    public OfflineUpload getOfflineUpload() {
+        return offlineUpload;
+    }
+
+    public GroupCommit getGroupCommit() {
+        return groupCommit;
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    public AdmissionControl getAdmissionControl() {
+        return admissionControl;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public CountCache getCountCache() {
+        return countCache;
+    }
+
+    public UserInfoCache getUserInfoCache() {
+        return userInfoCache;
+    }
+
+    public ReadReplicas getReadReplicas() {
+        return readReplicas;
+    }
+
+    public static class Export {
+
+        private int fetchSize = 500;
+
+        public int getFetchSize() {
+            return fetchSize;
+        }
+
+        public void setFetchSize(int fetchSize) {
+            this.fetchSize = fetchSize;
+        }
+    }
+
+    public static class TriageSummary {
+
+        private int stripes = 8;
+
+        private String reconcileCron = "0 */10 * * * *";
+
+        public int getStripes() {
+            return stripes;
+        }
+
+        public void setStripes(int stripes) {
+            this.stripes = stripes;
+        }
+
+        public String getReconcileCron() {
+            return reconcileCron;
+        }
+
+        public void setReconcileCron(String reconcileCron) {
+            this.reconcileCron = reconcileCron;
+        }
+    }
+
+    public static class BulkImport {
+
+        private int chunkSize = 1000;
+
+        private int maxErrors = 100;
+
+        private int retainedImports = 100;
+
+        private long retentionSeconds = 3600;
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        public int getMaxErrors() {
+            return maxErrors;
+        }
+
+        public void setMaxErrors(int maxErrors) {
+            this.maxErrors = maxErrors;
+        }
+
+        public int getRetainedImports() {
+            return retainedImports;
+        }
+
+        public void setRetainedImports(int retainedImports) {
+            this.retainedImports = retainedImports;
+        }
+
+        public long getRetentionSeconds() {
+            return retentionSeconds;
+        }
+
+        public void setRetentionSeconds(long retentionSeconds) {
+            this.retentionSeconds = retentionSeconds;
+        }
+    }
+
+    public static class BulkUpdate {
+
+        private int chunkSize = 1000;
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+    }
+
+    /**
+     * Deletion of an incident with its patients, see {@code DELETE /api/incidents/:id?patients=}.
+     */
+    public static class IncidentDeletion {
+
+        private int chunkSize = 1000;
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+    }
+
+    /**
+     * Server-sent events of the patient changes, see {@code GET /api/incidents/:id/events}.
+     */
+    public static class PatientEvents {
+
+        private int historySize = 10000;
+
+        private int subscriberQueueSize = 1000;
+
+        private long timeoutMs = 1800000;
+
+        private long heartbeatMs = 30000;
+
+        private int senderThreads = 4;
+
+        private int senderQueueCapacity = 1000;
+
+        public int getHistorySize() {
+            return historySize;
+        }
+
+        public void setHistorySize(int historySize) {
+            this.historySize = historySize;
+        }
+
+        public int getSubscriberQueueSize() {
+            return subscriberQueueSize;
+        }
+
+        public void setSubscriberQueueSize(int subscriberQueueSize) {
+            this.subscriberQueueSize = subscriberQueueSize;
+        }
+
+        public long getTimeoutMs() {
+            return timeoutMs;
+        }
+
+        public void setTimeoutMs(long timeoutMs) {
+            this.timeoutMs = timeoutMs;
+        }
+
+        public long getHeartbeatMs() {
+            return heartbeatMs;
+        }
+
+        public void setHeartbeatMs(long heartbeatMs) {
+            this.heartbeatMs = heartbeatMs;
+        }
+
+        public int getSenderThreads() {
+            return senderThreads;
+        }
+
+        public void setSenderThreads(int senderThreads) {
+            this.senderThreads = senderThreads;
+        }
+
+        public int getSenderQueueCapacity() {
+            return senderQueueCapacity;
+        }
+
+        public void setSenderQueueCapacity(int senderQueueCapacity) {
+            this.senderQueueCapacity = senderQueueCapacity;
+        }
+    }
+
+    /**
+     * Delta sync of the patients, see {@code GET /api/sync/patients}.
+     */
+    public static class Sync {
+
+        private int pageSize = 1000;
+
+        private long safetyLagMs = 30000;
+
+        private long samplingIntervalMs = 1000;
+
+        private long maxTokenAgeHours = 168;
+
+        private String tombstonePurgeCron = "0 30 * * * *";
+
+        public int getPageSize() {
+            return pageSize;
+        }
+
+        public void setPageSize(int pageSize) {
+            this.pageSize = pageSize;
+        }
+
+        public long getSafetyLagMs() {
+            return safetyLagMs;
+        }
+
+        public void setSafetyLagMs(long safetyLagMs) {
+            this.safetyLagMs = safetyLagMs;
+        }
+
+        public long getSamplingIntervalMs() {
+            return samplingIntervalMs;
+        }
+
+        public void setSamplingIntervalMs(long samplingIntervalMs) {
+            this.samplingIntervalMs = samplingIntervalMs;
+        }
+
+        public long getMaxTokenAgeHours() {
+            return maxTokenAgeHours;
+        }
+
+        public void setMaxTokenAgeHours(long maxTokenAgeHours) {
+            this.maxTokenAgeHours = maxTokenAgeHours;
+        }
+
+        public String getTombstonePurgeCron() {
+            return tombstonePurgeCron;
+        }
+
+        public void setTombstonePurgeCron(String tombstonePurgeCron) {
+            this.tombstonePurgeCron = tombstonePurgeCron;
+        }
+    }
+
+    /**
+     * Idempotent creations, reserved ids and batch uploads of the patients registered offline.
+     */
+    public static class OfflineUpload {
+
+        private long idempotencyKeyTimeToLiveSeconds = 86400;
+
+        private String idempotencyKeyPurgeCron = "0 0 * * * *";
+
+        private int maxIdBlockSize = 1000;
+
+        private int maxBatchSize = 500;
+
+        public long getIdempotencyKeyTimeToLiveSeconds() {
+            return idempotencyKeyTimeToLiveSeconds;
+        }
+
+        public void setIdempotencyKeyTimeToLiveSeconds(long idempotencyKeyTimeToLiveSeconds) {
+            this.idempotencyKeyTimeToLiveSeconds = idempotencyKeyTimeToLiveSeconds;
+        }
+
+        public String getIdempotencyKeyPurgeCron() {
+            return idempotencyKeyPurgeCron;
+        }
+
+        public void setIdempotencyKeyPurgeCron(String idempotencyKeyPurgeCron) {
+            this.idempotencyKeyPurgeCron = idempotencyKeyPurgeCron;
+        }
+
+        public int getMaxIdBlockSize() {
+            return maxIdBlockSize;
+        }
+
+        public void setMaxIdBlockSize(int maxIdBlockSize) {
+            this.maxIdBlockSize = maxIdBlockSize;
+        }
+
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        public void setMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+        }
+    }
+
+    /**
+     * Shared transactions of the concurrent patient registrations, see {@code PatientGroupCommitService}.
+     */
+    public static class GroupCommit {
+
+        private boolean enabled = false;
+
+        private long windowMs = 5;
+
+        private int maxBatchSize = 100;
+
+        private long timeoutMs = 35000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getWindowMs() {
+            return windowMs;
+        }
+
+        public void setWindowMs(long windowMs) {
+            this.windowMs = windowMs;
+        }
+
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        public void setMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+        }
+
+        public long getTimeoutMs() {
+            return timeoutMs;
+        }
+
+        public void setTimeoutMs(long timeoutMs) {
+            this.timeoutMs = timeoutMs;
+        }
+    }
+
+    /**
+     * Local journal of the patient creations accepted while the database is unavailable, see
+     * {@code PatientJournalService}.
+     */
+    public static class Journal {
+
+        private boolean enabled = false;
+
+        private String file = "journal/patients.journal";
+
+        private int capacity = 64 * 1024 * 1024;
+
+        private long replayDelayMs = 5000;
+
+        private int replayTimeoutSeconds = 5;
+
+        private String deadLetterFile = "journal/patients.dead-letter";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public void setFile(String file) {
+            this.file = file;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public long getReplayDelayMs() {
+            return replayDelayMs;
+        }
+
+        public void setReplayDelayMs(long replayDelayMs) {
+            this.replayDelayMs = replayDelayMs;
+        }
+
+        public int getReplayTimeoutSeconds() {
+            return replayTimeoutSeconds;
+        }
+
+        public void setReplayTimeoutSeconds(int replayTimeoutSeconds) {
+            this.replayTimeoutSeconds = replayTimeoutSeconds;
+        }
+
+        public String getDeadLetterFile() {
+            return deadLetterFile;
+        }
+
+        public void setDeadLetterFile(String deadLetterFile) {
+            this.deadLetterFile = deadLetterFile;
+        }
+    }
+
+    /**
+     * Limits of the {@code /api} requests processed at once per endpoint group, adjusted to their latency, and admitting
+     * them by priority, see {@code AdmissionControlFilter}.
+     */
+    public static class AdmissionControl {
+
+        private boolean enabled = true;
+
+        private boolean adaptive = true;
+
+        private int initialConcurrentRequests = 20;
+
+        private int minConcurrentRequests = 4;
+
+        private int maxConcurrentRequests = 100;
+
+        private double rttTolerance = 1.5;
+
+        private double limitSmoothing = 0.2;
+
+        private long criticalMaxQueueMs = 10000;
+
+        private long writeMaxQueueMs = 2000;
+
+        private long readMaxQueueMs = 500;
+
+        private long bulkMaxQueueMs = 0;
+
+        private int retryAfterSeconds = 1;
+
+        private int maxInspectedBodySize = 1024 * 1024;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public boolean isAdaptive() {
+            return adaptive;
+        }
+
+        public void setAdaptive(boolean adaptive) {
+            this.adaptive = adaptive;
+        }
+
+        public int getInitialConcurrentRequests() {
+            return initialConcurrentRequests;
+        }
+
+        public void setInitialConcurrentRequests(int initialConcurrentRequests) {
+            this.initialConcurrentRequests = initialConcurrentRequests;
+        }
+
+        public int getMinConcurrentRequests() {
+            return minConcurrentRequests;
+        }
+
+        public void setMinConcurrentRequests(int minConcurrentRequests) {
+            this.minConcurrentRequests = minConcurrentRequests;
+        }
+
+        public int getMaxConcurrentRequests() {
+            return maxConcurrentRequests;
+        }
+
+        public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+        }
+
+        public double getRttTolerance() {
+            return rttTolerance;
+        }
+
+        public void setRttTolerance(double rttTolerance) {
+            this.rttTolerance = rttTolerance;
+        }
+
+        public double getLimitSmoothing() {
+            return limitSmoothing;
+        }
+
+        public void setLimitSmoothing(double limitSmoothing) {
+            this.limitSmoothing = limitSmoothing;
+        }
+
+        public long getCriticalMaxQueueMs() {
+            return criticalMaxQueueMs;
+        }
+
+        public void setCriticalMaxQueueMs(long criticalMaxQueueMs) {
+            this.criticalMaxQueueMs = criticalMaxQueueMs;
+        }
+
+        public long getWriteMaxQueueMs() {
+            return writeMaxQueueMs;
+        }
+
+        public void setWriteMaxQueueMs(long writeMaxQueueMs) {
+            this.writeMaxQueueMs = writeMaxQueueMs;
+        }
+
+        public long getReadMaxQueueMs() {
+            return readMaxQueueMs;
+        }
+
+        public void setReadMaxQueueMs(long readMaxQueueMs) {
+            this.readMaxQueueMs = readMaxQueueMs;
+        }
+
+        public long getBulkMaxQueueMs() {
+            return bulkMaxQueueMs;
+        }
+
+        public void setBulkMaxQueueMs(long bulkMaxQueueMs) {
+            this.bulkMaxQueueMs = bulkMaxQueueMs;
+        }
+
+        public int getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+
+        public void setRetryAfterSeconds(int retryAfterSeconds) {
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public int getMaxInspectedBodySize() {
+            return maxInspectedBodySize;
+        }
+
+        public void setMaxInspectedBodySize(int maxInspectedBodySize) {
+            this.maxInspectedBodySize = maxInspectedBodySize;
+        }
+    }
+
+    /**
+     * Cache of the results of the {@code /count} requests and of the totals of the {@code count=estimate} lists, evicted
+     * by the writes of this instance.
+     */
+    public static class CountCache {
+
+        private int timeToLiveSeconds = 60;
+
+        private int maxEntries = 1000;
+
+        public int getTimeToLiveSeconds() {
+            return timeToLiveSeconds;
+        }
+
+        public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+            this.timeToLiveSeconds = timeToLiveSeconds;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+    }
+
+    /**
+     * Cache of the users returned by the userinfo endpoint, to add their claims to the access tokens.
+     */
+    public static class UserInfoCache {
+
+        private int timeToLiveSeconds = 300;
+
+        private int refreshAfterSeconds = 240;
+
+        private int maxEntries = 10000;
+
+        public int getTimeToLiveSeconds() {
+            return timeToLiveSeconds;
+        }
+
+        public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+            this.timeToLiveSeconds = timeToLiveSeconds;
+        }
+
+        public int getRefreshAfterSeconds() {
+            return refreshAfterSeconds;
+        }
+
+        public void setRefreshAfterSeconds(int refreshAfterSeconds) {
+            this.refreshAfterSeconds = refreshAfterSeconds;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+    }
+
+    /**
+     * Second-level cache regions of the hot entities, sized separately from the {@code jhipster.cache.ehcache} default.
+     */
+    public static class Cache {
+
+        private final Region incident = new Region(3600, 1000);
+
+        private final Region patient = new Region(3600, 10000);
+
+        private final Region incidentPatients = new Region(3600, 1000);
+
+        public Region getIncident() {
+            return incident;
+        }
+
+        public Region getPatient() {
+            return patient;
+        }
+
+        public Region getIncidentPatients() {
+            return incidentPatients;
+        }
+
+        public static class Region {
+
+            private int timeToLiveSeconds;
+
+            private long maxEntries;
+
+            public Region(int timeToLiveSeconds, long maxEntries) {
+                this.timeToLiveSeconds = timeToLiveSeconds;
+                this.maxEntries = maxEntries;
+            }
+
+            public int getTimeToLiveSeconds() {
+                return timeToLiveSeconds;
+            }
+
+            public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+                this.timeToLiveSeconds = timeToLiveSeconds;
+            }
+
+            public long getMaxEntries() {
+                return maxEntries;
+            }
+
+            public void setMaxEntries(long maxEntries) {
+                this.maxEntries = maxEntries;
+            }
+        }
+    }
+
+    /**
+     * Replica databases serving the read-only transactions, see {@link ReadReplicaConfiguration}.
+     */
+    public static class ReadReplicas {
+
+        private boolean enabled = false;
+
+        private List<Replica> replicas = new ArrayList<>();
+
+        private int maxLagSeconds = 5;
+
+        private String lagQuery;
+
+        private long checkIntervalMs = 5000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public List<Replica> getReplicas() {
+            return replicas;
+        }
+
+        public void setReplicas(List<Replica> replicas) {
+            this.replicas = replicas;
+        }
+
+        public int getMaxLagSeconds() {
+            return maxLagSeconds;
+        }
+
+        public void setMaxLagSeconds(int maxLagSeconds) {
+            this.maxLagSeconds = maxLagSeconds;
+        }
+
+        public String getLagQuery() {
+            return lagQuery;
+        }
+
+        public void setLagQuery(String lagQuery) {
+            this.lagQuery = lagQuery;
+        }
+
+        public long getCheckIntervalMs() {
+            return checkIntervalMs;
+        }
+
+        public void setCheckIntervalMs(long checkIntervalMs) {
+            this.checkIntervalMs = checkIntervalMs;
+        }
+
+        /**
+         * A replica database, whose credentials default to the {@code spring.datasource} ones.
+         */
+        public static class Replica {
+
+            private String url;
+
+            private String username;
+
+            private String password;
+
+            public String getUrl() {
+                return url;
+            }
+
+            public void setUrl(String url) {
+                this.url = url;
+            }
+
+            public String getUsername() {
+                return username;
+            }
+
+            public void setUsername(String username) {
+                this.username = username;
+            }
+
+            public String getPassword() {
+                return password;
+            }
+
+            public void setPassword(String password) {
+                this.password = password;
+            }
+        }
+    }
+}
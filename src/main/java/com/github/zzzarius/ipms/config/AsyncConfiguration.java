@@ -39,6 +39,21 @@ public class AsyncConfiguration implements AsyncConfigurer {
         return new ExceptionHandlingAsyncTaskExecutor(executor);
     }
 
+    /**
+     * The executor sending the server-sent events of the patient changes, so that the slow clients can't hold the
+     * threads of the task executor.
+     */
+    @Bean(name = "patientEventExecutor")
+    public ThreadPoolTaskExecutor patientEventExecutor(ApplicationProperties applicationProperties) {
+        ApplicationProperties.PatientEvents patientEvents = applicationProperties.getPatientEvents();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(patientEvents.getSenderThreads());
+        executor.setMaxPoolSize(patientEvents.getSenderThreads());
+        executor.setQueueCapacity(patientEvents.getSenderQueueCapacity());
+        executor.setThreadNamePrefix("patient-events-");
+        return executor;
+    }
+
     @Override
     public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
         return new SimpleAsyncUncaughtExceptionHandler();
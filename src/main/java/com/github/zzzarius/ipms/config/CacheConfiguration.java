@@ -22,9 +22,13 @@ public class CacheConfiguration {
     private GitProperties gitProperties;
     private BuildProperties buildProperties;
     private final javax.cache.configuration.Configuration<Object, Object> jcacheConfiguration;
+    private final javax.cache.configuration.Configuration<Object, Object> incidentConfiguration;
+    private final javax.cache.configuration.Configuration<Object, Object> patientConfiguration;
+    private final javax.cache.configuration.Configuration<Object, Object> incidentPatientsConfiguration;
 
-    public CacheConfiguration(JHipsterProperties jHipsterProperties) {
+    public CacheConfiguration(JHipsterProperties jHipsterProperties, ApplicationProperties applicationProperties) {
         JHipsterProperties.Cache.Ehcache ehcache = jHipsterProperties.getCache().getEhcache();
+        ApplicationProperties.Cache cache = applicationProperties.getCache();
 
         jcacheConfiguration =
             Eh107Configuration.fromEhcacheCacheConfiguration(
@@ -33,6 +37,18 @@ public class CacheConfiguration {
                     .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofSeconds(ehcache.getTimeToLiveSeconds())))
                     .build()
             );
+        incidentConfiguration = regionConfiguration(cache.getIncident());
+        patientConfiguration = regionConfiguration(cache.getPatient());
+        incidentPatientsConfiguration = regionConfiguration(cache.getIncidentPatients());
+    }
+
+    private static javax.cache.configuration.Configuration<Object, Object> regionConfiguration(ApplicationProperties.Cache.Region region) {
+        return Eh107Configuration.fromEhcacheCacheConfiguration(
+            CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(Object.class, Object.class, ResourcePoolsBuilder.heap(region.getMaxEntries()))
+                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofSeconds(region.getTimeToLiveSeconds())))
+                .build()
+        );
     }
 
     @Bean
@@ -48,19 +64,43 @@ public class CacheConfiguration {
             createCache(cm, com.github.zzzarius.ipms.domain.User.class.getName());
             createCache(cm, com.github.zzzarius.ipms.domain.Authority.class.getName());
             createCache(cm, com.github.zzzarius.ipms.domain.User.class.getName() + ".authorities");
+            createRegion(cm, com.github.zzzarius.ipms.domain.Incident.class.getName(), incidentConfiguration);
+            createRegion(cm, com.github.zzzarius.ipms.domain.Patient.class.getName(), patientConfiguration);
+            createRegion(cm, com.github.zzzarius.ipms.domain.Incident.class.getName() + ".patients", incidentPatientsConfiguration);
             // jhipster-needle-ehcache-add-entry
         };
     }
 
     private void createCache(javax.cache.CacheManager cm, String cacheName) {
+        createCache(cm, cacheName, jcacheConfiguration);
+    }
+
+    private void createCache(
+        javax.cache.CacheManager cm,
+        String cacheName,
+        javax.cache.configuration.Configuration<Object, Object> configuration
+    ) {
         javax.cache.Cache<Object, Object> cache = cm.getCache(cacheName);
         if (cache != null) {
             cache.clear();
         } else {
-            cm.createCache(cacheName, jcacheConfiguration);
+            cm.createCache(cacheName, configuration);
         }
     }
 
+    /**
+     * Create a second-level cache region with its JCache statistics enabled, so that the hits, misses and evictions
+     * are published as the {@code cache.gets} and {@code cache.evictions} meters of the region.
+     */
+    private void createRegion(
+        javax.cache.CacheManager cm,
+        String cacheName,
+        javax.cache.configuration.Configuration<Object, Object> configuration
+    ) {
+        createCache(cm, cacheName, configuration);
+        cm.enableStatistics(cacheName, true);
+    }
+
     @Autowired(required = false)
     public void setGitProperties(GitProperties gitProperties) {
         this.gitProperties = gitProperties;
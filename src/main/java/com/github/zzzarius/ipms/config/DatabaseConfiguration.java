@@ -1,5 +1,6 @@
 package com.github.zzzarius.ipms.config;
 
+import com.github.zzzarius.ipms.repository.SliceableJpaRepository;
 import java.sql.SQLException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,7 +15,7 @@ import tech.jhipster.config.JHipsterConstants;
 import tech.jhipster.config.h2.H2ConfigurationHelper;
 
 @Configuration
-@EnableJpaRepositories("com.github.zzzarius.ipms.repository")
+@EnableJpaRepositories(value = "com.github.zzzarius.ipms.repository", repositoryBaseClass = SliceableJpaRepository.class)
 @EnableJpaAuditing(auditorAwareRef = "springSecurityAuditorAware")
 @EnableTransactionManagement
 public class DatabaseConfiguration {
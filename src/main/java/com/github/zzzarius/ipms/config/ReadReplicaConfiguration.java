@@ -0,0 +1,96 @@
+package com.github.zzzarius.ipms.config;
+
+import com.github.zzzarius.ipms.security.SecurityUtils;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import javax.servlet.http.HttpSession;
+import javax.sql.DataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.liquibase.LiquibaseDataSource;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Routing of the read-only transactions to the replica databases, enabled by {@code application.read-replicas.enabled}.
+ * <p>
+ * The primary pool is configured by {@code spring.datasource} as usual, and also runs the Liquibase migrations. The
+ * replica pools copy its settings, with their own url and credentials.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "application.read-replicas", name = "enabled", havingValue = "true")
+public class ReadReplicaConfiguration {
+
+    @Bean
+    @LiquibaseDataSource
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties) {
+        return dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+        HikariDataSource primaryDataSource,
+        DataSourceProperties dataSourceProperties,
+        ApplicationProperties applicationProperties
+    ) {
+        ApplicationProperties.ReadReplicas readReplicas = applicationProperties.getReadReplicas();
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        List<ApplicationProperties.ReadReplicas.Replica> replicaProperties = readReplicas.getReplicas();
+        for (int i = 0; i < replicaProperties.size(); i++) {
+            ApplicationProperties.ReadReplicas.Replica replica = replicaProperties.get(i);
+            HikariConfig config = new HikariConfig();
+            primaryDataSource.copyStateTo(config);
+            config.setPoolName(primaryDataSource.getPoolName() + "-replica-" + i);
+            config.setJdbcUrl(replica.getUrl());
+            config.setUsername(replica.getUsername() != null ? replica.getUsername() : dataSourceProperties.determineUsername());
+            config.setPassword(replica.getPassword() != null ? replica.getPassword() : dataSourceProperties.determinePassword());
+            config.setReadOnly(true);
+            replicas.put(config.getPoolName(), new HikariDataSource(config));
+        }
+        return new ReplicaRoutingDataSource(
+            primaryDataSource,
+            replicas,
+            Duration.ofSeconds(readReplicas.getMaxLagSeconds()),
+            readReplicas.getLagQuery(),
+            ReadReplicaConfiguration::currentClient
+        );
+    }
+
+    /**
+     * The client whose writes are read from the primary: the current user, or the HTTP session of an anonymous request,
+     * as all the anonymous requests share the same login.
+     */
+    private static Optional<String> currentClient() {
+        if (SecurityUtils.isAuthenticated()) {
+            return SecurityUtils.getCurrentUserLogin();
+        }
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (!(requestAttributes instanceof ServletRequestAttributes)) {
+            return Optional.empty();
+        }
+        HttpSession session = ((ServletRequestAttributes) requestAttributes).getRequest().getSession(false);
+        return session == null ? Optional.empty() : Optional.of("session:" + session.getId());
+    }
+
+    /**
+     * The data source of JPA, which acquires its connection at the first statement of a transaction, once the
+     * transaction is known to be read-only or not.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+}
@@ -0,0 +1,300 @@
+package com.github.zzzarius.ipms.config;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Data source sending the read-only transactions to the replica databases, and everything else to the primary one.
+ * <p>
+ * A replica is skipped while it is unreachable or lags behind the primary by more than the tolerated lag, and the
+ * read-only transactions fall back to the primary when no replica is available. The read-only transactions of a client
+ * also go to the primary during the tolerated lag after the commit of one of its own writes, so that the client reads
+ * its writes. The client is the current user, or the HTTP session for the anonymous requests, see
+ * {@link ReadReplicaConfiguration}. The writes committed by another thread on behalf of a client, such as the group
+ * commits, are recorded with {@link #recordWrite(String)}; the journal replay belongs to no client and doesn't make
+ * anyone stick to the primary.
+ * <p>
+ * The connection is chosen when it is acquired, so this data source must be wrapped in a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, which defers the acquisition until the
+ * read-only flag of the transaction is set.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    private final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private static final class Replica {
+
+        private final String name;
+
+        private final DataSource dataSource;
+
+        private volatile boolean available = true;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+
+    private final DataSource primary;
+
+    private final List<Replica> replicas = new ArrayList<>();
+
+    private final long maxLagNanos;
+
+    private final String lagQuery;
+
+    private final Supplier<Optional<String>> currentClient;
+
+    /**
+     * Commit time of the last write of each client, removed once older than the tolerated lag.
+     */
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    /**
+     * Key of the transaction resource holding the name of the replica the transaction reads from.
+     */
+    private static final Object REPLICA_RESOURCE = new Object();
+
+    /**
+     * @param primary the primary data source.
+     * @param replicas the replica data sources, by name.
+     * @param maxLag the tolerated replication lag, which is also the duration of the read-your-writes stickiness.
+     * @param lagQuery the query returning the replication lag of a replica in seconds, {@code null} to only check that
+     * the replicas are reachable.
+     * @param currentClient the client of the current thread, whose writes are tracked, empty when there is none.
+     */
+    public ReplicaRoutingDataSource(
+        DataSource primary,
+        Map<String, DataSource> replicas,
+        Duration maxLag,
+        String lagQuery,
+        Supplier<Optional<String>> currentClient
+    ) {
+        this.primary = primary;
+        replicas.forEach((name, dataSource) -> this.replicas.add(new Replica(name, dataSource)));
+        this.maxLagNanos = maxLag.toNanos();
+        this.lagQuery = lagQuery;
+        this.currentClient = currentClient;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return getConnection(DataSource::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection(dataSource -> dataSource.getConnection(username, password));
+    }
+
+    @FunctionalInterface
+    private interface ConnectionFactory {
+        Connection getConnection(DataSource dataSource) throws SQLException;
+    }
+
+    private Connection getConnection(ConnectionFactory connectionFactory) throws SQLException {
+        Replica replica = route();
+        if (replica == null) {
+            return connectionFactory.getConnection(primary);
+        }
+        try {
+            return connectionFactory.getConnection(replica.dataSource);
+        } catch (SQLException e) {
+            log.warn("Replica {} is unavailable, reading from the primary: {}", replica.name, e.getMessage());
+            replica.available = false;
+            return connectionFactory.getConnection(primary);
+        }
+    }
+
+    /**
+     * Unwrap the primary data source too, whose pool serves all the writes.
+     */
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : primary.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || primary.isWrapperFor(iface);
+    }
+
+    /**
+     * Choose the replica of the current transaction.
+     *
+     * @return the replica, {@code null} for the primary.
+     */
+    private Replica route() {
+        Optional<String> client = currentClient.get();
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (client.isPresent() && TransactionSynchronizationManager.isSynchronizationActive()) {
+                String writer = client.get();
+                TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            recordWrite(writer);
+                        }
+                    }
+                );
+            }
+            return null;
+        }
+        if (client.isPresent() && hasRecentWrite(client.get())) {
+            return null;
+        }
+        int size = replicas.size();
+        int first = Math.floorMod(nextReplica.getAndIncrement(), Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((first + i) % size);
+            if (replica.available) {
+                markReadFromReplica(replica);
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private static void markReadFromReplica(Replica replica) {
+        if (
+            !TransactionSynchronizationManager.isSynchronizationActive() || TransactionSynchronizationManager.hasResource(REPLICA_RESOURCE)
+        ) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(REPLICA_RESOURCE, replica.name);
+        TransactionSynchronizationManager.registerSynchronization(
+            new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(REPLICA_RESOURCE);
+                }
+            }
+        );
+    }
+
+    /**
+     * Tell whether the current transaction reads from a replica, whose data can lag behind the primary.
+     *
+     * @return {@code true} once the transaction acquired a replica connection.
+     */
+    public static boolean isCurrentTransactionReadingFromReplica() {
+        return TransactionSynchronizationManager.hasResource(REPLICA_RESOURCE);
+    }
+
+    /**
+     * Get the client of the current thread, whose writes committed by another thread must be recorded.
+     *
+     * @return the client, empty when there is none.
+     */
+    public Optional<String> currentClient() {
+        return currentClient.get();
+    }
+
+    /**
+     * Record a committed write of a client, so that its read-only transactions go to the primary during the tolerated
+     * lag.
+     *
+     * @param client the client, see {@link #currentClient()}.
+     */
+    public void recordWrite(String client) {
+        lastWrites.put(client, System.nanoTime());
+    }
+
+    private boolean hasRecentWrite(String client) {
+        Long committedAt = lastWrites.get(client);
+        if (committedAt == null) {
+            return false;
+        }
+        if (System.nanoTime() - committedAt < maxLagNanos) {
+            return true;
+        }
+        lastWrites.remove(client, committedAt);
+        return false;
+    }
+
+    /**
+     * Check the reachability and the lag of the replicas, and forget the writes older than the tolerated lag.
+     */
+    @Scheduled(fixedDelayString = "${application.read-replicas.check-interval-ms:5000}")
+    public void checkReplicas() {
+        long now = System.nanoTime();
+        lastWrites.values().removeIf(committedAt -> now - committedAt >= maxLagNanos);
+        for (Replica replica : replicas) {
+            boolean available;
+            try (Connection connection = replica.dataSource.getConnection()) {
+                available = lagQuery == null ? connection.isValid(VALIDATION_TIMEOUT_SECONDS) : isInSync(connection, replica);
+            } catch (SQLException e) {
+                log.debug("Replica {} check failed: {}", replica.name, e.getMessage());
+                available = false;
+            }
+            if (available != replica.available) {
+                log.info("Replica {} is now {}", replica.name, available ? "available" : "unavailable");
+            }
+            replica.available = available;
+        }
+    }
+
+    private boolean isInSync(Connection connection, Replica replica) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(lagQuery)) {
+            if (!resultSet.next()) {
+                log.debug("Replica {} returned no lag, it is not replicating", replica.name);
+                return false;
+            }
+            double lagSeconds = resultSet.getDouble(lagColumn(resultSet.getMetaData()));
+            if (resultSet.wasNull()) {
+                log.debug("Replica {} returned a null lag, it is not replicating", replica.name);
+                return false;
+            }
+            return lagSeconds * 1_000_000_000L <= maxLagNanos;
+        }
+    }
+
+    /**
+     * The column of the lag, {@code Seconds_Behind_Source} or {@code Seconds_Behind_Master} for the MySQL
+     * {@code SHOW REPLICA STATUS} statement, the first column otherwise.
+     */
+    private static int lagColumn(ResultSetMetaData metaData) throws SQLException {
+        for (int column = 1; column <= metaData.getColumnCount(); column++) {
+            String label = metaData.getColumnLabel(column);
+            if ("Seconds_Behind_Source".equalsIgnoreCase(label) || "Seconds_Behind_Master".equalsIgnoreCase(label)) {
+                return column;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Close the replica pools, the primary one is closed by its own bean.
+     */
+    @Override
+    public void close() throws Exception {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable) {
+                ((AutoCloseable) replica.dataSource).close();
+            }
+        }
+    }
+}
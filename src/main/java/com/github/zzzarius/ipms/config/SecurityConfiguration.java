@@ -5,7 +5,12 @@ import com.github.zzzarius.ipms.security.SecurityUtils;
 import com.github.zzzarius.ipms.security.oauth2.AudienceValidator;
 import com.github.zzzarius.ipms.security.oauth2.CustomClaimConverter;
 import com.github.zzzarius.ipms.security.oauth2.JwtGrantedAuthorityConverter;
+import com.github.zzzarius.ipms.security.oauth2.UserInfoCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.Executor;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
@@ -142,7 +147,13 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
     }
 
     @Bean
-    JwtDecoder jwtDecoder(ClientRegistrationRepository clientRegistrationRepository, RestTemplateBuilder restTemplateBuilder) {
+    JwtDecoder jwtDecoder(
+        ClientRegistrationRepository clientRegistrationRepository,
+        RestTemplateBuilder restTemplateBuilder,
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry,
+        @Qualifier("taskExecutor") Executor taskExecutor
+    ) {
         NimbusJwtDecoder jwtDecoder = (NimbusJwtDecoder) JwtDecoders.fromOidcIssuerLocation(issuerUri);
 
         OAuth2TokenValidator<Jwt> audienceValidator = new AudienceValidator(jHipsterProperties.getSecurity().getOauth2().getAudience());
@@ -150,8 +161,16 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
         OAuth2TokenValidator<Jwt> withAudience = new DelegatingOAuth2TokenValidator<>(withIssuer, audienceValidator);
 
         jwtDecoder.setJwtValidator(withAudience);
+        ApplicationProperties.UserInfoCache userInfoCache = applicationProperties.getUserInfoCache();
+        UserInfoCache users = new UserInfoCache(
+            Duration.ofSeconds(userInfoCache.getTimeToLiveSeconds()),
+            Duration.ofSeconds(userInfoCache.getRefreshAfterSeconds()),
+            userInfoCache.getMaxEntries(),
+            taskExecutor,
+            meterRegistry
+        );
         jwtDecoder.setClaimSetConverter(
-            new CustomClaimConverter(clientRegistrationRepository.findByRegistrationId("oidc"), restTemplateBuilder.build())
+            new CustomClaimConverter(clientRegistrationRepository.findByRegistrationId("oidc"), restTemplateBuilder.build(), users)
         );
 
         return jwtDecoder;
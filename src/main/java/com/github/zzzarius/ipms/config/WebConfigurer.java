@@ -2,6 +2,9 @@ package com.github.zzzarius.ipms.config;
 
 import static java.net.URLDecoder.decode;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.zzzarius.ipms.web.filter.AdmissionControlFilter;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
@@ -10,7 +13,9 @@ import java.util.*;
 import javax.servlet.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
 import org.springframework.boot.web.server.*;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.boot.web.servlet.ServletContextInitializer;
 import org.springframework.boot.web.servlet.server.ConfigurableServletWebServerFactory;
 import org.springframework.context.annotation.Bean;
@@ -111,6 +116,26 @@ public class WebConfigurer implements ServletContextInitializer, WebServerFactor
         return new CorsFilter(source);
     }
 
+    /**
+     * Registers the admission control of the {@code /api} requests, after the security filters, so that only the
+     * authenticated requests take a slot, and have their body inspected for their priority.
+     */
+    @Bean
+    public FilterRegistrationBean<AdmissionControlFilter> admissionControlFilter(
+        ObjectMapper objectMapper,
+        MeterRegistry meterRegistry,
+        ApplicationProperties applicationProperties
+    ) {
+        ApplicationProperties.AdmissionControl admissionControl = applicationProperties.getAdmissionControl();
+        FilterRegistrationBean<AdmissionControlFilter> registration = new FilterRegistrationBean<>(
+            new AdmissionControlFilter(objectMapper, meterRegistry, admissionControl)
+        );
+        registration.addUrlPatterns("/api/*");
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER + 1);
+        registration.setEnabled(admissionControl.isEnabled());
+        return registration;
+    }
+
     /**
      * Initializes H2 console.
      */
@@ -0,0 +1,55 @@
+package com.github.zzzarius.ipms.domain;
+
+import java.io.Serializable;
+import javax.persistence.*;
+
+/**
+ * A named sequence, incremented once by each transaction writing the entities it orders, see
+ * {@link com.github.zzzarius.ipms.service.ChangeSequenceService}.
+ */
+@Entity
+@Table(name = "change_sequence")
+public class ChangeSequence implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String PATIENT = "patient";
+
+    /**
+     * Not incremented, but raised to the highest change sequence of the purged patient tombstones, below which the sync
+     * tokens are expired.
+     */
+    public static final String PATIENT_TOMBSTONE_PURGE = "patient-tombstone-purge";
+
+    @Id
+    @Column(name = "name", length = 50, nullable = false)
+    private String name;
+
+    @Column(name = "last_value", nullable = false)
+    private long lastValue;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getLastValue() {
+        return lastValue;
+    }
+
+    public void setLastValue(long lastValue) {
+        this.lastValue = lastValue;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "ChangeSequence{" +
+            "name='" + getName() + "'" +
+            ", lastValue=" + getLastValue() +
+            "}";
+    }
+}
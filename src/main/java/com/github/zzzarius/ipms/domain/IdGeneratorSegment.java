@@ -0,0 +1,51 @@
+package com.github.zzzarius.ipms.domain;
+
+import java.io.Serializable;
+import javax.persistence.*;
+
+/**
+ * A sequence of the {@code id_generator} table, from which Hibernate allocates the ids of an entity in blocks.
+ * <p>
+ * Only mapped to reserve blocks for the clients, see {@link PatientIdBlock}: Hibernate reads and writes the table on its
+ * own.
+ */
+@Entity
+@Table(name = "id_generator")
+public class IdGeneratorSegment implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String PATIENT = "patient";
+
+    @Id
+    @Column(name = "sequence_name", nullable = false)
+    private String sequenceName;
+
+    @Column(name = "next_val", nullable = false)
+    private long nextVal;
+
+    public String getSequenceName() {
+        return sequenceName;
+    }
+
+    public void setSequenceName(String sequenceName) {
+        this.sequenceName = sequenceName;
+    }
+
+    public long getNextVal() {
+        return nextVal;
+    }
+
+    public void setNextVal(long nextVal) {
+        this.nextVal = nextVal;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "IdGeneratorSegment{" +
+            "sequenceName='" + getSequenceName() + "'" +
+            ", nextVal=" + getNextVal() +
+            "}";
+    }
+}
@@ -0,0 +1,99 @@
+package com.github.zzzarius.ipms.domain;
+
+import java.io.Serializable;
+import java.time.Instant;
+import javax.persistence.*;
+
+/**
+ * The key sent by a client with a patient creation, so that a retried request returns the original response instead
+ * of creating the patient again.
+ * <p>
+ * The keys are purged after their time to live, see
+ * {@link com.github.zzzarius.ipms.service.PatientUploadService#purgeIdempotencyKeys()}.
+ */
+@Entity
+@Table(name = "idempotency_key")
+public class IdempotencyKey implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "idempotency_key", length = 255, nullable = false)
+    private String key;
+
+    @Column(name = "created_by", length = 50, nullable = false)
+    private String createdBy;
+
+    /**
+     * The Base64 SHA-256 of the request body, to reject a key reused for another request.
+     */
+    @Column(name = "request_hash", length = 64, nullable = false)
+    private String requestHash;
+
+    @Lob
+    @Column(name = "response_body", nullable = false)
+    private String responseBody;
+
+    @Column(name = "created_date", nullable = false)
+    private Instant createdDate;
+
+    public IdempotencyKey() {}
+
+    public IdempotencyKey(String key, String createdBy, String requestHash, String responseBody) {
+        this.key = key;
+        this.createdBy = createdBy;
+        this.requestHash = requestHash;
+        this.responseBody = responseBody;
+        this.createdDate = Instant.now();
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public String getCreatedBy() {
+        return createdBy;
+    }
+
+    public void setCreatedBy(String createdBy) {
+        this.createdBy = createdBy;
+    }
+
+    public String getRequestHash() {
+        return requestHash;
+    }
+
+    public void setRequestHash(String requestHash) {
+        this.requestHash = requestHash;
+    }
+
+    public String getResponseBody() {
+        return responseBody;
+    }
+
+    public void setResponseBody(String responseBody) {
+        this.responseBody = responseBody;
+    }
+
+    public Instant getCreatedDate() {
+        return createdDate;
+    }
+
+    public void setCreatedDate(Instant createdDate) {
+        this.createdDate = createdDate;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "IdempotencyKey{" +
+            "key='" + getKey() + "'" +
+            ", createdBy='" + getCreatedBy() + "'" +
+            ", createdDate='" + getCreatedDate() + "'" +
+            "}";
+    }
+}
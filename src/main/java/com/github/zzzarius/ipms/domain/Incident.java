@@ -1,14 +1,20 @@
 package com.github.zzzarius.ipms.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import java.io.Serializable;
 import java.time.LocalDate;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 import javax.persistence.*;
 import javax.validation.constraints.*;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 /**
  * A Incident.
@@ -16,12 +22,25 @@ import org.hibernate.annotations.CacheConcurrencyStrategy;
 @Entity
 @Table(name = "incident")
 @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@DynamicUpdate
 public class Incident implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "incidentIdGenerator")
+    @GenericGenerator(
+        name = "incidentIdGenerator",
+        strategy = "org.hibernate.id.enhanced.TableGenerator",
+        parameters = {
+            @Parameter(name = "table_name", value = "id_generator"),
+            @Parameter(name = "segment_column_name", value = "sequence_name"),
+            @Parameter(name = "value_column_name", value = "next_val"),
+            @Parameter(name = "segment_value", value = "incident"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled-lo")
+        }
+    )
     private Long id;
 
     @NotNull
@@ -33,10 +52,32 @@ public class Incident implements Serializable {
     @Column(name = "start_date", nullable = false)
     private LocalDate startDate;
 
+    /**
+     * An ordered bag rather than a set: the patients all have the same hash code, which would degrade a set to a list
+     * scan, and adding a patient to an inverse bag does not load the collection. Read the patients of large incidents by
+     * pages, with {@code GET /api/incidents/:id/patients}.
+     */
     @OneToMany(mappedBy = "incident")
+    @OrderBy("id")
     @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @JsonIgnoreProperties(value = { "incident" }, allowSetters = true)
-    private Set<Patient> patients = new HashSet<>();
+    private List<Patient> patients = new ArrayList<>();
+
+    /**
+     * Only filled when requested, see {@link TriageSummary}.
+     */
+    @Transient
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private TriageSummary triageSummary;
+
+    /**
+     * Incremented by each update, and returned in the {@code ETag} header rather than in the body.
+     */
+    @Version
+    @Column(name = "version", nullable = false)
+    @JsonIgnore
+    private Long version;
 
     // jhipster-needle-entity-add-field - JHipster will add fields here
     public Long getId() {
@@ -78,11 +119,11 @@ public class Incident implements Serializable {
         this.startDate = startDate;
     }
 
-    public Set<Patient> getPatients() {
+    public List<Patient> getPatients() {
         return this.patients;
     }
 
-    public Incident patients(Set<Patient> patients) {
+    public Incident patients(List<Patient> patients) {
         this.setPatients(patients);
         return this;
     }
@@ -99,7 +140,7 @@ public class Incident implements Serializable {
         return this;
     }
 
-    public void setPatients(Set<Patient> patients) {
+    public void setPatients(List<Patient> patients) {
         if (this.patients != null) {
             this.patients.forEach(i -> i.setIncident(null));
         }
@@ -109,6 +150,22 @@ public class Incident implements Serializable {
         this.patients = patients;
     }
 
+    public TriageSummary getTriageSummary() {
+        return this.triageSummary;
+    }
+
+    public void setTriageSummary(TriageSummary triageSummary) {
+        this.triageSummary = triageSummary;
+    }
+
+    public Long getVersion() {
+        return this.version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     // jhipster-needle-entity-add-getters-setters - JHipster will add getters and setters here
 
     @Override
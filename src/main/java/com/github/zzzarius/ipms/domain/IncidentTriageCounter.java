@@ -0,0 +1,158 @@
+package com.github.zzzarius.ipms.domain;
+
+import java.io.Serializable;
+import java.util.Objects;
+import javax.persistence.*;
+
+/**
+ * One stripe of the patient counters of an {@link Incident}, by triage category.
+ * <p>
+ * Each incident has several stripes, and writers update a random one, so that concurrent patient registrations
+ * don't all wait on the same row lock. The counts of an incident are the sums over its stripes.
+ * <p>
+ * This is derived data: there is no foreign key to the incident, and drift is repaired by
+ * {@link com.github.zzzarius.ipms.service.IncidentTriageCounterService#reconcile()}.
+ */
+@Entity
+@Table(name = "incident_triage_counter")
+@IdClass(IncidentTriageCounter.IncidentTriageCounterId.class)
+public class IncidentTriageCounter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "incident_id", nullable = false)
+    private Long incidentId;
+
+    @Id
+    @Column(name = "stripe", nullable = false)
+    private Integer stripe;
+
+    @Column(name = "black_count", nullable = false)
+    private long blackCount;
+
+    @Column(name = "red_count", nullable = false)
+    private long redCount;
+
+    @Column(name = "yellow_count", nullable = false)
+    private long yellowCount;
+
+    @Column(name = "green_count", nullable = false)
+    private long greenCount;
+
+    @Column(name = "untriaged_count", nullable = false)
+    private long untriagedCount;
+
+    public IncidentTriageCounter() {}
+
+    public IncidentTriageCounter(Long incidentId, Integer stripe) {
+        this.incidentId = incidentId;
+        this.stripe = stripe;
+    }
+
+    public Long getIncidentId() {
+        return incidentId;
+    }
+
+    public void setIncidentId(Long incidentId) {
+        this.incidentId = incidentId;
+    }
+
+    public Integer getStripe() {
+        return stripe;
+    }
+
+    public void setStripe(Integer stripe) {
+        this.stripe = stripe;
+    }
+
+    public long getBlackCount() {
+        return blackCount;
+    }
+
+    public void setBlackCount(long blackCount) {
+        this.blackCount = blackCount;
+    }
+
+    public long getRedCount() {
+        return redCount;
+    }
+
+    public void setRedCount(long redCount) {
+        this.redCount = redCount;
+    }
+
+    public long getYellowCount() {
+        return yellowCount;
+    }
+
+    public void setYellowCount(long yellowCount) {
+        this.yellowCount = yellowCount;
+    }
+
+    public long getGreenCount() {
+        return greenCount;
+    }
+
+    public void setGreenCount(long greenCount) {
+        this.greenCount = greenCount;
+    }
+
+    public long getUntriagedCount() {
+        return untriagedCount;
+    }
+
+    public void setUntriagedCount(long untriagedCount) {
+        this.untriagedCount = untriagedCount;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "IncidentTriageCounter{" +
+            "incidentId=" + getIncidentId() +
+            ", stripe=" + getStripe() +
+            ", blackCount=" + getBlackCount() +
+            ", redCount=" + getRedCount() +
+            ", yellowCount=" + getYellowCount() +
+            ", greenCount=" + getGreenCount() +
+            ", untriagedCount=" + getUntriagedCount() +
+            "}";
+    }
+
+    /**
+     * Composite primary key of {@link IncidentTriageCounter}.
+     */
+    public static class IncidentTriageCounterId implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private Long incidentId;
+
+        private Integer stripe;
+
+        public IncidentTriageCounterId() {}
+
+        public IncidentTriageCounterId(Long incidentId, Integer stripe) {
+            this.incidentId = incidentId;
+            this.stripe = stripe;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof IncidentTriageCounterId)) {
+                return false;
+            }
+            IncidentTriageCounterId that = (IncidentTriageCounterId) o;
+            return Objects.equals(incidentId, that.incidentId) && Objects.equals(stripe, that.stripe);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(incidentId, stripe);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.zzzarius.ipms.domain;
+
+import java.io.Serializable;
+import java.time.Instant;
+import javax.persistence.*;
+
+/**
+ * A block of patient ids reserved by a client, which assigns them to the patients it registers offline.
+ * <p>
+ * The ids are taken from the {@code patient} sequence of the {@code id_generator} table, so they are never generated
+ * for another patient.
+ */
+@Entity
+@Table(name = "patient_id_block")
+public class PatientIdBlock implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "first_id", nullable = false)
+    private Long firstId;
+
+    @Column(name = "last_id", nullable = false)
+    private Long lastId;
+
+    @Column(name = "reserved_by", length = 50, nullable = false)
+    private String reservedBy;
+
+    @Column(name = "reserved_date", nullable = false)
+    private Instant reservedDate;
+
+    public PatientIdBlock() {}
+
+    public PatientIdBlock(Long firstId, Long lastId, String reservedBy) {
+        this.firstId = firstId;
+        this.lastId = lastId;
+        this.reservedBy = reservedBy;
+        this.reservedDate = Instant.now();
+    }
+
+    public Long getFirstId() {
+        return firstId;
+    }
+
+    public void setFirstId(Long firstId) {
+        this.firstId = firstId;
+    }
+
+    public Long getLastId() {
+        return lastId;
+    }
+
+    public void setLastId(Long lastId) {
+        this.lastId = lastId;
+    }
+
+    public String getReservedBy() {
+        return reservedBy;
+    }
+
+    public void setReservedBy(String reservedBy) {
+        this.reservedBy = reservedBy;
+    }
+
+    public Instant getReservedDate() {
+        return reservedDate;
+    }
+
+    public void setReservedDate(Instant reservedDate) {
+        this.reservedDate = reservedDate;
+    }
+
+    public boolean contains(Long id) {
+        return id != null && firstId <= id && id <= lastId;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "PatientIdBlock{" +
+            "firstId=" + getFirstId() +
+            ", lastId=" + getLastId() +
+            ", reservedBy='" + getReservedBy() + "'" +
+            "}";
+    }
+}
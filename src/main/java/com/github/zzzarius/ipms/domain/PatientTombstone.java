@@ -0,0 +1,81 @@
+package com.github.zzzarius.ipms.domain;
+
+import java.io.Serializable;
+import java.time.Instant;
+import javax.persistence.*;
+
+/**
+ * The trace of a deleted {@link Patient}, so that the clients syncing their changes also remove it.
+ * <p>
+ * There is no foreign key to the patient, nor to its incident, which are deleted.
+ */
+@Entity
+@Table(name = "patient_tombstone")
+public class PatientTombstone implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "patient_id", nullable = false)
+    private Long patientId;
+
+    @Column(name = "incident_id")
+    private Long incidentId;
+
+    @Column(name = "change_seq", nullable = false)
+    private Long changeSeq;
+
+    @Column(name = "deleted_date", nullable = false)
+    private Instant deletedDate;
+
+    public PatientTombstone() {}
+
+    public PatientTombstone(Patient patient, Long changeSeq) {
+        this.patientId = patient.getId();
+        this.incidentId = patient.getIncident() == null ? null : patient.getIncident().getId();
+        this.changeSeq = changeSeq;
+        this.deletedDate = Instant.now();
+    }
+
+    public Long getPatientId() {
+        return patientId;
+    }
+
+    public void setPatientId(Long patientId) {
+        this.patientId = patientId;
+    }
+
+    public Long getIncidentId() {
+        return incidentId;
+    }
+
+    public void setIncidentId(Long incidentId) {
+        this.incidentId = incidentId;
+    }
+
+    public Long getChangeSeq() {
+        return changeSeq;
+    }
+
+    public void setChangeSeq(Long changeSeq) {
+        this.changeSeq = changeSeq;
+    }
+
+    public Instant getDeletedDate() {
+        return deletedDate;
+    }
+
+    public void setDeletedDate(Instant deletedDate) {
+        this.deletedDate = deletedDate;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "PatientTombstone{" +
+            "patientId=" + getPatientId() +
+            ", incidentId=" + getIncidentId() +
+            ", changeSeq=" + getChangeSeq() +
+            "}";
+    }
+}
@@ -0,0 +1,129 @@
+package com.github.zzzarius.ipms.domain;
+
+import com.github.zzzarius.ipms.domain.enumeration.Category;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * The number of patients of an {@link Incident}, by triage category.
+ */
+public class TriageSummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Long incidentId;
+
+    private final long black;
+
+    private final long red;
+
+    private final long yellow;
+
+    private final long green;
+
+    private final long untriaged;
+
+    public TriageSummary(Long incidentId, Long black, Long red, Long yellow, Long green, Long untriaged) {
+        this.incidentId = incidentId;
+        this.black = black == null ? 0 : black;
+        this.red = red == null ? 0 : red;
+        this.yellow = yellow == null ? 0 : yellow;
+        this.green = green == null ? 0 : green;
+        this.untriaged = untriaged == null ? 0 : untriaged;
+    }
+
+    /**
+     * @param incidentId the id of the incident.
+     * @return the summary of an incident without patients.
+     */
+    public static TriageSummary empty(Long incidentId) {
+        return new TriageSummary(incidentId, 0L, 0L, 0L, 0L, 0L);
+    }
+
+    public Long getIncidentId() {
+        return incidentId;
+    }
+
+    public long getBlack() {
+        return black;
+    }
+
+    public long getRed() {
+        return red;
+    }
+
+    public long getYellow() {
+        return yellow;
+    }
+
+    public long getGreen() {
+        return green;
+    }
+
+    public long getUntriaged() {
+        return untriaged;
+    }
+
+    public long getTotal() {
+        return black + red + yellow + green + untriaged;
+    }
+
+    /**
+     * @param category the triage category, {@code null} for untriaged patients.
+     * @return the number of patients in the category.
+     */
+    public long get(Category category) {
+        if (category == null) {
+            return untriaged;
+        }
+        switch (category) {
+            case BLACK:
+                return black;
+            case RED:
+                return red;
+            case YELLOW:
+                return yellow;
+            case GREEN:
+                return green;
+            default:
+                throw new IllegalArgumentException("Unknown category: " + category);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TriageSummary)) {
+            return false;
+        }
+        TriageSummary that = (TriageSummary) o;
+        return (
+            Objects.equals(incidentId, that.incidentId) &&
+            black == that.black &&
+            red == that.red &&
+            yellow == that.yellow &&
+            green == that.green &&
+            untriaged == that.untriaged
+        );
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(incidentId, black, red, yellow, green, untriaged);
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "TriageSummary{" +
+            "incidentId=" + getIncidentId() +
+            ", black=" + getBlack() +
+            ", red=" + getRed() +
+            ", yellow=" + getYellow() +
+            ", green=" + getGreen() +
+            ", untriaged=" + getUntriaged() +
+            "}";
+    }
+}
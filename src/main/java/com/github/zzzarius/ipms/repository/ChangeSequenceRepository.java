@@ -0,0 +1,23 @@
+package com.github.zzzarius.ipms.repository;
+
+import com.github.zzzarius.ipms.domain.ChangeSequence;
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Spring Data SQL repository for the ChangeSequence entity.
+ */
+@Repository
+public interface ChangeSequenceRepository extends JpaRepository<ChangeSequence, String> {
+    @Modifying
+    @Query("update ChangeSequence s set s.lastValue = s.lastValue + 1 where s.name = :name")
+    int increment(@Param("name") String name);
+
+    @Modifying
+    @Query("update ChangeSequence s set s.lastValue = :value where s.name = :name and s.lastValue < :value")
+    int raise(@Param("name") String name, @Param("value") long value);
+
+    @Query("select s.lastValue from ChangeSequence s where s.name = :name")
+    long findLastValueByName(@Param("name") String name);
+}
@@ -0,0 +1,19 @@
+package com.github.zzzarius.ipms.repository;
+
+import com.github.zzzarius.ipms.domain.IdGeneratorSegment;
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Spring Data SQL repository for the IdGeneratorSegment entity.
+ */
+@Repository
+public interface IdGeneratorSegmentRepository extends JpaRepository<IdGeneratorSegment, String> {
+    @Modifying
+    @Query("update IdGeneratorSegment s set s.nextVal = s.nextVal + :size where s.sequenceName = :sequenceName")
+    int increment(@Param("sequenceName") String sequenceName, @Param("size") long size);
+
+    @Query("select s.nextVal from IdGeneratorSegment s where s.sequenceName = :sequenceName")
+    long findNextValBySequenceName(@Param("sequenceName") String sequenceName);
+}
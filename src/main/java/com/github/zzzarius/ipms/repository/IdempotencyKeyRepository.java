@@ -0,0 +1,17 @@
+package com.github.zzzarius.ipms.repository;
+
+import com.github.zzzarius.ipms.domain.IdempotencyKey;
+import java.time.Instant;
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Spring Data SQL repository for the IdempotencyKey entity.
+ */
+@Repository
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, String> {
+    @Modifying
+    @Query("delete from IdempotencyKey k where k.createdDate < :createdDate")
+    int deleteByCreatedDateBefore(@Param("createdDate") Instant createdDate);
+}
@@ -1,7 +1,11 @@
 package com.github.zzzarius.ipms.repository;
 
 import com.github.zzzarius.ipms.domain.Incident;
+import java.util.List;
+import java.util.Optional;
+import javax.persistence.LockModeType;
 import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -9,4 +13,16 @@ import org.springframework.stereotype.Repository;
  */
 @SuppressWarnings("unused")
 @Repository
-public interface IncidentRepository extends JpaRepository<Incident, Long>, JpaSpecificationExecutor<Incident> {}
+public interface IncidentRepository
+    extends
+        JpaRepository<Incident, Long>,
+        JpaSpecificationExecutor<Incident>,
+        SliceSpecificationExecutor<Incident>,
+        ProjectionSpecificationExecutor<Incident> {
+    @Query("select i.id from Incident i order by i.id")
+    List<Long> findAllIds();
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select i from Incident i where i.id = :id")
+    Optional<Incident> findByIdForUpdate(@Param("id") Long id);
+}
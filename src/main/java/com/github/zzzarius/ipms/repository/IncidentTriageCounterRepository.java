@@ -0,0 +1,56 @@
+package com.github.zzzarius.ipms.repository;
+
+import com.github.zzzarius.ipms.domain.IncidentTriageCounter;
+import com.github.zzzarius.ipms.domain.TriageSummary;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import javax.persistence.LockModeType;
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Spring Data SQL repository for the IncidentTriageCounter entity.
+ */
+@Repository
+public interface IncidentTriageCounterRepository
+    extends JpaRepository<IncidentTriageCounter, IncidentTriageCounter.IncidentTriageCounterId> {
+    @Modifying(flushAutomatically = true)
+    @Query(
+        "update IncidentTriageCounter c set c.blackCount = c.blackCount + :black, c.redCount = c.redCount + :red, " +
+        "c.yellowCount = c.yellowCount + :yellow, c.greenCount = c.greenCount + :green, " +
+        "c.untriagedCount = c.untriagedCount + :untriaged where c.incidentId = :incidentId and c.stripe = :stripe"
+    )
+    int increment(
+        @Param("incidentId") Long incidentId,
+        @Param("stripe") Integer stripe,
+        @Param("black") long black,
+        @Param("red") long red,
+        @Param("yellow") long yellow,
+        @Param("green") long green,
+        @Param("untriaged") long untriaged
+    );
+
+    @Query(
+        "select new com.github.zzzarius.ipms.domain.TriageSummary(c.incidentId, sum(c.blackCount), sum(c.redCount), " +
+        "sum(c.yellowCount), sum(c.greenCount), sum(c.untriagedCount)) from IncidentTriageCounter c " +
+        "where c.incidentId = :incidentId group by c.incidentId"
+    )
+    Optional<TriageSummary> findSummaryByIncidentId(@Param("incidentId") Long incidentId);
+
+    @Query(
+        "select new com.github.zzzarius.ipms.domain.TriageSummary(c.incidentId, sum(c.blackCount), sum(c.redCount), " +
+        "sum(c.yellowCount), sum(c.greenCount), sum(c.untriagedCount)) from IncidentTriageCounter c " +
+        "where c.incidentId in :incidentIds group by c.incidentId"
+    )
+    List<TriageSummary> findSummariesByIncidentIdIn(@Param("incidentIds") Collection<Long> incidentIds);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from IncidentTriageCounter c where c.incidentId = :incidentId order by c.stripe")
+    List<IncidentTriageCounter> findAllByIncidentIdForUpdate(@Param("incidentId") Long incidentId);
+
+    @Modifying(flushAutomatically = true)
+    @Query("delete from IncidentTriageCounter c where c.incidentId = :incidentId")
+    int deleteAllByIncidentId(@Param("incidentId") Long incidentId);
+}
@@ -0,0 +1,20 @@
+package com.github.zzzarius.ipms.repository;
+
+import com.github.zzzarius.ipms.domain.PatientIdBlock;
+import java.util.List;
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Spring Data SQL repository for the PatientIdBlock entity.
+ */
+@Repository
+public interface PatientIdBlockRepository extends JpaRepository<PatientIdBlock, Long> {
+    @Query("select b from PatientIdBlock b where b.reservedBy = :reservedBy and b.firstId <= :maxId and b.lastId >= :minId")
+    List<PatientIdBlock> findAllByReservedByOverlapping(
+        @Param("reservedBy") String reservedBy,
+        @Param("minId") Long minId,
+        @Param("maxId") Long maxId
+    );
+}
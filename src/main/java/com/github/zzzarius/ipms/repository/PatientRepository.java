@@ -1,7 +1,18 @@
 package com.github.zzzarius.ipms.repository;
 
 import com.github.zzzarius.ipms.domain.Patient;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -9,4 +20,62 @@ import org.springframework.stereotype.Repository;
  */
 @SuppressWarnings("unused")
 @Repository
-public interface PatientRepository extends JpaRepository<Patient, Long>, JpaSpecificationExecutor<Patient> {}
+public interface PatientRepository
+    extends
+        JpaRepository<Patient, Long>,
+        JpaSpecificationExecutor<Patient>,
+        SliceSpecificationExecutor<Patient>,
+        ProjectionSpecificationExecutor<Patient>,
+        StreamSpecificationExecutor<Patient> {
+    // The incident is lazy, the list and export queries fetch it in the same statement
+    @Override
+    @EntityGraph(attributePaths = "incident")
+    List<Patient> findAll(@Nullable Specification<Patient> spec);
+
+    @Override
+    @EntityGraph(attributePaths = "incident")
+    Page<Patient> findAll(@Nullable Specification<Patient> spec, Pageable pageable);
+
+    @Override
+    @EntityGraph(attributePaths = "incident")
+    Slice<Patient> findSlice(@Nullable Specification<Patient> spec, Pageable pageable);
+
+    @Override
+    @EntityGraph(attributePaths = "incident")
+    Stream<Patient> streamAll(@Nullable Specification<Patient> spec, Sort sort, int fetchSize);
+
+    @Query("select patient from Patient patient left join fetch patient.incident where patient.id = :id")
+    Optional<Patient> findOneWithEagerRelationships(@Param("id") Long id);
+
+    @Query("select p.triageCategory, count(p) from Patient p where p.incident.id = :incidentId group by p.triageCategory")
+    List<Object[]> countByTriageCategoryForIncident(@Param("incidentId") Long incidentId);
+
+    @Query("select p.id from Patient p where p.incident.id = :incidentId order by p.id")
+    List<Long> findIdsByIncidentId(@Param("incidentId") Long incidentId, Pageable pageable);
+
+    @Modifying
+    @Query("delete from Patient p where p.id in :ids and p.incident.id = :incidentId")
+    int deleteByIdInAndIncidentId(@Param("ids") Collection<Long> ids, @Param("incidentId") Long incidentId);
+
+    @Modifying
+    @Query(
+        "update Patient p set p.incident = null, p.version = p.version + 1, p.changeSeq = :changeSeq " +
+        "where p.id in :ids and p.incident.id = :incidentId"
+    )
+    int detachByIdInAndIncidentId(
+        @Param("ids") Collection<Long> ids,
+        @Param("incidentId") Long incidentId,
+        @Param("changeSeq") Long changeSeq
+    );
+
+    @Query(
+        "select p from Patient p where (p.changeSeq > :changeSeq or (p.changeSeq = :changeSeq and p.id > :id)) " +
+        "and p.changeSeq <= :visibleUpTo order by p.changeSeq, p.id"
+    )
+    List<Patient> findChangedAfter(
+        @Param("changeSeq") Long changeSeq,
+        @Param("id") Long id,
+        @Param("visibleUpTo") Long visibleUpTo,
+        Pageable pageable
+    );
+}
@@ -0,0 +1,57 @@
+package com.github.zzzarius.ipms.repository;
+
+import com.github.zzzarius.ipms.domain.PatientTombstone;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Spring Data SQL repository for the PatientTombstone entity.
+ */
+@Repository
+public interface PatientTombstoneRepository extends JpaRepository<PatientTombstone, Long> {
+    @Query(
+        "select t from PatientTombstone t where (t.changeSeq > :changeSeq or (t.changeSeq = :changeSeq and t.patientId > :patientId)) " +
+        "and t.changeSeq <= :visibleUpTo order by t.changeSeq, t.patientId"
+    )
+    List<PatientTombstone> findChangedAfter(
+        @Param("changeSeq") Long changeSeq,
+        @Param("patientId") Long patientId,
+        @Param("visibleUpTo") Long visibleUpTo,
+        Pageable pageable
+    );
+
+    /**
+     * Insert the tombstones of the patients of an incident, before they are deleted by
+     * {@link PatientRepository#deleteByIdInAndIncidentId(Collection, Long)}.
+     */
+    @Modifying
+    @Query(
+        "insert into PatientTombstone (patientId, incidentId, changeSeq, deletedDate) " +
+        "select p.id, p.incident.id, :changeSeq, :deletedDate from Patient p where p.id in :ids and p.incident.id = :incidentId"
+    )
+    int insertByIdInAndIncidentId(
+        @Param("ids") Collection<Long> ids,
+        @Param("incidentId") Long incidentId,
+        @Param("changeSeq") Long changeSeq,
+        @Param("deletedDate") Instant deletedDate
+    );
+
+    @Query("select max(t.changeSeq) from PatientTombstone t where t.deletedDate < :deletedDate")
+    Long findMaxChangeSeqByDeletedDateBefore(@Param("deletedDate") Instant deletedDate);
+
+    @Modifying
+    @Query("delete from PatientTombstone t where t.changeSeq < :changeSeq")
+    int deleteByChangeSeqBefore(@Param("changeSeq") Long changeSeq);
+
+    /**
+     * Delete the tombstone of a patient which is created again with the same id, by the client which registered it.
+     */
+    @Modifying
+    @Query("delete from PatientTombstone t where t.patientId = :patientId")
+    int deleteByPatientId(@Param("patientId") Long patientId);
+}
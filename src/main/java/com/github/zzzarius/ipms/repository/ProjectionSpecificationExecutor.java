@@ -0,0 +1,30 @@
+package com.github.zzzarius.ipms.repository;
+
+import java.util.List;
+import java.util.Map;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.repository.NoRepositoryBean;
+import org.springframework.lang.Nullable;
+
+/**
+ * Interface to allow execution of {@link Specification}s selecting only some attributes of the entities,
+ * instead of whole entities and their eager associations.
+ */
+@NoRepositoryBean
+public interface ProjectionSpecificationExecutor<T> {
+    /**
+     * Returns a {@link Slice} of the given attributes of the entities matching the given {@link Specification}.
+     * One more row than the page size is fetched to know if there is a next slice.
+     * <p>
+     * An attribute of a single-valued association is given as {@code association.attribute}. The association is then
+     * left joined, and returned as a nested map, or {@literal null} when all its selected attributes are {@literal null}.
+     *
+     * @param spec can be {@literal null}.
+     * @param paths the attributes to select, must not be empty.
+     * @param pageable must not be {@literal null}.
+     * @return never {@literal null}, the rows keyed by attribute, in the order of the given paths.
+     */
+    Slice<Map<String, Object>> findSlice(@Nullable Specification<T> spec, List<String> paths, Pageable pageable);
+}
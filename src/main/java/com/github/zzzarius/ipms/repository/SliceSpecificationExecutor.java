@@ -0,0 +1,24 @@
+package com.github.zzzarius.ipms.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.repository.NoRepositoryBean;
+import org.springframework.lang.Nullable;
+
+/**
+ * Interface to allow execution of {@link Specification}s returning a {@link Slice} instead of a
+ * {@link org.springframework.data.domain.Page}, so that no count query is issued.
+ */
+@NoRepositoryBean
+public interface SliceSpecificationExecutor<T> {
+    /**
+     * Returns a {@link Slice} of entities matching the given {@link Specification}.
+     * One more row than the page size is fetched to know if there is a next slice.
+     *
+     * @param spec can be {@literal null}.
+     * @param pageable must not be {@literal null}.
+     * @return never {@literal null}.
+     */
+    Slice<T> findSlice(@Nullable Specification<T> spec, Pageable pageable);
+}
@@ -0,0 +1,125 @@
+package com.github.zzzarius.ipms.repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.From;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.support.JpaEntityInformation;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.jpa.repository.support.SimpleJpaRepository;
+import org.springframework.lang.Nullable;
+
+/**
+ * Base class for all the Spring Data JPA repositories of the application, adding
+ * {@link SliceSpecificationExecutor}, {@link StreamSpecificationExecutor} and {@link ProjectionSpecificationExecutor}
+ * support to {@link SimpleJpaRepository}.
+ */
+public class SliceableJpaRepository<T, ID>
+    extends SimpleJpaRepository<T, ID>
+    implements SliceSpecificationExecutor<T>, StreamSpecificationExecutor<T>, ProjectionSpecificationExecutor<T> {
+
+    private final EntityManager entityManager;
+
+    public SliceableJpaRepository(JpaEntityInformation<T, ?> entityInformation, EntityManager entityManager) {
+        super(entityInformation, entityManager);
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public Slice<T> findSlice(@Nullable Specification<T> spec, Pageable pageable) {
+        TypedQuery<T> query = getQuery(spec, pageable.getSort());
+        if (pageable.isUnpaged()) {
+            return new SliceImpl<>(query.getResultList(), pageable, false);
+        }
+        query.setFirstResult((int) pageable.getOffset());
+        query.setMaxResults(pageable.getPageSize() + 1);
+        List<T> content = query.getResultList();
+        boolean hasNext = content.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? content.subList(0, pageable.getPageSize()) : content, pageable, hasNext);
+    }
+
+    @Override
+    public Slice<Map<String, Object>> findSlice(@Nullable Specification<T> spec, List<String> paths, Pageable pageable) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        Root<T> root = query.from(getDomainClass());
+        Map<String, From<?, ?>> joins = new HashMap<>();
+        List<Selection<?>> selections = new ArrayList<>();
+        for (String path : paths) {
+            int dot = path.indexOf('.');
+            if (dot < 0) {
+                selections.add(root.get(path));
+            } else {
+                String association = path.substring(0, dot);
+                selections.add(joins.computeIfAbsent(association, name -> root.join(name, JoinType.LEFT)).get(path.substring(dot + 1)));
+            }
+        }
+        query.multiselect(selections);
+        Predicate predicate = spec == null ? null : spec.toPredicate(root, query, builder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, builder));
+        TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
+        if (pageable.isPaged()) {
+            typedQuery.setFirstResult((int) pageable.getOffset());
+            typedQuery.setMaxResults(pageable.getPageSize() + 1);
+        }
+        List<Map<String, Object>> content = new ArrayList<>();
+        for (Tuple tuple : typedQuery.getResultList()) {
+            content.add(toMap(tuple, paths));
+        }
+        boolean hasNext = pageable.isPaged() && content.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? content.subList(0, pageable.getPageSize()) : content, pageable, hasNext);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> toMap(Tuple tuple, List<String> paths) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (int i = 0; i < paths.size(); i++) {
+            String path = paths.get(i);
+            int dot = path.indexOf('.');
+            if (dot < 0) {
+                row.put(path, tuple.get(i));
+            } else {
+                Map<String, Object> association = (Map<String, Object>) row.computeIfAbsent(
+                    path.substring(0, dot),
+                    name -> new LinkedHashMap<>()
+                );
+                association.put(path.substring(dot + 1), tuple.get(i));
+            }
+        }
+        // A left joined association without any value is missing
+        row.replaceAll(
+            (key, value) -> value instanceof Map && ((Map<?, ?>) value).values().stream().allMatch(Objects::isNull) ? null : value
+        );
+        return row;
+    }
+
+    @Override
+    public Stream<T> streamAll(@Nullable Specification<T> spec, Sort sort, int fetchSize) {
+        TypedQuery<T> query = getQuery(spec, sort);
+        query.setHint(QueryHints.HINT_FETCH_SIZE, fetchSize);
+        query.setHint(QueryHints.HINT_READONLY, true);
+        return query.getResultStream();
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.zzzarius.ipms.repository;
+
+import java.util.stream.Stream;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.repository.NoRepositoryBean;
+import org.springframework.lang.Nullable;
+
+/**
+ * Interface to allow execution of {@link Specification}s as a forward-only {@link Stream} of entities.
+ */
+@NoRepositoryBean
+public interface StreamSpecificationExecutor<T> {
+    /**
+     * Returns a {@link Stream} of the entities matching the given {@link Specification}, read with a forward-only
+     * cursor instead of being loaded at once.
+     * <p>
+     * The stream must be consumed, and closed, inside a transaction. The streamed entities stay attached to the
+     * persistence context, so callers should detach them once processed.
+     *
+     * @param spec can be {@literal null}.
+     * @param sort must not be {@literal null}.
+     * @param fetchSize the number of rows fetched from the database at once.
+     * @return never {@literal null}.
+     */
+    Stream<T> streamAll(@Nullable Specification<T> spec, Sort sort, int fetchSize);
+}
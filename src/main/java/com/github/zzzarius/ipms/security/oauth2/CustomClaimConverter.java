@@ -3,7 +3,6 @@ package com.github.zzzarius.ipms.security.oauth2;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -34,11 +33,12 @@ public class CustomClaimConverter implements Converter<Map<String, Object>, Map<
 
     private final ClientRegistration registration;
 
-    private final Map<String, ObjectNode> users = new HashMap<>();
+    private final UserInfoCache users;
 
-    public CustomClaimConverter(ClientRegistration registration, RestTemplate restTemplate) {
+    public CustomClaimConverter(ClientRegistration registration, RestTemplate restTemplate, UserInfoCache users) {
         this.registration = registration;
         this.restTemplate = restTemplate;
+        this.users = users;
     }
 
     public Map<String, Object> convert(Map<String, Object> claims) {
@@ -52,9 +52,9 @@ public class CustomClaimConverter implements Converter<Map<String, Object>, Map<
             headers.set("Authorization", buildBearer(token));
 
             // Retrieve user infos from OAuth provider if not already loaded
-            ObjectNode user = users.computeIfAbsent(
+            ObjectNode user = users.get(
                 claims.get("sub").toString(),
-                s -> {
+                () -> {
                     ResponseEntity<ObjectNode> userInfo = restTemplate.exchange(
                         registration.getProviderDetails().getUserInfoEndpoint().getUri(),
                         HttpMethod.GET,
@@ -0,0 +1,233 @@
+package com.github.zzzarius.ipms.security.oauth2;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory cache of the users returned by the userinfo endpoint, by subject.
+ * <p>
+ * The concurrent requests of a subject which is not cached share a single load: the first one calls the endpoint, and
+ * the others wait for its result. A failed or empty load is not cached. An entry older than the refresh delay is
+ * reloaded in the background by the next request, which is still answered from the cache, so that the active users
+ * never wait for the endpoint. When the cache is full, the expired entries are removed, then the oldest one.
+ */
+public final class UserInfoCache {
+
+    private static final Logger log = LoggerFactory.getLogger(UserInfoCache.class);
+
+    private static final class Entry {
+
+        private final CompletableFuture<ObjectNode> user = new CompletableFuture<>();
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private volatile long loadedAt;
+
+        private boolean isUsable(long now, long timeToLiveNanos) {
+            if (!user.isDone()) {
+                // Loading, the request waits for it
+                return true;
+            }
+            return !user.isCompletedExceptionally() && now - loadedAt < timeToLiveNanos;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final long timeToLiveNanos;
+
+    private final long refreshAfterNanos;
+
+    private final int maxEntries;
+
+    private final Executor refreshExecutor;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    private final Timer loads;
+
+    private final Counter evictions;
+
+    /**
+     * @param timeToLive the time a user is served from the cache.
+     * @param refreshAfter the age after which a user is reloaded in the background, zero to disable.
+     * @param maxEntries the maximum number of cached users.
+     * @param refreshExecutor runs the background reloads.
+     * @param meterRegistry the registry of the cache metrics.
+     */
+    public UserInfoCache(
+        Duration timeToLive,
+        Duration refreshAfter,
+        int maxEntries,
+        Executor refreshExecutor,
+        MeterRegistry meterRegistry
+    ) {
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.refreshAfterNanos = refreshAfter.toNanos();
+        this.maxEntries = maxEntries;
+        this.refreshExecutor = refreshExecutor;
+        this.hits =
+            Counter
+                .builder("ipms.userinfo.cache.requests")
+                .description("Users requested from the userinfo cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses =
+            Counter
+                .builder("ipms.userinfo.cache.requests")
+                .description("Users requested from the userinfo cache")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.loads =
+            Timer.builder("ipms.userinfo.cache.load").description("Calls to the userinfo endpoint").register(meterRegistry);
+        Gauge
+            .builder("ipms.userinfo.cache.hit.ratio", this, UserInfoCache::getHitRatio)
+            .description("Share of the requests served without calling the userinfo endpoint")
+            .register(meterRegistry);
+        Gauge.builder("ipms.userinfo.cache.size", entries, Map::size).description("Users in the userinfo cache").register(meterRegistry);
+        this.evictions =
+            Counter
+                .builder("ipms.userinfo.cache.evictions")
+                .description("Users removed from the full userinfo cache before their expiry")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Return the cached user of a subject, or load and cache it.
+     *
+     * @param sub the subject.
+     * @param loader calls the userinfo endpoint, possibly from another thread for a background reload.
+     * @return the user, {@code null} if the endpoint returned none.
+     * @throws RuntimeException the exception of the loader, thrown to all the requests which waited for it.
+     */
+    public ObjectNode get(String sub, Supplier<ObjectNode> loader) {
+        long now = System.nanoTime();
+        Entry entry = entries.get(sub);
+        if (entry != null && entry.isUsable(now, timeToLiveNanos)) {
+            hits.increment();
+            refreshIfOld(sub, entry, loader, now);
+            return join(entry);
+        }
+        Entry candidate = new Entry();
+        if (entry == null && entries.size() >= maxEntries) {
+            evict(now);
+        }
+        Entry winner = entries.compute(
+            sub,
+            (key, current) -> current != null && current.isUsable(now, timeToLiveNanos) ? current : candidate
+        );
+        if (winner != candidate) {
+            // Loaded concurrently
+            hits.increment();
+            return join(winner);
+        }
+        misses.increment();
+        load(sub, candidate, loader);
+        return join(candidate);
+    }
+
+    /**
+     * @return the share of the requests served without calling the userinfo endpoint, since the start.
+     */
+    public double getHitRatio() {
+        double requests = hits.count() + misses.count();
+        return requests == 0 ? 0 : hits.count() / requests;
+    }
+
+    /**
+     * Remove all the users, so that they are loaded again by their next request.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    private void load(String sub, Entry entry, Supplier<ObjectNode> loader) {
+        try {
+            ObjectNode user = loads.record(loader);
+            entry.loadedAt = System.nanoTime();
+            entry.user.complete(user);
+            if (user == null) {
+                entries.remove(sub, entry);
+            }
+        } catch (RuntimeException e) {
+            entries.remove(sub, entry);
+            entry.user.completeExceptionally(e);
+        }
+    }
+
+    private void refreshIfOld(String sub, Entry entry, Supplier<ObjectNode> loader, long now) {
+        if (
+            refreshAfterNanos <= 0 ||
+            !entry.user.isDone() ||
+            now - entry.loadedAt < refreshAfterNanos ||
+            !entry.refreshing.compareAndSet(false, true)
+        ) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(
+                () -> {
+                    try {
+                        Entry refreshed = new Entry();
+                        load(sub, refreshed, loader);
+                        if (refreshed.user.isCompletedExceptionally() || refreshed.user.join() == null) {
+                            // Served from the cache until it expires
+                            log.debug("Could not refresh the user {}", sub);
+                        } else {
+                            entries.replace(sub, entry, refreshed);
+                        }
+                    } finally {
+                        entry.refreshing.set(false);
+                    }
+                }
+            );
+        } catch (RejectedExecutionException e) {
+            // Refreshed by a later request, or loaded again once expired
+            entry.refreshing.set(false);
+        }
+    }
+
+    private void evict(long now) {
+        entries.values().removeIf(expired -> expired.user.isDone() && !expired.isUsable(now, timeToLiveNanos));
+        while (entries.size() >= maxEntries) {
+            Map.Entry<String, Entry> oldest = entries
+                .entrySet()
+                .stream()
+                .filter(loaded -> loaded.getValue().user.isDone())
+                .min(Comparator.comparingLong(loaded -> loaded.getValue().loadedAt))
+                .orElse(null);
+            if (oldest == null || !entries.remove(oldest.getKey(), oldest.getValue())) {
+                return;
+            }
+            evictions.increment();
+        }
+    }
+
+    private static ObjectNode join(Entry entry) {
+        try {
+            return entry.user.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
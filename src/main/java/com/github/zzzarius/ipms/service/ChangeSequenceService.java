@@ -0,0 +1,145 @@
+package com.github.zzzarius.ipms.service;
+
+import com.github.zzzarius.ipms.config.ApplicationProperties;
+import com.github.zzzarius.ipms.domain.ChangeSequence;
+import com.github.zzzarius.ipms.repository.ChangeSequenceRepository;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Service allocating the change sequence of the patient writes, which orders them for the delta sync.
+ * <p>
+ * Each transaction writing patients allocates one value of the sequence, and stamps all its writes with it. The value
+ * is allocated in a short transaction of its own, so the transactions writing patients don't wait for each other, but
+ * they can commit in another order than their values. The delta sync therefore only reads the changes up to the
+ * visibility watermark, see {@link #visibleUpTo()}: the value the sequence had a safety lag ago, longer than the
+ * transactions writing patients, after which all the values up to it are committed or rolled back.
+ */
+@Service
+public class ChangeSequenceService {
+
+    private final Logger log = LoggerFactory.getLogger(ChangeSequenceService.class);
+
+    private final ChangeSequenceRepository changeSequenceRepository;
+
+    private final TransactionTemplate allocationTemplate;
+
+    private final TransactionTemplate samplingTemplate;
+
+    private final long safetyLagNanos;
+
+    /**
+     * The sampled values of the sequence, as {@code {sampledAt, value}}, younger than the safety lag.
+     */
+    private final Deque<long[]> samples = new ArrayDeque<>();
+
+    private volatile long visibleUpTo;
+
+    public ChangeSequenceService(
+        ChangeSequenceRepository changeSequenceRepository,
+        PlatformTransactionManager transactionManager,
+        ApplicationProperties applicationProperties
+    ) {
+        this.changeSequenceRepository = changeSequenceRepository;
+        this.allocationTemplate = new TransactionTemplate(transactionManager);
+        this.allocationTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.samplingTemplate = new TransactionTemplate(transactionManager);
+        this.samplingTemplate.setReadOnly(true);
+        this.safetyLagNanos = applicationProperties.getSync().getSafetyLagMs() * 1_000_000L;
+    }
+
+    /**
+     * Get the change sequence of the current transaction, allocated by its first call.
+     *
+     * @return the value to stamp the written patients with.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public long current() {
+        // Kept in a synchronization, which unlike a bound resource is suspended with its transaction
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof Allocation) {
+                return ((Allocation) synchronization).value;
+            }
+        }
+        long value = Objects.requireNonNull(
+            allocationTemplate.execute(
+                status -> {
+                    changeSequenceRepository.increment(ChangeSequence.PATIENT);
+                    return changeSequenceRepository.findLastValueByName(ChangeSequence.PATIENT);
+                }
+            )
+        );
+        TransactionSynchronizationManager.registerSynchronization(new Allocation(value, System.nanoTime()));
+        return value;
+    }
+
+    /**
+     * Get the visibility watermark of the delta sync: all the changes up to it are committed or rolled back.
+     * <p>
+     * Without safety lag, this is the current value of the sequence, which is only safe while the patient writes don't
+     * overlap, as in the tests. Otherwise, it is {@code 0} during the first safety lag after the start.
+     *
+     * @return the highest change sequence the delta sync can read.
+     */
+    @Transactional(readOnly = true)
+    public long visibleUpTo() {
+        if (safetyLagNanos <= 0) {
+            return changeSequenceRepository.findLastValueByName(ChangeSequence.PATIENT);
+        }
+        return visibleUpTo;
+    }
+
+    /**
+     * Sample the sequence, and move the visibility watermark to the last value sampled at least a safety lag ago.
+     */
+    @Scheduled(fixedDelayString = "${application.sync.sampling-interval-ms:1000}")
+    public void sample() {
+        if (safetyLagNanos <= 0) {
+            return;
+        }
+        long value = Objects.requireNonNull(
+            samplingTemplate.execute(status -> changeSequenceRepository.findLastValueByName(ChangeSequence.PATIENT))
+        );
+        long now = System.nanoTime();
+        synchronized (samples) {
+            samples.addLast(new long[] { now, value });
+            while (now - samples.getFirst()[0] >= safetyLagNanos) {
+                visibleUpTo = samples.removeFirst()[1];
+            }
+        }
+    }
+
+    /**
+     * The value allocated to a transaction.
+     */
+    private final class Allocation implements TransactionSynchronization {
+
+        private final long value;
+
+        private final long allocatedAt;
+
+        private Allocation(long value, long allocatedAt) {
+            this.value = value;
+            this.allocatedAt = allocatedAt;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (safetyLagNanos > 0 && System.nanoTime() - allocatedAt >= safetyLagNanos) {
+                log.warn("The patient changes {} commit after the sync safety lag, a client may have skipped them", value);
+            }
+        }
+    }
+}
@@ -1,16 +1,36 @@
 package com.github.zzzarius.ipms.service;
 
+import com.github.zzzarius.ipms.config.ApplicationProperties;
+import com.github.zzzarius.ipms.config.ReplicaRoutingDataSource;
 import com.github.zzzarius.ipms.domain.*; // for static metamodels
 import com.github.zzzarius.ipms.domain.Incident;
 import com.github.zzzarius.ipms.repository.IncidentRepository;
 import com.github.zzzarius.ipms.service.criteria.IncidentCriteria;
+import com.github.zzzarius.ipms.service.pagination.KeysetCursor;
+import com.github.zzzarius.ipms.service.pagination.KeysetPage;
+import com.github.zzzarius.ipms.service.pagination.KeysetSpecification;
+import com.github.zzzarius.ipms.service.projection.SparseFieldset;
+import com.github.zzzarius.ipms.service.query.CompiledQuery;
+import com.github.zzzarius.ipms.service.query.CountCache;
+import com.github.zzzarius.ipms.service.query.CriteriaQueryCompiler;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.persistence.EntityManager;
 import javax.persistence.criteria.JoinType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import tech.jhipster.service.QueryService;
@@ -20,17 +40,62 @@ import tech.jhipster.service.QueryService;
  * The main input is a {@link IncidentCriteria} which gets converted to {@link Specification},
  * in a way that all the filters must apply.
  * It returns a {@link List} of {@link Incident} or a {@link Page} of {@link Incident} which fulfills the criteria.
+ * The list, page, slice and count queries are compiled once per shape of the criteria, see
+ * {@link CriteriaQueryCompiler}. The sparse fieldset and keyset queries still use specifications.
  */
 @Service
 @Transactional(readOnly = true)
 public class IncidentQueryService extends QueryService<Incident> {
 
+    public static final String TRIAGE_SUMMARY_EXPANSION = "triageSummary";
+
+    /**
+     * Properties which can be used as keyset pagination sort key, besides the id.
+     */
+    private static final Map<String, Class<?>> KEYSET_SORT_PROPERTIES = Map.of("name", String.class, "startDate", LocalDate.class);
+
+    /**
+     * Attributes which can be requested with a sparse fieldset, besides the id.
+     */
+    private static final Set<String> SPARSE_FIELDS = Set.of("name", "startDate");
+
+    /**
+     * Associations which can be expanded in a sparse fieldset, the triage summary being read from its counters.
+     */
+    private static final Map<String, List<String>> SPARSE_EXPANSIONS = Map.of(TRIAGE_SUMMARY_EXPANSION, List.of());
+
     private final Logger log = LoggerFactory.getLogger(IncidentQueryService.class);
 
     private final IncidentRepository incidentRepository;
 
-    public IncidentQueryService(IncidentRepository incidentRepository) {
+    private final CriteriaQueryCompiler<Incident, IncidentCriteria> queryCompiler;
+
+    private final CountCache<IncidentCriteria> countCache;
+
+    public IncidentQueryService(
+        IncidentRepository incidentRepository,
+        EntityManager entityManager,
+        ApplicationProperties applicationProperties
+    ) {
         this.incidentRepository = incidentRepository;
+        ApplicationProperties.CountCache countCacheProperties = applicationProperties.getCountCache();
+        ApplicationProperties.ReadReplicas readReplicas = applicationProperties.getReadReplicas();
+        this.countCache =
+            new CountCache<>(
+                Duration.ofSeconds(countCacheProperties.getTimeToLiveSeconds()),
+                countCacheProperties.getMaxEntries(),
+                Duration.ofSeconds(readReplicas.isEnabled() ? readReplicas.getMaxLagSeconds() : 0),
+                ReplicaRoutingDataSource::isCurrentTransactionReadingFromReplica
+            );
+        this.queryCompiler =
+            CriteriaQueryCompiler
+                .<Incident, IncidentCriteria>builder(entityManager, Incident.class, "incident")
+                .leftJoin("incident.patients", "patient")
+                .rangeFilter(IncidentCriteria::getId, "incident.id")
+                .stringFilter(IncidentCriteria::getName, "incident.name")
+                .rangeFilter(IncidentCriteria::getStartDate, "incident.startDate")
+                .rangeFilter(IncidentCriteria::getPatientId, "patient.id")
+                .build();
     }
 
     /**
@@ -41,8 +106,10 @@ public class IncidentQueryService extends QueryService<Incident> {
     @Transactional(readOnly = true)
     public List<Incident> findByCriteria(IncidentCriteria criteria) {
         log.debug("find by criteria : {}", criteria);
-        final Specification<Incident> specification = createSpecification(criteria);
-        return incidentRepository.findAll(specification);
+        return queryCompiler
+            .compile(criteria, Sort.unsorted())
+            .map(CompiledQuery::findAll)
+            .orElseGet(() -> incidentRepository.findAll(createSpecification(criteria)));
     }
 
     /**
@@ -54,20 +121,164 @@ public class IncidentQueryService extends QueryService<Incident> {
     @Transactional(readOnly = true)
     public Page<Incident> findByCriteria(IncidentCriteria criteria, Pageable page) {
         log.debug("find by criteria : {}, page: {}", criteria, page);
+        return queryCompiler
+            .compile(criteria, page.getSort())
+            .map(query -> query.findAll(page))
+            .orElseGet(() -> incidentRepository.findAll(createSpecification(criteria), page));
+    }
+
+    /**
+     * Return a {@link Slice} of {@link Incident} which matches the criteria from the database, without counting them.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The page, which should be returned.
+     * @return the matching entities.
+     */
+    @Transactional(readOnly = true)
+    public Slice<Incident> findSliceByCriteria(IncidentCriteria criteria, Pageable page) {
+        log.debug("find slice by criteria : {}, page: {}", criteria, page);
+        return queryCompiler
+            .compile(criteria, page.getSort())
+            .map(query -> query.findSlice(page))
+            .orElseGet(() -> incidentRepository.findSlice(createSpecification(criteria), page));
+    }
+
+    /**
+     * Return a {@link Page} of {@link Incident} which matches the criteria from the database, with an estimated total.
+     * The total is only counted when the page is not the last one, and shares the cache of {@link #countByCriteria}.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The page, which should be returned.
+     * @return the matching entities.
+     */
+    @Transactional(readOnly = true)
+    public Page<Incident> findByCriteriaWithEstimatedTotal(IncidentCriteria criteria, Pageable page) {
+        log.debug("find by criteria with estimated total : {}, page: {}", criteria, page);
+        Slice<Incident> slice = findSliceByCriteria(criteria, page);
+        long seen = page.isPaged() ? page.getOffset() + slice.getNumberOfElements() : slice.getNumberOfElements();
+        if (!slice.hasNext()) {
+            return new PageImpl<>(slice.getContent(), page, seen);
+        }
+        long estimate = countByCriteria(criteria);
+        return new PageImpl<>(slice.getContent(), page, Math.max(estimate, seen + 1));
+    }
+
+    /**
+     * Return a {@link Page} of the requested fields of the {@link Incident} which matches the criteria from the database.
+     * Only the requested columns are selected.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param fieldset The fields and associations to return, see {@link #createFieldset(String, List)}.
+     * @param page The page, which should be returned.
+     * @return the matching rows.
+     */
+    @Transactional(readOnly = true)
+    public Page<Map<String, Object>> findByCriteria(IncidentCriteria criteria, SparseFieldset fieldset, Pageable page) {
+        log.debug("find by criteria : {}, fieldset: {}, page: {}", criteria, fieldset, page);
+        Slice<Map<String, Object>> slice = incidentRepository.findSlice(createSpecification(criteria), fieldset.getPaths(), page);
+        return PageableExecutionUtils.getPage(slice.getContent(), page, () -> count(criteria));
+    }
+
+    /**
+     * Return a {@link Page} of the requested fields of the {@link Incident} which matches the criteria from the database,
+     * with an estimated total, as {@link #findByCriteriaWithEstimatedTotal(IncidentCriteria, Pageable)}.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param fieldset The fields and associations to return, see {@link #createFieldset(String, List)}.
+     * @param page The page, which should be returned.
+     * @return the matching rows.
+     */
+    @Transactional(readOnly = true)
+    public Page<Map<String, Object>> findByCriteriaWithEstimatedTotal(IncidentCriteria criteria, SparseFieldset fieldset, Pageable page) {
+        log.debug("find by criteria with estimated total : {}, fieldset: {}, page: {}", criteria, fieldset, page);
+        Slice<Map<String, Object>> slice = findSliceByCriteria(criteria, fieldset, page);
+        long seen = page.isPaged() ? page.getOffset() + slice.getNumberOfElements() : slice.getNumberOfElements();
+        if (!slice.hasNext()) {
+            return new PageImpl<>(slice.getContent(), page, seen);
+        }
+        long estimate = countByCriteria(criteria);
+        return new PageImpl<>(slice.getContent(), page, Math.max(estimate, seen + 1));
+    }
+
+    /**
+     * Return a {@link Slice} of the requested fields of the {@link Incident} which matches the criteria from the database,
+     * without counting them.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param fieldset The fields and associations to return, see {@link #createFieldset(String, List)}.
+     * @param page The page, which should be returned.
+     * @return the matching rows.
+     */
+    @Transactional(readOnly = true)
+    public Slice<Map<String, Object>> findSliceByCriteria(IncidentCriteria criteria, SparseFieldset fieldset, Pageable page) {
+        log.debug("find slice by criteria : {}, fieldset: {}, page: {}", criteria, fieldset, page);
         final Specification<Incident> specification = createSpecification(criteria);
-        return incidentRepository.findAll(specification, page);
+        return incidentRepository.findSlice(specification, fieldset.getPaths(), page);
+    }
+
+    /**
+     * Build the sparse fieldset of an incident list request.
+     * @param fields The comma separated fields, among {@code name} and {@code startDate}.
+     * @param expand The associations to return, only {@code triageSummary} is supported.
+     * @return the fieldset.
+     * @throws IllegalArgumentException if a field or an association is not supported.
+     */
+    public SparseFieldset createFieldset(String fields, List<String> expand) {
+        return SparseFieldset.of(fields, expand, SPARSE_FIELDS, SPARSE_EXPANSIONS);
+    }
+
+    /**
+     * Return a {@link KeysetPage} of {@link Incident} which matches the criteria from the database.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param after The cursor returned with the previous page, blank for the first page.
+     * @param page The size and, for the first page, the sort of the page.
+     * @return the matching entities.
+     * @throws IllegalArgumentException if the cursor or the sort is not valid.
+     */
+    @Transactional(readOnly = true)
+    public KeysetPage<Incident> findByCriteria(IncidentCriteria criteria, String after, Pageable page) {
+        log.debug("find by criteria : {}, after: {}, page: {}", criteria, after, page);
+        final KeysetCursor cursor = KeysetCursor.of(after, page.getSort(), KEYSET_SORT_PROPERTIES);
+        final Specification<Incident> specification = createSpecification(criteria).and(KeysetSpecification.after(cursor));
+        return KeysetPage.of(incidentRepository.findSlice(specification, PageRequest.of(0, page.getPageSize(), cursor.toSort())), cursor);
     }
 
     /**
      * Return the number of matching entities in the database.
+     * The count is cached until a write which can change it, see {@link #evictCounts(Collection)}.
      * @param criteria The object which holds all the filters, which the entities should match.
      * @return the number of matching entities.
      */
     @Transactional(readOnly = true)
     public long countByCriteria(IncidentCriteria criteria) {
         log.debug("count by criteria : {}", criteria);
-        final Specification<Incident> specification = createSpecification(criteria);
-        return incidentRepository.count(specification);
+        final IncidentCriteria key = criteria == null ? new IncidentCriteria() : criteria.canonical();
+        return countCache.get(key, () -> count(key));
+    }
+
+    private long count(IncidentCriteria criteria) {
+        return queryCompiler
+            .compile(criteria, Sort.unsorted())
+            .map(CompiledQuery::count)
+            .orElseGet(() -> incidentRepository.count(createSpecification(criteria)));
+    }
+
+    /**
+     * Evict the cached counts which can be changed by the write of incidents, once the transaction is committed.
+     * @param incidentIds The ids of the written incidents.
+     */
+    public void evictCounts(Collection<Long> incidentIds) {
+        countCache.evict(criteria -> CountCache.mayMatch(criteria.getId(), incidentIds));
+    }
+
+    /**
+     * Evict the cached counts which can be changed by the write of patients, once the transaction is committed.
+     * @param incidentIds The incidents of the written patients, before and after the write, {@code null} for none.
+     */
+    public void evictPatientCounts(Collection<Long> incidentIds) {
+        countCache.evict(criteria -> criteria.getPatientId() != null && CountCache.mayMatch(criteria.getId(), incidentIds));
+    }
+
+    /**
+     * Evict all the cached counts immediately, for example after writes which did not go through the services.
+     */
+    public void evictAllCounts() {
+        countCache.clear();
     }
 
     /**
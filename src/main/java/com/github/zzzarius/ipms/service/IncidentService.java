@@ -1,14 +1,26 @@
 package com.github.zzzarius.ipms.service;
 
+import com.github.zzzarius.ipms.config.ApplicationProperties;
 import com.github.zzzarius.ipms.domain.Incident;
 import com.github.zzzarius.ipms.repository.IncidentRepository;
+import com.github.zzzarius.ipms.repository.PatientRepository;
+import com.github.zzzarius.ipms.repository.PatientTombstoneRepository;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * Service Implementation for managing {@link Incident}.
@@ -17,30 +29,122 @@ import org.springframework.transaction.annotation.Transactional;
 @Transactional
 public class IncidentService {
 
+    /**
+     * What to do with the patients of a deleted incident.
+     */
+    public enum PatientDeletion {
+        /**
+         * Keep the patients, without incident.
+         */
+        DETACH,
+        /**
+         * Delete the patients.
+         */
+        DELETE,
+    }
+
     private final Logger log = LoggerFactory.getLogger(IncidentService.class);
 
     private final IncidentRepository incidentRepository;
 
-    public IncidentService(IncidentRepository incidentRepository) {
+    private final IncidentTriageCounterService incidentTriageCounterService;
+
+    private final IncidentQueryService incidentQueryService;
+
+    private final PatientQueryService patientQueryService;
+
+    private final PatientRepository patientRepository;
+
+    private final PatientEventService patientEventService;
+
+    private final ChangeSequenceService changeSequenceService;
+
+    private final PatientTombstoneRepository patientTombstoneRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int chunkSize;
+
+    public IncidentService(
+        IncidentRepository incidentRepository,
+        IncidentTriageCounterService incidentTriageCounterService,
+        IncidentQueryService incidentQueryService,
+        PatientQueryService patientQueryService,
+        PatientRepository patientRepository,
+        PatientEventService patientEventService,
+        ChangeSequenceService changeSequenceService,
+        PatientTombstoneRepository patientTombstoneRepository,
+        PlatformTransactionManager transactionManager,
+        ApplicationProperties applicationProperties
+    ) {
         this.incidentRepository = incidentRepository;
+        this.incidentTriageCounterService = incidentTriageCounterService;
+        this.incidentQueryService = incidentQueryService;
+        this.patientQueryService = patientQueryService;
+        this.patientRepository = patientRepository;
+        this.patientEventService = patientEventService;
+        this.changeSequenceService = changeSequenceService;
+        this.patientTombstoneRepository = patientTombstoneRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = applicationProperties.getIncidentDeletion().getChunkSize();
     }
 
     /**
      * Save a incident.
      *
-     * @param incident the entity to save.
+     * @param incident the entity to save, with the version it was read at, or without version to overwrite any version.
      * @return the persisted entity.
+     * @throws ObjectOptimisticLockingFailureException if the incident has another version.
      */
     public Incident save(Incident incident) {
         log.debug("Request to save Incident : {}", incident);
-        return incidentRepository.save(incident);
+        boolean isNew = incident.getId() == null;
+        if (!isNew && incident.getVersion() == null) {
+            // The merge below reuses the entity loaded here, so reading the current version costs no extra query
+            incidentRepository.findById(incident.getId()).ifPresent(existingIncident -> incident.setVersion(existingIncident.getVersion()));
+        }
+        Incident result = incidentRepository.save(incident);
+        if (isNew) {
+            incidentTriageCounterService.createCounters(result.getId());
+        }
+        evictCounts(result.getId());
+        return result;
     }
 
     /**
-     * Partially update a incident.
+     * Update a incident, writing only its changed columns.
+     * <p>
+     * The incident is read once, through the second-level cache when it is warm, which tells whether it exists. A bulk
+     * {@code UPDATE} statement would skip the read, but evict the whole second-level cache region of the incidents. The
+     * versioned {@code UPDATE} of its changed columns matches no row if the incident was changed or deleted since it was
+     * read, which fails with an optimistic locking failure.
      *
-     * @param incident the entity to update partially.
-     * @return the persisted entity.
+     * @param incident the entity to update, with the version it was read at, or without version to overwrite any version.
+     * @return the persisted entity, empty if the incident does not exist.
+     * @throws ObjectOptimisticLockingFailureException if the incident has another version.
+     */
+    public Optional<Incident> update(Incident incident) {
+        log.debug("Request to update Incident : {}", incident);
+        return incidentRepository
+            .findById(incident.getId())
+            .map(
+                existingIncident -> {
+                    checkVersion(incident, existingIncident);
+                    existingIncident.setName(incident.getName());
+                    existingIncident.setStartDate(incident.getStartDate());
+                    evictCounts(existingIncident.getId());
+                    return existingIncident;
+                }
+            );
+    }
+
+    /**
+     * Partially update a incident, writing only its changed columns.
+     *
+     * @param incident the entity to update partially, with the version it was read at, or without version to update any
+     * version.
+     * @return the persisted entity, empty if the incident does not exist.
+     * @throws ObjectOptimisticLockingFailureException if the incident has another version.
      */
     public Optional<Incident> partialUpdate(Incident incident) {
         log.debug("Request to partially update Incident : {}", incident);
@@ -49,12 +153,14 @@ public class IncidentService {
             .findById(incident.getId())
             .map(
                 existingIncident -> {
+                    checkVersion(incident, existingIncident);
                     if (incident.getName() != null) {
                         existingIncident.setName(incident.getName());
                     }
                     if (incident.getStartDate() != null) {
                         existingIncident.setStartDate(incident.getStartDate());
                     }
+                    evictCounts(existingIncident.getId());
 
                     return existingIncident;
                 }
@@ -94,5 +200,76 @@ public class IncidentService {
     public void delete(Long id) {
         log.debug("Request to delete Incident : {}", id);
         incidentRepository.deleteById(id);
+        incidentTriageCounterService.deleteCounters(id);
+        evictCounts(id);
+    }
+
+    /**
+     * Delete the incident by id, after having deleted or detached its patients.
+     * <p>
+     * The patients are deleted or detached by chunks, with one set-based statement per chunk, each in its own
+     * transaction so that the patient rows are only locked for a short time. The last transaction locks the incident,
+     * so that no patient can be added to it anymore, handles all the patients added meanwhile, and deletes the incident.
+     * Hibernate evicts the patient cache regions once per chunk. When called inside a transaction, the chunks join it.
+     *
+     * @param id the id of the entity.
+     * @param patientDeletion what to do with the patients of the incident.
+     * @return the number of deleted or detached patients.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public long delete(Long id, PatientDeletion patientDeletion) {
+        log.debug("Request to delete Incident : {}, and {} its patients", id, patientDeletion);
+        long patients = 0;
+        int removed;
+        do {
+            removed = Objects.requireNonNull(transactionTemplate.execute(status -> removePatients(id, patientDeletion)));
+            patients += removed;
+        } while (removed == chunkSize);
+        patients +=
+            Objects.requireNonNull(
+                transactionTemplate.execute(
+                    status -> {
+                        // Waits for the patients being added, and blocks the next ones until the incident is deleted
+                        incidentRepository.findByIdForUpdate(id);
+                        long added = 0;
+                        int addedChunk;
+                        do {
+                            addedChunk = removePatients(id, patientDeletion);
+                            added += addedChunk;
+                        } while (addedChunk == chunkSize);
+                        delete(id);
+                        patientQueryService.evictCounts(Arrays.asList(id, null));
+                        incidentQueryService.evictPatientCounts(List.of(id));
+                        patientEventService.publishReload(List.of(id));
+                        return added;
+                    }
+                )
+            );
+        log.debug("Deleted Incident {}, and {} {} patients", id, patientDeletion, patients);
+        return patients;
+    }
+
+    private int removePatients(Long incidentId, PatientDeletion patientDeletion) {
+        List<Long> ids = patientRepository.findIdsByIncidentId(incidentId, PageRequest.of(0, chunkSize));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        long changeSeq = changeSequenceService.current();
+        if (patientDeletion == PatientDeletion.DETACH) {
+            return patientRepository.detachByIdInAndIncidentId(ids, incidentId, changeSeq);
+        }
+        patientTombstoneRepository.insertByIdInAndIncidentId(ids, incidentId, changeSeq, Instant.now());
+        return patientRepository.deleteByIdInAndIncidentId(ids, incidentId);
+    }
+
+    private static void checkVersion(Incident incident, Incident existingIncident) {
+        if (incident.getVersion() != null && !incident.getVersion().equals(existingIncident.getVersion())) {
+            throw new ObjectOptimisticLockingFailureException(Incident.class, incident.getId());
+        }
+    }
+
+    private void evictCounts(Long id) {
+        incidentQueryService.evictCounts(List.of(id));
+        patientQueryService.evictIncidentCounts(id);
     }
 }
@@ -0,0 +1,289 @@
+package com.github.zzzarius.ipms.service;
+
+import com.github.zzzarius.ipms.config.ApplicationProperties;
+import com.github.zzzarius.ipms.domain.IncidentTriageCounter;
+import com.github.zzzarius.ipms.domain.Patient;
+import com.github.zzzarius.ipms.domain.TriageSummary;
+import com.github.zzzarius.ipms.domain.enumeration.Category;
+import com.github.zzzarius.ipms.repository.IncidentRepository;
+import com.github.zzzarius.ipms.repository.IncidentTriageCounterRepository;
+import com.github.zzzarius.ipms.repository.PatientRepository;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Service maintaining the per-incident patient counters by triage category, see {@link IncidentTriageCounter}.
+ */
+@Service
+@Transactional
+public class IncidentTriageCounterService {
+
+    private final Logger log = LoggerFactory.getLogger(IncidentTriageCounterService.class);
+
+    private final IncidentTriageCounterRepository incidentTriageCounterRepository;
+
+    private final IncidentRepository incidentRepository;
+
+    private final PatientRepository patientRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int stripes;
+
+    public IncidentTriageCounterService(
+        IncidentTriageCounterRepository incidentTriageCounterRepository,
+        IncidentRepository incidentRepository,
+        PatientRepository patientRepository,
+        PlatformTransactionManager transactionManager,
+        ApplicationProperties applicationProperties
+    ) {
+        this.incidentTriageCounterRepository = incidentTriageCounterRepository;
+        this.incidentRepository = incidentRepository;
+        this.patientRepository = patientRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.stripes = applicationProperties.getTriageSummary().getStripes();
+    }
+
+    /**
+     * Record the move of a patient from one incident and triage category to another, in the current transaction.
+     *
+     * @param oldIncidentId the incident of the patient before the change, {@code null} for a new patient.
+     * @param oldCategory the triage category of the patient before the change.
+     * @param newIncidentId the incident of the patient after the change, {@code null} for a deleted patient.
+     * @param newCategory the triage category of the patient after the change.
+     */
+    public void recordChange(Long oldIncidentId, Category oldCategory, Long newIncidentId, Category newCategory) {
+        if (Objects.equals(oldIncidentId, newIncidentId) && oldCategory == newCategory) {
+            return;
+        }
+        if (Objects.equals(oldIncidentId, newIncidentId)) {
+            if (newIncidentId != null) {
+                increment(newIncidentId, oldCategory, -1, newCategory, 1);
+            }
+            return;
+        }
+        if (oldIncidentId != null) {
+            increment(oldIncidentId, oldCategory, -1, null, 0);
+        }
+        if (newIncidentId != null) {
+            increment(newIncidentId, newCategory, 1, null, 0);
+        }
+    }
+
+    /**
+     * Record new patients, in the current transaction, with one counter update per incident.
+     *
+     * @param patients the new patients.
+     */
+    public void recordAdded(Collection<Patient> patients) {
+        Map<Long, Map<Category, Long>> deltasByIncident = new HashMap<>();
+        for (Patient patient : patients) {
+            if (patient.getIncident() != null) {
+                deltasByIncident
+                    .computeIfAbsent(patient.getIncident().getId(), incidentId -> new HashMap<>())
+                    .merge(patient.getTriageCategory(), 1L, Long::sum);
+            }
+        }
+        deltasByIncident.forEach(this::increment);
+    }
+
+    /**
+     * Record the changes of several patients, in the current transaction, with one counter update per incident.
+     *
+     * @param deltasByIncident the change of the number of patients of each incident, by triage category.
+     */
+    public void recordChanges(Map<Long, Map<Category, Long>> deltasByIncident) {
+        deltasByIncident.forEach(this::increment);
+    }
+
+    private void increment(Long incidentId, Category category, long delta, Category otherCategory, long otherDelta) {
+        Map<Category, Long> deltas = new HashMap<>();
+        deltas.merge(category, delta, Long::sum);
+        if (otherDelta != 0) {
+            deltas.merge(otherCategory, otherDelta, Long::sum);
+        }
+        increment(incidentId, deltas);
+    }
+
+    private void increment(Long incidentId, Map<Category, Long> deltas) {
+        int stripe = ThreadLocalRandom.current().nextInt(stripes);
+        if (incrementStripe(incidentId, stripe, deltas) > 0) {
+            return;
+        }
+        // The migrated incidents only have their first stripe, until their next reconciliation
+        if (stripe != 0 && incrementStripe(incidentId, 0, deltas) > 0) {
+            return;
+        }
+        log.debug("Creating the missing triage counters of Incident : {}", incidentId);
+        createCounters(incidentId);
+        incrementStripe(incidentId, 0, deltas);
+    }
+
+    private int incrementStripe(Long incidentId, int stripe, Map<Category, Long> deltas) {
+        return incidentTriageCounterRepository.increment(
+            incidentId,
+            stripe,
+            deltas.getOrDefault(Category.BLACK, 0L),
+            deltas.getOrDefault(Category.RED, 0L),
+            deltas.getOrDefault(Category.YELLOW, 0L),
+            deltas.getOrDefault(Category.GREEN, 0L),
+            deltas.getOrDefault(null, 0L)
+        );
+    }
+
+    /**
+     * Create the missing counter stripes of an incident.
+     * <p>
+     * The incident row is locked first, as the counters can't be locked before they exist: the concurrent creations
+     * wait for each other, and the later ones find the stripes created by the first.
+     *
+     * @param incidentId the id of the incident.
+     */
+    public void createCounters(Long incidentId) {
+        incidentRepository.findByIdForUpdate(incidentId);
+        List<IncidentTriageCounter> counters = incidentTriageCounterRepository.findAllByIncidentIdForUpdate(incidentId);
+        incidentTriageCounterRepository.saveAll(missingStripes(incidentId, counters));
+        incidentTriageCounterRepository.flush();
+    }
+
+    private List<IncidentTriageCounter> missingStripes(Long incidentId, List<IncidentTriageCounter> counters) {
+        Set<Integer> existing = counters.stream().map(IncidentTriageCounter::getStripe).collect(Collectors.toSet());
+        return IntStream
+            .range(0, stripes)
+            .filter(stripe -> !existing.contains(stripe))
+            .mapToObj(stripe -> new IncidentTriageCounter(incidentId, stripe))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Delete the counters of an incident.
+     *
+     * @param incidentId the id of the incident.
+     */
+    public void deleteCounters(Long incidentId) {
+        incidentTriageCounterRepository.deleteAllByIncidentId(incidentId);
+    }
+
+    /**
+     * Get the triage summary of an incident.
+     *
+     * @param incidentId the id of the incident.
+     * @return the summary, empty if the incident has no counters yet.
+     */
+    @Transactional(readOnly = true)
+    public TriageSummary getSummary(Long incidentId) {
+        return incidentTriageCounterRepository.findSummaryByIncidentId(incidentId).orElseGet(() -> TriageSummary.empty(incidentId));
+    }
+
+    /**
+     * Get the triage summaries of several incidents at once.
+     *
+     * @param incidentIds the ids of the incidents.
+     * @return the summaries by incident id.
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, TriageSummary> getSummaries(Collection<Long> incidentIds) {
+        if (incidentIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, TriageSummary> summaries = incidentTriageCounterRepository
+            .findSummariesByIncidentIdIn(incidentIds)
+            .stream()
+            .collect(Collectors.toMap(TriageSummary::getIncidentId, Function.identity()));
+        incidentIds.forEach(incidentId -> summaries.computeIfAbsent(incidentId, TriageSummary::empty));
+        return summaries;
+    }
+
+    /**
+     * Repair the counters which drifted from the patient table, one incident per transaction.
+     * <p>
+     * This is scheduled to get fired every 10 minutes by default.
+     *
+     * @return the number of repaired incidents.
+     */
+    @Scheduled(cron = "${application.triage-summary.reconcile-cron:0 */10 * * * *}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int reconcile() {
+        int repaired = 0;
+        for (Long incidentId : incidentRepository.findAllIds()) {
+            if (Boolean.TRUE.equals(transactionTemplate.execute(status -> reconcile(incidentId)))) {
+                repaired++;
+            }
+        }
+        if (repaired > 0) {
+            log.warn("Repaired the triage counters of {} incidents", repaired);
+        }
+        return repaired;
+    }
+
+    private boolean reconcile(Long incidentId) {
+        // Lock the incident and its counters first, so that concurrent patient changes are either counted below or applied
+        // after the repair, and the missing stripes are not created concurrently
+        incidentRepository.findByIdForUpdate(incidentId);
+        List<IncidentTriageCounter> counters = incidentTriageCounterRepository.findAllByIncidentIdForUpdate(incidentId);
+        Map<Category, Long> actual = new EnumMap<>(Category.class);
+        long untriaged = 0;
+        for (Object[] row : patientRepository.countByTriageCategoryForIncident(incidentId)) {
+            if (row[0] == null) {
+                untriaged = (Long) row[1];
+            } else {
+                actual.put((Category) row[0], (Long) row[1]);
+            }
+        }
+        TriageSummary expected = new TriageSummary(
+            incidentId,
+            actual.get(Category.BLACK),
+            actual.get(Category.RED),
+            actual.get(Category.YELLOW),
+            actual.get(Category.GREEN),
+            untriaged
+        );
+        TriageSummary current = sum(incidentId, counters);
+        List<IncidentTriageCounter> missing = missingStripes(incidentId, counters);
+        if (expected.equals(current) && missing.isEmpty()) {
+            return false;
+        }
+        if (!expected.equals(current)) {
+            log.debug("Triage counters of Incident {} drifted, expected: {}, current: {}", incidentId, expected, current);
+        }
+        counters.addAll(missing);
+        for (IncidentTriageCounter counter : counters) {
+            boolean first = counter.getStripe() == 0;
+            counter.setBlackCount(first ? expected.getBlack() : 0);
+            counter.setRedCount(first ? expected.getRed() : 0);
+            counter.setYellowCount(first ? expected.getYellow() : 0);
+            counter.setGreenCount(first ? expected.getGreen() : 0);
+            counter.setUntriagedCount(first ? expected.getUntriaged() : 0);
+        }
+        incidentTriageCounterRepository.saveAll(counters);
+        return !expected.equals(current);
+    }
+
+    private static TriageSummary sum(Long incidentId, List<IncidentTriageCounter> counters) {
+        return new TriageSummary(
+            incidentId,
+            counters.stream().mapToLong(IncidentTriageCounter::getBlackCount).sum(),
+            counters.stream().mapToLong(IncidentTriageCounter::getRedCount).sum(),
+            counters.stream().mapToLong(IncidentTriageCounter::getYellowCount).sum(),
+            counters.stream().mapToLong(IncidentTriageCounter::getGreenCount).sum(),
+            counters.stream().mapToLong(IncidentTriageCounter::getUntriagedCount).sum()
+        );
+    }
+}
@@ -0,0 +1,259 @@
+package com.github.zzzarius.ipms.service;
+
+import com.github.zzzarius.ipms.config.ApplicationProperties;
+import com.github.zzzarius.ipms.domain.Incident;
+import com.github.zzzarius.ipms.domain.Incident_;
+import com.github.zzzarius.ipms.domain.Patient;
+import com.github.zzzarius.ipms.domain.Patient_;
+import com.github.zzzarius.ipms.domain.enumeration.Category;
+import com.github.zzzarius.ipms.repository.IncidentRepository;
+import com.github.zzzarius.ipms.repository.PatientRepository;
+import com.github.zzzarius.ipms.service.criteria.PatientCriteria;
+import com.github.zzzarius.ipms.service.dto.PatientBulkUpdateDTO;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Service for changing the triage category or the incident of all the {@link Patient} entities matching a
+ * {@link PatientCriteria}, for example to merge two incidents.
+ * <p>
+ * The matching ids are read in chunks ordered by id, and each chunk is read and updated in its own read-write
+ * transaction, so from the primary database even when the replicas are enabled, by one set-based {@code UPDATE} per
+ * previous incident and triage category of its patients. These statements also check that the
+ * patients were not changed since they were read, so that the triage counters are moved by the updated rows only.
+ * Hibernate evicts the {@link Patient} and {@code Incident.patients} cache regions after each of them.
+ */
+@Service
+public class PatientBulkUpdateService {
+
+    private final Logger log = LoggerFactory.getLogger(PatientBulkUpdateService.class);
+
+    private static final List<String> CHUNK_PATHS = List.of("id", "triageCategory", "incident.id");
+
+    private final EntityManager entityManager;
+
+    private final PatientRepository patientRepository;
+
+    private final IncidentRepository incidentRepository;
+
+    private final PatientQueryService patientQueryService;
+
+    private final IncidentQueryService incidentQueryService;
+
+    private final IncidentTriageCounterService incidentTriageCounterService;
+
+    private final PatientEventService patientEventService;
+
+    private final ChangeSequenceService changeSequenceService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int chunkSize;
+
+    public PatientBulkUpdateService(
+        EntityManager entityManager,
+        PatientRepository patientRepository,
+        IncidentRepository incidentRepository,
+        PatientQueryService patientQueryService,
+        IncidentQueryService incidentQueryService,
+        IncidentTriageCounterService incidentTriageCounterService,
+        PatientEventService patientEventService,
+        ChangeSequenceService changeSequenceService,
+        PlatformTransactionManager transactionManager,
+        ApplicationProperties applicationProperties
+    ) {
+        this.entityManager = entityManager;
+        this.patientRepository = patientRepository;
+        this.incidentRepository = incidentRepository;
+        this.patientQueryService = patientQueryService;
+        this.incidentQueryService = incidentQueryService;
+        this.incidentTriageCounterService = incidentTriageCounterService;
+        this.patientEventService = patientEventService;
+        this.changeSequenceService = changeSequenceService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = applicationProperties.getBulkUpdate().getChunkSize();
+    }
+
+    /**
+     * Update all the patients matching the criteria.
+     * <p>
+     * The update is not atomic: the chunks which were committed stay updated if a later one fails.
+     *
+     * @param criteria the criteria of the patients to update.
+     * @param patientBulkUpdate the change to apply.
+     * @return the number of updated patients, without the ones which already had the requested values.
+     * @throws IllegalArgumentException if the change is empty, or its incident does not exist.
+     */
+    public long update(PatientCriteria criteria, PatientBulkUpdateDTO patientBulkUpdate) {
+        log.debug("Request to update Patients by criteria : {}, {}", criteria, patientBulkUpdate);
+        if (patientBulkUpdate.getTriageCategory() == null && patientBulkUpdate.getIncidentId() == null) {
+            throw new IllegalArgumentException("Nothing to update");
+        }
+        Long incidentId = patientBulkUpdate.getIncidentId();
+        // Checked in a read-write transaction too, as a replica may not have the incident yet
+        if (incidentId != null && !Boolean.TRUE.equals(transactionTemplate.execute(status -> incidentRepository.existsById(incidentId)))) {
+            throw new IllegalArgumentException("Incident not found: " + incidentId);
+        }
+        Specification<Patient> specification = patientQueryService.createSpecification(criteria);
+        long updated = 0;
+        Long lastId = null;
+        while (true) {
+            Long after = lastId;
+            Chunk chunk = Objects.requireNonNull(
+                transactionTemplate.execute(status -> updateChunk(specification, after, patientBulkUpdate))
+            );
+            updated += chunk.updated;
+            if (!chunk.hasNext) {
+                log.debug("Updated {} Patients", updated);
+                return updated;
+            }
+            lastId = chunk.lastId;
+        }
+    }
+
+    private Chunk updateChunk(Specification<Patient> specification, Long after, PatientBulkUpdateDTO patientBulkUpdate) {
+        Slice<Map<String, Object>> rows = patientRepository.findSlice(
+            after == null ? specification : specification.and((root, query, cb) -> cb.greaterThan(root.get(Patient_.id), after)),
+            CHUNK_PATHS,
+            PageRequest.of(0, chunkSize, Sort.by(Patient_.ID))
+        );
+        if (!rows.hasContent()) {
+            return new Chunk(0, after, false);
+        }
+        long updated = updateRows(rows.getContent(), patientBulkUpdate);
+        return new Chunk(updated, (Long) rows.getContent().get(rows.getNumberOfElements() - 1).get("id"), rows.hasNext());
+    }
+
+    private long updateRows(List<Map<String, Object>> rows, PatientBulkUpdateDTO patientBulkUpdate) {
+        Map<PatientState, List<Long>> idsByState = new HashMap<>();
+        for (Map<String, Object> row : rows) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> incident = (Map<String, Object>) row.get("incident");
+            Long incidentId = incident == null ? null : (Long) incident.get("id");
+            PatientState state = new PatientState(incidentId, (Category) row.get("triageCategory"));
+            idsByState.computeIfAbsent(state, key -> new ArrayList<>()).add((Long) row.get("id"));
+        }
+        long updated = 0;
+        Map<Long, Map<Category, Long>> deltasByIncident = new HashMap<>();
+        Set<Long> incidentIds = new HashSet<>();
+        for (Map.Entry<PatientState, List<Long>> entry : idsByState.entrySet()) {
+            PatientState oldState = entry.getKey();
+            PatientState newState = new PatientState(
+                patientBulkUpdate.getIncidentId() != null ? patientBulkUpdate.getIncidentId() : oldState.incidentId,
+                patientBulkUpdate.getTriageCategory() != null ? patientBulkUpdate.getTriageCategory() : oldState.triageCategory
+            );
+            if (newState.equals(oldState)) {
+                continue;
+            }
+            int count = updateGroup(entry.getValue(), oldState, patientBulkUpdate);
+            updated += count;
+            addDelta(deltasByIncident, oldState, -count);
+            addDelta(deltasByIncident, newState, count);
+            incidentIds.add(oldState.incidentId);
+            incidentIds.add(newState.incidentId);
+        }
+        incidentTriageCounterService.recordChanges(deltasByIncident);
+        patientQueryService.evictCounts(incidentIds);
+        incidentQueryService.evictPatientCounts(incidentIds);
+        patientEventService.publishReload(incidentIds);
+        return updated;
+    }
+
+    private int updateGroup(List<Long> ids, PatientState oldState, PatientBulkUpdateDTO patientBulkUpdate) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Patient> update = cb.createCriteriaUpdate(Patient.class);
+        Root<Patient> root = update.from(Patient.class);
+        if (patientBulkUpdate.getTriageCategory() != null) {
+            update.set(root.get(Patient_.triageCategory), patientBulkUpdate.getTriageCategory());
+        }
+        if (patientBulkUpdate.getIncidentId() != null) {
+            update.set(root.get(Patient_.incident), entityManager.getReference(Incident.class, patientBulkUpdate.getIncidentId()));
+        }
+        update.set(root.get(Patient_.version), cb.sum(root.get(Patient_.version), 1L));
+        update.set(root.get(Patient_.changeSeq), changeSequenceService.current());
+        Path<Long> incidentId = root.get(Patient_.incident).get(Incident_.id);
+        Path<Category> triageCategory = root.get(Patient_.triageCategory);
+        Predicate unchanged = cb.and(
+            oldState.incidentId == null ? cb.isNull(incidentId) : cb.equal(incidentId, oldState.incidentId),
+            oldState.triageCategory == null ? cb.isNull(triageCategory) : cb.equal(triageCategory, oldState.triageCategory)
+        );
+        update.where(root.get(Patient_.id).in(ids), unchanged);
+        return entityManager.createQuery(update).executeUpdate();
+    }
+
+    private static void addDelta(Map<Long, Map<Category, Long>> deltasByIncident, PatientState state, long delta) {
+        if (state.incidentId != null && delta != 0) {
+            deltasByIncident.computeIfAbsent(state.incidentId, key -> new HashMap<>()).merge(state.triageCategory, delta, Long::sum);
+        }
+    }
+
+    /**
+     * The outcome of the update of a chunk.
+     */
+    private static final class Chunk {
+
+        private final long updated;
+
+        private final Long lastId;
+
+        private final boolean hasNext;
+
+        private Chunk(long updated, Long lastId, boolean hasNext) {
+            this.updated = updated;
+            this.lastId = lastId;
+            this.hasNext = hasNext;
+        }
+    }
+
+    /**
+     * The incident and triage category of a patient, which its counter depends on.
+     */
+    private static final class PatientState {
+
+        private final Long incidentId;
+
+        private final Category triageCategory;
+
+        private PatientState(Long incidentId, Category triageCategory) {
+            this.incidentId = incidentId;
+            this.triageCategory = triageCategory;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PatientState)) {
+                return false;
+            }
+            PatientState other = (PatientState) o;
+            return Objects.equals(incidentId, other.incidentId) && triageCategory == other.triageCategory;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(incidentId, triageCategory);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.github.zzzarius.ipms.service;
+
+import com.github.zzzarius.ipms.config.ApplicationProperties;
+import com.github.zzzarius.ipms.service.dto.PatientEventDTO;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Service publishing the committed patient changes, see {@link PatientEventDTO}, as server-sent events to the clients
+ * following an incident.
+ * <p>
+ * Each client has a bounded queue, drained by a bounded executor of its own, so that publishing never waits for a
+ * client and the slow clients can't hold the threads of the requests: a client whose queue is full, or which can't get
+ * a sender thread, is disconnected, and resumes from its last event when it reconnects. The last events are kept for
+ * that purpose, the clients which missed older ones receive a {@link PatientEventDTO.Type#RELOAD} event instead.
+ * <p>
+ * The events are those of this instance only.
+ */
+@Service
+public class PatientEventService {
+
+    private final Logger log = LoggerFactory.getLogger(PatientEventService.class);
+
+    private final Executor patientEventExecutor;
+
+    private final int historySize;
+
+    private final int subscriberQueueSize;
+
+    private final long timeoutMs;
+
+    /**
+     * Guards the event ids, the history and the subscribers, so that each client receives the events in order, once.
+     */
+    private final Object lock = new Object();
+
+    private long lastEventId;
+
+    private final Deque<PatientEventDTO> history = new ArrayDeque<>();
+
+    private final Map<Long, Set<Subscriber>> subscribersByIncident = new HashMap<>();
+
+    public PatientEventService(
+        @Qualifier("patientEventExecutor") Executor patientEventExecutor,
+        ApplicationProperties applicationProperties
+    ) {
+        this.patientEventExecutor = patientEventExecutor;
+        ApplicationProperties.PatientEvents patientEvents = applicationProperties.getPatientEvents();
+        this.historySize = patientEvents.getHistorySize();
+        this.subscriberQueueSize = patientEvents.getSubscriberQueueSize();
+        this.timeoutMs = patientEvents.getTimeoutMs();
+    }
+
+    /**
+     * Publish an event once the current transaction is committed, or now without transaction.
+     *
+     * @param event the event.
+     */
+    public void publish(PatientEventDTO event) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        publishNow(event);
+                    }
+                }
+            );
+        } else {
+            publishNow(event);
+        }
+    }
+
+    /**
+     * Tell the clients following the incidents to reload their patients, once the current transaction is committed.
+     *
+     * @param incidentIds the ids of the incidents whose patients changed in bulk, {@code null} ones are ignored.
+     */
+    public void publishReload(Collection<Long> incidentIds) {
+        new LinkedHashSet<>(incidentIds).stream().filter(Objects::nonNull).map(PatientEventDTO::reload).forEach(this::publish);
+    }
+
+    private void publishNow(PatientEventDTO event) {
+        synchronized (lock) {
+            event.setId(++lastEventId);
+            history.addLast(event);
+            if (history.size() > historySize) {
+                history.removeFirst();
+            }
+            for (Long incidentId : incidentIds(event)) {
+                // A copy, as a slow subscriber is removed while iterating
+                List.copyOf(subscribersByIncident.getOrDefault(incidentId, Set.of())).forEach(subscriber -> subscriber.offer(event));
+            }
+        }
+    }
+
+    /**
+     * Follow the patient changes of an incident.
+     *
+     * @param incidentId the id of the incident.
+     * @param lastEventId the id of the last event received before a reconnection, {@code null} for a new client.
+     * @return the emitter of the events.
+     */
+    public SseEmitter subscribe(Long incidentId, Long lastEventId) {
+        log.debug("Request to follow the Patients of Incident : {}, after event: {}", incidentId, lastEventId);
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(incidentId, emitter);
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(e -> unsubscribe(subscriber));
+        synchronized (lock) {
+            if (lastEventId != null) {
+                long oldestEventId = history.isEmpty() ? this.lastEventId + 1 : history.getFirst().getId();
+                if (lastEventId > this.lastEventId || lastEventId < oldestEventId - 1) {
+                    // Missed events, or events of a previous run of this instance
+                    PatientEventDTO reload = PatientEventDTO.reload(incidentId);
+                    reload.setId(this.lastEventId);
+                    subscriber.offer(reload);
+                } else {
+                    history
+                        .stream()
+                        .filter(event -> event.getId() > lastEventId && incidentIds(event).contains(incidentId))
+                        .forEach(subscriber::offer);
+                }
+            }
+            subscribersByIncident.computeIfAbsent(incidentId, id -> new LinkedHashSet<>()).add(subscriber);
+        }
+        return emitter;
+    }
+
+    /**
+     * Send a comment to all the clients, which detects the closed connections.
+     */
+    @Scheduled(fixedDelayString = "${application.patient-events.heartbeat-ms:30000}")
+    public void heartbeat() {
+        synchronized (lock) {
+            subscribersByIncident.values().stream().flatMap(Set::stream).collect(Collectors.toList()).forEach(Subscriber::heartbeat);
+        }
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        synchronized (lock) {
+            Set<Subscriber> subscribers = subscribersByIncident.get(subscriber.incidentId);
+            if (subscribers != null && subscribers.remove(subscriber) && subscribers.isEmpty()) {
+                subscribersByIncident.remove(subscriber.incidentId);
+            }
+        }
+    }
+
+    private static List<Long> incidentIds(PatientEventDTO event) {
+        if (event.getPreviousIncidentId() == null || event.getPreviousIncidentId().equals(event.getIncidentId())) {
+            return event.getIncidentId() == null ? List.of() : List.of(event.getIncidentId());
+        }
+        if (event.getIncidentId() == null) {
+            return List.of(event.getPreviousIncidentId());
+        }
+        return List.of(event.getIncidentId(), event.getPreviousIncidentId());
+    }
+
+    /**
+     * A client, whose events are sent by one task at a time.
+     */
+    private final class Subscriber implements Runnable {
+
+        private final Long incidentId;
+
+        private final SseEmitter emitter;
+
+        private final BlockingQueue<SseEmitter.SseEventBuilder> queue = new ArrayBlockingQueue<>(subscriberQueueSize);
+
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        private volatile boolean closed;
+
+        private Subscriber(Long incidentId, SseEmitter emitter) {
+            this.incidentId = incidentId;
+            this.emitter = emitter;
+        }
+
+        private void offer(PatientEventDTO event) {
+            send(SseEmitter.event().id(String.valueOf(event.getId())).data(event, MediaType.APPLICATION_JSON));
+        }
+
+        private void heartbeat() {
+            send(SseEmitter.event().comment("heartbeat"));
+        }
+
+        private void send(SseEmitter.SseEventBuilder event) {
+            if (closed) {
+                return;
+            }
+            if (!queue.offer(event)) {
+                log.debug("Disconnecting a slow follower of Incident {}", incidentId);
+                close();
+                return;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (sending.compareAndSet(false, true)) {
+                try {
+                    patientEventExecutor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    sending.set(false);
+                    close();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                SseEmitter.SseEventBuilder event;
+                while (!closed && (event = queue.poll()) != null) {
+                    emitter.send(event);
+                }
+            } catch (IOException | IllegalStateException e) {
+                // The client is gone, the container completes the emitter
+                log.debug("Could not send the events of Incident {}: {}", incidentId, e.getMessage());
+                closed = true;
+                queue.clear();
+                unsubscribe(this);
+            } finally {
+                sending.set(false);
+            }
+            if (!closed && !queue.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void close() {
+            closed = true;
+            queue.clear();
+            unsubscribe(this);
+            emitter.complete();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.github.zzzarius.ipms.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.zzzarius.ipms.config.ApplicationProperties;
+import com.github.zzzarius.ipms.domain.Incident;
+import com.github.zzzarius.ipms.domain.Patient;
+import com.github.zzzarius.ipms.service.criteria.PatientCriteria;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Service for exporting {@link Patient} entities, row by row, with a constant memory footprint.
+ */
+@Service
+@Transactional(readOnly = true)
+public class PatientExportService {
+
+    /**
+     * The supported export formats.
+     */
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String contentType;
+
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private static final String CSV_HEADER = "id,firstName,lastName,triageCategory,incidentId,incidentName";
+
+    private final Logger log = LoggerFactory.getLogger(PatientExportService.class);
+
+    private final PatientQueryService patientQueryService;
+
+    private final EntityManager entityManager;
+
+    private final ObjectWriter objectWriter;
+
+    private final int fetchSize;
+
+    public PatientExportService(
+        PatientQueryService patientQueryService,
+        EntityManager entityManager,
+        ObjectMapper objectMapper,
+        ApplicationProperties applicationProperties
+    ) {
+        this.patientQueryService = patientQueryService;
+        this.entityManager = entityManager;
+        this.objectWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.fetchSize = applicationProperties.getExport().getFetchSize();
+    }
+
+    /**
+     * Write the patients matching the criteria to the output stream, one row at a time.
+     *
+     * @param criteria the criteria which the exported patients should match.
+     * @param format the export format.
+     * @param outputStream the stream to write to, not closed by this method.
+     * @return the number of exported patients.
+     * @throws IOException if the output stream can't be written.
+     */
+    public long export(PatientCriteria criteria, Format format, OutputStream outputStream) throws IOException {
+        log.debug("Request to export Patients as {} by criteria: {}", format, criteria);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        long count = 0;
+        if (format == Format.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+        try (Stream<Patient> patients = patientQueryService.streamByCriteria(criteria, fetchSize)) {
+            Iterator<Patient> iterator = patients.iterator();
+            while (iterator.hasNext()) {
+                Patient patient = iterator.next();
+                if (format == Format.CSV) {
+                    writeCsvRow(writer, patient);
+                } else {
+                    writer.write(objectWriter.writeValueAsString(patient));
+                }
+                writer.write('\n');
+                // Keep the persistence context from growing with the exported rows
+                entityManager.detach(patient);
+                count++;
+            }
+        }
+        writer.flush();
+        log.debug("Exported {} Patients", count);
+        return count;
+    }
+
+    private static void writeCsvRow(Writer writer, Patient patient) throws IOException {
+        Incident incident = patient.getIncident();
+        writer.write(String.valueOf(patient.getId()));
+        writer.write(',');
+        writer.write(escapeCsv(patient.getFirstName()));
+        writer.write(',');
+        writer.write(escapeCsv(patient.getLastName()));
+        writer.write(',');
+        writer.write(patient.getTriageCategory() == null ? "" : patient.getTriageCategory().name());
+        writer.write(',');
+        writer.write(incident == null ? "" : String.valueOf(incident.getId()));
+        writer.write(',');
+        writer.write(incident == null ? "" : escapeCsv(incident.getName()));
+    }
+
+    private static String escapeCsv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,300 @@
+package com.github.zzzarius.ipms.service;
+
+import com.github.zzzarius.ipms.config.ApplicationProperties;
+import com.github.zzzarius.ipms.config.ReplicaRoutingDataSource;
+import com.github.zzzarius.ipms.domain.Patient;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Service creating the concurrent single {@link Patient} registrations in shared transactions, so that a surge of
+ * registrations waits for one commit per batch rather than one per patient.
+ * <p>
+ * The registrations are queued, and a writer thread saves the ones arriving within the configured window in one
+ * transaction. If that transaction fails, its registrations are saved again one per transaction, so that each caller
+ * gets its own result or error, unless the database is unavailable: they then all fail with its error, which their
+ * callers can journal, see {@link PatientJournalService#isDatabaseUnavailable(RuntimeException)}.
+ * <p>
+ * The writes are committed by the writer thread, so they are recorded for their callers when the read replicas are
+ * enabled, which then read them from the primary.
+ * <p>
+ * A caller waits for its registration up to the configured timeout. Once the service is stopped, the pending
+ * registrations are failed, and their callers, like the new ones, save their patient directly.
+ */
+@Service
+public class PatientGroupCommitService {
+
+    private final Logger log = LoggerFactory.getLogger(PatientGroupCommitService.class);
+
+    private final PatientService patientService;
+
+    private final ReplicaRoutingDataSource replicaRoutingDataSource;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final DistributionSummary batchSizes;
+
+    private final boolean enabled;
+
+    private final long windowNanos;
+
+    private final int maxBatchSize;
+
+    private final long timeoutNanos;
+
+    private final BlockingQueue<Registration> queue = new LinkedBlockingQueue<>();
+
+    private Thread writer;
+
+    private volatile boolean stopped;
+
+    public PatientGroupCommitService(
+        PatientService patientService,
+        ObjectProvider<ReplicaRoutingDataSource> replicaRoutingDataSource,
+        PlatformTransactionManager transactionManager,
+        MeterRegistry meterRegistry,
+        ApplicationProperties applicationProperties
+    ) {
+        this.patientService = patientService;
+        this.replicaRoutingDataSource = replicaRoutingDataSource.getIfAvailable();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSizes =
+            DistributionSummary
+                .builder("ipms.patient.group.commit.batch.size")
+                .description("Patients registered per group commit")
+                .register(meterRegistry);
+        ApplicationProperties.GroupCommit groupCommit = applicationProperties.getGroupCommit();
+        this.enabled = groupCommit.isEnabled();
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(groupCommit.getWindowMs());
+        this.maxBatchSize = groupCommit.getMaxBatchSize();
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(groupCommit.getTimeoutMs());
+    }
+
+    /**
+     * @return whether the single registrations should be saved by {@link #save(Patient)}.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Save a new patient in the next group commit, and wait for it.
+     *
+     * @param patient the entity to save.
+     * @return the persisted entity.
+     * @throws QueryTimeoutException if the patient waited for the group commit longer than the timeout, and was not
+     * saved.
+     * @throws IllegalStateException if the group commit of the patient did not end within the timeout, it may still
+     * be saved.
+     */
+    public Patient save(Patient patient) {
+        log.debug("Request to save Patient in a group commit : {}", patient);
+        if (stopped) {
+            return patientService.save(patient);
+        }
+        String client = replicaRoutingDataSource == null ? null : replicaRoutingDataSource.currentClient().orElse(null);
+        Registration registration = new Registration(patient, client);
+        startWriter();
+        queue.add(registration);
+        if (stopped && queue.remove(registration)) {
+            // Stopped meanwhile, the pending registrations may already have been failed
+            return patientService.save(patient);
+        }
+        try {
+            return registration.result.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof StoppedException) {
+                registration.reset();
+                return patientService.save(patient);
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Could not save the patient", e.getCause());
+        } catch (TimeoutException e) {
+            if (queue.remove(registration)) {
+                throw new QueryTimeoutException("Timed out waiting for a group commit", e);
+            }
+            throw new IllegalStateException("The group commit of the patient did not end in time, it may still be saved", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queue.remove(registration);
+            throw new IllegalStateException("Interrupted while saving the patient", e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+        synchronized (this) {
+            if (writer != null) {
+                writer.interrupt();
+            }
+        }
+        failPending();
+    }
+
+    private synchronized void startWriter() {
+        if (writer == null && !stopped) {
+            writer = new Thread(this::write, "ipms-group-commit");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    private void write() {
+        List<Registration> batch = new ArrayList<>(maxBatchSize);
+        while (!stopped) {
+            try {
+                Registration first = queue.take();
+                batch.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    Registration next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                // Stopped before committing the batch
+                batch.forEach(registration -> registration.result.completeExceptionally(new StoppedException()));
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                // Not expected, commit completes the registrations with their errors, but the writer must keep going
+                log.error("Group commit failed", e);
+                batch.forEach(registration -> registration.result.completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+        failPending();
+    }
+
+    /**
+     * Fail the queued registrations, which were not committed, so that their callers save them directly.
+     */
+    private void failPending() {
+        Registration registration;
+        while ((registration = queue.poll()) != null) {
+            registration.result.completeExceptionally(new StoppedException());
+        }
+    }
+
+    private void commit(List<Registration> batch) {
+        batchSizes.record(batch.size());
+        try {
+            List<Patient> results = transactionTemplate.execute(
+                status -> {
+                    List<Patient> saved = new ArrayList<>(batch.size());
+                    batch.forEach(registration -> saved.add(patientService.save(registration.patient)));
+                    return saved;
+                }
+            );
+            for (int i = 0; i < batch.size(); i++) {
+                complete(batch.get(i), results.get(i));
+            }
+        } catch (RuntimeException e) {
+            if (batch.size() == 1 || PatientJournalService.isDatabaseUnavailable(e)) {
+                // Saving them one by one would wait for the database once per patient
+                fail(batch, e);
+                return;
+            }
+            log.debug("Group commit of {} Patients failed, saving them one by one: {}", batch.size(), e.getMessage());
+            for (int i = 0; i < batch.size(); i++) {
+                Registration registration = batch.get(i);
+                registration.reset();
+                try {
+                    complete(registration, transactionTemplate.execute(status -> patientService.save(registration.patient)));
+                } catch (RuntimeException patientError) {
+                    if (PatientJournalService.isDatabaseUnavailable(patientError)) {
+                        fail(batch.subList(i, batch.size()), patientError);
+                        return;
+                    }
+                    registration.result.completeExceptionally(patientError);
+                }
+            }
+        }
+    }
+
+    /**
+     * Answer a committed registration, once its write is recorded for its caller.
+     */
+    private void complete(Registration registration, Patient saved) {
+        if (registration.client != null) {
+            replicaRoutingDataSource.recordWrite(registration.client);
+        }
+        registration.result.complete(saved);
+    }
+
+    private static void fail(List<Registration> registrations, RuntimeException e) {
+        for (Registration registration : registrations) {
+            registration.reset();
+            registration.result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * The failure of a registration which was not committed before the service stopped.
+     */
+    private static final class StoppedException extends IllegalStateException {
+
+        private static final long serialVersionUID = 1L;
+
+        private StoppedException() {
+            super("The group commit is stopped");
+        }
+    }
+
+    /**
+     * A queued patient, and the result its caller waits for.
+     */
+    private static final class Registration {
+
+        private final Patient patient;
+
+        /**
+         * The client which registered the patient, {@code null} when the read replicas are disabled.
+         */
+        private final String client;
+
+        private final Long id;
+
+        private final Long version;
+
+        private final CompletableFuture<Patient> result = new CompletableFuture<>();
+
+        private Registration(Patient patient, String client) {
+            this.patient = patient;
+            this.client = client;
+            this.id = patient.getId();
+            this.version = patient.getVersion();
+        }
+
+        /**
+         * Forget the id and version assigned by a rolled back transaction.
+         */
+        private void reset() {
+            patient.setId(id);
+            patient.setVersion(version);
+        }
+    }
+}
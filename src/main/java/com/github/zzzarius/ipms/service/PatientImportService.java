@@ -0,0 +1,415 @@
+package com.github.zzzarius.ipms.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.zzzarius.ipms.config.ApplicationProperties;
+import com.github.zzzarius.ipms.domain.Incident;
+import com.github.zzzarius.ipms.domain.Patient;
+import com.github.zzzarius.ipms.domain.enumeration.Category;
+import com.github.zzzarius.ipms.repository.IncidentRepository;
+import com.github.zzzarius.ipms.service.dto.PatientImportDTO;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Service for importing {@link Patient} entities in bulk, from the same formats as {@link PatientExportService}.
+ * <p>
+ * The uploaded file is spooled to disk, then parsed row by row in the background, and inserted in chunked
+ * transactions which are flushed every {@code hibernate.jdbc.batch_size} rows.
+ */
+@Service
+public class PatientImportService {
+
+    private final Logger log = LoggerFactory.getLogger(PatientImportService.class);
+
+    private final EntityManager entityManager;
+
+    private final IncidentRepository incidentRepository;
+
+    private final IncidentTriageCounterService incidentTriageCounterService;
+
+    private final PatientQueryService patientQueryService;
+
+    private final IncidentQueryService incidentQueryService;
+
+    private final PatientEventService patientEventService;
+
+    private final ChangeSequenceService changeSequenceService;
+
+    private final Validator validator;
+
+    private final ObjectReader objectReader;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Executor taskExecutor;
+
+    private final int batchSize;
+
+    private final int chunkSize;
+
+    private final int maxErrors;
+
+    private final Duration retention;
+
+    private final Map<String, PatientImportDTO> imports;
+
+    public PatientImportService(
+        EntityManager entityManager,
+        IncidentRepository incidentRepository,
+        IncidentTriageCounterService incidentTriageCounterService,
+        PatientQueryService patientQueryService,
+        IncidentQueryService incidentQueryService,
+        PatientEventService patientEventService,
+        ChangeSequenceService changeSequenceService,
+        Validator validator,
+        ObjectMapper objectMapper,
+        PlatformTransactionManager transactionManager,
+        @Qualifier("taskExecutor") Executor taskExecutor,
+        @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:25}") int batchSize,
+        ApplicationProperties applicationProperties
+    ) {
+        this.entityManager = entityManager;
+        this.incidentRepository = incidentRepository;
+        this.incidentTriageCounterService = incidentTriageCounterService;
+        this.patientQueryService = patientQueryService;
+        this.incidentQueryService = incidentQueryService;
+        this.patientEventService = patientEventService;
+        this.changeSequenceService = changeSequenceService;
+        this.validator = validator;
+        this.objectReader = objectMapper.readerFor(Patient.class);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.taskExecutor = taskExecutor;
+        this.batchSize = batchSize;
+        this.chunkSize = applicationProperties.getBulkImport().getChunkSize();
+        this.maxErrors = applicationProperties.getBulkImport().getMaxErrors();
+        this.retention = Duration.ofSeconds(applicationProperties.getBulkImport().getRetentionSeconds());
+        int retainedImports = applicationProperties.getBulkImport().getRetainedImports();
+        this.imports =
+            Collections.synchronizedMap(
+                new LinkedHashMap<>() {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, PatientImportDTO> eldest) {
+                        return size() > retainedImports;
+                    }
+                }
+            );
+    }
+
+    /**
+     * Start the import of the patients read from the input stream.
+     *
+     * @param format the format of the input stream.
+     * @param inputStream the stream to read from, fully read but not closed by this method.
+     * @return the progress of the import.
+     * @throws IOException if the input stream can't be spooled to disk.
+     */
+    public PatientImportDTO start(PatientExportService.Format format, InputStream inputStream) throws IOException {
+        Path file = Files.createTempFile("patient-import-", "." + format.getExtension());
+        try {
+            Files.copy(inputStream, file, StandardCopyOption.REPLACE_EXISTING);
+            PatientImportDTO patientImport = new PatientImportDTO(UUID.randomUUID().toString(), format.getExtension());
+            log.debug("Request to import Patients : {}", patientImport);
+            evictFinishedImports();
+            imports.put(patientImport.getId(), patientImport);
+            taskExecutor.execute(() -> run(patientImport, format, file));
+            return patientImport;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Get the progress of an import.
+     *
+     * @param id the id of the import.
+     * @return the progress, empty if the import is unknown or too old.
+     */
+    public Optional<PatientImportDTO> findOne(String id) {
+        evictFinishedImports();
+        return Optional.ofNullable(imports.get(id));
+    }
+
+    /**
+     * Forget the imports finished for longer than {@code application.bulk-import.retention-seconds}.
+     */
+    private void evictFinishedImports() {
+        Instant finishedBefore = Instant.now().minus(retention);
+        synchronized (imports) {
+            imports
+                .values()
+                .removeIf(patientImport -> patientImport.getFinishedAt() != null && patientImport.getFinishedAt().isBefore(finishedBefore));
+        }
+    }
+
+    private void run(PatientImportDTO patientImport, PatientExportService.Format format, Path file) {
+        List<Patient> chunk = new ArrayList<>(chunkSize);
+        Map<Long, Boolean> existingIncidents = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            RowReader rows = format == PatientExportService.Format.CSV ? csvRowReader(reader) : ndjsonRowReader(reader);
+            long row = 0;
+            while (true) {
+                row++;
+                Patient patient;
+                try {
+                    patient = rows.next();
+                    if (patient == null) {
+                        break;
+                    }
+                    validate(patient, existingIncidents);
+                } catch (IllegalArgumentException e) {
+                    patientImport.addRowError(row, e.getMessage(), maxErrors);
+                    continue;
+                }
+                chunk.add(patient);
+                if (chunk.size() == chunkSize) {
+                    insert(chunk);
+                    patientImport.addImportedRows(chunk.size());
+                    chunk.clear();
+                }
+            }
+            insert(chunk);
+            patientImport.addImportedRows(chunk.size());
+            patientImport.complete();
+            log.debug("Imported Patients : {}", patientImport);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Patient import {} failed", patientImport.getId(), e);
+            patientImport.fail(e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Could not delete the spooled import file {}", file, e);
+            }
+        }
+    }
+
+    private void validate(Patient patient, Map<Long, Boolean> existingIncidents) {
+        // The ids are generated, as with POST /api/patients, so that exported files can be imported again
+        patient.setId(null);
+        Set<ConstraintViolation<Patient>> violations = validator.validate(patient);
+        if (!violations.isEmpty()) {
+            throw new IllegalArgumentException(
+                violations
+                    .stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", "))
+            );
+        }
+        Incident incident = patient.getIncident();
+        if (incident != null) {
+            if (incident.getId() == null) {
+                throw new IllegalArgumentException("incident: must have an id");
+            }
+            if (!existingIncidents.computeIfAbsent(incident.getId(), incidentRepository::existsById)) {
+                throw new IllegalArgumentException("incident: not found: " + incident.getId());
+            }
+        }
+    }
+
+    private void insert(List<Patient> chunk) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(
+            status -> {
+                long changeSeq = changeSequenceService.current();
+                for (int i = 0; i < chunk.size(); i++) {
+                    Patient patient = chunk.get(i);
+                    patient.setChangeSeq(changeSeq);
+                    if (patient.getIncident() != null) {
+                        patient.setIncident(entityManager.getReference(Incident.class, patient.getIncident().getId()));
+                    }
+                    entityManager.persist(patient);
+                    if ((i + 1) % batchSize == 0) {
+                        // One JDBC batch per flush, and a persistence context which does not grow with the chunk
+                        entityManager.flush();
+                        entityManager.clear();
+                    }
+                }
+                entityManager.flush();
+                incidentTriageCounterService.recordAdded(chunk);
+                Set<Long> incidentIds = chunk
+                    .stream()
+                    .map(patient -> patient.getIncident() == null ? null : patient.getIncident().getId())
+                    .collect(Collectors.toSet());
+                patientQueryService.evictCounts(incidentIds);
+                incidentQueryService.evictPatientCounts(incidentIds);
+                patientEventService.publishReload(incidentIds);
+                entityManager.clear();
+            }
+        );
+    }
+
+    /**
+     * Reads the patients of an import file one by one.
+     */
+    @FunctionalInterface
+    private interface RowReader {
+        /**
+         * @return the next patient, {@code null} at the end of the file.
+         * @throws IllegalArgumentException if the row can't be parsed, the next call reads the next row.
+         * @throws IOException if the file can't be read.
+         */
+        Patient next() throws IOException;
+    }
+
+    private RowReader ndjsonRowReader(BufferedReader reader) {
+        return () -> {
+            String line;
+            do {
+                line = reader.readLine();
+            } while (line != null && line.isBlank());
+            if (line == null) {
+                return null;
+            }
+            try {
+                return objectReader.readValue(line);
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("Invalid JSON: " + e.getOriginalMessage());
+            }
+        };
+    }
+
+    private static RowReader csvRowReader(Reader reader) throws IOException {
+        CsvRecordReader records = new CsvRecordReader(reader);
+        List<String> header = records.read();
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; header != null && i < header.size(); i++) {
+            columns.put(header.get(i).trim(), i);
+        }
+        return () -> {
+            List<String> record;
+            do {
+                record = records.read();
+            } while (record != null && record.size() == 1 && record.get(0).isBlank());
+            if (record == null) {
+                return null;
+            }
+            Patient patient = new Patient()
+                .firstName(csvValue(record, columns, "firstName"))
+                .lastName(csvValue(record, columns, "lastName"));
+            String triageCategory = csvValue(record, columns, "triageCategory");
+            if (triageCategory != null) {
+                try {
+                    patient.setTriageCategory(Category.valueOf(triageCategory.toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("triageCategory: invalid value: " + triageCategory);
+                }
+            }
+            String incidentId = csvValue(record, columns, "incidentId");
+            if (incidentId != null) {
+                try {
+                    patient.setIncident(new Incident().id(Long.valueOf(incidentId)));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("incidentId: invalid value: " + incidentId);
+                }
+            }
+            return patient;
+        };
+    }
+
+    private static String csvValue(List<String> record, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        if (index == null || index >= record.size() || record.get(index).isEmpty()) {
+            return null;
+        }
+        return record.get(index);
+    }
+
+    /**
+     * Reads RFC 4180 records, which can span several lines when a quoted field holds line breaks.
+     * <p>
+     * A quote left open until the end of the file is an error of its record only: the lines following the one of the
+     * quote are read again as records.
+     */
+    private static final class CsvRecordReader {
+
+        private Reader reader;
+
+        private CsvRecordReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * @return the fields of the next record, {@code null} at the end of the file.
+         * @throws IllegalArgumentException if a quoted field of the record is not terminated.
+         * @throws IOException if the file can't be read.
+         */
+        private List<String> read() throws IOException {
+            int c = reader.read();
+            if (c < 0) {
+                return null;
+            }
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            StringBuilder quotedText = null;
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c < 0) {
+                        int lineEnd = quotedText.indexOf("\n");
+                        reader = new StringReader(lineEnd < 0 ? "" : quotedText.substring(lineEnd + 1));
+                        throw new IllegalArgumentException("Unterminated quoted CSV field");
+                    }
+                    quotedText.append((char) c);
+                    if (c == '"') {
+                        c = reader.read();
+                        if (c != '"') {
+                            quoted = false;
+                            continue;
+                        }
+                        quotedText.append((char) c);
+                    }
+                    field.append((char) c);
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                    quotedText = new StringBuilder();
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n' || c < 0) {
+                    fields.add(field.toString());
+                    return fields;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+                c = reader.read();
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.github.zzzarius.ipms.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.zzzarius.ipms.config.ApplicationProperties;
+import com.github.zzzarius.ipms.domain.Patient;
+import com.github.zzzarius.ipms.security.SecurityUtils;
+import com.github.zzzarius.ipms.service.dto.PatientJournalEntryDTO;
+import com.github.zzzarius.ipms.service.journal.WriteJournal;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.UUID;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Service accepting the patient creations while the database is unavailable, by writing them to a local
+ * {@link WriteJournal}, and replaying them in order once it recovers.
+ * <p>
+ * Each creation is journaled with an idempotency key, chosen by the client or generated, and is replayed through
+ * {@link PatientUploadService#create(Patient, String, String)}: a replay interrupted by a crash does not create the
+ * patient twice, and the client retrying its request with the key gets the created patient.
+ * <p>
+ * An entry which can't be replayed, because of its data rather than the database, is moved to a dead letter file for
+ * an operator, so that it doesn't block the next ones.
+ * <p>
+ * The journal is local to this instance, its creations are only replayed by it.
+ */
+@Service
+public class PatientJournalService {
+
+    private final Logger log = LoggerFactory.getLogger(PatientJournalService.class);
+
+    private final PatientUploadService patientUploadService;
+
+    private final ObjectMapper objectMapper;
+
+    private final WriteJournal journal;
+
+    private final Path deadLetterFile;
+
+    private final TransactionTemplate replayTemplate;
+
+    private final HikariDataSource pool;
+
+    public PatientJournalService(
+        PatientUploadService patientUploadService,
+        ObjectMapper objectMapper,
+        MeterRegistry meterRegistry,
+        DataSource dataSource,
+        PlatformTransactionManager transactionManager,
+        ApplicationProperties applicationProperties
+    ) throws IOException {
+        this.patientUploadService = patientUploadService;
+        this.objectMapper = objectMapper;
+        ApplicationProperties.Journal properties = applicationProperties.getJournal();
+        this.journal = properties.isEnabled() ? new WriteJournal(Path.of(properties.getFile()), properties.getCapacity()) : null;
+        this.deadLetterFile = Path.of(properties.getDeadLetterFile());
+        this.replayTemplate = new TransactionTemplate(transactionManager);
+        this.replayTemplate.setTimeout(properties.getReplayTimeoutSeconds());
+        try {
+            this.pool = dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not unwrap the connection pool", e);
+        }
+        Gauge
+            .builder("ipms.patient.journal.depth", this, PatientJournalService::getDepth)
+            .description("Patient creations journaled and not replayed yet")
+            .register(meterRegistry);
+    }
+
+    /**
+     * @return whether the creations failing because the database is unavailable should be journaled.
+     */
+    public boolean isEnabled() {
+        return journal != null;
+    }
+
+    /**
+     * Tell whether a write failed because the database is unavailable or too slow, rather than because of the data.
+     * <p>
+     * The causes are checked too, as a connection or statement timeout may be wrapped by another exception.
+     *
+     * @param e the error of the write.
+     * @return whether the write can be journaled.
+     */
+    public static boolean isDatabaseUnavailable(RuntimeException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (
+                cause instanceof CannotCreateTransactionException ||
+                cause instanceof DataAccessResourceFailureException ||
+                cause instanceof TransientDataAccessResourceException ||
+                cause instanceof QueryTimeoutException ||
+                cause instanceof SQLTransientConnectionException ||
+                cause instanceof SQLTimeoutException ||
+                cause instanceof SQLRecoverableException
+            ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Serialize a patient to journal, before trying to save it, which changes it.
+     *
+     * @param patient the entity to create.
+     * @return the serialized entity.
+     */
+    public String toJson(Patient patient) {
+        try {
+            return objectMapper.writeValueAsString(patient);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize the patient", e);
+        }
+    }
+
+    /**
+     * Journal a patient creation, which is durable once this returns.
+     *
+     * @param patient the serialized entity to create, see {@link #toJson(Patient)}.
+     * @param idempotencyKey the key chosen by the client, {@code null} to generate one.
+     * @return the idempotency key of the creation.
+     * @throws IllegalStateException if the journal is disabled or full.
+     */
+    public String append(String patient, String idempotencyKey) {
+        if (journal == null) {
+            throw new IllegalStateException("The journal is disabled");
+        }
+        String login = SecurityUtils.getCurrentUserLogin().orElseThrow(() -> new IllegalStateException("No current user"));
+        String key = idempotencyKey != null ? idempotencyKey : UUID.randomUUID().toString();
+        try {
+            journal.append(objectMapper.writeValueAsBytes(new PatientJournalEntryDTO(key, login, patient)));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize the journal entry", e);
+        }
+        log.debug("Journaled the creation of a Patient with idempotency key : {}", key);
+        return key;
+    }
+
+    /**
+     * Replay the journaled creations, in order, until the journal is empty or the database is unavailable.
+     * <p>
+     * Each creation is only replayed when the connection pool has an idle connection, so that the replay never waits
+     * for the connection timeout of the pool, and within the replay timeout, so that a slow database stops it like an
+     * unavailable one. This is scheduled to get fired every 5 seconds by default.
+     *
+     * @return the number of replayed creations.
+     */
+    @Scheduled(fixedDelayString = "${application.journal.replay-delay-ms:5000}")
+    public synchronized int replay() {
+        if (journal == null) {
+            return 0;
+        }
+        int replayed = 0;
+        Optional<byte[]> record;
+        while ((record = journal.peek()).isPresent()) {
+            if (!hasIdleConnection()) {
+                log.debug("Database busy or unavailable, {} journaled Patients left", journal.getDepth());
+                return replayed;
+            }
+            try {
+                PatientJournalEntryDTO entry = objectMapper.readValue(record.get(), PatientJournalEntryDTO.class);
+                Patient patient = objectMapper.readValue(entry.getPatient(), Patient.class);
+                replayTemplate.executeWithoutResult(
+                    status -> patientUploadService.create(patient, entry.getIdempotencyKey(), entry.getLogin())
+                );
+            } catch (IOException e) {
+                log.error("Could not deserialize the journal entry {}", new String(record.get(), StandardCharsets.UTF_8), e);
+                if (!deadLetter(record.get())) {
+                    return replayed;
+                }
+            } catch (RuntimeException e) {
+                if (isDatabaseUnavailable(e)) {
+                    log.debug("Database still unavailable, {} journaled Patients left: {}", journal.getDepth(), e.getMessage());
+                    return replayed;
+                }
+                // Retrying would fail again, and block the journal
+                log.error("Could not replay the journal entry {}: {}", new String(record.get(), StandardCharsets.UTF_8), e.getMessage());
+                if (!deadLetter(record.get())) {
+                    return replayed;
+                }
+            }
+            journal.consume();
+            replayed++;
+        }
+        if (replayed > 0) {
+            log.info("Replayed {} journaled Patients", replayed);
+        }
+        return replayed;
+    }
+
+    /**
+     * Append an entry which can't be replayed to the dead letter file, one entry per line.
+     *
+     * @return whether the entry is durably written, and can be removed from the journal.
+     */
+    private boolean deadLetter(byte[] record) {
+        try {
+            if (deadLetterFile.getParent() != null) {
+                Files.createDirectories(deadLetterFile.getParent());
+            }
+            byte[] line = Arrays.copyOf(record, record.length + 1);
+            line[record.length] = '\n';
+            Files.write(deadLetterFile, line, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+            log.warn("Moved a journaled Patient which can't be replayed to {}", deadLetterFile);
+            return true;
+        } catch (IOException e) {
+            log.error("Could not write the dead letter file {}, the journal replay is blocked", deadLetterFile, e);
+            return false;
+        }
+    }
+
+    private boolean hasIdleConnection() {
+        HikariPoolMXBean poolStatistics = pool == null ? null : pool.getHikariPoolMXBean();
+        return poolStatistics == null || poolStatistics.getIdleConnections() > 0;
+    }
+
+    private int getDepth() {
+        return journal == null ? 0 : journal.getDepth();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+}
@@ -1,18 +1,39 @@
 package com.github.zzzarius.ipms.service;
 
+import com.github.zzzarius.ipms.config.ApplicationProperties;
+import com.github.zzzarius.ipms.config.ReplicaRoutingDataSource;
 // for static metamodels
 import com.github.zzzarius.ipms.domain.Incident_;
 import com.github.zzzarius.ipms.domain.Patient;
 import com.github.zzzarius.ipms.domain.Patient_;
+import com.github.zzzarius.ipms.domain.enumeration.Category;
 import com.github.zzzarius.ipms.repository.PatientRepository;
 import com.github.zzzarius.ipms.service.criteria.PatientCriteria;
+import com.github.zzzarius.ipms.service.pagination.KeysetCursor;
+import com.github.zzzarius.ipms.service.pagination.KeysetPage;
+import com.github.zzzarius.ipms.service.pagination.KeysetSpecification;
+import com.github.zzzarius.ipms.service.projection.SparseFieldset;
+import com.github.zzzarius.ipms.service.query.CompiledQuery;
+import com.github.zzzarius.ipms.service.query.CountCache;
+import com.github.zzzarius.ipms.service.query.CriteriaQueryCompiler;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
 import javax.persistence.criteria.JoinType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import tech.jhipster.service.QueryService;
@@ -22,17 +43,69 @@ import tech.jhipster.service.QueryService;
  * The main input is a {@link PatientCriteria} which gets converted to {@link Specification},
  * in a way that all the filters must apply.
  * It returns a {@link List} of {@link Patient} or a {@link Page} of {@link Patient} which fulfills the criteria.
+ * The list, page, slice, count and export queries are compiled once per shape of the criteria, see
+ * {@link CriteriaQueryCompiler}. The sparse fieldset and keyset queries still use specifications.
  */
 @Service
 @Transactional(readOnly = true)
 public class PatientQueryService extends QueryService<Patient> {
 
+    /**
+     * Properties which can be used as keyset pagination sort key, besides the id.
+     */
+    private static final Map<String, Class<?>> KEYSET_SORT_PROPERTIES = Map.of(
+        "firstName",
+        String.class,
+        "lastName",
+        String.class,
+        "triageCategory",
+        Category.class
+    );
+
+    /**
+     * Attributes which can be requested with a sparse fieldset, besides the id.
+     */
+    private static final Set<String> SPARSE_FIELDS = Set.of("firstName", "lastName", "triageCategory");
+
+    /**
+     * Associations which can be expanded in a sparse fieldset, with their returned attributes.
+     */
+    private static final Map<String, List<String>> SPARSE_EXPANSIONS = Map.of("incident", List.of("id", "name"));
+
     private final Logger log = LoggerFactory.getLogger(PatientQueryService.class);
 
     private final PatientRepository patientRepository;
 
-    public PatientQueryService(PatientRepository patientRepository) {
+    private final CriteriaQueryCompiler<Patient, PatientCriteria> queryCompiler;
+
+    private final CountCache<PatientCriteria> countCache;
+
+    public PatientQueryService(
+        PatientRepository patientRepository,
+        EntityManager entityManager,
+        ApplicationProperties applicationProperties
+    ) {
         this.patientRepository = patientRepository;
+        ApplicationProperties.CountCache countCacheProperties = applicationProperties.getCountCache();
+        ApplicationProperties.ReadReplicas readReplicas = applicationProperties.getReadReplicas();
+        this.countCache =
+            new CountCache<>(
+                Duration.ofSeconds(countCacheProperties.getTimeToLiveSeconds()),
+                countCacheProperties.getMaxEntries(),
+                Duration.ofSeconds(readReplicas.isEnabled() ? readReplicas.getMaxLagSeconds() : 0),
+                ReplicaRoutingDataSource::isCurrentTransactionReadingFromReplica
+            );
+        this.queryCompiler =
+            CriteriaQueryCompiler
+                .<Patient, PatientCriteria>builder(entityManager, Patient.class, "patient")
+                .leftJoinFetch("patient.incident", "incident")
+                .rangeFilter(PatientCriteria::getId, "patient.id")
+                .stringFilter(PatientCriteria::getFirstName, "patient.firstName")
+                .stringFilter(PatientCriteria::getLastName, "patient.lastName")
+                .filter(PatientCriteria::getTriageCategory, "patient.triageCategory")
+                .rangeFilter(PatientCriteria::getIncidentId, "incident.id")
+                .stringFilter(PatientCriteria::getIncidentName, "incident.name")
+                .build();
     }
 
     /**
@@ -43,8 +116,10 @@ public class PatientQueryService extends QueryService<Patient> {
     @Transactional(readOnly = true)
     public List<Patient> findByCriteria(PatientCriteria criteria) {
         log.debug("find by criteria : {}", criteria);
-        final Specification<Patient> specification = createSpecification(criteria);
-        return patientRepository.findAll(specification);
+        return queryCompiler
+            .compile(criteria, Sort.unsorted())
+            .map(CompiledQuery::findAll)
+            .orElseGet(() -> patientRepository.findAll(createSpecification(criteria)));
     }
 
     /**
@@ -56,20 +131,183 @@ public class PatientQueryService extends QueryService<Patient> {
     @Transactional(readOnly = true)
     public Page<Patient> findByCriteria(PatientCriteria criteria, Pageable page) {
         log.debug("find by criteria : {}, page: {}", criteria, page);
+        return queryCompiler
+            .compile(criteria, page.getSort())
+            .map(query -> query.findAll(page))
+            .orElseGet(() -> patientRepository.findAll(createSpecification(criteria), page));
+    }
+
+    /**
+     * Return a {@link Slice} of {@link Patient} which matches the criteria from the database, without counting them.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The page, which should be returned.
+     * @return the matching entities.
+     */
+    @Transactional(readOnly = true)
+    public Slice<Patient> findSliceByCriteria(PatientCriteria criteria, Pageable page) {
+        log.debug("find slice by criteria : {}, page: {}", criteria, page);
+        return queryCompiler
+            .compile(criteria, page.getSort())
+            .map(query -> query.findSlice(page))
+            .orElseGet(() -> patientRepository.findSlice(createSpecification(criteria), page));
+    }
+
+    /**
+     * Return a {@link Page} of {@link Patient} which matches the criteria from the database, with an estimated total.
+     * The total is only counted when the page is not the last one, and shares the cache of {@link #countByCriteria}.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param page The page, which should be returned.
+     * @return the matching entities.
+     */
+    @Transactional(readOnly = true)
+    public Page<Patient> findByCriteriaWithEstimatedTotal(PatientCriteria criteria, Pageable page) {
+        log.debug("find by criteria with estimated total : {}, page: {}", criteria, page);
+        Slice<Patient> slice = findSliceByCriteria(criteria, page);
+        long seen = page.isPaged() ? page.getOffset() + slice.getNumberOfElements() : slice.getNumberOfElements();
+        if (!slice.hasNext()) {
+            return new PageImpl<>(slice.getContent(), page, seen);
+        }
+        long estimate = countByCriteria(criteria);
+        return new PageImpl<>(slice.getContent(), page, Math.max(estimate, seen + 1));
+    }
+
+    /**
+     * Return a {@link Page} of the requested fields of the {@link Patient} which matches the criteria from the database.
+     * Only the requested columns are selected, and the incident is only joined when expanded.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param fieldset The fields and associations to return, see {@link #createFieldset(String, List)}.
+     * @param page The page, which should be returned.
+     * @return the matching rows.
+     */
+    @Transactional(readOnly = true)
+    public Page<Map<String, Object>> findByCriteria(PatientCriteria criteria, SparseFieldset fieldset, Pageable page) {
+        log.debug("find by criteria : {}, fieldset: {}, page: {}", criteria, fieldset, page);
+        Slice<Map<String, Object>> slice = patientRepository.findSlice(createSpecification(criteria), fieldset.getPaths(), page);
+        return PageableExecutionUtils.getPage(slice.getContent(), page, () -> count(criteria));
+    }
+
+    /**
+     * Return a {@link Page} of the requested fields of the {@link Patient} which matches the criteria from the database,
+     * with an estimated total, as {@link #findByCriteriaWithEstimatedTotal(PatientCriteria, Pageable)}.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param fieldset The fields and associations to return, see {@link #createFieldset(String, List)}.
+     * @param page The page, which should be returned.
+     * @return the matching rows.
+     */
+    @Transactional(readOnly = true)
+    public Page<Map<String, Object>> findByCriteriaWithEstimatedTotal(PatientCriteria criteria, SparseFieldset fieldset, Pageable page) {
+        log.debug("find by criteria with estimated total : {}, fieldset: {}, page: {}", criteria, fieldset, page);
+        Slice<Map<String, Object>> slice = findSliceByCriteria(criteria, fieldset, page);
+        long seen = page.isPaged() ? page.getOffset() + slice.getNumberOfElements() : slice.getNumberOfElements();
+        if (!slice.hasNext()) {
+            return new PageImpl<>(slice.getContent(), page, seen);
+        }
+        long estimate = countByCriteria(criteria);
+        return new PageImpl<>(slice.getContent(), page, Math.max(estimate, seen + 1));
+    }
+
+    /**
+     * Return a {@link Slice} of the requested fields of the {@link Patient} which matches the criteria from the database,
+     * without counting them.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param fieldset The fields and associations to return, see {@link #createFieldset(String, List)}.
+     * @param page The page, which should be returned.
+     * @return the matching rows.
+     */
+    @Transactional(readOnly = true)
+    public Slice<Map<String, Object>> findSliceByCriteria(PatientCriteria criteria, SparseFieldset fieldset, Pageable page) {
+        log.debug("find slice by criteria : {}, fieldset: {}, page: {}", criteria, fieldset, page);
         final Specification<Patient> specification = createSpecification(criteria);
-        return patientRepository.findAll(specification, page);
+        return patientRepository.findSlice(specification, fieldset.getPaths(), page);
+    }
+
+    /**
+     * Build the sparse fieldset of a patient list request.
+     * @param fields The comma separated fields, among {@code firstName}, {@code lastName} and {@code triageCategory}.
+     * @param expand The associations to return, only {@code incident} is supported.
+     * @return the fieldset.
+     * @throws IllegalArgumentException if a field or an association is not supported.
+     */
+    public SparseFieldset createFieldset(String fields, List<String> expand) {
+        return SparseFieldset.of(fields, expand, SPARSE_FIELDS, SPARSE_EXPANSIONS);
+    }
+
+    /**
+     * Return a {@link KeysetPage} of {@link Patient} which matches the criteria from the database.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param after The cursor returned with the previous page, blank for the first page.
+     * @param page The size and, for the first page, the sort of the page.
+     * @return the matching entities.
+     * @throws IllegalArgumentException if the cursor or the sort is not valid.
+     */
+    @Transactional(readOnly = true)
+    public KeysetPage<Patient> findByCriteria(PatientCriteria criteria, String after, Pageable page) {
+        log.debug("find by criteria : {}, after: {}, page: {}", criteria, after, page);
+        final KeysetCursor cursor = KeysetCursor.of(after, page.getSort(), KEYSET_SORT_PROPERTIES);
+        final Specification<Patient> specification = createSpecification(criteria).and(KeysetSpecification.after(cursor));
+        return KeysetPage.of(patientRepository.findSlice(specification, PageRequest.of(0, page.getPageSize(), cursor.toSort())), cursor);
+    }
+
+    /**
+     * Return a {@link Stream} of {@link Patient} which matches the criteria from the database, ordered by id.
+     * The rows are read with a forward-only cursor, so the stream must be consumed inside the caller transaction.
+     * @param criteria The object which holds all the filters, which the entities should match.
+     * @param fetchSize The number of rows fetched from the database at once.
+     * @return the matching entities.
+     */
+    @Transactional(readOnly = true)
+    public Stream<Patient> streamByCriteria(PatientCriteria criteria, int fetchSize) {
+        log.debug("stream by criteria : {}", criteria);
+        final Sort sort = Sort.by(Patient_.ID);
+        return queryCompiler
+            .compile(criteria, sort)
+            .map(query -> query.stream(fetchSize))
+            .orElseGet(() -> patientRepository.streamAll(createSpecification(criteria), sort, fetchSize));
     }
 
     /**
      * Return the number of matching entities in the database.
+     * The count is cached until a write which can change it, see {@link #evictCounts(Collection)}.
      * @param criteria The object which holds all the filters, which the entities should match.
      * @return the number of matching entities.
      */
     @Transactional(readOnly = true)
     public long countByCriteria(PatientCriteria criteria) {
         log.debug("count by criteria : {}", criteria);
-        final Specification<Patient> specification = createSpecification(criteria);
-        return patientRepository.count(specification);
+        final PatientCriteria key = criteria == null ? new PatientCriteria() : criteria.canonical();
+        return countCache.get(key, () -> count(key));
+    }
+
+    private long count(PatientCriteria criteria) {
+        return queryCompiler
+            .compile(criteria, Sort.unsorted())
+            .map(CompiledQuery::count)
+            .orElseGet(() -> patientRepository.count(createSpecification(criteria)));
+    }
+
+    /**
+     * Evict the cached counts which can be changed by the write of patients, once the transaction is committed.
+     * @param incidentIds The incidents of the written patients, before and after the write, {@code null} for none.
+     */
+    public void evictCounts(Collection<Long> incidentIds) {
+        countCache.evict(criteria -> CountCache.mayMatch(criteria.getIncidentId(), incidentIds));
+    }
+
+    /**
+     * Evict the cached counts which can be changed by the write of an incident, once the transaction is committed.
+     * @param incidentId The id of the written incident.
+     */
+    public void evictIncidentCounts(Long incidentId) {
+        countCache.evict(
+            criteria -> criteria.getIncidentName() != null && CountCache.mayMatch(criteria.getIncidentId(), List.of(incidentId))
+        );
+    }
+
+    /**
+     * Evict all the cached counts immediately, for example after writes which did not go through the services.
+     */
+    public void evictAllCounts() {
+        countCache.clear();
     }
 
     /**
@@ -1,12 +1,24 @@
 package com.github.zzzarius.ipms.service;
 
+import com.github.zzzarius.ipms.domain.Incident;
 import com.github.zzzarius.ipms.domain.Patient;
+import com.github.zzzarius.ipms.domain.PatientTombstone;
+import com.github.zzzarius.ipms.domain.enumeration.Category;
+import com.github.zzzarius.ipms.repository.IncidentRepository;
 import com.github.zzzarius.ipms.repository.PatientRepository;
+import com.github.zzzarius.ipms.repository.PatientTombstoneRepository;
+import com.github.zzzarius.ipms.service.dto.PatientEventDTO;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import javax.persistence.EntityManager;
+import org.hibernate.ReplicationMode;
+import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -21,26 +33,123 @@ public class PatientService {
 
     private final PatientRepository patientRepository;
 
-    public PatientService(PatientRepository patientRepository) {
+    private final IncidentRepository incidentRepository;
+
+    private final IncidentTriageCounterService incidentTriageCounterService;
+
+    private final PatientQueryService patientQueryService;
+
+    private final IncidentQueryService incidentQueryService;
+
+    private final PatientEventService patientEventService;
+
+    private final ChangeSequenceService changeSequenceService;
+
+    private final PatientTombstoneRepository patientTombstoneRepository;
+
+    private final EntityManager entityManager;
+
+    public PatientService(
+        PatientRepository patientRepository,
+        IncidentRepository incidentRepository,
+        IncidentTriageCounterService incidentTriageCounterService,
+        PatientQueryService patientQueryService,
+        IncidentQueryService incidentQueryService,
+        PatientEventService patientEventService,
+        ChangeSequenceService changeSequenceService,
+        PatientTombstoneRepository patientTombstoneRepository,
+        EntityManager entityManager
+    ) {
         this.patientRepository = patientRepository;
+        this.incidentRepository = incidentRepository;
+        this.incidentTriageCounterService = incidentTriageCounterService;
+        this.patientQueryService = patientQueryService;
+        this.incidentQueryService = incidentQueryService;
+        this.patientEventService = patientEventService;
+        this.changeSequenceService = changeSequenceService;
+        this.patientTombstoneRepository = patientTombstoneRepository;
+        this.entityManager = entityManager;
     }
 
     /**
      * Save a patient.
      *
-     * @param patient the entity to save.
+     * @param patient the entity to save, with the version it was read at, or without version to overwrite any version.
      * @return the persisted entity.
+     * @throws ObjectOptimisticLockingFailureException if the patient has another version.
      */
     public Patient save(Patient patient) {
         log.debug("Request to save Patient : {}", patient);
-        return patientRepository.save(patient);
+        patient.setIncident(reference(patient.getIncident()));
+        Long oldIncidentId = null;
+        Category oldCategory = null;
+        boolean isNew = true;
+        if (patient.getId() != null) {
+            // The merge below reuses the entity loaded here, so reading the previous state costs no extra query
+            Optional<Patient> existingPatient = patientRepository.findById(patient.getId());
+            if (existingPatient.isPresent()) {
+                isNew = false;
+                oldIncidentId = incidentId(existingPatient.get());
+                oldCategory = existingPatient.get().getTriageCategory();
+                if (patient.getVersion() == null) {
+                    patient.setVersion(existingPatient.get().getVersion());
+                }
+            }
+        }
+        patient.setChangeSeq(changeSequenceService.current());
+        Patient result = patientRepository.save(patient);
+        incidentTriageCounterService.recordChange(oldIncidentId, oldCategory, incidentId(result), result.getTriageCategory());
+        evictCounts(oldIncidentId, incidentId(result));
+        patientEventService.publish(isNew ? PatientEventDTO.created(result) : PatientEventDTO.updated(result, oldIncidentId, oldCategory));
+        return result;
     }
 
     /**
-     * Partially update a patient.
+     * Update a patient, writing only its changed columns.
+     * <p>
+     * The patient is read once, through the second-level cache when it is warm, which tells whether it exists. Its
+     * previous incident and category are needed by the triage counters and the events, which a single {@code UPDATE}
+     * statement could not return. The versioned {@code UPDATE} of its changed columns matches no row if the patient was
+     * changed or deleted since it was read, which fails with an optimistic locking failure.
      *
-     * @param patient the entity to update partially.
-     * @return the persisted entity.
+     * @param patient the entity to update, with the version it was read at, or without version to overwrite any version.
+     * @return the persisted entity, empty if the patient does not exist.
+     * @throws ObjectOptimisticLockingFailureException if the patient has another version.
+     */
+    public Optional<Patient> update(Patient patient) {
+        log.debug("Request to update Patient : {}", patient);
+        return patientRepository
+            .findById(patient.getId())
+            .map(
+                existingPatient -> {
+                    checkVersion(patient, existingPatient);
+                    Long oldIncidentId = incidentId(existingPatient);
+                    Category oldCategory = existingPatient.getTriageCategory();
+                    existingPatient.setFirstName(patient.getFirstName());
+                    existingPatient.setLastName(patient.getLastName());
+                    existingPatient.setTriageCategory(patient.getTriageCategory());
+                    existingPatient.setIncident(reference(patient.getIncident()));
+                    existingPatient.setChangeSeq(changeSequenceService.current());
+                    incidentTriageCounterService.recordChange(
+                        oldIncidentId,
+                        oldCategory,
+                        incidentId(existingPatient),
+                        existingPatient.getTriageCategory()
+                    );
+                    evictCounts(oldIncidentId, incidentId(existingPatient));
+                    patientEventService.publish(PatientEventDTO.updated(existingPatient, oldIncidentId, oldCategory));
+                    return existingPatient;
+                }
+            );
+    }
+
+    /**
+     * Partially update a patient, writing only its changed columns.
+     *
+     * @param patient the entity to update partially, with the version it was read at, or without version to update any
+     * version.
+     * @return the persisted entity, empty if the patient does not exist.
+     * @throws ObjectOptimisticLockingFailureException if the patient has another version.
      */
     public Optional<Patient> partialUpdate(Patient patient) {
         log.debug("Request to partially update Patient : {}", patient);
@@ -49,6 +158,15 @@ public class PatientService {
             .findById(patient.getId())
             .map(
                 existingPatient -> {
+                    checkVersion(patient, existingPatient);
+                    Category oldCategory = existingPatient.getTriageCategory();
+                    incidentTriageCounterService.recordChange(
+                        incidentId(existingPatient),
+                        existingPatient.getTriageCategory(),
+                        incidentId(existingPatient),
+                        patient.getTriageCategory() != null ? patient.getTriageCategory() : existingPatient.getTriageCategory()
+                    );
+                    evictCounts(incidentId(existingPatient));
                     if (patient.getFirstName() != null) {
                         existingPatient.setFirstName(patient.getFirstName());
                     }
@@ -58,6 +176,8 @@ public class PatientService {
                     if (patient.getTriageCategory() != null) {
                         existingPatient.setTriageCategory(patient.getTriageCategory());
                     }
+                    existingPatient.setChangeSeq(changeSequenceService.current());
+                    patientEventService.publish(PatientEventDTO.updated(existingPatient, incidentId(existingPatient), oldCategory));
 
                     return existingPatient;
                 }
@@ -65,6 +185,32 @@ public class PatientService {
             .map(patientRepository::save);
     }
 
+    /**
+     * Insert a patient with the id assigned by its client, or update it if it already exists.
+     *
+     * @param patient the entity to insert or update, with its id, and without version to overwrite any version.
+     * @return the persisted entity.
+     */
+    public Patient upsert(Patient patient) {
+        log.debug("Request to upsert Patient : {}", patient);
+        return update(patient)
+            .orElseGet(
+                () -> {
+                    patient.setIncident(reference(patient.getIncident()));
+                    patient.setVersion(0L);
+                    patient.setChangeSeq(changeSequenceService.current());
+                    // Unlike persist, replicate keeps the id instead of generating one
+                    entityManager.unwrap(Session.class).replicate(patient, ReplicationMode.EXCEPTION);
+                    // The patient was maybe deleted before, the sync now returns it as changed rather than deleted
+                    patientTombstoneRepository.deleteByPatientId(patient.getId());
+                    incidentTriageCounterService.recordChange(null, null, incidentId(patient), patient.getTriageCategory());
+                    evictCounts(incidentId(patient));
+                    patientEventService.publish(PatientEventDTO.created(patient));
+                    return patient;
+                }
+            );
+    }
+
     /**
      * Get all the patients.
      *
@@ -86,7 +232,7 @@ public class PatientService {
     @Transactional(readOnly = true)
     public Optional<Patient> findOne(Long id) {
         log.debug("Request to get Patient : {}", id);
-        return patientRepository.findById(id);
+        return patientRepository.findOneWithEagerRelationships(id);
     }
 
     /**
@@ -96,6 +242,40 @@ public class PatientService {
      */
     public void delete(Long id) {
         log.debug("Request to delete Patient : {}", id);
-        patientRepository.deleteById(id);
+        patientRepository
+            .findById(id)
+            .ifPresent(
+                patient -> {
+                    incidentTriageCounterService.recordChange(incidentId(patient), patient.getTriageCategory(), null, null);
+                    evictCounts(incidentId(patient));
+                    patientEventService.publish(PatientEventDTO.deleted(patient));
+                    patientTombstoneRepository.save(new PatientTombstone(patient, changeSequenceService.current()));
+                    patientRepository.delete(patient);
+                }
+            );
+    }
+
+    private void evictCounts(Long... incidentIds) {
+        List<Long> written = Arrays.asList(incidentIds);
+        patientQueryService.evictCounts(written);
+        incidentQueryService.evictPatientCounts(written);
+    }
+
+    private static void checkVersion(Patient patient, Patient existingPatient) {
+        if (patient.getVersion() != null && !patient.getVersion().equals(existingPatient.getVersion())) {
+            throw new ObjectOptimisticLockingFailureException(Patient.class, patient.getId());
+        }
+    }
+
+    /**
+     * The incident is only referenced, as a deserialized incident has no version and would be taken as transient.
+     */
+    private Incident reference(Incident incident) {
+        return incident == null || incident.getId() == null ? incident : incidentRepository.getOne(incident.getId());
+    }
+
+    private static Long incidentId(Patient patient) {
+        Incident incident = patient.getIncident();
+        return incident == null ? null : incident.getId();
     }
 }
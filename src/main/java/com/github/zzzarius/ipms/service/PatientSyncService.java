@@ -0,0 +1,175 @@
+package com.github.zzzarius.ipms.service;
+
+import com.github.zzzarius.ipms.config.ApplicationProperties;
+import com.github.zzzarius.ipms.domain.ChangeSequence;
+import com.github.zzzarius.ipms.domain.Patient;
+import com.github.zzzarius.ipms.domain.PatientTombstone;
+import com.github.zzzarius.ipms.repository.ChangeSequenceRepository;
+import com.github.zzzarius.ipms.repository.PatientRepository;
+import com.github.zzzarius.ipms.repository.PatientTombstoneRepository;
+import com.github.zzzarius.ipms.service.dto.PatientListDTO;
+import com.github.zzzarius.ipms.service.dto.PatientSyncDTO;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Service returning the patient changes since a token, so that the clients which were offline download the changes
+ * rather than the patient lists.
+ * <p>
+ * The changes are ordered by change sequence, see {@link ChangeSequenceService}, then by patient id, and the token is
+ * the position of the last returned change. The patients and the tombstones of the deleted ones are read by two
+ * range scans on their {@code (change_seq, id)} indexes, in the same transaction, and merged. Only the changes up to
+ * the visibility watermark are read, so that a change committed later with a lower sequence can't be skipped.
+ * <p>
+ * The patients are returned with the id of their incident only, as the changes of the incidents are not synced: the
+ * clients read them with {@code GET /api/incidents}. The tombstones are purged once older than the maximum token age,
+ * and the tokens which could have missed them are then expired, see {@link #purgeTombstones()}.
+ */
+@Service
+@Transactional(readOnly = true)
+public class PatientSyncService {
+
+    private final Logger log = LoggerFactory.getLogger(PatientSyncService.class);
+
+    private static final String SEPARATOR = ",";
+
+    private final PatientRepository patientRepository;
+
+    private final PatientTombstoneRepository patientTombstoneRepository;
+
+    private final ChangeSequenceService changeSequenceService;
+
+    private final ChangeSequenceRepository changeSequenceRepository;
+
+    private final int pageSize;
+
+    private final Duration maxTokenAge;
+
+    public PatientSyncService(
+        PatientRepository patientRepository,
+        PatientTombstoneRepository patientTombstoneRepository,
+        ChangeSequenceService changeSequenceService,
+        ChangeSequenceRepository changeSequenceRepository,
+        ApplicationProperties applicationProperties
+    ) {
+        this.patientRepository = patientRepository;
+        this.patientTombstoneRepository = patientTombstoneRepository;
+        this.changeSequenceService = changeSequenceService;
+        this.changeSequenceRepository = changeSequenceRepository;
+        this.pageSize = applicationProperties.getSync().getPageSize();
+        this.maxTokenAge = Duration.ofHours(applicationProperties.getSync().getMaxTokenAgeHours());
+    }
+
+    /**
+     * Get the patient changes after a token.
+     *
+     * @param token the token returned by the previous sync, blank to read all the patients.
+     * @return the changes, at most the configured page size.
+     * @throws IllegalArgumentException if the token can't be decoded.
+     * @throws TokenExpiredException if the token is older than the purged tombstones.
+     */
+    public PatientSyncDTO findChanges(String token) {
+        log.debug("Request to get the Patient changes after : {}", token);
+        long[] position = decode(token);
+        if (token != null && !token.isBlank()) {
+            long purgedBefore = changeSequenceRepository.findLastValueByName(ChangeSequence.PATIENT_TOMBSTONE_PURGE);
+            if (position[0] < purgedBefore) {
+                throw new TokenExpiredException();
+            }
+        }
+        long visibleUpTo = changeSequenceService.visibleUpTo();
+        PageRequest page = PageRequest.of(0, pageSize + 1);
+        List<Patient> patients = patientRepository.findChangedAfter(position[0], position[1], visibleUpTo, page);
+        List<PatientTombstone> tombstones = patientTombstoneRepository.findChangedAfter(position[0], position[1], visibleUpTo, page);
+        List<PatientListDTO> changedPatients = new ArrayList<>();
+        List<Long> deletedPatientIds = new ArrayList<>();
+        int p = 0;
+        int t = 0;
+        while (p + t < pageSize && (p < patients.size() || t < tombstones.size())) {
+            boolean patientFirst =
+                t == tombstones.size() ||
+                (p < patients.size() && compare(patients.get(p).getChangeSeq(), patients.get(p).getId(), tombstones.get(t)) < 0);
+            if (patientFirst) {
+                Patient patient = patients.get(p++);
+                changedPatients.add(PatientListDTO.withIncidentId(patient));
+                position = new long[] { patient.getChangeSeq(), patient.getId() };
+            } else {
+                PatientTombstone tombstone = tombstones.get(t++);
+                deletedPatientIds.add(tombstone.getPatientId());
+                position = new long[] { tombstone.getChangeSeq(), tombstone.getPatientId() };
+            }
+        }
+        boolean hasMore = p < patients.size() || t < tombstones.size();
+        return new PatientSyncDTO(changedPatients, deletedPatientIds, encode(position), hasMore);
+    }
+
+    /**
+     * Delete the tombstones older than the maximum token age, and expire the tokens which could have missed them.
+     * <p>
+     * The tombstones are deleted below the highest change sequence of the old ones, which is recorded: the tokens
+     * below it are refused. The tombstones with that sequence are kept, so a sync from scratch ends above it.
+     * <p>
+     * This is scheduled to get fired every hour by default.
+     */
+    @Scheduled(cron = "${application.sync.tombstone-purge-cron:0 30 * * * *}")
+    @Transactional
+    public void purgeTombstones() {
+        Long purgedBefore = patientTombstoneRepository.findMaxChangeSeqByDeletedDateBefore(Instant.now().minus(maxTokenAge));
+        if (purgedBefore == null) {
+            return;
+        }
+        changeSequenceRepository.raise(ChangeSequence.PATIENT_TOMBSTONE_PURGE, purgedBefore);
+        int purged = patientTombstoneRepository.deleteByChangeSeqBefore(purgedBefore);
+        log.debug("Purged {} patient tombstones", purged);
+    }
+
+    private static int compare(long changeSeq, long id, PatientTombstone tombstone) {
+        int bySeq = Long.compare(changeSeq, tombstone.getChangeSeq());
+        return bySeq != 0 ? bySeq : Long.compare(id, tombstone.getPatientId());
+    }
+
+    private static String encode(long[] position) {
+        String raw = position[0] + SEPARATOR + position[1];
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the change sequence and the patient id of the last change read by the client.
+     */
+    private static long[] decode(String token) {
+        if (token == null || token.isBlank()) {
+            return new long[] { 0, 0 };
+        }
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(SEPARATOR);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Malformed sync token");
+            }
+            return new long[] { Long.parseLong(parts[0]), Long.parseLong(parts[1]) };
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed sync token", e);
+        }
+    }
+
+    /**
+     * Thrown when a token is older than the purged tombstones: the client must sync again from scratch.
+     */
+    public static class TokenExpiredException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public TokenExpiredException() {
+            super("Expired sync token");
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.github.zzzarius.ipms.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.zzzarius.ipms.config.ApplicationProperties;
+import com.github.zzzarius.ipms.domain.IdGeneratorSegment;
+import com.github.zzzarius.ipms.domain.IdempotencyKey;
+import com.github.zzzarius.ipms.domain.Patient;
+import com.github.zzzarius.ipms.domain.PatientIdBlock;
+import com.github.zzzarius.ipms.repository.IdGeneratorSegmentRepository;
+import com.github.zzzarius.ipms.repository.IdempotencyKeyRepository;
+import com.github.zzzarius.ipms.repository.IncidentRepository;
+import com.github.zzzarius.ipms.repository.PatientIdBlockRepository;
+import com.github.zzzarius.ipms.security.SecurityUtils;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Service for the patient uploads of the clients with an unreliable connection: idempotent creations, ids reserved
+ * in advance, and batches of patients registered offline.
+ */
+@Service
+@Transactional
+public class PatientUploadService {
+
+    private final Logger log = LoggerFactory.getLogger(PatientUploadService.class);
+
+    private final PatientService patientService;
+
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+
+    private final PatientIdBlockRepository patientIdBlockRepository;
+
+    private final IdGeneratorSegmentRepository idGeneratorSegmentRepository;
+
+    private final IncidentRepository incidentRepository;
+
+    private final ObjectMapper objectMapper;
+
+    private final Validator validator;
+
+    private final ApplicationProperties.OfflineUpload offlineUpload;
+
+    public PatientUploadService(
+        PatientService patientService,
+        IdempotencyKeyRepository idempotencyKeyRepository,
+        PatientIdBlockRepository patientIdBlockRepository,
+        IdGeneratorSegmentRepository idGeneratorSegmentRepository,
+        IncidentRepository incidentRepository,
+        ObjectMapper objectMapper,
+        Validator validator,
+        ApplicationProperties applicationProperties
+    ) {
+        this.patientService = patientService;
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.patientIdBlockRepository = patientIdBlockRepository;
+        this.idGeneratorSegmentRepository = idGeneratorSegmentRepository;
+        this.incidentRepository = incidentRepository;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.offlineUpload = applicationProperties.getOfflineUpload();
+    }
+
+    /**
+     * Create a patient once per idempotency key.
+     * <p>
+     * The key is inserted in the transaction creating the patient, so a concurrent retry fails on its primary key
+     * rather than creating a duplicate, and then finds the key when it is retried.
+     *
+     * @param patient the entity to create.
+     * @param idempotencyKey the key chosen by the client for this creation.
+     * @return the created entity, or the one created by the first request with the key.
+     * @throws IllegalArgumentException if the key was used by another user, or for another patient.
+     * @throws org.springframework.dao.DataIntegrityViolationException if a concurrent request with the key committed first.
+     */
+    public Patient create(Patient patient, String idempotencyKey) {
+        String login = SecurityUtils.getCurrentUserLogin().orElseThrow(() -> new IllegalStateException("No current user"));
+        return create(patient, idempotencyKey, login);
+    }
+
+    /**
+     * Create a patient once per idempotency key, on behalf of a user.
+     *
+     * @param patient the entity to create.
+     * @param idempotencyKey the key chosen for this creation.
+     * @param login the login of the user who requested the creation.
+     * @return the created entity, or the one created by the first request with the key.
+     * @throws IllegalArgumentException if the key was used by another user, or for another patient.
+     * @throws org.springframework.dao.DataIntegrityViolationException if a concurrent request with the key committed first.
+     * @see #create(Patient, String)
+     */
+    public Patient create(Patient patient, String idempotencyKey, String login) {
+        log.debug("Request to save Patient : {}, with idempotency key : {}", patient, idempotencyKey);
+        String requestHash = sha256(toJson(patient));
+        Optional<IdempotencyKey> existingKey = idempotencyKeyRepository.findById(idempotencyKey);
+        if (existingKey.isPresent()) {
+            if (!existingKey.get().getCreatedBy().equals(login) || !existingKey.get().getRequestHash().equals(requestHash)) {
+                throw new IllegalArgumentException("The idempotency key was used for another request");
+            }
+            log.debug("Replaying the creation of idempotency key : {}", idempotencyKey);
+            return fromJson(existingKey.get().getResponseBody());
+        }
+        Patient result = patientService.save(patient);
+        idempotencyKeyRepository.saveAndFlush(new IdempotencyKey(idempotencyKey, login, requestHash, toJson(result)));
+        return result;
+    }
+
+    /**
+     * Reserve a block of patient ids for the current user.
+     * <p>
+     * As with the blocks allocated by Hibernate, this is done in its own transaction, so that the {@code id_generator}
+     * row is only locked for a short time.
+     *
+     * @param size the number of ids.
+     * @return the reserved block.
+     * @throws IllegalArgumentException if the size is not between 1 and the configured maximum.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public PatientIdBlock reserveIds(int size) {
+        log.debug("Request to reserve {} Patient ids", size);
+        if (size < 1 || size > offlineUpload.getMaxIdBlockSize()) {
+            throw new IllegalArgumentException("The block size must be between 1 and " + offlineUpload.getMaxIdBlockSize());
+        }
+        String login = SecurityUtils.getCurrentUserLogin().orElseThrow(() -> new IllegalStateException("No current user"));
+        // Hibernate allocates its next block from the incremented value, so it never generates the reserved ids
+        idGeneratorSegmentRepository.increment(IdGeneratorSegment.PATIENT, size);
+        long nextVal = idGeneratorSegmentRepository.findNextValBySequenceName(IdGeneratorSegment.PATIENT);
+        return patientIdBlockRepository.save(new PatientIdBlock(nextVal - size, nextVal - 1, login));
+    }
+
+    /**
+     * Insert or update a batch of patients, in one transaction.
+     *
+     * @param patients the entities, with ids from the blocks reserved by the current user.
+     * @return the persisted entities.
+     * @throws IllegalArgumentException if the batch is too large, or a patient is not valid or has an id which was not
+     * reserved by the current user.
+     */
+    public List<Patient> upload(List<Patient> patients) {
+        log.debug("Request to upload {} Patients", patients.size());
+        if (patients.size() > offlineUpload.getMaxBatchSize()) {
+            throw new IllegalArgumentException("At most " + offlineUpload.getMaxBatchSize() + " patients can be uploaded at once");
+        }
+        String login = SecurityUtils.getCurrentUserLogin().orElseThrow(() -> new IllegalStateException("No current user"));
+        List<PatientIdBlock> blocks = findBlocks(login, patients);
+        Map<Long, Boolean> existingIncidents = new HashMap<>();
+        for (int i = 0; i < patients.size(); i++) {
+            Patient patient = patients.get(i);
+            if (blocks.stream().noneMatch(block -> block.contains(patient.getId()))) {
+                throw new IllegalArgumentException("Patient " + i + ": id not reserved: " + patient.getId());
+            }
+            validate(i, patient, existingIncidents);
+        }
+        List<Patient> result = new ArrayList<>(patients.size());
+        for (Patient patient : patients) {
+            result.add(patientService.upsert(patient));
+        }
+        return result;
+    }
+
+    /**
+     * Delete the idempotency keys older than their time to live.
+     * <p>
+     * This is scheduled to get fired every hour by default.
+     */
+    @Scheduled(cron = "${application.offline-upload.idempotency-key-purge-cron:0 0 * * * *}")
+    public void purgeIdempotencyKeys() {
+        Instant before = Instant.now().minusSeconds(offlineUpload.getIdempotencyKeyTimeToLiveSeconds());
+        int purged = idempotencyKeyRepository.deleteByCreatedDateBefore(before);
+        log.debug("Purged {} idempotency keys", purged);
+    }
+
+    private List<PatientIdBlock> findBlocks(String login, List<Patient> patients) {
+        List<Long> ids = patients.stream().map(Patient::getId).filter(id -> id != null).collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return patientIdBlockRepository.findAllByReservedByOverlapping(
+            login,
+            ids.stream().min(Long::compare).get(),
+            ids.stream().max(Long::compare).get()
+        );
+    }
+
+    private void validate(int index, Patient patient, Map<Long, Boolean> existingIncidents) {
+        Set<ConstraintViolation<Patient>> violations = validator.validate(patient);
+        if (!violations.isEmpty()) {
+            throw new IllegalArgumentException(
+                "Patient " +
+                index +
+                ": " +
+                violations
+                    .stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", "))
+            );
+        }
+        if (patient.getIncident() != null) {
+            Long incidentId = patient.getIncident().getId();
+            if (incidentId == null || !existingIncidents.computeIfAbsent(incidentId, incidentRepository::existsById)) {
+                throw new IllegalArgumentException("Patient " + index + ": incident not found: " + incidentId);
+            }
+        }
+    }
+
+    private String toJson(Patient patient) {
+        try {
+            return objectMapper.writeValueAsString(patient);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize the patient", e);
+        }
+    }
+
+    private Patient fromJson(String json) {
+        try {
+            return objectMapper.readValue(json, Patient.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not deserialize the patient", e);
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
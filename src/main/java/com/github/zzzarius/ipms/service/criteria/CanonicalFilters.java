@@ -0,0 +1,58 @@
+package com.github.zzzarius.ipms.service.criteria;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.TreeSet;
+import tech.jhipster.service.filter.Filter;
+import tech.jhipster.service.filter.StringFilter;
+
+/**
+ * Canonical copies of the filters, so that two criteria matching the same rows through the same operators are equal.
+ */
+final class CanonicalFilters {
+
+    private CanonicalFilters() {}
+
+    /**
+     * Copy a filter with its {@code in} and {@code notIn} values sorted and without duplicates, and with the
+     * {@code contains} and {@code doesNotContain} values of a {@link StringFilter} upper-cased, as they are compared.
+     *
+     * @param filter the filter, can be {@code null}.
+     * @return the canonical copy, {@code null} if the filter is {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    static <F extends Filter<?>> F canonical(F filter) {
+        if (filter == null) {
+            return null;
+        }
+        F canonical = (F) filter.copy();
+        sortValues((Filter<?>) canonical);
+        if (canonical instanceof StringFilter) {
+            StringFilter stringFilter = (StringFilter) canonical;
+            if (stringFilter.getContains() != null) {
+                stringFilter.setContains(stringFilter.getContains().toUpperCase());
+            }
+            if (stringFilter.getDoesNotContain() != null) {
+                stringFilter.setDoesNotContain(stringFilter.getDoesNotContain().toUpperCase());
+            }
+        }
+        return canonical;
+    }
+
+    private static <T> void sortValues(Filter<T> filter) {
+        filter.setIn(sorted(filter.getIn()));
+        filter.setNotIn(sorted(filter.getNotIn()));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static <T> List<T> sorted(List<T> values) {
+        if (values == null) {
+            return null;
+        }
+        if (values.stream().allMatch(value -> value instanceof Comparable)) {
+            return new ArrayList<>(new TreeSet(values));
+        }
+        return new ArrayList<>(new LinkedHashSet<>(values));
+    }
+}
@@ -47,6 +47,20 @@ public class IncidentCriteria implements Serializable, Criteria {
         return new IncidentCriteria(this);
     }
 
+    /**
+     * Return a copy which matches the same entities, and is equal to the copies of the equivalent criteria: the
+     * {@code in} lists are sorted without duplicates, and the {@code contains} values are upper-cased.
+     * @return the canonical copy, to be used as a cache key.
+     */
+    public IncidentCriteria canonical() {
+        IncidentCriteria canonical = new IncidentCriteria();
+        canonical.id = CanonicalFilters.canonical(id);
+        canonical.name = CanonicalFilters.canonical(name);
+        canonical.startDate = CanonicalFilters.canonical(startDate);
+        canonical.patientId = CanonicalFilters.canonical(patientId);
+        return canonical;
+    }
+
     public LongFilter getId() {
         return id;
     }
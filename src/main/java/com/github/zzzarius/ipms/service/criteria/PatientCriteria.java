@@ -66,6 +66,22 @@ public class PatientCriteria implements Serializable, Criteria {
         return new PatientCriteria(this);
     }
 
+    /**
+     * Return a copy which matches the same entities, and is equal to the copies of the equivalent criteria: the
+     * {@code in} lists are sorted without duplicates, and the {@code contains} values are upper-cased.
+     * @return the canonical copy, to be used as a cache key.
+     */
+    public PatientCriteria canonical() {
+        PatientCriteria canonical = new PatientCriteria();
+        canonical.id = CanonicalFilters.canonical(id);
+        canonical.firstName = CanonicalFilters.canonical(firstName);
+        canonical.lastName = CanonicalFilters.canonical(lastName);
+        canonical.triageCategory = CanonicalFilters.canonical(triageCategory);
+        canonical.incidentId = CanonicalFilters.canonical(incidentId);
+        canonical.incidentName = CanonicalFilters.canonical(incidentName);
+        return canonical;
+    }
+
     public LongFilter getId() {
         return id;
     }
@@ -0,0 +1,40 @@
+package com.github.zzzarius.ipms.service.dto;
+
+import com.github.zzzarius.ipms.domain.enumeration.Category;
+
+/**
+ * A DTO representing the change applied to all the patients matching some criteria.
+ * <p>
+ * The {@code null} fields are left unchanged.
+ */
+public class PatientBulkUpdateDTO {
+
+    private Category triageCategory;
+
+    private Long incidentId;
+
+    public Category getTriageCategory() {
+        return triageCategory;
+    }
+
+    public void setTriageCategory(Category triageCategory) {
+        this.triageCategory = triageCategory;
+    }
+
+    public Long getIncidentId() {
+        return incidentId;
+    }
+
+    public void setIncidentId(Long incidentId) {
+        this.incidentId = incidentId;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "PatientBulkUpdateDTO{" +
+            "triageCategory='" + getTriageCategory() + "'" +
+            ", incidentId=" + getIncidentId() +
+            "}";
+    }
+}
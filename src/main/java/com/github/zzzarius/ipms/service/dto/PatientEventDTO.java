@@ -0,0 +1,146 @@
+package com.github.zzzarius.ipms.service.dto;
+
+import com.github.zzzarius.ipms.domain.Patient;
+import com.github.zzzarius.ipms.domain.enumeration.Category;
+import java.time.Instant;
+
+/**
+ * A DTO representing a committed change of a patient, sent to the clients following its incidents.
+ */
+public class PatientEventDTO {
+
+    /**
+     * The kind of change.
+     */
+    public enum Type {
+        CREATED,
+        UPDATED,
+        /**
+         * An update which changed the triage category.
+         */
+        TRIAGE_CHANGED,
+        DELETED,
+        /**
+         * Patients changed in bulk, or events which can't be resumed anymore: the client must reload the patients.
+         */
+        RELOAD,
+    }
+
+    private long id;
+
+    private final Type type;
+
+    private final Long patientId;
+
+    private final Long incidentId;
+
+    private final Long previousIncidentId;
+
+    private final Category triageCategory;
+
+    private final Category previousTriageCategory;
+
+    private final Instant timestamp = Instant.now();
+
+    private PatientEventDTO(
+        Type type,
+        Long patientId,
+        Long incidentId,
+        Long previousIncidentId,
+        Category triageCategory,
+        Category previousTriageCategory
+    ) {
+        this.type = type;
+        this.patientId = patientId;
+        this.incidentId = incidentId;
+        this.previousIncidentId = previousIncidentId;
+        this.triageCategory = triageCategory;
+        this.previousTriageCategory = previousTriageCategory;
+    }
+
+    public static PatientEventDTO created(Patient patient) {
+        return new PatientEventDTO(Type.CREATED, patient.getId(), incidentId(patient), null, patient.getTriageCategory(), null);
+    }
+
+    /**
+     * Create the event of an update, {@link Type#TRIAGE_CHANGED} if the triage category changed.
+     *
+     * @param patient the updated patient.
+     * @param previousIncidentId the id of the incident of the patient before the update.
+     * @param previousTriageCategory the triage category of the patient before the update.
+     * @return the event.
+     */
+    public static PatientEventDTO updated(Patient patient, Long previousIncidentId, Category previousTriageCategory) {
+        return new PatientEventDTO(
+            patient.getTriageCategory() == previousTriageCategory ? Type.UPDATED : Type.TRIAGE_CHANGED,
+            patient.getId(),
+            incidentId(patient),
+            previousIncidentId,
+            patient.getTriageCategory(),
+            previousTriageCategory
+        );
+    }
+
+    public static PatientEventDTO deleted(Patient patient) {
+        return new PatientEventDTO(Type.DELETED, patient.getId(), null, incidentId(patient), null, patient.getTriageCategory());
+    }
+
+    public static PatientEventDTO reload(Long incidentId) {
+        return new PatientEventDTO(Type.RELOAD, null, incidentId, null, null, null);
+    }
+
+    private static Long incidentId(Patient patient) {
+        return patient.getIncident() == null ? null : patient.getIncident().getId();
+    }
+
+    /**
+     * The id of the event, increasing in the order of the commits, and sent as the server-sent event id.
+     */
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Long getPatientId() {
+        return patientId;
+    }
+
+    public Long getIncidentId() {
+        return incidentId;
+    }
+
+    public Long getPreviousIncidentId() {
+        return previousIncidentId;
+    }
+
+    public Category getTriageCategory() {
+        return triageCategory;
+    }
+
+    public Category getPreviousTriageCategory() {
+        return previousTriageCategory;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "PatientEventDTO{" +
+            "id=" + getId() +
+            ", type=" + getType() +
+            ", patientId=" + getPatientId() +
+            ", incidentId=" + getIncidentId() +
+            ", previousIncidentId=" + getPreviousIncidentId() +
+            "}";
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.zzzarius.ipms.service.dto;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A DTO representing the progress of a bulk patient import.
+ * <p>
+ * The counters are updated by the import thread while the DTO is read by the REST clients.
+ */
+public class PatientImportDTO {
+
+    /**
+     * The state of an import.
+     */
+    public enum Status {
+        RUNNING,
+        COMPLETED,
+        FAILED,
+    }
+
+    /**
+     * A row which could not be imported.
+     */
+    public static class RowError {
+
+        private final long row;
+
+        private final String message;
+
+        public RowError(long row, String message) {
+            this.row = row;
+            this.message = message;
+        }
+
+        public long getRow() {
+            return row;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    private final String id;
+
+    private final String format;
+
+    private final Instant startedAt = Instant.now();
+
+    private final List<RowError> errors = new CopyOnWriteArrayList<>();
+
+    private volatile Status status = Status.RUNNING;
+
+    private volatile long processedRows;
+
+    private volatile long importedRows;
+
+    private volatile long failedRows;
+
+    private volatile String message;
+
+    private volatile Instant finishedAt;
+
+    public PatientImportDTO(String id, String format) {
+        this.id = id;
+        this.format = format;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getProcessedRows() {
+        return processedRows;
+    }
+
+    public long getImportedRows() {
+        return importedRows;
+    }
+
+    public long getFailedRows() {
+        return failedRows;
+    }
+
+    /**
+     * @return the first row errors, see {@code application.bulk-import.max-errors}.
+     */
+    public List<RowError> getErrors() {
+        return errors;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void addImportedRows(long count) {
+        this.processedRows += count;
+        this.importedRows += count;
+    }
+
+    public void addRowError(long row, String message, int maxErrors) {
+        this.processedRows++;
+        this.failedRows++;
+        if (errors.size() < maxErrors) {
+            errors.add(new RowError(row, message));
+        }
+    }
+
+    public void complete() {
+        this.finishedAt = Instant.now();
+        this.status = Status.COMPLETED;
+    }
+
+    public void fail(String message) {
+        this.message = message;
+        this.finishedAt = Instant.now();
+        this.status = Status.FAILED;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "PatientImportDTO{" +
+            "id='" + id + "'" +
+            ", format='" + format + "'" +
+            ", status=" + status +
+            ", processedRows=" + processedRows +
+            ", importedRows=" + importedRows +
+            ", failedRows=" + failedRows +
+            "}";
+    }
+}
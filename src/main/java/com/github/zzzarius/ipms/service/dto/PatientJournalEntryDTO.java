@@ -0,0 +1,63 @@
+package com.github.zzzarius.ipms.service.dto;
+
+/**
+ * A DTO representing a patient creation written to the local journal while the database was unavailable.
+ */
+public class PatientJournalEntryDTO {
+
+    private String idempotencyKey;
+
+    private String login;
+
+    private String patient;
+
+    public PatientJournalEntryDTO() {}
+
+    public PatientJournalEntryDTO(String idempotencyKey, String login, String patient) {
+        this.idempotencyKey = idempotencyKey;
+        this.login = login;
+        this.patient = patient;
+    }
+
+    /**
+     * The key creating the patient once, chosen by the client or generated.
+     */
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    /**
+     * The user who requested the creation.
+     */
+    public String getLogin() {
+        return login;
+    }
+
+    public void setLogin(String login) {
+        this.login = login;
+    }
+
+    /**
+     * The patient, as serialized before the failed creation.
+     */
+    public String getPatient() {
+        return patient;
+    }
+
+    public void setPatient(String patient) {
+        this.patient = patient;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "PatientJournalEntryDTO{" +
+            "idempotencyKey='" + getIdempotencyKey() + "'" +
+            ", login='" + getLogin() + "'" +
+            "}";
+    }
+}
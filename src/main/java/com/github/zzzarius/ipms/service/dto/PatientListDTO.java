@@ -0,0 +1,141 @@
+package com.github.zzzarius.ipms.service.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.github.zzzarius.ipms.domain.Incident;
+import com.github.zzzarius.ipms.domain.Patient;
+import com.github.zzzarius.ipms.domain.enumeration.Category;
+
+/**
+ * A DTO representing a patient in a list, with only the id and name of its incident.
+ */
+public class PatientListDTO {
+
+    /**
+     * The incident of a listed patient.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class IncidentDTO {
+
+        private Long id;
+
+        private String name;
+
+        public IncidentDTO() {
+            // Empty constructor needed for Jackson.
+        }
+
+        public IncidentDTO(Incident incident) {
+            this.id = incident.getId();
+            this.name = incident.getName();
+        }
+
+        public IncidentDTO(Long id) {
+            this.id = id;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    private Long id;
+
+    private String firstName;
+
+    private String lastName;
+
+    private Category triageCategory;
+
+    private IncidentDTO incident;
+
+    public PatientListDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public PatientListDTO(Patient patient) {
+        this.id = patient.getId();
+        this.firstName = patient.getFirstName();
+        this.lastName = patient.getLastName();
+        this.triageCategory = patient.getTriageCategory();
+        this.incident = patient.getIncident() == null ? null : new IncidentDTO(patient.getIncident());
+    }
+
+    /**
+     * A patient with only the id of its incident, for the lists which are not refreshed when the incident is renamed.
+     *
+     * @param patient the patient, whose incident is not loaded.
+     * @return the listed patient.
+     */
+    public static PatientListDTO withIncidentId(Patient patient) {
+        PatientListDTO patientListDTO = new PatientListDTO();
+        patientListDTO.id = patient.getId();
+        patientListDTO.firstName = patient.getFirstName();
+        patientListDTO.lastName = patient.getLastName();
+        patientListDTO.triageCategory = patient.getTriageCategory();
+        patientListDTO.incident = patient.getIncident() == null ? null : new IncidentDTO(patient.getIncident().getId());
+        return patientListDTO;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public void setFirstName(String firstName) {
+        this.firstName = firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public void setLastName(String lastName) {
+        this.lastName = lastName;
+    }
+
+    public Category getTriageCategory() {
+        return triageCategory;
+    }
+
+    public void setTriageCategory(Category triageCategory) {
+        this.triageCategory = triageCategory;
+    }
+
+    public IncidentDTO getIncident() {
+        return incident;
+    }
+
+    public void setIncident(IncidentDTO incident) {
+        this.incident = incident;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "PatientListDTO{" +
+            "id=" + getId() +
+            ", firstName='" + getFirstName() + "'" +
+            ", lastName='" + getLastName() + "'" +
+            ", triageCategory='" + getTriageCategory() + "'" +
+            "}";
+    }
+}
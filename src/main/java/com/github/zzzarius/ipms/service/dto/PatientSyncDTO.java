@@ -0,0 +1,63 @@
+package com.github.zzzarius.ipms.service.dto;
+
+import java.util.List;
+
+/**
+ * A DTO representing the patient changes following a delta sync token.
+ */
+public class PatientSyncDTO {
+
+    private final List<PatientListDTO> patients;
+
+    private final List<Long> deletedPatientIds;
+
+    private final String token;
+
+    private final boolean hasMore;
+
+    public PatientSyncDTO(List<PatientListDTO> patients, List<Long> deletedPatientIds, String token, boolean hasMore) {
+        this.patients = patients;
+        this.deletedPatientIds = deletedPatientIds;
+        this.token = token;
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * The patients created or updated after the token, as listed but with only the id of their incident.
+     */
+    public List<PatientListDTO> getPatients() {
+        return patients;
+    }
+
+    /**
+     * The ids of the patients deleted after the token.
+     */
+    public List<Long> getDeletedPatientIds() {
+        return deletedPatientIds;
+    }
+
+    /**
+     * The token to send for the next changes.
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Whether more changes can be read right away with the token, rather than at the next sync.
+     */
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "PatientSyncDTO{" +
+            "patients=" + getPatients().size() +
+            ", deletedPatientIds=" + getDeletedPatientIds().size() +
+            ", token='" + getToken() + "'" +
+            ", hasMore=" + isHasMore() +
+            "}";
+    }
+}
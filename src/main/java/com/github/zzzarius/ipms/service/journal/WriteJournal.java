@@ -0,0 +1,168 @@
+package com.github.zzzarius.ipms.service.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of records in a memory-mapped file, which survives the crashes of the application.
+ * <p>
+ * The file starts with the offset of the first record not consumed yet. Each record is its length, the CRC32 of its
+ * content, then its content, and is forced to the disk before {@link #append(byte[])} returns. When opened, the
+ * records are scanned from the consumed offset up to the first empty one, or the first corrupted one, which is the
+ * tail of an append interrupted by a crash and is erased. Once all the records are consumed, the file is reused from
+ * its start.
+ * <p>
+ * The records are consumed in order by one reader, which consumes a record after having applied it: a crash in
+ * between applies it again, so applying a record must be idempotent.
+ */
+public final class WriteJournal implements Closeable {
+
+    private static final int HEADER_SIZE = Long.BYTES;
+
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + Long.BYTES;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    private final int capacity;
+
+    private int consumedOffset;
+
+    private int endOffset;
+
+    private int depth;
+
+    /**
+     * Open a journal, creating its file if needed.
+     *
+     * @param file the file of the journal.
+     * @param capacity the size of the file, which bounds the records not consumed yet.
+     * @throws IOException if the file can't be opened or mapped.
+     */
+    public WriteJournal(Path file, int capacity) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.capacity = (int) Math.max(capacity, channel.size());
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.capacity);
+        recover();
+    }
+
+    private void recover() {
+        long consumed = buffer.getLong(0);
+        consumedOffset = consumed < HEADER_SIZE || consumed > capacity ? HEADER_SIZE : (int) consumed;
+        endOffset = consumedOffset;
+        depth = 0;
+        while (true) {
+            int length = endOffset + RECORD_HEADER_SIZE <= capacity ? buffer.getInt(endOffset) : 0;
+            if (length == 0) {
+                return;
+            }
+            boolean intact =
+                length > 0 &&
+                length <= capacity - endOffset - RECORD_HEADER_SIZE &&
+                buffer.getLong(endOffset + Integer.BYTES) == crc(read(endOffset + RECORD_HEADER_SIZE, length));
+            if (!intact) {
+                // Torn by a crash, and never acknowledged
+                erase(endOffset, capacity);
+                buffer.force();
+                return;
+            }
+            endOffset += RECORD_HEADER_SIZE + length;
+            depth++;
+        }
+    }
+
+    /**
+     * Append a record, and force it to the disk.
+     *
+     * @param record the content of the record, not empty.
+     * @throws IllegalStateException if the journal is full.
+     */
+    public synchronized void append(byte[] record) {
+        if (record.length == 0) {
+            throw new IllegalArgumentException("Empty record");
+        }
+        if (record.length > capacity - endOffset - RECORD_HEADER_SIZE) {
+            throw new IllegalStateException("The journal is full");
+        }
+        buffer.duplicate().position(endOffset + RECORD_HEADER_SIZE).put(record);
+        buffer.putLong(endOffset + Integer.BYTES, crc(record));
+        buffer.putInt(endOffset, record.length);
+        buffer.force();
+        endOffset += RECORD_HEADER_SIZE + record.length;
+        depth++;
+    }
+
+    /**
+     * @return the first record not consumed yet, empty if there is none.
+     */
+    public synchronized Optional<byte[]> peek() {
+        if (depth == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(read(consumedOffset + RECORD_HEADER_SIZE, buffer.getInt(consumedOffset)));
+    }
+
+    /**
+     * Consume the first record, once it is applied.
+     *
+     * @throws IllegalStateException if there is no record to consume.
+     */
+    public synchronized void consume() {
+        if (depth == 0) {
+            throw new IllegalStateException("No record to consume");
+        }
+        consumedOffset += RECORD_HEADER_SIZE + buffer.getInt(consumedOffset);
+        depth--;
+        if (depth == 0) {
+            // Erased before the offset is reset, so that a crash in between can't replay the consumed records
+            erase(HEADER_SIZE, endOffset);
+            buffer.force();
+            consumedOffset = HEADER_SIZE;
+            endOffset = HEADER_SIZE;
+        }
+        buffer.putLong(0, consumedOffset);
+        buffer.force();
+    }
+
+    /**
+     * @return the number of records not consumed yet.
+     */
+    public synchronized int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private byte[] read(int offset, int length) {
+        byte[] content = new byte[length];
+        buffer.duplicate().position(offset).get(content);
+        return content;
+    }
+
+    private static long crc(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+    private void erase(int from, int to) {
+        for (int offset = from; offset < to; offset++) {
+            buffer.put(offset, (byte) 0);
+        }
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Local journal of the writes accepted while the database is unavailable, replayed once it recovers.
+ */
+package com.github.zzzarius.ipms.service.journal;
@@ -0,0 +1,218 @@
+package com.github.zzzarius.ipms.service.pagination;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import org.springframework.data.domain.Sort;
+
+/**
+ * Position in a keyset (seek) paginated result.
+ * <p>
+ * A cursor holds the sort property and direction, plus the sort value and the id of the last row
+ * of the previous page. The next page is then fetched with a range predicate on {@code (property, id)}
+ * instead of an {@code OFFSET}, so page N costs the same as page 1.
+ * <p>
+ * A cursor without id is the start of the result.
+ */
+public final class KeysetCursor implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String ID_PROPERTY = "id";
+
+    private static final String SEPARATOR = ",";
+
+    private final String property;
+
+    private final Sort.Direction direction;
+
+    private final Long id;
+
+    private final Object value;
+
+    private KeysetCursor(String property, Sort.Direction direction, Long id, Object value) {
+        this.property = property;
+        this.direction = direction;
+        this.id = id;
+        this.value = value;
+    }
+
+    /**
+     * Build the cursor of a keyset paginated request.
+     *
+     * @param after the opaque cursor sent by the client, blank for the first page.
+     * @param sort the requested sort, only used for the first page.
+     * @param sortableProperties the properties which can be used as sort key, besides the id, with their type.
+     * @return the cursor.
+     * @throws IllegalArgumentException if the cursor can't be decoded or the sort is not supported.
+     */
+    public static KeysetCursor of(String after, Sort sort, Map<String, Class<?>> sortableProperties) {
+        return (after == null || after.isBlank()) ? start(sort, sortableProperties) : decode(after, sortableProperties);
+    }
+
+    /**
+     * Return the cursor positioned after the given row.
+     *
+     * @param id the id of the last row.
+     * @param sortValue the value of the sort property of the last row.
+     * @return the next cursor.
+     */
+    public KeysetCursor next(Long id, Object sortValue) {
+        Objects.requireNonNull(id, "id must not be null");
+        return new KeysetCursor(property, direction, id, ID_PROPERTY.equals(property) ? null : sortValue);
+    }
+
+    private static KeysetCursor start(Sort sort, Map<String, Class<?>> sortableProperties) {
+        String property = ID_PROPERTY;
+        Sort.Direction direction = Sort.Direction.ASC;
+        Iterator<Sort.Order> orders = sort.iterator();
+        if (orders.hasNext()) {
+            Sort.Order order = orders.next();
+            property = order.getProperty();
+            direction = order.getDirection();
+            if (orders.hasNext()) {
+                Sort.Order tieBreaker = orders.next();
+                if (!ID_PROPERTY.equals(tieBreaker.getProperty()) || tieBreaker.getDirection() != direction || orders.hasNext()) {
+                    throw new IllegalArgumentException("Keyset pagination only supports one sort property, followed by id");
+                }
+            }
+        }
+        checkSortable(property, sortableProperties);
+        return new KeysetCursor(property, direction, null, null);
+    }
+
+    private static KeysetCursor decode(String token, Map<String, Class<?>> sortableProperties) {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed keyset cursor", e);
+        }
+        String[] parts = decoded.split(SEPARATOR, 4);
+        if (parts.length < 3) {
+            throw new IllegalArgumentException("Malformed keyset cursor");
+        }
+        String property = parts[0];
+        checkSortable(property, sortableProperties);
+        try {
+            Object value = parts.length == 4 ? parseValue(parts[3], sortableProperties.get(property)) : null;
+            return new KeysetCursor(property, Sort.Direction.fromString(parts[1]), Long.valueOf(parts[2]), value);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed keyset cursor", e);
+        }
+    }
+
+    private static void checkSortable(String property, Map<String, Class<?>> sortableProperties) {
+        if (!ID_PROPERTY.equals(property) && !sortableProperties.containsKey(property)) {
+            throw new IllegalArgumentException("Unsupported keyset sort property: " + property);
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Object parseValue(String raw, Class<?> type) {
+        if (type == null || type == String.class) {
+            return raw;
+        }
+        if (type.isEnum()) {
+            return Enum.valueOf((Class<Enum>) type, raw);
+        }
+        if (type == Long.class) {
+            return Long.valueOf(raw);
+        }
+        if (type == Integer.class) {
+            return Integer.valueOf(raw);
+        }
+        if (type == LocalDate.class) {
+            return LocalDate.parse(raw);
+        }
+        if (type == Instant.class) {
+            return Instant.parse(raw);
+        }
+        throw new IllegalArgumentException("Unsupported keyset sort type: " + type.getName());
+    }
+
+    private static String formatValue(Object value) {
+        return value instanceof Enum ? ((Enum<?>) value).name() : value.toString();
+    }
+
+    /**
+     * Encode the cursor as an opaque, URL safe, token.
+     *
+     * @return the token.
+     */
+    public String encode() {
+        StringBuilder token = new StringBuilder(property).append(SEPARATOR).append(direction).append(SEPARATOR).append(id);
+        if (value != null) {
+            token.append(SEPARATOR).append(formatValue(value));
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the sort matching this cursor, with the id as tie-breaker.
+     */
+    public Sort toSort() {
+        if (ID_PROPERTY.equals(property)) {
+            return Sort.by(direction, ID_PROPERTY);
+        }
+        return Sort.by(direction, property, ID_PROPERTY);
+    }
+
+    public boolean isStart() {
+        return id == null;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    public Sort.Direction getDirection() {
+        return direction;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        KeysetCursor that = (KeysetCursor) o;
+        return (
+            Objects.equals(property, that.property) &&
+            direction == that.direction &&
+            Objects.equals(id, that.id) &&
+            Objects.equals(value, that.value)
+        );
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(property, direction, id, value);
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "KeysetCursor{" +
+            "property='" + property + "'" +
+            ", direction=" + direction +
+            ", id=" + id +
+            ", value='" + value + "'" +
+            "}";
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.zzzarius.ipms.service.pagination;
+
+import java.util.List;
+import java.util.Optional;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.data.domain.Slice;
+
+/**
+ * A page of a keyset (seek) paginated result, with the cursor of the next page if there is one.
+ *
+ * @param <T> the entity type.
+ */
+public final class KeysetPage<T> {
+
+    private final List<T> content;
+
+    private final KeysetCursor nextCursor;
+
+    private KeysetPage(List<T> content, KeysetCursor nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Build the page from a {@link Slice} fetched with {@link KeysetSpecification#after(KeysetCursor)}
+     * and {@link KeysetCursor#toSort()}.
+     *
+     * @param slice the fetched rows.
+     * @param cursor the cursor the slice was fetched with.
+     * @param <T> the entity type.
+     * @return the page.
+     */
+    public static <T> KeysetPage<T> of(Slice<T> slice, KeysetCursor cursor) {
+        List<T> content = slice.getContent();
+        KeysetCursor nextCursor = null;
+        if (slice.hasNext() && !content.isEmpty()) {
+            BeanWrapper last = PropertyAccessorFactory.forBeanPropertyAccess(content.get(content.size() - 1));
+            nextCursor = cursor.next((Long) last.getPropertyValue(KeysetCursor.ID_PROPERTY), last.getPropertyValue(cursor.getProperty()));
+        }
+        return new KeysetPage<>(content, nextCursor);
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public Optional<KeysetCursor> getNextCursor() {
+        return Optional.ofNullable(nextCursor);
+    }
+}
@@ -0,0 +1,47 @@
+package com.github.zzzarius.ipms.service.pagination;
+
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+/**
+ * Factory for the {@link Specification} selecting the rows after a {@link KeysetCursor}.
+ * <p>
+ * Both H2 and MySQL sort {@code NULL} before any other value, so {@code NULL} sort values are
+ * handled as the lowest ones.
+ */
+public final class KeysetSpecification {
+
+    private KeysetSpecification() {}
+
+    /**
+     * Return the {@link Specification} matching the rows after the cursor, in the cursor order.
+     *
+     * @param cursor the position of the last row of the previous page.
+     * @param <T> the entity type.
+     * @return the specification, or {@code null} if the cursor is at the start.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Specification<T> after(KeysetCursor cursor) {
+        if (cursor.isStart()) {
+            return null;
+        }
+        boolean ascending = cursor.getDirection().isAscending();
+        return (root, query, cb) -> {
+            Path<Long> id = root.get(KeysetCursor.ID_PROPERTY);
+            Predicate idAfter = ascending ? cb.greaterThan(id, cursor.getId()) : cb.lessThan(id, cursor.getId());
+            if (KeysetCursor.ID_PROPERTY.equals(cursor.getProperty())) {
+                return idAfter;
+            }
+            Path<Comparable<Object>> key = root.get(cursor.getProperty());
+            if (cursor.getValue() == null) {
+                Predicate sameKey = cb.and(cb.isNull(key), idAfter);
+                return ascending ? cb.or(sameKey, cb.isNotNull(key)) : sameKey;
+            }
+            Comparable<Object> value = (Comparable<Object>) cursor.getValue();
+            Predicate keyAfter = ascending ? cb.greaterThan(key, value) : cb.lessThan(key, value);
+            Predicate after = cb.or(keyAfter, cb.and(cb.equal(key, value), idAfter));
+            return ascending ? after : cb.or(after, cb.isNull(key));
+        };
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Keyset (seek) pagination support.
+ */
+package com.github.zzzarius.ipms.service.pagination;
@@ -0,0 +1,85 @@
+package com.github.zzzarius.ipms.service.projection;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The attributes and associations requested with the {@code fields} and {@code expand} parameters of a list request.
+ * <p>
+ * The {@code id} is always part of the fieldset. An association is only read when expanded, and only with its
+ * listed attributes. An expansion without attributes is not read from the entity table, and is left to the caller.
+ */
+public final class SparseFieldset {
+
+    public static final String ID_FIELD = "id";
+
+    private final List<String> paths;
+
+    private final Set<String> expansions;
+
+    private SparseFieldset(List<String> paths, Set<String> expansions) {
+        this.paths = paths;
+        this.expansions = expansions;
+    }
+
+    /**
+     * Build the fieldset of a list request.
+     *
+     * @param fields the comma separated attributes requested by the client.
+     * @param expand the associations requested by the client, can be {@code null}.
+     * @param allowedFields the attributes which can be requested.
+     * @param allowedExpansions the associations which can be requested, with the attributes read for each one.
+     * @return the fieldset.
+     * @throws IllegalArgumentException if an attribute or an association is not supported.
+     */
+    public static SparseFieldset of(
+        String fields,
+        List<String> expand,
+        Set<String> allowedFields,
+        Map<String, List<String>> allowedExpansions
+    ) {
+        Set<String> paths = new LinkedHashSet<>();
+        paths.add(ID_FIELD);
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!allowedFields.contains(name)) {
+                throw new IllegalArgumentException("Unsupported field: " + name);
+            }
+            paths.add(name);
+        }
+        Set<String> expansions = new LinkedHashSet<>();
+        if (expand != null) {
+            for (String association : expand) {
+                String name = association.trim();
+                if (!allowedExpansions.containsKey(name)) {
+                    throw new IllegalArgumentException("Unsupported expansion: " + name);
+                }
+                expansions.add(name);
+                allowedExpansions.get(name).forEach(attribute -> paths.add(name + "." + attribute));
+            }
+        }
+        return new SparseFieldset(List.copyOf(paths), Collections.unmodifiableSet(expansions));
+    }
+
+    /**
+     * @return the attribute paths to read, see {@link com.github.zzzarius.ipms.repository.ProjectionSpecificationExecutor}.
+     */
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    public boolean isExpanded(String association) {
+        return expansions.contains(association);
+    }
+
+    @Override
+    public String toString() {
+        return "SparseFieldset{paths=" + paths + ", expansions=" + expansions + "}";
+    }
+}
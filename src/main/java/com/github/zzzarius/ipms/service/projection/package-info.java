@@ -0,0 +1,4 @@
+/**
+ * Sparse fieldsets support, to read and return only the requested attributes of the entities.
+ */
+package com.github.zzzarius.ipms.service.projection;
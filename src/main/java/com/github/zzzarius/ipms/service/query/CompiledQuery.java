@@ -0,0 +1,97 @@
+package com.github.zzzarius.ipms.service.query;
+
+import java.util.List;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.support.PageableExecutionUtils;
+
+/**
+ * A query compiled by {@link CriteriaQueryCompiler}, bound to the filter values of one request.
+ *
+ * @param <ENTITY> the type of the queried entity.
+ */
+public final class CompiledQuery<ENTITY> {
+
+    private final EntityManager entityManager;
+
+    private final Class<ENTITY> entityClass;
+
+    private final CriteriaQueryCompiler.QueryPlan plan;
+
+    private final Object[] values;
+
+    CompiledQuery(EntityManager entityManager, Class<ENTITY> entityClass, CriteriaQueryCompiler.QueryPlan plan, Object[] values) {
+        this.entityManager = entityManager;
+        this.entityClass = entityClass;
+        this.plan = plan;
+        this.values = values;
+    }
+
+    /**
+     * @return the matching entities, in the compiled order.
+     */
+    public List<ENTITY> findAll() {
+        return bind(entityManager.createQuery(plan.selectQuery, entityClass)).getResultList();
+    }
+
+    /**
+     * @param pageable the page to read, in the compiled order.
+     * @return the page of the matching entities, only counted when needed.
+     */
+    public Page<ENTITY> findAll(Pageable pageable) {
+        TypedQuery<ENTITY> query = bind(entityManager.createQuery(plan.selectQuery, entityClass));
+        if (pageable.isPaged()) {
+            query.setFirstResult((int) pageable.getOffset());
+            query.setMaxResults(pageable.getPageSize());
+        }
+        return PageableExecutionUtils.getPage(query.getResultList(), pageable, this::count);
+    }
+
+    /**
+     * @param pageable the page to read, in the compiled order.
+     * @return the slice of the matching entities, reading one more row to know whether there is a next one.
+     */
+    public Slice<ENTITY> findSlice(Pageable pageable) {
+        TypedQuery<ENTITY> query = bind(entityManager.createQuery(plan.selectQuery, entityClass));
+        if (pageable.isUnpaged()) {
+            return new SliceImpl<>(query.getResultList(), pageable, false);
+        }
+        query.setFirstResult((int) pageable.getOffset());
+        query.setMaxResults(pageable.getPageSize() + 1);
+        List<ENTITY> content = query.getResultList();
+        boolean hasNext = content.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? content.subList(0, pageable.getPageSize()) : content, pageable, hasNext);
+    }
+
+    /**
+     * @param fetchSize the number of rows fetched from the database at once.
+     * @return the read-only matching entities, in the compiled order, read with a forward-only cursor.
+     */
+    public Stream<ENTITY> stream(int fetchSize) {
+        TypedQuery<ENTITY> query = bind(entityManager.createQuery(plan.selectQuery, entityClass));
+        query.setHint(QueryHints.HINT_FETCH_SIZE, fetchSize);
+        query.setHint(QueryHints.HINT_READONLY, true);
+        return query.getResultStream();
+    }
+
+    /**
+     * @return the number of matching entities.
+     */
+    public long count() {
+        return bind(entityManager.createQuery(plan.countQuery, Long.class)).getSingleResult();
+    }
+
+    private <Q extends Query> Q bind(Q query) {
+        for (int i = 0; i < plan.parameters.length; i++) {
+            query.setParameter(plan.parameterNames[i], values[plan.parameters[i]]);
+        }
+        return query;
+    }
+}
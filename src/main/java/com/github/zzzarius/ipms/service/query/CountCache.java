@@ -0,0 +1,159 @@
+package com.github.zzzarius.ipms.service.query;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tech.jhipster.service.filter.Filter;
+
+/**
+ * In-memory cache of the counts of the criteria of an entity, evicted by the writes which can change them.
+ * <p>
+ * The keys must be canonical copies of the criteria, which are not modified afterwards. The evictions are applied once
+ * the writing transaction is committed, and a count which was running during an eviction is not cached, so that a
+ * cached count never predates a committed write of this instance. The time to live bounds the staleness caused by the
+ * writes of the other instances.
+ * <p>
+ * A count read from a replica database is only cached when no eviction happened during the tolerated replication lag
+ * before it, as the replica may not have applied the evicting write yet.
+ *
+ * @param <CRITERIA> the type of the counted criteria.
+ */
+public final class CountCache<CRITERIA> {
+
+    private static final class Entry {
+
+        private final long count;
+
+        private final long expiresAt;
+
+        private Entry(long count, long expiresAt) {
+            this.count = count;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Map<CRITERIA, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented by each eviction, so that the counts which ran concurrently are not cached.
+     */
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final long timeToLiveNanos;
+
+    private final int maxEntries;
+
+    private final long replicaLagNanos;
+
+    private final BooleanSupplier readFromReplica;
+
+    private volatile long lastEvictionAt;
+
+    public CountCache(Duration timeToLive, int maxEntries) {
+        this(timeToLive, maxEntries, Duration.ZERO, () -> false);
+    }
+
+    /**
+     * @param timeToLive the time a count is cached, zero to disable the cache.
+     * @param maxEntries the maximum number of cached counts.
+     * @param replicaLag the tolerated replication lag of the replica databases.
+     * @param readFromReplica tells whether the current transaction reads from a replica database.
+     */
+    public CountCache(Duration timeToLive, int maxEntries, Duration replicaLag, BooleanSupplier readFromReplica) {
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.maxEntries = maxEntries;
+        this.replicaLagNanos = replicaLag.toNanos();
+        this.readFromReplica = readFromReplica;
+        this.lastEvictionAt = System.nanoTime() - replicaLagNanos;
+    }
+
+    /**
+     * Return the cached count of a criteria, or count and cache it.
+     *
+     * @param criteria the canonical criteria.
+     * @param counter the query counting the entities matching the criteria.
+     * @return the count.
+     */
+    public long get(CRITERIA criteria, LongSupplier counter) {
+        long now = System.nanoTime();
+        Entry entry = entries.get(criteria);
+        if (entry != null && entry.expiresAt - now > 0) {
+            return entry.count;
+        }
+        long evictionsBefore = evictions.get();
+        long count = counter.getAsLong();
+        if (timeToLiveNanos <= 0 || (now - lastEvictionAt < replicaLagNanos && readFromReplica.getAsBoolean())) {
+            return count;
+        }
+        if (entry == null && entries.size() >= maxEntries) {
+            entries.values().removeIf(expired -> expired.expiresAt - now <= 0);
+        }
+        if (entry != null || entries.size() < maxEntries) {
+            Entry counted = new Entry(count, now + timeToLiveNanos);
+            // Checked inside the compute, so that an eviction either prevents the put or removes the new entry
+            entries.compute(criteria, (key, current) -> evictions.get() == evictionsBefore ? counted : current);
+        }
+        return count;
+    }
+
+    /**
+     * Evict the counts which can be changed by a write, once the current transaction is committed.
+     *
+     * @param affected matches the criteria whose count can be changed.
+     */
+    public void evict(Predicate<CRITERIA> affected) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        evictNow(affected);
+                    }
+                }
+            );
+        } else {
+            evictNow(affected);
+        }
+    }
+
+    private void evictNow(Predicate<CRITERIA> affected) {
+        lastEvictionAt = System.nanoTime();
+        evictions.incrementAndGet();
+        entries.keySet().removeIf(affected);
+    }
+
+    /**
+     * Evict all the counts, immediately.
+     */
+    public void clear() {
+        evictNow(criteria -> true);
+    }
+
+    /**
+     * Tell whether a filter can match one of the given values, to select the counts affected by a write.
+     *
+     * @param filter the filter, can be {@code null}.
+     * @param values the written values, can contain {@code null}.
+     * @return {@code false} only if the filter restricts its matches to {@code equals} or {@code in} values which are
+     * all different from the written ones.
+     */
+    public static <T> boolean mayMatch(Filter<T> filter, Collection<T> values) {
+        if (filter == null) {
+            return true;
+        }
+        if (filter.getEquals() != null) {
+            return values.contains(filter.getEquals());
+        }
+        if (filter.getIn() != null) {
+            return filter.getIn().stream().anyMatch(values::contains);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,426 @@
+package com.github.zzzarius.ipms.service.query;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import javax.persistence.EntityManager;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import org.springframework.data.domain.Sort;
+import tech.jhipster.service.Criteria;
+import tech.jhipster.service.filter.Filter;
+import tech.jhipster.service.filter.RangeFilter;
+import tech.jhipster.service.filter.StringFilter;
+
+/**
+ * Compiles the {@link Criteria} of an entity to JPQL, once per shape of the criteria.
+ * <p>
+ * The shape of a criteria is the set of its filters which are present, with the operators they use, and the sort of
+ * the request. Each shape is rendered once to a JPQL query whose filter values are parameters, so that the following
+ * requests of the same shape only bind their values, and hit the Hibernate query plan cache with the same JPQL.
+ * <p>
+ * The filters apply the same operators, with the same precedence, as the {@code build*Specification} methods of
+ * {@link tech.jhipster.service.QueryService}. The shapes which can't be compiled, such as an empty {@code in} list or a
+ * sort on an association, are left to the specifications of the caller.
+ *
+ * @param <ENTITY> the type of the queried entity.
+ * @param <CRITERIA> the type of the criteria of the entity.
+ */
+public final class CriteriaQueryCompiler<ENTITY, CRITERIA extends Criteria> {
+
+    /**
+     * Maximum number of compiled shapes, the other ones are compiled again on each request.
+     */
+    private static final int MAX_PLANS = 512;
+
+    private static final Operator[] OPERATORS = Operator.values();
+
+    private static final QueryPlan UNSUPPORTED = new QueryPlan(null, null, new int[0]);
+
+    /**
+     * The operators of a filter, in their rendering order.
+     */
+    private enum Operator {
+        EQUALS("%s = :%s"),
+        IN("%s in :%s"),
+        NOT_IN("%s not in :%s"),
+        NOT_EQUALS("%s <> :%s"),
+        SPECIFIED("%s is not null"),
+        UNSPECIFIED("%s is null"),
+        CONTAINS("upper(%s) like :%s"),
+        DOES_NOT_CONTAIN("upper(%s) not like :%s"),
+        GREATER_THAN("%s > :%s"),
+        GREATER_THAN_OR_EQUAL("%s >= :%s"),
+        LESS_THAN("%s < :%s"),
+        LESS_THAN_OR_EQUAL("%s <= :%s");
+
+        private final String condition;
+
+        Operator(String condition) {
+            this.condition = condition;
+        }
+
+        boolean isBound() {
+            return this != SPECIFIED && this != UNSPECIFIED;
+        }
+    }
+
+    /**
+     * How the operators of a filter are combined, as in {@link tech.jhipster.service.QueryService}.
+     */
+    private enum FilterType {
+        PLAIN,
+        STRING,
+        RANGE,
+    }
+
+    private static final class FilterPath<CRITERIA> {
+
+        private final Function<CRITERIA, ? extends Filter<?>> getter;
+
+        private final String path;
+
+        private final FilterType type;
+
+        private final String joinAlias;
+
+        private FilterPath(Function<CRITERIA, ? extends Filter<?>> getter, String path, FilterType type, String joinAlias) {
+            this.getter = getter;
+            this.path = path;
+            this.type = type;
+            this.joinAlias = joinAlias;
+        }
+    }
+
+    private static final class Join {
+
+        private final String path;
+
+        private final String alias;
+
+        private final boolean fetch;
+
+        private Join(String path, String alias, boolean fetch) {
+            this.path = path;
+            this.alias = alias;
+            this.fetch = fetch;
+        }
+    }
+
+    /**
+     * The JPQL of a shape, with the shape positions of its parameters.
+     */
+    static final class QueryPlan {
+
+        final String selectQuery;
+
+        final String countQuery;
+
+        final int[] parameters;
+
+        final String[] parameterNames;
+
+        private QueryPlan(String selectQuery, String countQuery, int[] parameters) {
+            this.selectQuery = selectQuery;
+            this.countQuery = countQuery;
+            this.parameters = parameters;
+            this.parameterNames = new String[parameters.length];
+            for (int i = 0; i < parameters.length; i++) {
+                parameterNames[i] = parameterName(parameters[i]);
+            }
+        }
+    }
+
+    private final EntityManager entityManager;
+
+    private final Class<ENTITY> entityClass;
+
+    private final String alias;
+
+    private final List<Join> joins;
+
+    private final List<FilterPath<CRITERIA>> filters;
+
+    private final Map<List<Object>, QueryPlan> plans = new ConcurrentHashMap<>();
+
+    private CriteriaQueryCompiler(Builder<ENTITY, CRITERIA> builder) {
+        this.entityManager = builder.entityManager;
+        this.entityClass = builder.entityClass;
+        this.alias = builder.alias;
+        this.joins = List.copyOf(builder.joins);
+        this.filters = List.copyOf(builder.filters);
+    }
+
+    /**
+     * Start the declaration of the compiled queries of an entity.
+     *
+     * @param entityManager the entity manager running the queries.
+     * @param entityClass the queried entity.
+     * @param alias the alias of the entity in the filter paths.
+     * @return the builder.
+     */
+    public static <ENTITY, CRITERIA extends Criteria> Builder<ENTITY, CRITERIA> builder(
+        EntityManager entityManager,
+        Class<ENTITY> entityClass,
+        String alias
+    ) {
+        return new Builder<>(entityManager, entityClass, alias);
+    }
+
+    /**
+     * Compile the query of a criteria, and bind its filter values.
+     *
+     * @param criteria the criteria, can be {@code null}.
+     * @param sort the order of the results.
+     * @return the bound query, empty if the shape of the criteria can't be compiled.
+     */
+    public Optional<CompiledQuery<ENTITY>> compile(CRITERIA criteria, Sort sort) {
+        BitSet shape = new BitSet();
+        Object[] values = new Object[filters.size() * OPERATORS.length];
+        for (int i = 0; criteria != null && i < filters.size(); i++) {
+            FilterPath<CRITERIA> filter = filters.get(i);
+            Filter<?> value = filter.getter.apply(criteria);
+            if (value != null && !bind(value, filter.type, i * OPERATORS.length, shape, values)) {
+                return Optional.empty();
+            }
+        }
+        List<Object> key = List.of(shape, sort);
+        QueryPlan plan = plans.get(key);
+        if (plan == null) {
+            plan = createPlan(shape, sort);
+            if (plans.size() < MAX_PLANS) {
+                plans.putIfAbsent(key, plan);
+            }
+        }
+        if (plan == UNSUPPORTED) {
+            return Optional.empty();
+        }
+        return Optional.of(new CompiledQuery<>(entityManager, entityClass, plan, values));
+    }
+
+    private static boolean bind(Filter<?> filter, FilterType type, int offset, BitSet shape, Object[] values) {
+        if (filter.getEquals() != null) {
+            return set(Operator.EQUALS, filter.getEquals(), offset, shape, values);
+        }
+        if (filter.getIn() != null) {
+            return set(Operator.IN, filter.getIn(), offset, shape, values);
+        }
+        boolean bound = true;
+        if (filter.getNotIn() != null) {
+            bound = set(Operator.NOT_IN, filter.getNotIn(), offset, shape, values);
+            if (type != FilterType.RANGE) {
+                return bound;
+            }
+        }
+        if (type == FilterType.STRING) {
+            StringFilter stringFilter = (StringFilter) filter;
+            if (stringFilter.getContains() != null) {
+                return set(Operator.CONTAINS, wrapLikeQuery(stringFilter.getContains()), offset, shape, values);
+            }
+            if (stringFilter.getDoesNotContain() != null) {
+                return set(Operator.DOES_NOT_CONTAIN, wrapLikeQuery(stringFilter.getDoesNotContain()), offset, shape, values);
+            }
+        }
+        if (filter.getNotEquals() != null) {
+            set(Operator.NOT_EQUALS, filter.getNotEquals(), offset, shape, values);
+            if (type != FilterType.RANGE) {
+                return bound;
+            }
+        }
+        if (filter.getSpecified() != null) {
+            set(filter.getSpecified() ? Operator.SPECIFIED : Operator.UNSPECIFIED, null, offset, shape, values);
+        }
+        if (type == FilterType.RANGE) {
+            RangeFilter<?> rangeFilter = (RangeFilter<?>) filter;
+            if (rangeFilter.getGreaterThan() != null) {
+                set(Operator.GREATER_THAN, rangeFilter.getGreaterThan(), offset, shape, values);
+            }
+            if (rangeFilter.getGreaterThanOrEqual() != null) {
+                set(Operator.GREATER_THAN_OR_EQUAL, rangeFilter.getGreaterThanOrEqual(), offset, shape, values);
+            }
+            if (rangeFilter.getLessThan() != null) {
+                set(Operator.LESS_THAN, rangeFilter.getLessThan(), offset, shape, values);
+            }
+            if (rangeFilter.getLessThanOrEqual() != null) {
+                set(Operator.LESS_THAN_OR_EQUAL, rangeFilter.getLessThanOrEqual(), offset, shape, values);
+            }
+        }
+        return bound;
+    }
+
+    private static boolean set(Operator operator, Object value, int offset, BitSet shape, Object[] values) {
+        if (value instanceof Collection && ((Collection<?>) value).isEmpty()) {
+            // JPQL has no empty in list
+            return false;
+        }
+        shape.set(offset + operator.ordinal());
+        values[offset + operator.ordinal()] = value;
+        return true;
+    }
+
+    private static String wrapLikeQuery(String value) {
+        return "%" + value.toUpperCase() + "%";
+    }
+
+    private static String parameterName(int position) {
+        return "p" + position;
+    }
+
+    private QueryPlan createPlan(BitSet shape, Sort sort) {
+        String orderBy = orderBy(sort);
+        if (orderBy == null) {
+            return UNSUPPORTED;
+        }
+        List<Integer> parameters = new ArrayList<>();
+        List<String> usedJoins = new ArrayList<>();
+        StringJoiner where = new StringJoiner(" and ", " where ", "").setEmptyValue("");
+        for (int position = shape.nextSetBit(0); position >= 0; position = shape.nextSetBit(position + 1)) {
+            FilterPath<CRITERIA> filter = filters.get(position / OPERATORS.length);
+            Operator operator = OPERATORS[position % OPERATORS.length];
+            where.add(String.format(operator.condition, filter.path, parameterName(position)));
+            if (operator.isBound()) {
+                parameters.add(position);
+            }
+            if (filter.joinAlias != null && !usedJoins.contains(filter.joinAlias)) {
+                usedJoins.add(filter.joinAlias);
+            }
+        }
+        String from = " from " + entityClass.getSimpleName() + " " + alias;
+        StringBuilder selectQuery = new StringBuilder("select ").append(alias).append(from);
+        StringBuilder countQuery = new StringBuilder("select count(").append(alias).append(')').append(from);
+        for (Join join : joins) {
+            if (join.fetch) {
+                selectQuery.append(" left join fetch ").append(join.path).append(' ').append(join.alias);
+            } else if (usedJoins.contains(join.alias)) {
+                selectQuery.append(" left join ").append(join.path).append(' ').append(join.alias);
+            }
+            if (usedJoins.contains(join.alias)) {
+                countQuery.append(" left join ").append(join.path).append(' ').append(join.alias);
+            }
+        }
+        selectQuery.append(where).append(orderBy);
+        countQuery.append(where);
+        return new QueryPlan(
+            selectQuery.toString(),
+            countQuery.toString(),
+            parameters.stream().mapToInt(Integer::intValue).toArray()
+        );
+    }
+
+    /**
+     * Render the sort of a shape, which can only use the basic attributes of the entity.
+     *
+     * @return the order by clause, {@code null} if the sort is not supported.
+     */
+    private String orderBy(Sort sort) {
+        if (sort.isUnsorted()) {
+            return "";
+        }
+        EntityType<ENTITY> entityType = entityManager.getMetamodel().entity(entityClass);
+        StringJoiner orderBy = new StringJoiner(", ", " order by ", "");
+        for (Sort.Order order : sort) {
+            Attribute<?, ?> attribute = entityType
+                .getSingularAttributes()
+                .stream()
+                .filter(singularAttribute -> singularAttribute.getName().equals(order.getProperty()))
+                .findFirst()
+                .orElse(null);
+            if (
+                attribute == null ||
+                attribute.getPersistentAttributeType() != Attribute.PersistentAttributeType.BASIC ||
+                order.isIgnoreCase() ||
+                order.getNullHandling() != Sort.NullHandling.NATIVE
+            ) {
+                return null;
+            }
+            orderBy.add(alias + "." + order.getProperty() + (order.isAscending() ? " asc" : " desc"));
+        }
+        return orderBy.toString();
+    }
+
+    /**
+     * Declares the joins and filters of the compiled queries of an entity.
+     */
+    public static final class Builder<ENTITY, CRITERIA extends Criteria> {
+
+        private final EntityManager entityManager;
+
+        private final Class<ENTITY> entityClass;
+
+        private final String alias;
+
+        private final List<Join> joins = new ArrayList<>();
+
+        private final List<FilterPath<CRITERIA>> filters = new ArrayList<>();
+
+        private Builder(EntityManager entityManager, Class<ENTITY> entityClass, String alias) {
+            this.entityManager = entityManager;
+            this.entityClass = entityClass;
+            this.alias = alias;
+        }
+
+        /**
+         * Declare an association which is left joined when a filter uses its alias.
+         */
+        public Builder<ENTITY, CRITERIA> leftJoin(String path, String joinAlias) {
+            joins.add(new Join(path, joinAlias, false));
+            return this;
+        }
+
+        /**
+         * Declare a to-one association which is always fetched with the selected entities, and only joined by the
+         * count query when a filter uses its alias.
+         */
+        public Builder<ENTITY, CRITERIA> leftJoinFetch(String path, String joinAlias) {
+            joins.add(new Join(path, joinAlias, true));
+            return this;
+        }
+
+        /**
+         * Declare a filter built like {@code QueryService.buildSpecification(Filter, ...)}.
+         */
+        public Builder<ENTITY, CRITERIA> filter(Function<CRITERIA, ? extends Filter<?>> getter, String path) {
+            return add(getter, path, FilterType.PLAIN);
+        }
+
+        /**
+         * Declare a filter built like {@code QueryService.buildSpecification(StringFilter, ...)}.
+         */
+        public Builder<ENTITY, CRITERIA> stringFilter(Function<CRITERIA, StringFilter> getter, String path) {
+            return add(getter, path, FilterType.STRING);
+        }
+
+        /**
+         * Declare a filter built like {@code QueryService.buildSpecification(RangeFilter, ...)}.
+         */
+        public Builder<ENTITY, CRITERIA> rangeFilter(Function<CRITERIA, ? extends RangeFilter<?>> getter, String path) {
+            return add(getter, path, FilterType.RANGE);
+        }
+
+        private Builder<ENTITY, CRITERIA> add(Function<CRITERIA, ? extends Filter<?>> getter, String path, FilterType type) {
+            String pathAlias = path.substring(0, path.indexOf('.'));
+            String joinAlias = null;
+            if (!pathAlias.equals(alias)) {
+                joinAlias =
+                    joins
+                        .stream()
+                        .map(join -> join.alias)
+                        .filter(pathAlias::equals)
+                        .findFirst()
+                        .orElseThrow(() -> new IllegalArgumentException("Undeclared join: " + pathAlias));
+            }
+            filters.add(new FilterPath<>(getter, path, type, joinAlias));
+            return this;
+        }
+
+        public CriteriaQueryCompiler<ENTITY, CRITERIA> build() {
+            return new CriteriaQueryCompiler<>(this);
+        }
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * Criteria queries compiled to JPQL once per shape, so that repeated requests only bind their filter values, and the
+ * cache of their counts.
+ */
+package com.github.zzzarius.ipms.service.query;
@@ -0,0 +1,96 @@
+package com.github.zzzarius.ipms.web.filter;
+
+/**
+ * Concurrency limit adjusted to the latency of the requests, by a gradient between their long-term and short-term
+ * round trip times.
+ * <p>
+ * While the short-term latency stays within the tolerance of the long-term baseline, the limit grows by a fraction of
+ * its square root per sample, as long as the requests use it. When the short-term latency rises, the requests queue
+ * in the database or the server, and the limit shrinks in proportion. The baseline follows the latency slowly, and is
+ * moved towards the short-term latency after an overload, so that it recovers.
+ */
+public final class AdaptiveLimit {
+
+    private static final double SHORT_SMOOTHING = 2.0 / (10 + 1);
+
+    private static final double LONG_SMOOTHING = 2.0 / (600 + 1);
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double tolerance;
+
+    private final double smoothing;
+
+    private double limit;
+
+    private double shortRttNanos;
+
+    private double longRttNanos;
+
+    /**
+     * @param initialLimit the limit before the first sample.
+     * @param minLimit the lowest limit.
+     * @param maxLimit the highest limit.
+     * @param tolerance the ratio of the short-term to the long-term latency above which the limit shrinks.
+     * @param smoothing the weight of each new limit, between 0 excluded and 1.
+     */
+    public AdaptiveLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double smoothing) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Adjust the limit to the latency of a completed request.
+     *
+     * @param rttNanos the time the request was processed.
+     * @param inFlight the number of requests in flight when it completed, itself included.
+     * @return the new limit.
+     */
+    public synchronized int onSample(long rttNanos, int inFlight) {
+        if (longRttNanos == 0) {
+            shortRttNanos = rttNanos;
+            longRttNanos = rttNanos;
+        } else {
+            shortRttNanos += SHORT_SMOOTHING * (rttNanos - shortRttNanos);
+            longRttNanos += LONG_SMOOTHING * (rttNanos - longRttNanos);
+            if (longRttNanos > 2 * shortRttNanos) {
+                // The overload is over, forget its latencies
+                longRttNanos = 0.95 * longRttNanos + 0.05 * shortRttNanos;
+            }
+        }
+        if (inFlight < limit / 2) {
+            // The requests don't use the limit, so their latency says nothing about a higher one
+            return getLimit();
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / shortRttNanos));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - smoothing) + newLimit * smoothing));
+        return getLimit();
+    }
+
+    /**
+     * @return the current limit.
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return the short-term estimate of the latency, in nanoseconds.
+     */
+    public synchronized double getRttNanos() {
+        return shortRttNanos;
+    }
+
+    /**
+     * @return the long-term estimate of the latency, used as the baseline, in nanoseconds.
+     */
+    public synchronized double getBaselineRttNanos() {
+        return longRttNanos;
+    }
+}
@@ -0,0 +1,354 @@
+package com.github.zzzarius.ipms.web.filter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.zzzarius.ipms.config.ApplicationProperties;
+import com.github.zzzarius.ipms.domain.enumeration.Category;
+import com.github.zzzarius.ipms.security.SecurityUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Filter admitting the {@code /api} requests through an {@link AdmissionLimiter} per endpoint group, so that an
+ * overload delays and sheds the requests of the lowest priorities first.
+ * <p>
+ * The groups separate the reads from the writes of the patients and of the incidents, the other requests share one
+ * group. The limit of each group is adjusted to the latency of its requests by an {@link AdaptiveLimit}, so that the
+ * requests which would only queue in the database or the server wait here instead, by priority.
+ * <p>
+ * The exports, imports and delta syncs are {@link AdmissionLimiter.Priority#BULK}, whatever their body. The other
+ * writes of the patients by an authenticated user, whose JSON body of a known length sets a RED or BLACK
+ * {@link Category}, are {@link AdmissionLimiter.Priority#CRITICAL}, the other writes are
+ * {@link AdmissionLimiter.Priority#WRITE}, and the other reads are {@link AdmissionLimiter.Priority#READ}. A request which waited longer than the maximum queue time of its priority is
+ * answered with {@code 503 (Service Unavailable)} and a {@code Retry-After} header.
+ * <p>
+ * The asynchronous requests, like the exports and the event streams, hold their slot until their handler returns only,
+ * and their latency is not sampled.
+ */
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    private final Logger log = LoggerFactory.getLogger(AdmissionControlFilter.class);
+
+    private static final String TRIAGE_CATEGORY = "triageCategory";
+
+    private static final String[] BULK_PATHS = {
+        "/api/patients/export",
+        "/api/patients/import",
+        "/api/patients/import/*",
+        "/api/sync/**",
+    };
+
+    private static final String OTHER_GROUP = "other";
+
+    private static final List<String> GROUPS = List.of("patients-read", "patients-write", "incidents-read", "incidents-write", OTHER_GROUP);
+
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, EndpointGroup> groups = new HashMap<>();
+
+    private final Map<AdmissionLimiter.Priority, Long> maxQueueMs = new EnumMap<>(AdmissionLimiter.Priority.class);
+
+    private final int maxInspectedBodySize;
+
+    private final String retryAfterSeconds;
+
+    public AdmissionControlFilter(
+        ObjectMapper objectMapper,
+        MeterRegistry meterRegistry,
+        ApplicationProperties.AdmissionControl admissionControl
+    ) {
+        this.objectMapper = objectMapper;
+        this.maxQueueMs.put(AdmissionLimiter.Priority.CRITICAL, admissionControl.getCriticalMaxQueueMs());
+        this.maxQueueMs.put(AdmissionLimiter.Priority.WRITE, admissionControl.getWriteMaxQueueMs());
+        this.maxQueueMs.put(AdmissionLimiter.Priority.READ, admissionControl.getReadMaxQueueMs());
+        this.maxQueueMs.put(AdmissionLimiter.Priority.BULK, admissionControl.getBulkMaxQueueMs());
+        for (String name : GROUPS) {
+            groups.put(name, new EndpointGroup(name, meterRegistry, admissionControl));
+        }
+        this.maxInspectedBodySize = admissionControl.getMaxInspectedBodySize();
+        this.retryAfterSeconds = String.valueOf(admissionControl.getRetryAfterSeconds());
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !pathMatcher.match("/api/**", path(request));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+        throws ServletException, IOException {
+        BufferedBodyRequest bufferedRequest = null;
+        AdmissionLimiter.Priority priority = classify(request);
+        if (priority == AdmissionLimiter.Priority.WRITE && isInspectable(request)) {
+            bufferedRequest = new BufferedBodyRequest(request);
+            if (isCritical(bufferedRequest.getBody())) {
+                priority = AdmissionLimiter.Priority.CRITICAL;
+            }
+        }
+        EndpointGroup group = groups.get(group(request));
+        boolean admitted;
+        try {
+            admitted = group.limiter.acquire(priority, maxQueueMs.get(priority), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServletException("Interrupted while waiting for admission", e);
+        }
+        if (!admitted) {
+            log.debug("Shedding {} request {} {}", priority, request.getMethod(), request.getRequestURI());
+            group.shedRequests.get(priority).increment();
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(bufferedRequest != null ? bufferedRequest : request, response);
+        } finally {
+            int inFlight = group.limiter.getInFlight();
+            group.limiter.release();
+            if (group.adaptiveLimit != null && !request.isAsyncStarted()) {
+                group.limiter.setLimit(group.adaptiveLimit.onSample(System.nanoTime() - start, inFlight));
+            }
+        }
+    }
+
+    /**
+     * @return the endpoint group of a request.
+     */
+    String group(HttpServletRequest request) {
+        String path = path(request);
+        String resource;
+        if (pathMatcher.match("/api/patients/**", path) || pathMatcher.match("/api/sync/**", path)) {
+            resource = "patients";
+        } else if (pathMatcher.match("/api/incidents/**", path)) {
+            resource = "incidents";
+        } else {
+            return OTHER_GROUP;
+        }
+        return resource + (isWrite(request) ? "-write" : "-read");
+    }
+
+    /**
+     * @return the limiter of an endpoint group.
+     */
+    AdmissionLimiter limiter(String group) {
+        return groups.get(group).limiter;
+    }
+
+    /**
+     * Classify a request without reading its body.
+     *
+     * @param request the request.
+     * @return its priority, {@link AdmissionLimiter.Priority#WRITE} for a patient write which may be critical.
+     */
+    AdmissionLimiter.Priority classify(HttpServletRequest request) {
+        String path = path(request);
+        for (String bulkPath : BULK_PATHS) {
+            if (pathMatcher.match(bulkPath, path)) {
+                return AdmissionLimiter.Priority.BULK;
+            }
+        }
+        return isWrite(request) ? AdmissionLimiter.Priority.WRITE : AdmissionLimiter.Priority.READ;
+    }
+
+    /**
+     * @return whether the JSON body sets the triage category of a patient to RED or BLACK, also in a batch.
+     */
+    boolean isCritical(byte[] body) {
+        try {
+            JsonNode json = objectMapper.readTree(body);
+            return json != null && json.findValues(TRIAGE_CATEGORY).stream().anyMatch(AdmissionControlFilter::isCritical);
+        } catch (IOException e) {
+            // Rejected by the controller
+            return false;
+        }
+    }
+
+    private static boolean isCritical(JsonNode category) {
+        return Category.RED.name().equals(category.asText()) || Category.BLACK.name().equals(category.asText());
+    }
+
+    /**
+     * Tell whether the body of a write can be inspected: a JSON patient write of an authenticated user, whose length is
+     * known and small enough to be buffered.
+     */
+    private boolean isInspectable(HttpServletRequest request) {
+        long contentLength = request.getContentLengthLong();
+        return (
+            pathMatcher.match("/api/patients/**", path(request)) &&
+            isJson(request) &&
+            contentLength >= 0 &&
+            contentLength <= maxInspectedBodySize &&
+            SecurityUtils.isAuthenticated()
+        );
+    }
+
+    private static boolean isWrite(HttpServletRequest request) {
+        String method = request.getMethod();
+        return !(HttpMethod.GET.matches(method) || HttpMethod.HEAD.matches(method) || HttpMethod.OPTIONS.matches(method));
+    }
+
+    private static boolean isJson(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType != null && contentType.toLowerCase(Locale.ROOT).contains("json");
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    /**
+     * The limiter of the requests of an endpoint group, and its metrics.
+     */
+    private static final class EndpointGroup {
+
+        private final AdmissionLimiter limiter;
+
+        private final AdaptiveLimit adaptiveLimit;
+
+        private final Map<AdmissionLimiter.Priority, Counter> shedRequests = new EnumMap<>(AdmissionLimiter.Priority.class);
+
+        private EndpointGroup(String name, MeterRegistry meterRegistry, ApplicationProperties.AdmissionControl admissionControl) {
+            if (admissionControl.isAdaptive()) {
+                adaptiveLimit =
+                    new AdaptiveLimit(
+                        admissionControl.getInitialConcurrentRequests(),
+                        admissionControl.getMinConcurrentRequests(),
+                        admissionControl.getMaxConcurrentRequests(),
+                        admissionControl.getRttTolerance(),
+                        admissionControl.getLimitSmoothing()
+                    );
+                limiter = new AdmissionLimiter(adaptiveLimit.getLimit());
+                TimeGauge
+                    .builder("ipms.admission.rtt", adaptiveLimit, TimeUnit.NANOSECONDS, AdaptiveLimit::getRttNanos)
+                    .description("Short-term latency of the admitted requests")
+                    .tag("group", name)
+                    .register(meterRegistry);
+                TimeGauge
+                    .builder("ipms.admission.rtt.baseline", adaptiveLimit, TimeUnit.NANOSECONDS, AdaptiveLimit::getBaselineRttNanos)
+                    .description("Long-term latency of the admitted requests, which the short-term one is compared to")
+                    .tag("group", name)
+                    .register(meterRegistry);
+            } else {
+                adaptiveLimit = null;
+                limiter = new AdmissionLimiter(admissionControl.getMaxConcurrentRequests());
+            }
+            Gauge
+                .builder("ipms.admission.limit", limiter, AdmissionLimiter::getLimit)
+                .description("Requests processed at once")
+                .tag("group", name)
+                .register(meterRegistry);
+            for (AdmissionLimiter.Priority priority : AdmissionLimiter.Priority.values()) {
+                shedRequests.put(
+                    priority,
+                    Counter
+                        .builder("ipms.admission.shed")
+                        .description("Requests rejected because the application is overloaded")
+                        .tag("group", name)
+                        .tag("priority", priority.name().toLowerCase(Locale.ROOT))
+                        .register(meterRegistry)
+                );
+            }
+        }
+    }
+
+    /**
+     * A request whose whole body was read to be inspected, and is read again by the controller.
+     */
+    private static final class BufferedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        private BufferedBodyRequest(HttpServletRequest request) throws IOException {
+            super(request);
+            this.body = request.getInputStream().readNBytes((int) request.getContentLengthLong());
+        }
+
+        private byte[] getBody() {
+            return body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            InputStream stream = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                private boolean finished;
+
+                @Override
+                public int read() throws IOException {
+                    int read = stream.read();
+                    finished = read == -1;
+                    return read;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int read = stream.read(b, off, len);
+                    finished = read == -1;
+                    return read;
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return finished;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                /**
+                 * The body is in memory, so it can all be read at once.
+                 */
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    try {
+                        readListener.onDataAvailable();
+                        readListener.onAllDataRead();
+                    } catch (IOException e) {
+                        readListener.onError(e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            Charset charset = getCharacterEncoding() != null ? Charset.forName(getCharacterEncoding()) : StandardCharsets.UTF_8;
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.github.zzzarius.ipms.web.filter;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounds the number of requests processed at once, and admits the waiting ones by priority.
+ * <p>
+ * A request which can't be admitted waits in the queue of its priority, at most its maximum queue time. When a request
+ * completes, its slot is handed to the oldest request of the highest priority waiting, so that a backlog of lower
+ * priority requests never delays the higher ones: they time out, and are shed.
+ * <p>
+ * The limit can be changed at any time: the waiting requests are admitted when it is raised, and the requests in
+ * flight complete when it is lowered, no new one being admitted until they are below it.
+ */
+public final class AdmissionLimiter {
+
+    /**
+     * The priority classes of the requests, highest first.
+     */
+    public enum Priority {
+        /**
+         * The writes of the patients triaged RED or BLACK.
+         */
+        CRITICAL,
+        /**
+         * The other writes.
+         */
+        WRITE,
+        /**
+         * The reads, for example of the dashboards.
+         */
+        READ,
+        /**
+         * The exports, imports and other bulk requests.
+         */
+        BULK,
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Map<Priority, Deque<Waiter>> waiters = new EnumMap<>(Priority.class);
+
+    private int limit;
+
+    private int inFlight;
+
+    public AdmissionLimiter(int limit) {
+        this.limit = limit;
+        for (Priority priority : Priority.values()) {
+            waiters.put(priority, new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Admit a request, waiting for a slot if needed.
+     *
+     * @param priority the priority of the request.
+     * @param maxQueueTime the maximum time to wait for a slot.
+     * @param unit the unit of the maximum time.
+     * @return whether the request is admitted, in which case {@link #release()} must be called once it completes.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean acquire(Priority priority, long maxQueueTime, TimeUnit unit) throws InterruptedException {
+        lock.lock();
+        try {
+            if (inFlight < limit) {
+                inFlight++;
+                return true;
+            }
+            long remaining = unit.toNanos(maxQueueTime);
+            if (remaining <= 0) {
+                return false;
+            }
+            Waiter waiter = new Waiter(lock.newCondition());
+            waiters.get(priority).addLast(waiter);
+            try {
+                while (!waiter.admitted) {
+                    if (remaining <= 0) {
+                        waiters.get(priority).remove(waiter);
+                        return false;
+                    }
+                    remaining = waiter.condition.awaitNanos(remaining);
+                }
+                return true;
+            } catch (InterruptedException e) {
+                if (waiter.admitted) {
+                    // Admitted concurrently, the slot is handed over
+                    release();
+                } else {
+                    waiters.get(priority).remove(waiter);
+                }
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Release the slot of a completed request.
+     */
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            admitWaiters();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Change the number of requests processed at once.
+     *
+     * @param limit the new limit, at least 1.
+     */
+    public void setLimit(int limit) {
+        lock.lock();
+        try {
+            this.limit = limit;
+            admitWaiters();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of requests processed at once.
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hand the free slots to the waiting requests, highest priority first.
+     */
+    private void admitWaiters() {
+        for (Deque<Waiter> queue : waiters.values()) {
+            while (inFlight < limit && !queue.isEmpty()) {
+                Waiter next = queue.pollFirst();
+                next.admitted = true;
+                next.condition.signal();
+                inFlight++;
+            }
+        }
+    }
+
+    /**
+     * @return the number of requests admitted and not completed.
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A request waiting for a slot.
+     */
+    private static final class Waiter {
+
+        private final Condition condition;
+
+        private boolean admitted;
+
+        private Waiter(Condition condition) {
+            this.condition = condition;
+        }
+    }
+}
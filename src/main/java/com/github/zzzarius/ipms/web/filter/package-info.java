@@ -0,0 +1,4 @@
+/**
+ * Servlet filters in front of the REST controllers.
+ */
+package com.github.zzzarius.ipms.web.filter;
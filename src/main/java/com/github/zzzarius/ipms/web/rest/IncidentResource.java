@@ -1,25 +1,42 @@
 package com.github.zzzarius.ipms.web.rest;
 
 import com.github.zzzarius.ipms.domain.Incident;
+import com.github.zzzarius.ipms.domain.TriageSummary;
 import com.github.zzzarius.ipms.repository.IncidentRepository;
 import com.github.zzzarius.ipms.service.IncidentQueryService;
 import com.github.zzzarius.ipms.service.IncidentService;
+import com.github.zzzarius.ipms.service.IncidentTriageCounterService;
+import com.github.zzzarius.ipms.service.PatientEventService;
 import com.github.zzzarius.ipms.service.criteria.IncidentCriteria;
+import com.github.zzzarius.ipms.service.dto.PatientEventDTO;
+import com.github.zzzarius.ipms.service.pagination.KeysetPage;
+import com.github.zzzarius.ipms.service.projection.SparseFieldset;
 import com.github.zzzarius.ipms.web.rest.errors.BadRequestAlertException;
+import com.github.zzzarius.ipms.web.rest.errors.PreconditionFailedAlertException;
+import com.github.zzzarius.ipms.web.rest.util.ETagUtil;
+import com.github.zzzarius.ipms.web.rest.util.SlicePaginationUtil;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -28,8 +45,11 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import tech.jhipster.web.util.HeaderUtil;
 import tech.jhipster.web.util.PaginationUtil;
@@ -55,14 +75,22 @@ public class IncidentResource {
 
     private final IncidentQueryService incidentQueryService;
 
+    private final IncidentTriageCounterService incidentTriageCounterService;
+
+    private final PatientEventService patientEventService;
+
     public IncidentResource(
         IncidentService incidentService,
         IncidentRepository incidentRepository,
-        IncidentQueryService incidentQueryService
+        IncidentQueryService incidentQueryService,
+        IncidentTriageCounterService incidentTriageCounterService,
+        PatientEventService patientEventService
     ) {
         this.incidentService = incidentService;
         this.incidentRepository = incidentRepository;
         this.incidentQueryService = incidentQueryService;
+        this.incidentTriageCounterService = incidentTriageCounterService;
+        this.patientEventService = patientEventService;
     }
 
     /**
@@ -92,15 +120,19 @@ public class IncidentResource {
      * {@code PUT  /incidents/:id} : Updates an existing incident.
      *
      * @param id the id of the incident to save.
+     * @param ifMatch the optional {@code ETag} of the incident which was read, to update only that version.
      * @param incident the incident to update.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated incident,
-     * or with status {@code 400 (Bad Request)} if the incident is not valid,
+     * or with status {@code 400 (Bad Request)} if the incident is not valid or is not found,
+     * or with status {@code 409 (Conflict)} if the incident has been modified or deleted concurrently,
+     * or with status {@code 412 (Precondition Failed)} if the incident has changed since the {@code If-Match} version,
      * or with status {@code 500 (Internal Server Error)} if the incident couldn't be updated.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PutMapping("/incidents/{id}")
     public ResponseEntity<Incident> updateIncident(
         @PathVariable(value = "id", required = false) final Long id,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
         @Valid @RequestBody Incident incident
     ) throws URISyntaxException {
         log.debug("REST request to update Incident : {}, {}", id, incident);
@@ -112,35 +144,33 @@ public class IncidentResource {
             throw new BadRequestAlertException("Invalid ID", ENTITY_NAME, "idinvalid");
         }
 
-        if (!incidentRepository.existsById(id)) {
-            throw new BadRequestAlertException("Entity not found", ENTITY_NAME, "idnotfound");
-        }
-
         if (incident.getStartDate().isAfter(LocalDate.now())) {
             throw new BadRequestAlertException("Invalid start date", ENTITY_NAME, "startdateinvalid");
         }
 
-        Incident result = incidentService.save(incident);
-        return ResponseEntity
-            .ok()
-            .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, incident.getId().toString()))
-            .body(result);
+        incident.setVersion(ETagUtil.parseIfMatch(ifMatch, ENTITY_NAME));
+        Incident result = checkVersion(incident, () -> incidentService.update(incident)).orElseThrow(IncidentResource::notFound);
+        HttpHeaders headers = HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, incident.getId().toString());
+        return ResponseEntity.ok().headers(ETagUtil.setETag(headers, eTag(result))).body(result);
     }
 
     /**
      * {@code PATCH  /incidents/:id} : Partial updates given fields of an existing incident, field will ignore if it is null
      *
      * @param id the id of the incident to save.
+     * @param ifMatch the optional {@code ETag} of the incident which was read, to update only that version.
      * @param incident the incident to update.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated incident,
-     * or with status {@code 400 (Bad Request)} if the incident is not valid,
-     * or with status {@code 404 (Not Found)} if the incident is not found,
+     * or with status {@code 400 (Bad Request)} if the incident is not valid or is not found,
+     * or with status {@code 409 (Conflict)} if the incident has been modified or deleted concurrently,
+     * or with status {@code 412 (Precondition Failed)} if the incident has changed since the {@code If-Match} version,
      * or with status {@code 500 (Internal Server Error)} if the incident couldn't be updated.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PatchMapping(value = "/incidents/{id}", consumes = "application/merge-patch+json")
     public ResponseEntity<Incident> partialUpdateIncident(
         @PathVariable(value = "id", required = false) final Long id,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
         @NotNull @RequestBody Incident incident
     ) throws URISyntaxException {
         log.debug("REST request to partial update Incident partially : {}, {}", id, incident);
@@ -151,20 +181,14 @@ public class IncidentResource {
             throw new BadRequestAlertException("Invalid ID", ENTITY_NAME, "idinvalid");
         }
 
-        if (!incidentRepository.existsById(id)) {
-            throw new BadRequestAlertException("Entity not found", ENTITY_NAME, "idnotfound");
-        }
-
         if (incident.getStartDate().isAfter(LocalDate.now())) {
             throw new BadRequestAlertException("Invalid start date", ENTITY_NAME, "startdateinvalid");
         }
 
-        Optional<Incident> result = incidentService.partialUpdate(incident);
-
-        return ResponseUtil.wrapOrNotFound(
-            result,
-            HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, incident.getId().toString())
-        );
+        incident.setVersion(ETagUtil.parseIfMatch(ifMatch, ENTITY_NAME));
+        Incident result = checkVersion(incident, () -> incidentService.partialUpdate(incident)).orElseThrow(IncidentResource::notFound);
+        HttpHeaders headers = HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, incident.getId().toString());
+        return ResponseEntity.ok().headers(ETagUtil.setETag(headers, eTag(result))).body(result);
     }
 
     /**
@@ -172,14 +196,158 @@ public class IncidentResource {
      *
      * @param pageable the pagination information.
      * @param criteria the criteria which the requested entities should match.
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of incidents in body.
+     * @param expand the optional relations to embed, {@code triageSummary} is supported, the list then having no
+     * {@code ETag} as the summaries are not versioned.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of incidents in body,
+     * or with status {@code 400 (Bad Request)} if an expansion is not supported.
      */
     @GetMapping("/incidents")
-    public ResponseEntity<List<Incident>> getAllIncidents(IncidentCriteria criteria, Pageable pageable) {
+    public ResponseEntity<List<Incident>> getAllIncidents(
+        IncidentCriteria criteria,
+        Pageable pageable,
+        @RequestParam(value = "expand", required = false) List<String> expand
+    ) {
         log.debug("REST request to get Incidents by criteria: {}", criteria);
+        boolean summarized = isTriageSummaryExpanded(expand);
         Page<Incident> page = incidentQueryService.findByCriteria(criteria, pageable);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
-        return ResponseEntity.ok().headers(headers).body(page.getContent());
+        return listResponse(headers, page.getContent(), summarized);
+    }
+
+    /**
+     * {@code GET  /incidents?count=none} : get the incidents, without counting them.
+     * <p>
+     * No {@code X-Total-Count} header is returned, and the {@code Link} header only holds the next, previous and first pages.
+     *
+     * @param pageable the pagination information.
+     * @param criteria the criteria which the requested entities should match.
+     * @param expand the optional relations to embed, as for {@code GET /incidents}.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of incidents in body,
+     * or with status {@code 400 (Bad Request)} if an expansion is not supported.
+     */
+    @GetMapping(value = "/incidents", params = { "count=none", "!after", "!fields" })
+    public ResponseEntity<List<Incident>> getAllIncidentsWithoutTotal(
+        IncidentCriteria criteria,
+        Pageable pageable,
+        @RequestParam(value = "expand", required = false) List<String> expand
+    ) {
+        log.debug("REST request to get Incidents without total by criteria: {}", criteria);
+        boolean summarized = isTriageSummaryExpanded(expand);
+        Slice<Incident> slice = incidentQueryService.findSliceByCriteria(criteria, pageable);
+        HttpHeaders headers = SlicePaginationUtil.generateSlicePaginationHttpHeaders(
+            ServletUriComponentsBuilder.fromCurrentRequest(),
+            slice
+        );
+        return listResponse(headers, slice.getContent(), summarized);
+    }
+
+    /**
+     * {@code GET  /incidents?count=estimate} : get the incidents, with an estimated total.
+     * <p>
+     * The {@code X-Total-Count} header holds a recently cached count, which can be slightly off.
+     *
+     * @param pageable the pagination information.
+     * @param criteria the criteria which the requested entities should match.
+     * @param expand the optional relations to embed, as for {@code GET /incidents}.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of incidents in body,
+     * or with status {@code 400 (Bad Request)} if an expansion is not supported.
+     */
+    @GetMapping(value = "/incidents", params = { "count=estimate", "!after", "!fields" })
+    public ResponseEntity<List<Incident>> getAllIncidentsWithEstimatedTotal(
+        IncidentCriteria criteria,
+        Pageable pageable,
+        @RequestParam(value = "expand", required = false) List<String> expand
+    ) {
+        log.debug("REST request to get Incidents with estimated total by criteria: {}", criteria);
+        boolean summarized = isTriageSummaryExpanded(expand);
+        Page<Incident> page = incidentQueryService.findByCriteriaWithEstimatedTotal(criteria, pageable);
+        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
+        return listResponse(headers, page.getContent(), summarized);
+    }
+
+    /**
+     * {@code GET  /incidents?fields=:fields} : get the requested fields of the incidents.
+     * <p>
+     * Only the id and the requested fields are read and returned, the triage summary being only returned
+     * with {@code expand=triageSummary}. With {@code count=none} the incidents are not counted, with {@code count=estimate} their total is estimated,
+     * otherwise they are counted exactly.
+     *
+     * @param criteria the criteria which the requested entities should match.
+     * @param fields the comma separated fields, among {@code name} and {@code startDate}.
+     * @param expand the associations to return, only {@code triageSummary} is supported.
+     * @param count {@code none} to skip the count of the incidents, {@code estimate} to estimate it.
+     * @param pageable the pagination information.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of incidents in body,
+     * or with status {@code 400 (Bad Request)} if a field or an association is not supported.
+     */
+    @GetMapping(value = "/incidents", params = { "fields", "!after" })
+    public ResponseEntity<List<Map<String, Object>>> getAllIncidentFields(
+        IncidentCriteria criteria,
+        @RequestParam("fields") String fields,
+        @RequestParam(value = "expand", required = false) List<String> expand,
+        @RequestParam(value = "count", required = false) String count,
+        Pageable pageable
+    ) {
+        log.debug("REST request to get Incident fields {}, expand {} by criteria: {}", fields, expand, criteria);
+        SparseFieldset fieldset;
+        try {
+            fieldset = incidentQueryService.createFieldset(fields, expand);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "fieldsinvalid");
+        }
+        if ("none".equals(count)) {
+            Slice<Map<String, Object>> slice = incidentQueryService.findSliceByCriteria(criteria, fieldset, pageable);
+            HttpHeaders headers = SlicePaginationUtil.generateSlicePaginationHttpHeaders(
+                ServletUriComponentsBuilder.fromCurrentRequest(),
+                slice
+            );
+            return ResponseEntity.ok().headers(headers).body(expandFields(slice.getContent(), fieldset));
+        }
+        Page<Map<String, Object>> page = "estimate".equals(count)
+            ? incidentQueryService.findByCriteriaWithEstimatedTotal(criteria, fieldset, pageable)
+            : incidentQueryService.findByCriteria(criteria, fieldset, pageable);
+        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
+        return ResponseEntity.ok().headers(headers).body(expandFields(page.getContent(), fieldset));
+    }
+
+    /**
+     * {@code GET  /incidents?after=:cursor} : get the incidents with keyset pagination.
+     * <p>
+     * Send an empty {@code after} to get the first page, then the {@code X-Next-Cursor} header of the previous page
+     * to get the next one. Only one sort property, optionally followed by {@code id}, is supported.
+     *
+     * @param criteria the criteria which the requested entities should match.
+     * @param after the cursor of the page.
+     * @param fields the sparse fieldset, not supported with keyset pagination.
+     * @param expand the optional relations to embed, as for the other incident lists.
+     * @param pageable the size and, for the first page, the sort of the page.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of incidents in body,
+     * or with status {@code 400 (Bad Request)} if the cursor, the sort or an expansion is not valid, or if fields are requested.
+     */
+    @GetMapping(value = "/incidents", params = "after")
+    public ResponseEntity<List<Incident>> getAllIncidentsAfter(
+        IncidentCriteria criteria,
+        @RequestParam("after") String after,
+        @RequestParam(value = "fields", required = false) String fields,
+        @RequestParam(value = "expand", required = false) List<String> expand,
+        Pageable pageable
+    ) {
+        log.debug("REST request to get Incidents by criteria: {}, after: {}", criteria, after);
+        if (fields != null) {
+            throw new BadRequestAlertException("Fields are not supported with keyset pagination", ENTITY_NAME, "fieldsunsupported");
+        }
+        boolean summarized = isTriageSummaryExpanded(expand);
+        KeysetPage<Incident> page;
+        try {
+            page = incidentQueryService.findByCriteria(criteria, after, pageable);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "cursorinvalid");
+        }
+        HttpHeaders headers = SlicePaginationUtil.generateKeysetPaginationHttpHeaders(
+            ServletUriComponentsBuilder.fromCurrentRequest(),
+            page
+        );
+        return listResponse(headers, page.getContent(), summarized);
     }
 
     /**
@@ -198,28 +366,149 @@ public class IncidentResource {
      * {@code GET  /incidents/:id} : get the "id" incident.
      *
      * @param id the id of the incident to retrieve.
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the incident, or with status {@code 404 (Not Found)}.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the incident,
+     * or with status {@code 304 (Not Modified)} if it still has the {@code If-None-Match} version,
+     * or with status {@code 404 (Not Found)}.
      */
     @GetMapping("/incidents/{id}")
     public ResponseEntity<Incident> getIncident(@PathVariable Long id) {
         log.debug("REST request to get Incident : {}", id);
         Optional<Incident> incident = incidentService.findOne(id);
-        return ResponseUtil.wrapOrNotFound(incident);
+        HttpHeaders headers = new HttpHeaders();
+        incident.ifPresent(found -> ETagUtil.setETag(headers, eTag(found)));
+        return ResponseUtil.wrapOrNotFound(incident, headers);
+    }
+
+    /**
+     * {@code GET  /incidents/:id/triage-summary} : get the number of patients by triage category of the "id" incident.
+     *
+     * @param id the id of the incident.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the summary, or with status {@code 404 (Not Found)}.
+     */
+    @GetMapping("/incidents/{id}/triage-summary")
+    public ResponseEntity<TriageSummary> getIncidentTriageSummary(@PathVariable Long id) {
+        log.debug("REST request to get the triage summary of Incident : {}", id);
+        Optional<TriageSummary> summary = Optional
+            .of(id)
+            .filter(incidentRepository::existsById)
+            .map(incidentTriageCounterService::getSummary);
+        return ResponseUtil.wrapOrNotFound(summary);
+    }
+
+    /**
+     * {@code GET  /incidents/:id/events} : follow the patient changes of the "id" incident, as server-sent events.
+     * <p>
+     * Each event holds a {@link PatientEventDTO}, once the change is committed. A client which reconnects with the
+     * {@code Last-Event-ID} header receives the events it missed, or a {@code RELOAD} event if they are too old.
+     *
+     * @param id the id of the incident to follow.
+     * @param lastEventId the id of the last received event, sent by the browsers when they reconnect.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the event stream in body, or with status {@code 404 (Not Found)}.
+     */
+    @GetMapping(value = "/incidents/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> getIncidentEvents(
+        @PathVariable Long id,
+        @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId
+    ) {
+        log.debug("REST request to follow the Patients of Incident : {}", id);
+        if (!incidentRepository.existsById(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(patientEventService.subscribe(id, lastEventId));
     }
 
     /**
      * {@code DELETE  /incidents/:id} : delete the "id" incident.
      *
      * @param id the id of the incident to delete.
-     * @return the {@link ResponseEntity} with status {@code 204 (NO_CONTENT)}.
+     * @param patients the optional handling of the patients of the incident, {@code detach} or {@code delete}, by chunks.
+     * Without it, an incident which has patients can't be deleted.
+     * @return the {@link ResponseEntity} with status {@code 204 (NO_CONTENT)},
+     * or with status {@code 400 (Bad Request)} if the handling of the patients is not supported.
      */
     @DeleteMapping("/incidents/{id}")
-    public ResponseEntity<Void> deleteIncident(@PathVariable Long id) {
-        log.debug("REST request to delete Incident : {}", id);
-        incidentService.delete(id);
+    public ResponseEntity<Void> deleteIncident(@PathVariable Long id, @RequestParam(value = "patients", required = false) String patients) {
+        log.debug("REST request to delete Incident : {}, patients: {}", id, patients);
+        if (patients == null) {
+            incidentService.delete(id);
+        } else {
+            IncidentService.PatientDeletion patientDeletion;
+            try {
+                patientDeletion = IncidentService.PatientDeletion.valueOf(patients.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestAlertException("Unsupported handling of the patients", ENTITY_NAME, "patientdeletioninvalid");
+            }
+            incidentService.delete(id, patientDeletion);
+        }
         return ResponseEntity
             .noContent()
             .headers(HeaderUtil.createEntityDeletionAlert(applicationName, true, ENTITY_NAME, id.toString()))
             .build();
     }
+
+    private static BadRequestAlertException notFound() {
+        return new BadRequestAlertException("Entity not found", ENTITY_NAME, "idnotfound");
+    }
+
+    /**
+     * Run an update, which fails its {@code If-Match} precondition if the incident has another version.
+     */
+    private static <T> T checkVersion(Incident incident, Supplier<T> update) {
+        try {
+            return update.get();
+        } catch (OptimisticLockingFailureException e) {
+            if (incident.getVersion() == null) {
+                throw e;
+            }
+            throw new PreconditionFailedAlertException("The incident has been modified", ENTITY_NAME, "etagmismatch");
+        }
+    }
+
+    private static String eTag(Incident incident) {
+        return ETagUtil.entityTag(incident.getVersion());
+    }
+
+    private static String listTag(List<Incident> incidents) {
+        return ETagUtil.listTag(incidents, Incident::getId, IncidentResource::eTag);
+    }
+
+    private List<Map<String, Object>> expandFields(List<Map<String, Object>> incidents, SparseFieldset fieldset) {
+        if (fieldset.isExpanded(IncidentQueryService.TRIAGE_SUMMARY_EXPANSION)) {
+            Map<Long, TriageSummary> summaries = incidentTriageCounterService.getSummaries(
+                incidents.stream().map(incident -> (Long) incident.get(SparseFieldset.ID_FIELD)).collect(Collectors.toList())
+            );
+            for (Map<String, Object> incident : incidents) {
+                incident.put(IncidentQueryService.TRIAGE_SUMMARY_EXPANSION, summaries.get(incident.get(SparseFieldset.ID_FIELD)));
+            }
+        }
+        return incidents;
+    }
+
+    private static boolean isTriageSummaryExpanded(List<String> expand) {
+        if (expand == null) {
+            return false;
+        }
+        for (String name : expand) {
+            if (!IncidentQueryService.TRIAGE_SUMMARY_EXPANSION.equals(name)) {
+                throw new BadRequestAlertException("Unsupported expansion: " + name, ENTITY_NAME, "expandinvalid");
+            }
+        }
+        return !expand.isEmpty();
+    }
+
+    /**
+     * Return a list of incidents, with their triage summaries, or else with the {@code ETag} of the list, as the summaries
+     * are not versioned.
+     */
+    private ResponseEntity<List<Incident>> listResponse(HttpHeaders headers, List<Incident> incidents, boolean summarized) {
+        if (summarized) {
+            Map<Long, TriageSummary> summaries = incidentTriageCounterService.getSummaries(
+                incidents.stream().map(Incident::getId).collect(Collectors.toList())
+            );
+            incidents.forEach(incident -> incident.setTriageSummary(summaries.get(incident.getId())));
+        } else {
+            ETagUtil.setETag(headers, listTag(incidents));
+        }
+        return ResponseEntity.ok().headers(headers).body(incidents);
+    }
 }
@@ -1,27 +1,58 @@
 package com.github.zzzarius.ipms.web.rest;
 
+import com.github.zzzarius.ipms.domain.Incident;
 import com.github.zzzarius.ipms.domain.Patient;
-import com.github.zzzarius.ipms.repository.PatientRepository;
+import com.github.zzzarius.ipms.domain.PatientIdBlock;
+import com.github.zzzarius.ipms.repository.IncidentRepository;
+import com.github.zzzarius.ipms.service.PatientBulkUpdateService;
+import com.github.zzzarius.ipms.service.PatientExportService;
+import com.github.zzzarius.ipms.service.PatientGroupCommitService;
+import com.github.zzzarius.ipms.service.PatientImportService;
+import com.github.zzzarius.ipms.service.PatientJournalService;
 import com.github.zzzarius.ipms.service.PatientQueryService;
 import com.github.zzzarius.ipms.service.PatientService;
+import com.github.zzzarius.ipms.service.PatientSyncService;
+import com.github.zzzarius.ipms.service.PatientUploadService;
 import com.github.zzzarius.ipms.service.criteria.PatientCriteria;
+import com.github.zzzarius.ipms.service.dto.PatientBulkUpdateDTO;
+import com.github.zzzarius.ipms.service.dto.PatientImportDTO;
+import com.github.zzzarius.ipms.service.dto.PatientListDTO;
+import com.github.zzzarius.ipms.service.dto.PatientSyncDTO;
+import com.github.zzzarius.ipms.service.pagination.KeysetPage;
+import com.github.zzzarius.ipms.service.projection.SparseFieldset;
 import com.github.zzzarius.ipms.web.rest.errors.BadRequestAlertException;
+import com.github.zzzarius.ipms.web.rest.errors.PreconditionFailedAlertException;
+import com.github.zzzarius.ipms.web.rest.util.ETagUtil;
+import com.github.zzzarius.ipms.web.rest.util.SlicePaginationUtil;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
+import org.hibernate.Hibernate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.web.SortDefault;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import tech.jhipster.web.util.HeaderUtil;
 import tech.jhipster.web.util.PaginationUtil;
@@ -38,54 +69,181 @@ public class PatientResource {
 
     private static final String ENTITY_NAME = "patient";
 
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     @Value("${jhipster.clientApp.name}")
     private String applicationName;
 
     private final PatientService patientService;
 
-    private final PatientRepository patientRepository;
-
     private final PatientQueryService patientQueryService;
 
-    public PatientResource(PatientService patientService, PatientRepository patientRepository, PatientQueryService patientQueryService) {
+    private final PatientExportService patientExportService;
+
+    private final PatientImportService patientImportService;
+
+    private final PatientBulkUpdateService patientBulkUpdateService;
+
+    private final PatientSyncService patientSyncService;
+
+    private final PatientUploadService patientUploadService;
+
+    private final PatientGroupCommitService patientGroupCommitService;
+
+    private final PatientJournalService patientJournalService;
+
+    private final IncidentRepository incidentRepository;
+
+    public PatientResource(
+        PatientService patientService,
+        PatientQueryService patientQueryService,
+        PatientExportService patientExportService,
+        PatientImportService patientImportService,
+        PatientBulkUpdateService patientBulkUpdateService,
+        PatientSyncService patientSyncService,
+        PatientUploadService patientUploadService,
+        PatientGroupCommitService patientGroupCommitService,
+        PatientJournalService patientJournalService,
+        IncidentRepository incidentRepository
+    ) {
         this.patientService = patientService;
-        this.patientRepository = patientRepository;
         this.patientQueryService = patientQueryService;
+        this.patientExportService = patientExportService;
+        this.patientImportService = patientImportService;
+        this.patientBulkUpdateService = patientBulkUpdateService;
+        this.patientSyncService = patientSyncService;
+        this.patientUploadService = patientUploadService;
+        this.patientGroupCommitService = patientGroupCommitService;
+        this.patientJournalService = patientJournalService;
+        this.incidentRepository = incidentRepository;
     }
 
     /**
      * {@code POST  /patients} : Create a new patient.
+     * <p>
+     * With an {@code Idempotency-Key} header, the retries of the request return the original response, without creating
+     * the patient again. Without it, the concurrent creations share their transactions when the group commit is enabled.
+     * When the journal is enabled and the database is unavailable, the creation is journaled and replayed later: the
+     * response is {@code 202 (Accepted)}, with the {@code Idempotency-Key} to retry the request with to get the patient.
      *
      * @param patient the patient to create.
-     * @return the {@link ResponseEntity} with status {@code 201 (Created)} and with body the new patient, or with status {@code 400 (Bad Request)} if the patient has already an ID.
+     * @param idempotencyKey the optional key identifying this creation, chosen by the client.
+     * @return the {@link ResponseEntity} with status {@code 201 (Created)} and with body the new patient, or with status {@code 400 (Bad Request)} if the patient has already an ID,
+     * or if the idempotency key was used for another request, or with status {@code 202 (Accepted)} if the creation was
+     * journaled.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PostMapping("/patients")
-    public ResponseEntity<Patient> createPatient(@Valid @RequestBody Patient patient) throws URISyntaxException {
+    public ResponseEntity<Patient> createPatient(
+        @Valid @RequestBody Patient patient,
+        @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey
+    ) throws URISyntaxException {
         log.debug("REST request to save Patient : {}", patient);
         if (patient.getId() != null) {
             throw new BadRequestAlertException("A new patient cannot already have an ID", ENTITY_NAME, "idexists");
         }
-        Patient result = patientService.save(patient);
+        // Serialized before the creation, which changes the patient
+        String journalEntry = patientJournalService.isEnabled() ? patientJournalService.toJson(patient) : null;
+        Patient result;
+        try {
+            if (idempotencyKey != null) {
+                result = createIdempotently(patient, idempotencyKey);
+            } else if (patientGroupCommitService.isEnabled()) {
+                result = patientGroupCommitService.save(patient);
+            } else {
+                result = patientService.save(patient);
+            }
+        } catch (RuntimeException e) {
+            if (journalEntry == null || !PatientJournalService.isDatabaseUnavailable(e)) {
+                throw e;
+            }
+            try {
+                String journaledKey = patientJournalService.append(journalEntry, idempotencyKey);
+                log.warn("Database unavailable, journaled the creation of Patient with idempotency key : {}", journaledKey);
+                return ResponseEntity.accepted().header(IDEMPOTENCY_KEY, journaledKey).build();
+            } catch (IllegalStateException journalError) {
+                e.addSuppressed(journalError);
+                throw e;
+            }
+        }
         return ResponseEntity
             .created(new URI("/api/patients/" + result.getId()))
             .headers(HeaderUtil.createEntityCreationAlert(applicationName, true, ENTITY_NAME, result.getId().toString()))
             .body(result);
     }
 
+    private Patient createIdempotently(Patient patient, String idempotencyKey) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > 255) {
+            throw new BadRequestAlertException("The idempotency key must have 1 to 255 characters", ENTITY_NAME, "idempotencykeyinvalid");
+        }
+        try {
+            try {
+                return patientUploadService.create(patient, idempotencyKey);
+            } catch (DataIntegrityViolationException e) {
+                // A concurrent request with the same key committed first, its patient is returned
+                return patientUploadService.create(patient, idempotencyKey);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "idempotencykeyreused");
+        }
+    }
+
+    /**
+     * {@code POST  /patients/id-blocks} : Reserve a block of patient ids for the current user.
+     * <p>
+     * The client assigns them to the patients it registers offline, and uploads them with {@code POST /patients/batch}.
+     *
+     * @param size the number of ids to reserve.
+     * @return the {@link ResponseEntity} with status {@code 201 (Created)} and with body the reserved block,
+     * or with status {@code 400 (Bad Request)} if the size is not supported.
+     */
+    @PostMapping("/patients/id-blocks")
+    public ResponseEntity<PatientIdBlock> reservePatientIds(@RequestParam("size") int size) {
+        log.debug("REST request to reserve {} Patient ids", size);
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(patientUploadService.reserveIds(size));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "idblocksizeinvalid");
+        }
+    }
+
+    /**
+     * {@code POST  /patients/batch} : Insert or update a batch of patients, with ids reserved by the current user.
+     * <p>
+     * The batch is applied in one transaction, so a retried upload leaves the patients in the same state.
+     *
+     * @param patients the patients to insert or update.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the persisted patients,
+     * or with status {@code 400 (Bad Request)} if the batch is too large, or a patient is not valid or has an id which
+     * was not reserved by the current user.
+     */
+    @PostMapping("/patients/batch")
+    public ResponseEntity<List<Patient>> uploadPatients(@RequestBody List<Patient> patients) {
+        log.debug("REST request to upload {} Patients", patients.size());
+        try {
+            return ResponseEntity.ok().body(patientUploadService.upload(patients));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "batchinvalid");
+        }
+    }
+
     /**
      * {@code PUT  /patients/:id} : Updates an existing patient.
      *
      * @param id the id of the patient to save.
+     * @param ifMatch the optional {@code ETag} of the patient which was read, to update only that version.
      * @param patient the patient to update.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated patient,
-     * or with status {@code 400 (Bad Request)} if the patient is not valid,
+     * or with status {@code 400 (Bad Request)} if the patient is not valid or is not found,
+     * or with status {@code 409 (Conflict)} if the patient has been modified or deleted concurrently,
+     * or with status {@code 412 (Precondition Failed)} if the patient has changed since the {@code If-Match} version,
      * or with status {@code 500 (Internal Server Error)} if the patient couldn't be updated.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PutMapping("/patients/{id}")
     public ResponseEntity<Patient> updatePatient(
         @PathVariable(value = "id", required = false) final Long id,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
         @Valid @RequestBody Patient patient
     ) throws URISyntaxException {
         log.debug("REST request to update Patient : {}, {}", id, patient);
@@ -96,31 +254,29 @@ public class PatientResource {
             throw new BadRequestAlertException("Invalid ID", ENTITY_NAME, "idinvalid");
         }
 
-        if (!patientRepository.existsById(id)) {
-            throw new BadRequestAlertException("Entity not found", ENTITY_NAME, "idnotfound");
-        }
-
-        Patient result = patientService.save(patient);
-        return ResponseEntity
-            .ok()
-            .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, patient.getId().toString()))
-            .body(result);
+        patient.setVersion(ETagUtil.parseIfMatch(ifMatch, ENTITY_NAME));
+        Patient result = checkVersion(patient, () -> patientService.update(patient)).orElseThrow(PatientResource::notFound);
+        HttpHeaders headers = HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, patient.getId().toString());
+        return ResponseEntity.ok().headers(ETagUtil.setETag(headers, eTag(result))).body(result);
     }
 
     /**
      * {@code PATCH  /patients/:id} : Partial updates given fields of an existing patient, field will ignore if it is null
      *
      * @param id the id of the patient to save.
+     * @param ifMatch the optional {@code ETag} of the patient which was read, to update only that version.
      * @param patient the patient to update.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated patient,
-     * or with status {@code 400 (Bad Request)} if the patient is not valid,
-     * or with status {@code 404 (Not Found)} if the patient is not found,
+     * or with status {@code 400 (Bad Request)} if the patient is not valid or is not found,
+     * or with status {@code 409 (Conflict)} if the patient has been modified or deleted concurrently,
+     * or with status {@code 412 (Precondition Failed)} if the patient has changed since the {@code If-Match} version,
      * or with status {@code 500 (Internal Server Error)} if the patient couldn't be updated.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PatchMapping(value = "/patients/{id}", consumes = "application/merge-patch+json")
     public ResponseEntity<Patient> partialUpdatePatient(
         @PathVariable(value = "id", required = false) final Long id,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
         @NotNull @RequestBody Patient patient
     ) throws URISyntaxException {
         log.debug("REST request to partial update Patient partially : {}, {}", id, patient);
@@ -131,16 +287,36 @@ public class PatientResource {
             throw new BadRequestAlertException("Invalid ID", ENTITY_NAME, "idinvalid");
         }
 
-        if (!patientRepository.existsById(id)) {
-            throw new BadRequestAlertException("Entity not found", ENTITY_NAME, "idnotfound");
-        }
-
-        Optional<Patient> result = patientService.partialUpdate(patient);
+        patient.setVersion(ETagUtil.parseIfMatch(ifMatch, ENTITY_NAME));
+        Patient result = checkVersion(patient, () -> patientService.partialUpdate(patient)).orElseThrow(PatientResource::notFound);
+        HttpHeaders headers = HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, patient.getId().toString());
+        return ResponseEntity.ok().headers(ETagUtil.setETag(headers, eTag(result))).body(result);
+    }
 
-        return ResponseUtil.wrapOrNotFound(
-            result,
-            HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, patient.getId().toString())
-        );
+    /**
+     * {@code POST  /patients/bulk-update} : Updates the triage category or the incident of all the patients matching the criteria.
+     * <p>
+     * The patients are updated by chunks, each in its own transaction.
+     *
+     * @param criteria the criteria which the updated entities should match, at least one filter is required.
+     * @param patientBulkUpdate the triage category and the incident to set, the {@code null} ones are left unchanged.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the number of updated patients in body,
+     * or with status {@code 400 (Bad Request)} if there is no filter, nothing to update, or the incident does not exist.
+     */
+    @PostMapping("/patients/bulk-update")
+    public ResponseEntity<Long> bulkUpdatePatients(PatientCriteria criteria, @RequestBody PatientBulkUpdateDTO patientBulkUpdate) {
+        log.debug("REST request to update Patients by criteria: {}, {}", criteria, patientBulkUpdate);
+        if (new PatientCriteria().equals(criteria)) {
+            throw new BadRequestAlertException("A filter is required to update patients in bulk", ENTITY_NAME, "criteriaempty");
+        }
+        long updated;
+        try {
+            updated = patientBulkUpdateService.update(criteria, patientBulkUpdate);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "bulkupdateinvalid");
+        }
+        HttpHeaders headers = HeaderUtil.createAlert(applicationName, applicationName + ".patient.bulkUpdated", String.valueOf(updated));
+        return ResponseEntity.ok().headers(headers).body(updated);
     }
 
     /**
@@ -151,13 +327,181 @@ public class PatientResource {
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of patients in body.
      */
     @GetMapping("/patients")
-    public ResponseEntity<List<Patient>> getAllPatients(PatientCriteria criteria, Pageable pageable) {
+    public ResponseEntity<List<PatientListDTO>> getAllPatients(PatientCriteria criteria, Pageable pageable) {
         log.debug("REST request to get Patients by criteria: {}", criteria);
         Page<Patient> page = patientQueryService.findByCriteria(criteria, pageable);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
+        ETagUtil.setETag(headers, listTag(page.getContent()));
+        return ResponseEntity.ok().headers(headers).body(toListDTOs(page.getContent()));
+    }
+
+    /**
+     * {@code GET  /patients?count=none} : get the patients, without counting them.
+     * <p>
+     * No {@code X-Total-Count} header is returned, and the {@code Link} header only holds the next, previous and first pages.
+     *
+     * @param pageable the pagination information.
+     * @param criteria the criteria which the requested entities should match.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of patients in body.
+     */
+    @GetMapping(value = "/patients", params = { "count=none", "!after", "!fields" })
+    public ResponseEntity<List<PatientListDTO>> getAllPatientsWithoutTotal(PatientCriteria criteria, Pageable pageable) {
+        log.debug("REST request to get Patients without total by criteria: {}", criteria);
+        Slice<Patient> slice = patientQueryService.findSliceByCriteria(criteria, pageable);
+        HttpHeaders headers = SlicePaginationUtil.generateSlicePaginationHttpHeaders(
+            ServletUriComponentsBuilder.fromCurrentRequest(),
+            slice
+        );
+        ETagUtil.setETag(headers, listTag(slice.getContent()));
+        return ResponseEntity.ok().headers(headers).body(toListDTOs(slice.getContent()));
+    }
+
+    /**
+     * {@code GET  /patients?count=estimate} : get the patients, with an estimated total.
+     * <p>
+     * The {@code X-Total-Count} header holds a recently cached count, which can be slightly off.
+     *
+     * @param pageable the pagination information.
+     * @param criteria the criteria which the requested entities should match.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of patients in body.
+     */
+    @GetMapping(value = "/patients", params = { "count=estimate", "!after", "!fields" })
+    public ResponseEntity<List<PatientListDTO>> getAllPatientsWithEstimatedTotal(PatientCriteria criteria, Pageable pageable) {
+        log.debug("REST request to get Patients with estimated total by criteria: {}", criteria);
+        Page<Patient> page = patientQueryService.findByCriteriaWithEstimatedTotal(criteria, pageable);
+        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
+        ETagUtil.setETag(headers, listTag(page.getContent()));
+        return ResponseEntity.ok().headers(headers).body(toListDTOs(page.getContent()));
+    }
+
+    /**
+     * {@code GET  /patients?fields=:fields} : get the requested fields of the patients.
+     * <p>
+     * Only the id and the requested fields are read and returned, the incident being only joined and returned
+     * with {@code expand=incident}. With {@code count=none} the patients are not counted, with {@code count=estimate} their total is estimated,
+     * otherwise they are counted exactly.
+     *
+     * @param criteria the criteria which the requested entities should match.
+     * @param fields the comma separated fields, among {@code firstName}, {@code lastName} and {@code triageCategory}.
+     * @param expand the associations to return, only {@code incident} is supported.
+     * @param count {@code none} to skip the count of the patients, {@code estimate} to estimate it.
+     * @param pageable the pagination information.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of patients in body,
+     * or with status {@code 400 (Bad Request)} if a field or an association is not supported.
+     */
+    @GetMapping(value = "/patients", params = { "fields", "!after" })
+    public ResponseEntity<List<Map<String, Object>>> getAllPatientFields(
+        PatientCriteria criteria,
+        @RequestParam("fields") String fields,
+        @RequestParam(value = "expand", required = false) List<String> expand,
+        @RequestParam(value = "count", required = false) String count,
+        Pageable pageable
+    ) {
+        log.debug("REST request to get Patient fields {}, expand {} by criteria: {}", fields, expand, criteria);
+        SparseFieldset fieldset;
+        try {
+            fieldset = patientQueryService.createFieldset(fields, expand);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "fieldsinvalid");
+        }
+        if ("none".equals(count)) {
+            Slice<Map<String, Object>> slice = patientQueryService.findSliceByCriteria(criteria, fieldset, pageable);
+            HttpHeaders headers = SlicePaginationUtil.generateSlicePaginationHttpHeaders(
+                ServletUriComponentsBuilder.fromCurrentRequest(),
+                slice
+            );
+            return ResponseEntity.ok().headers(headers).body(slice.getContent());
+        }
+        Page<Map<String, Object>> page = "estimate".equals(count)
+            ? patientQueryService.findByCriteriaWithEstimatedTotal(criteria, fieldset, pageable)
+            : patientQueryService.findByCriteria(criteria, fieldset, pageable);
+        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
         return ResponseEntity.ok().headers(headers).body(page.getContent());
     }
 
+    /**
+     * {@code GET  /patients?after=:cursor} : get the patients with keyset pagination.
+     * <p>
+     * Send an empty {@code after} to get the first page, then the {@code X-Next-Cursor} header of the previous page
+     * to get the next one. Only one sort property, optionally followed by {@code id}, is supported.
+     *
+     * @param criteria the criteria which the requested entities should match.
+     * @param after the cursor of the page.
+     * @param fields the sparse fieldset, not supported with keyset pagination.
+     * @param pageable the size and, for the first page, the sort of the page.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of patients in body,
+     * or with status {@code 400 (Bad Request)} if the cursor or the sort is not valid, or if fields are requested.
+     */
+    @GetMapping(value = "/patients", params = "after")
+    public ResponseEntity<List<PatientListDTO>> getAllPatientsAfter(
+        PatientCriteria criteria,
+        @RequestParam("after") String after,
+        @RequestParam(value = "fields", required = false) String fields,
+        Pageable pageable
+    ) {
+        log.debug("REST request to get Patients by criteria: {}, after: {}", criteria, after);
+        if (fields != null) {
+            throw new BadRequestAlertException("Fields are not supported with keyset pagination", ENTITY_NAME, "fieldsunsupported");
+        }
+        KeysetPage<Patient> page;
+        try {
+            page = patientQueryService.findByCriteria(criteria, after, pageable);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "cursorinvalid");
+        }
+        HttpHeaders headers = SlicePaginationUtil.generateKeysetPaginationHttpHeaders(
+            ServletUriComponentsBuilder.fromCurrentRequest(),
+            page
+        );
+        ETagUtil.setETag(headers, listTag(page.getContent()));
+        return ResponseEntity.ok().headers(headers).body(toListDTOs(page.getContent()));
+    }
+
+    /**
+     * {@code GET  /incidents/:incidentId/patients} : get the patients of the "incidentId" incident, by pages.
+     *
+     * @param incidentId the id of the incident.
+     * @param pageable the pagination information, sorted by id by default.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of patients in body,
+     * or with status {@code 404 (Not Found)} if the incident does not exist.
+     */
+    @GetMapping("/incidents/{incidentId}/patients")
+    public ResponseEntity<List<PatientListDTO>> getIncidentPatients(@PathVariable Long incidentId, @SortDefault("id") Pageable pageable) {
+        log.debug("REST request to get the Patients of Incident : {}", incidentId);
+        PatientCriteria criteria = new PatientCriteria();
+        criteria.incidentId().setEquals(incidentId);
+        Page<Patient> page = patientQueryService.findByCriteria(criteria, pageable);
+        if (page.getTotalElements() == 0 && !incidentRepository.existsById(incidentId)) {
+            return ResponseEntity.notFound().build();
+        }
+        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
+        ETagUtil.setETag(headers, listTag(page.getContent()));
+        return ResponseEntity.ok().headers(headers).body(toListDTOs(page.getContent()));
+    }
+
+    /**
+     * {@code GET  /sync/patients} : get the patients created, updated or deleted since the last sync.
+     * <p>
+     * The client stores the returned token, and sends it with its next sync. While {@code hasMore} is set, it can sync
+     * again right away. The patients only hold the id of their incident, read with {@code GET /incidents}. A token
+     * older than {@code application.sync.max-token-age-hours} can be expired, the client then syncs from scratch.
+     *
+     * @param since the token returned by the previous sync, none to read all the patients.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the changes in body,
+     * or with status {@code 400 (Bad Request)} if the token is malformed or expired.
+     */
+    @GetMapping("/sync/patients")
+    public ResponseEntity<PatientSyncDTO> syncPatients(@RequestParam(value = "since", required = false) String since) {
+        log.debug("REST request to sync Patients since : {}", since);
+        try {
+            return ResponseEntity.ok().body(patientSyncService.findChanges(since));
+        } catch (PatientSyncService.TokenExpiredException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "synctokenexpired");
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "synctokeninvalid");
+        }
+    }
+
     /**
      * {@code GET  /patients/count} : count all the patients.
      *
@@ -170,17 +514,92 @@ public class PatientResource {
         return ResponseEntity.ok().body(patientQueryService.countByCriteria(criteria));
     }
 
+    /**
+     * {@code GET  /patients/export} : export all the patients matching the criteria.
+     * <p>
+     * The patients are streamed row by row, as newline delimited JSON or as CSV.
+     *
+     * @param criteria the criteria which the exported entities should match.
+     * @param format the export format, {@code ndjson} or {@code csv}.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the exported patients in body,
+     * or with status {@code 400 (Bad Request)} if the format is not supported.
+     */
+    @GetMapping("/patients/export")
+    public ResponseEntity<StreamingResponseBody> exportPatients(
+        PatientCriteria criteria,
+        @RequestParam(value = "format", defaultValue = "ndjson") String format
+    ) {
+        log.debug("REST request to export Patients as {} by criteria: {}", format, criteria);
+        PatientExportService.Format exportFormat;
+        try {
+            exportFormat = PatientExportService.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException("Unsupported export format", ENTITY_NAME, "exportformatinvalid");
+        }
+        StreamingResponseBody body = outputStream -> patientExportService.export(criteria, exportFormat, outputStream);
+        return ResponseEntity
+            .ok()
+            .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"patients." + exportFormat.getExtension() + "\"")
+            .body(body);
+    }
+
+    /**
+     * {@code POST  /patients/import} : import patients in bulk.
+     * <p>
+     * The body uses the export format, the {@code id} and {@code incidentName} CSV columns being ignored.
+     * It is imported in the background, follow its progress with the returned {@code Location}.
+     *
+     * @param format the import format, {@code ndjson} or {@code csv}.
+     * @param body the patients to import.
+     * @return the {@link ResponseEntity} with status {@code 202 (Accepted)} and with body the import progress,
+     * or with status {@code 400 (Bad Request)} if the format is not supported.
+     * @throws IOException if the body can't be read.
+     * @throws URISyntaxException if the Location URI syntax is incorrect.
+     */
+    @PostMapping("/patients/import")
+    public ResponseEntity<PatientImportDTO> importPatients(
+        @RequestParam(value = "format", defaultValue = "ndjson") String format,
+        InputStream body
+    ) throws IOException, URISyntaxException {
+        log.debug("REST request to import Patients as {}", format);
+        PatientExportService.Format importFormat;
+        try {
+            importFormat = PatientExportService.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException("Unsupported import format", ENTITY_NAME, "importformatinvalid");
+        }
+        PatientImportDTO result = patientImportService.start(importFormat, body);
+        return ResponseEntity.accepted().location(new URI("/api/patients/import/" + result.getId())).body(result);
+    }
+
+    /**
+     * {@code GET  /patients/import/:id} : get the progress of the "id" import.
+     *
+     * @param id the id of the import.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the import progress, or with status {@code 404 (Not Found)}.
+     */
+    @GetMapping("/patients/import/{id}")
+    public ResponseEntity<PatientImportDTO> getPatientImport(@PathVariable String id) {
+        log.debug("REST request to get Patient import : {}", id);
+        return ResponseUtil.wrapOrNotFound(patientImportService.findOne(id));
+    }
+
     /**
      * {@code GET  /patients/:id} : get the "id" patient.
      *
      * @param id the id of the patient to retrieve.
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the patient, or with status {@code 404 (Not Found)}.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the patient,
+     * or with status {@code 304 (Not Modified)} if it still has the {@code If-None-Match} version,
+     * or with status {@code 404 (Not Found)}.
      */
     @GetMapping("/patients/{id}")
     public ResponseEntity<Patient> getPatient(@PathVariable Long id) {
         log.debug("REST request to get Patient : {}", id);
         Optional<Patient> patient = patientService.findOne(id);
-        return ResponseUtil.wrapOrNotFound(patient);
+        HttpHeaders headers = new HttpHeaders();
+        patient.ifPresent(found -> ETagUtil.setETag(headers, eTag(found)));
+        return ResponseUtil.wrapOrNotFound(patient, headers);
     }
 
     /**
@@ -198,4 +617,39 @@ public class PatientResource {
             .headers(HeaderUtil.createEntityDeletionAlert(applicationName, true, ENTITY_NAME, id.toString()))
             .build();
     }
+
+    private static BadRequestAlertException notFound() {
+        return new BadRequestAlertException("Entity not found", ENTITY_NAME, "idnotfound");
+    }
+
+    /**
+     * Run an update, which fails its {@code If-Match} precondition if the patient has another version.
+     */
+    private static <T> T checkVersion(Patient patient, Supplier<T> update) {
+        try {
+            return update.get();
+        } catch (OptimisticLockingFailureException e) {
+            if (patient.getVersion() == null) {
+                throw e;
+            }
+            throw new PreconditionFailedAlertException("The patient has been modified", ENTITY_NAME, "etagmismatch");
+        }
+    }
+
+    /**
+     * The entity tag of a patient, which also depends on its incident when the incident is loaded, and embedded.
+     */
+    private static String eTag(Patient patient) {
+        Incident incident = patient.getIncident();
+        Long incidentVersion = incident != null && Hibernate.isInitialized(incident) ? incident.getVersion() : null;
+        return ETagUtil.entityTag(patient.getVersion(), incidentVersion);
+    }
+
+    private static String listTag(List<Patient> patients) {
+        return ETagUtil.listTag(patients, Patient::getId, PatientResource::eTag);
+    }
+
+    private static List<PatientListDTO> toListDTOs(List<Patient> patients) {
+        return patients.stream().map(PatientListDTO::new).collect(Collectors.toList());
+    }
 }
@@ -0,0 +1,103 @@
+package com.github.zzzarius.ipms.web.rest.util;
+
+import com.github.zzzarius.ipms.web.rest.errors.PreconditionFailedAlertException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.DigestUtils;
+
+/**
+ * Utility class for the entity tags of the versioned entities.
+ *
+ * <p>
+ * The tags are strong, and built from the versions of the entities held by a representation, so that they are known
+ * without serializing it. Set them with {@link #setETag(HttpHeaders, String)}: a {@code GET} whose {@code If-None-Match}
+ * header matches is then answered with a {@code 304 (Not Modified)}, without body. The {@code If-Match} header of an
+ * update is parsed by {@link #parseIfMatch(String, String)}, and checked by the optimistic locking of the update.
+ */
+public final class ETagUtil {
+
+    private static final String ANY = "*";
+
+    private static final String SEPARATOR = ".";
+
+    private static final String ABSENT = "-";
+
+    private ETagUtil() {}
+
+    /**
+     * Generate the entity tag of a representation.
+     *
+     * @param version the version of the entity.
+     * @param embeddedVersions the versions of the embedded entities, {@code null} for the ones which are absent.
+     * @return the entity tag.
+     */
+    public static String entityTag(Long version, Long... embeddedVersions) {
+        StringBuilder tag = new StringBuilder("\"").append(version);
+        for (Long embeddedVersion : embeddedVersions) {
+            tag.append(SEPARATOR).append(embeddedVersion == null ? ABSENT : embeddedVersion.toString());
+        }
+        return tag.append('"').toString();
+    }
+
+    /**
+     * Generate the entity tag of a list, from the ids and the entity tags of its elements.
+     *
+     * @param elements the elements of the list, in order.
+     * @param id the id of an element.
+     * @param elementTag the entity tag of an element.
+     * @param <T> the type of the elements.
+     * @return the entity tag.
+     */
+    public static <T> String listTag(List<T> elements, Function<T, ?> id, Function<T, String> elementTag) {
+        String tags = elements
+            .stream()
+            .map(element -> id.apply(element) + "=" + elementTag.apply(element))
+            .collect(Collectors.joining(","));
+        return "\"" + DigestUtils.md5DigestAsHex(tags.getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    /**
+     * Set the entity tag of a response, which the browsers can then store, but revalidate before each use.
+     *
+     * @param headers the headers of the response.
+     * @param eTag the entity tag of its body.
+     * @return the headers.
+     */
+    public static HttpHeaders setETag(HttpHeaders headers, String eTag) {
+        headers.setETag(eTag);
+        headers.setCacheControl(CacheControl.noCache().cachePrivate());
+        return headers;
+    }
+
+    /**
+     * Parse the version of the entity expected by an {@code If-Match} header.
+     * <p>
+     * Only the version of the entity itself is checked, a change of its embedded entities does not fail the precondition.
+     *
+     * @param ifMatch the header, can be {@code null}.
+     * @param entityName the name of the entity, for the error.
+     * @return the expected version, {@code null} if the header is missing or is {@code *}.
+     * @throws PreconditionFailedAlertException if the header is not a single entity tag generated by
+     * {@link #entityTag(Long, Long...)}, so can't match the current one.
+     */
+    public static Long parseIfMatch(String ifMatch, String entityName) {
+        if (ifMatch == null || ANY.equals(ifMatch.trim())) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            String version = tag.substring(1, tag.length() - 1).split(Pattern.quote(SEPARATOR))[0];
+            try {
+                return Long.valueOf(version);
+            } catch (NumberFormatException e) {
+                // Not one of our tags, it can't match
+            }
+        }
+        throw new PreconditionFailedAlertException("The entity tag does not match", entityName, "etagmismatch");
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.zzzarius.ipms.web.rest.util;
+
+import com.github.zzzarius.ipms.service.pagination.KeysetPage;
+import java.text.MessageFormat;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * Utility class for handling pagination without total count.
+ *
+ * <p>
+ * Pagination uses the same principles as the <a href="https://developer.github.com/v3/#pagination">GitHub API</a>,
+ * and follow <a href="http://tools.ietf.org/html/rfc5988">RFC 5988 (Link header)</a>.
+ */
+public final class SlicePaginationUtil {
+
+    public static final String HEADER_X_NEXT_CURSOR = "X-Next-Cursor";
+
+    private static final String HEADER_LINK_FORMAT = "<{0}>; rel=\"{1}\"";
+
+    private SlicePaginationUtil() {}
+
+    /**
+     * Generate pagination headers for a Spring Data {@link Slice} object.
+     * Unlike a {@link org.springframework.data.domain.Page}, the total is unknown, so only the
+     * next, previous and first links are generated.
+     *
+     * @param uriBuilder The URI builder.
+     * @param slice The slice.
+     * @param <T> The type of object.
+     * @return http header.
+     */
+    public static <T> HttpHeaders generateSlicePaginationHttpHeaders(UriComponentsBuilder uriBuilder, Slice<T> slice) {
+        HttpHeaders headers = new HttpHeaders();
+        int pageNumber = slice.getNumber();
+        int pageSize = slice.getSize();
+        StringBuilder link = new StringBuilder();
+        if (slice.hasNext()) {
+            link.append(prepareLink(preparePageUri(uriBuilder, pageNumber + 1, pageSize), "next")).append(",");
+        }
+        if (slice.hasPrevious()) {
+            link.append(prepareLink(preparePageUri(uriBuilder, pageNumber - 1, pageSize), "prev")).append(",");
+        }
+        link.append(prepareLink(preparePageUri(uriBuilder, 0, pageSize), "first"));
+        headers.add(HttpHeaders.LINK, link.toString());
+        return headers;
+    }
+
+    /**
+     * Generate pagination headers for a keyset paginated result.
+     *
+     * @param uriBuilder The URI builder.
+     * @param page The keyset page.
+     * @param <T> The type of object.
+     * @return http header.
+     */
+    public static <T> HttpHeaders generateKeysetPaginationHttpHeaders(UriComponentsBuilder uriBuilder, KeysetPage<T> page) {
+        HttpHeaders headers = new HttpHeaders();
+        page
+            .getNextCursor()
+            .ifPresent(
+                cursor -> {
+                    String token = cursor.encode();
+                    headers.add(HEADER_X_NEXT_CURSOR, token);
+                    headers.add(HttpHeaders.LINK, prepareLink(uriBuilder.replaceQueryParam("after", token), "next"));
+                }
+            );
+        return headers;
+    }
+
+    private static UriComponentsBuilder preparePageUri(UriComponentsBuilder uriBuilder, int pageNumber, int pageSize) {
+        return uriBuilder.replaceQueryParam("page", Integer.toString(pageNumber)).replaceQueryParam("size", Integer.toString(pageSize));
+    }
+
+    private static String prepareLink(UriComponentsBuilder uriBuilder, String relType) {
+        return MessageFormat.format(HEADER_LINK_FORMAT, uriBuilder.toUriString().replace(",", "%2C").replace(";", "%3B"), relType);
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Utility classes for Spring MVC REST controllers.
+ */
+package com.github.zzzarius.ipms.web.rest.util;
@@ -20,26 +20,20 @@ const apiUrl = 'api/incidents';
 // Actions
 
 export const getEntities = createAsyncThunk('incident/fetch_entity_list', async ({ page, size, sort }: IQueryParams) => {
-  const requestUrl = `${apiUrl}${sort ? `?page=${page}&size=${size}&sort=${sort}&` : '?'}cacheBuster=${new Date().getTime()}`;
+  const requestUrl = `${apiUrl}${sort ? `?page=${page}&size=${size}&sort=${sort}` : ''}`;
   return axios.get<IIncident[]>(requestUrl);
 });
 
 export const getFilteredEntities = createAsyncThunk(
   'incident/fetch_filtered_entity_list',
   async ({ page, size, sort, idFilter, nameFilter, startDateFilter }: IQueryParams) => {
-    const catcheBusterParameter = `?cacheBuster=${new Date().getTime()}`;
     const sortParameters = sort ? `&page=${page}&size=${size}&sort=${sort}` : '';
     const idFilterParameter = idFilter ? `&id.equals=${idFilter}` : '';
     const nameFilterParameter = nameFilter ? `&name.contains=${nameFilter}` : '';
     const startDateFilterParameter = startDateFilter ? `&startDate.equals=${startDateFilter}` : '';
-    const requestUrl = [
-      apiUrl,
-      catcheBusterParameter,
-      sortParameters,
-      idFilterParameter,
-      nameFilterParameter,
-      startDateFilterParameter,
-    ].join('');
+    const queryParameters = [sortParameters, idFilterParameter, nameFilterParameter, startDateFilterParameter].join('');
+    // No cache buster, the browser revalidates the cached lists with their ETag
+    const requestUrl = queryParameters ? `${apiUrl}?${queryParameters.substring(1)}` : apiUrl;
     return axios.get<IIncident[]>(requestUrl);
   }
 );
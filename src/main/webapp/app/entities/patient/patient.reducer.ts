@@ -21,14 +21,13 @@ const apiUrl = 'api/patients';
 // Actions
 
 export const getEntities = createAsyncThunk('patient/fetch_entity_list', async ({ page, size, sort }: IQueryParams) => {
-  const requestUrl = `${apiUrl}${sort ? `?page=${page}&size=${size}&sort=${sort}&` : '?'}cacheBuster=${new Date().getTime()}`;
+  const requestUrl = `${apiUrl}${sort ? `?page=${page}&size=${size}&sort=${sort}` : ''}`;
   return axios.get<IPatient[]>(requestUrl);
 });
 
 export const getFilteredEntities = createAsyncThunk(
   'patient/fetch_filtered_entity_list',
   async ({ page, size, sort, idFilter, firstNameFilter, lastNameFilter, triageCategoryFilter, incidentFilter }: IQueryParams) => {
-    const catcheBusterParameter = `?cacheBuster=${new Date().getTime()}`;
     const sortParameters = sort ? `&page=${page}&size=${size}&sort=${sort}` : '';
     const idFilterParameter = idFilter ? `&id.equals=${idFilter}` : '';
     const firstNameFilterParameter = firstNameFilter ? `&firstName.contains=${firstNameFilter}` : '';
@@ -37,9 +36,7 @@ export const getFilteredEntities = createAsyncThunk(
       ? `&triageCategory.in=${categoriesStartsWith(triageCategoryFilter).join(',')}`
       : '';
     const incidentFilterParameter = incidentFilter ? `&incidentName.contains=${incidentFilter}` : '';
-    const requestUrl = [
-      apiUrl,
-      catcheBusterParameter,
+    const queryParameters = [
       sortParameters,
       idFilterParameter,
       firstNameFilterParameter,
@@ -47,6 +44,8 @@ export const getFilteredEntities = createAsyncThunk(
       triageCategoryFilterParameter,
       incidentFilterParameter,
     ].join('');
+    // No cache buster, the browser revalidates the cached lists with their ETag
+    const requestUrl = queryParameters ? `${apiUrl}?${queryParameters.substring(1)}` : apiUrl;
     return axios.get<IPatient[]>(requestUrl);
   }
 );
@@ -0,0 +1,71 @@
+package com.github.zzzarius.ipms.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.github.zzzarius.ipms.IntegrationTest;
+import com.github.zzzarius.ipms.domain.Incident;
+import com.github.zzzarius.ipms.domain.Patient;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import org.ehcache.config.ResourceType;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Integration tests for the second-level cache regions of {@link CacheConfiguration}.
+ */
+@IntegrationTest
+class CacheConfigurationIT {
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
+    @Test
+    void regionsAreSizedFromApplicationProperties() {
+        assertThat(heapEntries(Incident.class.getName())).isEqualTo(applicationProperties.getCache().getIncident().getMaxEntries());
+        assertThat(heapEntries(Patient.class.getName())).isEqualTo(applicationProperties.getCache().getPatient().getMaxEntries());
+        assertThat(heapEntries(Incident.class.getName() + ".patients"))
+            .isEqualTo(applicationProperties.getCache().getIncidentPatients().getMaxEntries());
+    }
+
+    @Test
+    void regionHitsAndMissesArePublished() {
+        String region = Patient.class.getName();
+        Cache<Object, Object> cache = cacheManager.getCache(region);
+        double hits = gets(region, "hit");
+        double misses = gets(region, "miss");
+
+        cache.put("cached", "value");
+        cache.get("cached");
+        cache.get("missing");
+
+        assertThat(gets(region, "hit")).isEqualTo(hits + 1);
+        assertThat(gets(region, "miss")).isEqualTo(misses + 1);
+        assertThat(meterRegistry.find("cache.evictions").tag("cache", region).functionCounter()).isNotNull();
+    }
+
+    private long heapEntries(String region) {
+        @SuppressWarnings("unchecked")
+        Eh107Configuration<Object, Object> configuration = cacheManager.getCache(region).getConfiguration(Eh107Configuration.class);
+        return configuration
+            .unwrap(org.ehcache.config.CacheRuntimeConfiguration.class)
+            .getResourcePools()
+            .getPoolForResource(ResourceType.Core.HEAP)
+            .getSize();
+    }
+
+    private double gets(String region, String result) {
+        FunctionCounter counter = meterRegistry.find("cache.gets").tag("cache", region).tag("result", result).functionCounter();
+        assertThat(counter).isNotNull();
+        return counter.count();
+    }
+}
@@ -0,0 +1,165 @@
+package com.github.zzzarius.ipms.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.sql.DataSource;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Test class for the {@link ReplicaRoutingDataSource}, on two in-memory H2 databases which tell which one was read.
+ */
+class ReplicaRoutingDataSourceTest {
+
+    private final AtomicReference<String> client = new AtomicReference<>();
+
+    private DataSource primary;
+
+    private DataSource replica;
+
+    @BeforeEach
+    void createDatabases() {
+        primary = database("primary");
+        replica = database("replica");
+    }
+
+    @Test
+    void testReadOnlyTransactionReadsFromReplica() {
+        ReplicaRoutingDataSource routing = routing(Duration.ofSeconds(5), null);
+
+        assertThat(read(routing, true)).isEqualTo("replica");
+    }
+
+    @Test
+    void testReadWriteTransactionUsesPrimary() {
+        ReplicaRoutingDataSource routing = routing(Duration.ofSeconds(5), null);
+
+        assertThat(read(routing, false)).isEqualTo("primary");
+    }
+
+    @Test
+    void testClientReadsItsOwnWritesFromPrimary() {
+        ReplicaRoutingDataSource routing = routing(Duration.ofSeconds(5), null);
+        client.set("writer");
+        read(routing, false);
+
+        assertThat(read(routing, true)).isEqualTo("primary");
+        client.set("reader");
+        assertThat(read(routing, true)).isEqualTo("replica");
+    }
+
+    @Test
+    void testStickinessEndsWithTheToleratedLag() {
+        ReplicaRoutingDataSource routing = routing(Duration.ZERO, null);
+        client.set("writer");
+        read(routing, false);
+
+        assertThat(read(routing, true)).isEqualTo("replica");
+    }
+
+    @Test
+    void testLaggingReplicaIsSkipped() {
+        ReplicaRoutingDataSource lagging = routing(Duration.ofSeconds(5), "select 10");
+        ReplicaRoutingDataSource inSync = routing(Duration.ofSeconds(5), "select 1");
+
+        lagging.checkReplicas();
+        inSync.checkReplicas();
+
+        assertThat(read(lagging, true)).isEqualTo("primary");
+        assertThat(read(inSync, true)).isEqualTo("replica");
+    }
+
+    @Test
+    void testUnreachableReplicaFallsBackToPrimary() {
+        JdbcDataSource missing = new JdbcDataSource();
+        missing.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";IFEXISTS=TRUE");
+        replica = missing;
+        ReplicaRoutingDataSource routing = routing(Duration.ofSeconds(5), null);
+
+        assertThat(read(routing, true)).isEqualTo("primary");
+        routing.checkReplicas();
+        assertThat(read(routing, true)).isEqualTo("primary");
+    }
+
+    @Test
+    void testReplicaCheckedDownFallsBackToPrimaryUntilItIsBack() {
+        AtomicBoolean down = new AtomicBoolean();
+        replica =
+            new DelegatingDataSource(replica) {
+                @Override
+                public Connection getConnection() throws SQLException {
+                    if (down.get()) {
+                        throw new SQLException("Replica is down");
+                    }
+                    return super.getConnection();
+                }
+            };
+        ReplicaRoutingDataSource routing = routing(Duration.ofSeconds(5), null);
+        routing.checkReplicas();
+        assertThat(read(routing, true)).isEqualTo("replica");
+
+        down.set(true);
+        routing.checkReplicas();
+        // Not even tried until the next check
+        down.set(false);
+        assertThat(read(routing, true)).isEqualTo("primary");
+
+        routing.checkReplicas();
+        assertThat(read(routing, true)).isEqualTo("replica");
+    }
+
+    @Test
+    void testConnectionWithCredentialsIsRouted() throws SQLException {
+        ReplicaRoutingDataSource routing = routing(Duration.ofSeconds(5), null);
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        try (Connection connection = routing.getConnection("", "")) {
+            assertThat(marker(connection)).isEqualTo("replica");
+        } finally {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        }
+        try (Connection connection = routing.getConnection("", "")) {
+            assertThat(marker(connection)).isEqualTo("primary");
+        }
+    }
+
+    private ReplicaRoutingDataSource routing(Duration maxLag, String lagQuery) {
+        return new ReplicaRoutingDataSource(primary, Map.of("replica", replica), maxLag, lagQuery, () -> Optional.ofNullable(client.get()));
+    }
+
+    private static String read(ReplicaRoutingDataSource routing, boolean readOnly) {
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transactionTemplate.setReadOnly(readOnly);
+        return transactionTemplate.execute(status -> new JdbcTemplate(dataSource).queryForObject("select name from marker", String.class));
+    }
+
+    private static String marker(Connection connection) {
+        return new JdbcTemplate(new SingleConnectionDataSource(connection, true)).queryForObject("select name from marker", String.class);
+    }
+
+    private static DataSource database(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table marker (name varchar(20))");
+        jdbcTemplate.update("insert into marker values (?)", name);
+        return dataSource;
+    }
+}
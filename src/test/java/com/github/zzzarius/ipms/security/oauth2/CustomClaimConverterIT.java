@@ -12,10 +12,23 @@ import com.github.zzzarius.ipms.IntegrationTest;
 import com.github.zzzarius.ipms.IpmsApp;
 import com.github.zzzarius.ipms.config.TestSecurityConfiguration;
 import com.github.zzzarius.ipms.security.AuthoritiesConstants;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentMatchers;
@@ -24,8 +37,12 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
 import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
 @IntegrationTest
 class CustomClaimConverterIT {
@@ -46,7 +63,12 @@ class CustomClaimConverterIT {
 
     @BeforeEach
     public void initTest() {
-        customClaimConverter = new CustomClaimConverter(clientRegistrationRepository.findByRegistrationId("oidc"), restTemplate);
+        customClaimConverter =
+            new CustomClaimConverter(clientRegistrationRepository.findByRegistrationId("oidc"), restTemplate, newUserInfoCache());
+    }
+
+    private static UserInfoCache newUserInfoCache() {
+        return new UserInfoCache(Duration.ofMinutes(5), Duration.ZERO, 100, Runnable::run, new SimpleMeterRegistry());
     }
 
     private void mockHttpGetUserInfo(ObjectNode userInfo) {
@@ -101,4 +123,67 @@ class CustomClaimConverterIT {
         // WHEN
         assertThatCode(() -> customClaimConverter.convert(claims)).doesNotThrowAnyException();
     }
+
+    @Test
+    void testConcurrentConversionsOfAUserLoadItOnce() throws Exception {
+        AtomicInteger userInfoRequests = new AtomicInteger();
+        List<String> authorizations = new CopyOnWriteArrayList<>();
+        HttpServer userInfoStub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        userInfoStub.setExecutor(Executors.newFixedThreadPool(4));
+        userInfoStub.createContext(
+            "/userinfo",
+            exchange -> {
+                userInfoRequests.incrementAndGet();
+                authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+                byte[] body = ("{\"preferred_username\":\"" + USERNAME + "\",\"given_name\":\"" + NAME + "\",\"family_name\":\"" +
+                    FAMILY_NAME + "\"}").getBytes(StandardCharsets.UTF_8);
+                try {
+                    // Slow endpoint, so that the conversions overlap
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        );
+        userInfoStub.start();
+        ExecutorService requests = Executors.newFixedThreadPool(16);
+        try {
+            ClientRegistration registration = ClientRegistration
+                .withClientRegistration(clientRegistrationRepository.findByRegistrationId("oidc"))
+                .userInfoUri("http://127.0.0.1:" + userInfoStub.getAddress().getPort() + "/userinfo")
+                .build();
+            CustomClaimConverter converter = new CustomClaimConverter(registration, new RestTemplate(), newUserInfoCache());
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Map<String, Object>>> conversions = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                conversions.add(
+                    requests.submit(
+                        () -> {
+                            MockHttpServletRequest request = new MockHttpServletRequest();
+                            request.addHeader("Authorization", "Bearer token");
+                            RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+                            start.await();
+                            return converter.convert(Map.of("sub", "456"));
+                        }
+                    )
+                );
+            }
+
+            start.countDown();
+
+            for (Future<Map<String, Object>> conversion : conversions) {
+                assertThat(conversion.get(10, TimeUnit.SECONDS)).containsEntry("preferred_username", USERNAME);
+            }
+            assertThat(userInfoRequests).hasValue(1);
+            assertThat(authorizations).containsExactly("Bearer token");
+        } finally {
+            requests.shutdownNow();
+            userInfoStub.stop(0);
+            ((ExecutorService) userInfoStub.getExecutor()).shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,145 @@
+package com.github.zzzarius.ipms.security.oauth2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Test class for the {@link UserInfoCache}.
+ */
+class UserInfoCacheTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void testConcurrentRequestsShareTheFailureOfTheirLoad() throws Exception {
+        UserInfoCache cache = new UserInfoCache(Duration.ofMinutes(5), Duration.ZERO, 100, Runnable::run, meterRegistry);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch failing = new CountDownLatch(1);
+        ExecutorService requests = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<ObjectNode>> results = new ArrayList<>();
+            results.add(
+                requests.submit(
+                    () ->
+                        cache.get(
+                            "sub",
+                            () -> {
+                                loads.incrementAndGet();
+                                loading.countDown();
+                                await(failing);
+                                throw new ResourceAccessException("Userinfo endpoint unreachable");
+                            }
+                        )
+                )
+            );
+            loading.await(5, TimeUnit.SECONDS);
+            for (int i = 0; i < 7; i++) {
+                results.add(requests.submit(() -> cache.get("sub", loader("never"))));
+            }
+            // Let the waiting requests join the load before it fails
+            Thread.sleep(100);
+            failing.countDown();
+
+            for (Future<ObjectNode> result : results) {
+                assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(ResourceAccessException.class);
+            }
+        } finally {
+            requests.shutdownNow();
+        }
+        assertThat(loads).hasValue(1);
+        assertThat(cache.get("sub", loader("recovered")).get("preferred_username").asText()).isEqualTo("recovered");
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void testExpiredUserIsLoadedAgain() throws Exception {
+        UserInfoCache cache = new UserInfoCache(Duration.ofMillis(50), Duration.ZERO, 100, Runnable::run, meterRegistry);
+        cache.get("sub", loader("first"));
+        assertThat(cache.get("sub", loader("second")).get("preferred_username").asText()).isEqualTo("first");
+
+        Thread.sleep(100);
+
+        assertThat(cache.get("sub", loader("third")).get("preferred_username").asText()).isEqualTo("third");
+        assertThat(loads).hasValue(2);
+        assertThat(meterRegistry.get("ipms.userinfo.cache.requests").tag("result", "hit").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("ipms.userinfo.cache.requests").tag("result", "miss").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("ipms.userinfo.cache.hit.ratio").gauge().value()).isEqualTo(1.0 / 3);
+        assertThat(meterRegistry.get("ipms.userinfo.cache.load").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    void testOldUserIsRefreshedInTheBackground() throws Exception {
+        List<Runnable> refreshes = new ArrayList<>();
+        UserInfoCache cache = new UserInfoCache(Duration.ofMinutes(5), Duration.ofMillis(50), 100, refreshes::add, meterRegistry);
+        cache.get("sub", loader("first"));
+        Thread.sleep(100);
+
+        assertThat(cache.get("sub", loader("refreshed")).get("preferred_username").asText()).isEqualTo("first");
+        assertThat(cache.get("sub", loader("again")).get("preferred_username").asText()).isEqualTo("first");
+        assertThat(refreshes).hasSize(1);
+        refreshes.get(0).run();
+
+        assertThat(cache.get("sub", loader("later")).get("preferred_username").asText()).isEqualTo("refreshed");
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void testOldestUserIsEvictedWhenFull() {
+        UserInfoCache cache = new UserInfoCache(Duration.ofMinutes(5), Duration.ZERO, 2, Runnable::run, meterRegistry);
+        cache.get("first", loader("first"));
+        cache.get("second", loader("second"));
+        cache.get("third", loader("third"));
+
+        assertThat(meterRegistry.get("ipms.userinfo.cache.size").gauge().value()).isEqualTo(2);
+        assertThat(meterRegistry.get("ipms.userinfo.cache.evictions").counter().count()).isEqualTo(1);
+        cache.get("second", loader("second"));
+        cache.get("third", loader("third"));
+        assertThat(loads).hasValue(3);
+        cache.get("first", loader("first"));
+        assertThat(loads).hasValue(4);
+    }
+
+    private Supplier<ObjectNode> loader(String username) {
+        return () -> {
+            loads.incrementAndGet();
+            ObjectNode user = mapper.createObjectNode();
+            user.put("preferred_username", username);
+            return user;
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
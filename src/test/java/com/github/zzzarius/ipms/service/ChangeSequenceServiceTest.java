@@ -0,0 +1,64 @@
+package com.github.zzzarius.ipms.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.github.zzzarius.ipms.config.ApplicationProperties;
+import com.github.zzzarius.ipms.domain.ChangeSequence;
+import com.github.zzzarius.ipms.repository.ChangeSequenceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+/**
+ * Test class for the visibility watermark of the {@link ChangeSequenceService}.
+ */
+class ChangeSequenceServiceTest {
+
+    private final ChangeSequenceRepository changeSequenceRepository = mock(ChangeSequenceRepository.class);
+
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    private final ApplicationProperties applicationProperties = new ApplicationProperties();
+
+    @BeforeEach
+    void setup() {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+    }
+
+    @Test
+    void testWatermarkIsTheValueSampledASafetyLagAgo() throws InterruptedException {
+        applicationProperties.getSync().setSafetyLagMs(100);
+        ChangeSequenceService changeSequenceService = service();
+
+        sample(changeSequenceService, 5);
+        assertThat(changeSequenceService.visibleUpTo()).isZero();
+        sample(changeSequenceService, 6);
+        assertThat(changeSequenceService.visibleUpTo()).isZero();
+
+        Thread.sleep(150);
+        sample(changeSequenceService, 9);
+        assertThat(changeSequenceService.visibleUpTo()).isEqualTo(6);
+    }
+
+    @Test
+    void testWatermarkWithoutSafetyLagIsTheCurrentValue() {
+        applicationProperties.getSync().setSafetyLagMs(0);
+        ChangeSequenceService changeSequenceService = service();
+        when(changeSequenceRepository.findLastValueByName(ChangeSequence.PATIENT)).thenReturn(7L);
+
+        assertThat(changeSequenceService.visibleUpTo()).isEqualTo(7);
+    }
+
+    private ChangeSequenceService service() {
+        return new ChangeSequenceService(changeSequenceRepository, transactionManager, applicationProperties);
+    }
+
+    private void sample(ChangeSequenceService changeSequenceService, long value) {
+        when(changeSequenceRepository.findLastValueByName(ChangeSequence.PATIENT)).thenReturn(value);
+        changeSequenceService.sample();
+    }
+}
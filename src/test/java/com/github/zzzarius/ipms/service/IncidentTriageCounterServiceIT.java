@@ -0,0 +1,106 @@
+package com.github.zzzarius.ipms.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.github.zzzarius.ipms.IntegrationTest;
+import com.github.zzzarius.ipms.domain.Incident;
+import com.github.zzzarius.ipms.domain.IncidentTriageCounter;
+import com.github.zzzarius.ipms.domain.enumeration.Category;
+import com.github.zzzarius.ipms.repository.IncidentRepository;
+import com.github.zzzarius.ipms.repository.IncidentTriageCounterRepository;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Integration tests for {@link IncidentTriageCounterService}.
+ * <p>
+ * The changes are committed by concurrent transactions, so the tests clean up after themselves.
+ */
+@IntegrationTest
+class IncidentTriageCounterServiceIT {
+
+    private static final int WRITERS = 8;
+
+    @Autowired
+    private IncidentTriageCounterService incidentTriageCounterService;
+
+    @Autowired
+    private IncidentTriageCounterRepository incidentTriageCounterRepository;
+
+    @Autowired
+    private IncidentRepository incidentRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Incident incident;
+
+    @AfterEach
+    public void cleanup() {
+        if (incident != null) {
+            incidentTriageCounterService.deleteCounters(incident.getId());
+            incidentRepository.deleteById(incident.getId());
+        }
+    }
+
+    @Test
+    void testConcurrentFirstWritersOfAMigratedIncident() throws Exception {
+        // Migrated incidents only have their first stripe
+        incident = incidentRepository.saveAndFlush(new Incident().name("Migrated incident").startDate(LocalDate.now()));
+        incidentTriageCounterRepository.saveAndFlush(new IncidentTriageCounter(incident.getId(), 0));
+
+        recordConcurrently(Category.RED);
+
+        assertThat(incidentTriageCounterService.getSummary(incident.getId()).getRed()).isEqualTo(WRITERS);
+    }
+
+    @Test
+    void testConcurrentFirstWritersOfAnIncidentWithoutCounters() throws Exception {
+        incident = incidentRepository.saveAndFlush(new Incident().name("Uncounted incident").startDate(LocalDate.now()));
+
+        recordConcurrently(Category.GREEN);
+
+        assertThat(incidentTriageCounterService.getSummary(incident.getId()).getGreen()).isEqualTo(WRITERS);
+        assertThat(incidentTriageCounterRepository.findAll().stream().filter(counter -> counter.getIncidentId().equals(incident.getId())))
+            .hasSize(8);
+    }
+
+    private void recordConcurrently(Category category) throws Exception {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService writers = Executors.newFixedThreadPool(WRITERS);
+        try {
+            List<Future<?>> writes = new ArrayList<>();
+            for (int i = 0; i < WRITERS; i++) {
+                writes.add(
+                    writers.submit(
+                        () -> {
+                            start.await();
+                            transactionTemplate.executeWithoutResult(
+                                status -> incidentTriageCounterService.recordChange(null, null, incident.getId(), category)
+                            );
+                            return null;
+                        }
+                    )
+                );
+            }
+            start.countDown();
+            for (Future<?> write : writes) {
+                write.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            writers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.zzzarius.ipms.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.github.zzzarius.ipms.IntegrationTest;
+import com.github.zzzarius.ipms.domain.Incident;
+import com.github.zzzarius.ipms.domain.Incident_;
+import com.github.zzzarius.ipms.domain.Patient;
+import com.github.zzzarius.ipms.domain.Patient_;
+import com.github.zzzarius.ipms.domain.enumeration.Category;
+import com.github.zzzarius.ipms.repository.IncidentRepository;
+import com.github.zzzarius.ipms.repository.PatientRepository;
+import com.github.zzzarius.ipms.service.criteria.PatientCriteria;
+import com.github.zzzarius.ipms.service.dto.PatientBulkUpdateDTO;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Integration tests for {@link PatientBulkUpdateService}, with the read replicas enabled.
+ * <p>
+ * The replica is an empty database, which fails any read routed to it. The changes are committed, so the tests clean
+ * up after themselves.
+ */
+@IntegrationTest
+@TestPropertySource(
+    properties = {
+        "application.read-replicas.enabled=true", "application.read-replicas.replicas[0].url=jdbc:h2:mem:ipms-replica;DB_CLOSE_DELAY=-1",
+    }
+)
+class PatientBulkUpdateServiceIT {
+
+    @Autowired
+    private PatientBulkUpdateService patientBulkUpdateService;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private IncidentRepository incidentRepository;
+
+    @Autowired
+    private IncidentTriageCounterService incidentTriageCounterService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final List<Incident> incidents = new ArrayList<>();
+
+    @AfterEach
+    public void cleanup() {
+        for (Incident incident : incidents) {
+            new TransactionTemplate(transactionManager)
+                .executeWithoutResult(status -> patientRepository.deleteAll(patientRepository.findAll(ofIncident(incident))));
+            incidentTriageCounterService.deleteCounters(incident.getId());
+            incidentRepository.deleteById(incident.getId());
+        }
+    }
+
+    @Test
+    void testChunksAreReadFromThePrimary() {
+        Incident oldIncident = createIncident("Old incident");
+        Incident newIncident = createIncident("New incident");
+        for (int i = 0; i < 3; i++) {
+            patientRepository.saveAndFlush(new Patient().firstName("AAAAAAAAAA").lastName("BBBBBBBBBB").incident(oldIncident));
+        }
+        PatientCriteria criteria = new PatientCriteria();
+        criteria.incidentId().setEquals(oldIncident.getId());
+        PatientBulkUpdateDTO patientBulkUpdate = new PatientBulkUpdateDTO();
+        patientBulkUpdate.setIncidentId(newIncident.getId());
+        patientBulkUpdate.setTriageCategory(Category.RED);
+
+        assertThat(patientBulkUpdateService.update(criteria, patientBulkUpdate)).isEqualTo(3);
+
+        List<Patient> moved = new TransactionTemplate(transactionManager)
+            .execute(status -> patientRepository.findAll(ofIncident(newIncident)));
+        assertThat(moved).hasSize(3).allMatch(patient -> patient.getTriageCategory() == Category.RED);
+    }
+
+    private Incident createIncident(String name) {
+        Incident incident = incidentRepository.saveAndFlush(new Incident().name(name).startDate(LocalDate.now()));
+        incidents.add(incident);
+        return incident;
+    }
+
+    private static Specification<Patient> ofIncident(Incident incident) {
+        return (root, query, cb) -> cb.equal(root.get(Patient_.incident).get(Incident_.id), incident.getId());
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.zzzarius.ipms.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.github.zzzarius.ipms.config.ApplicationProperties;
+import com.github.zzzarius.ipms.config.ReplicaRoutingDataSource;
+import com.github.zzzarius.ipms.domain.Patient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+/**
+ * Test class for the batches of the {@link PatientGroupCommitService}.
+ */
+class PatientGroupCommitServiceTest {
+
+    private static final int BATCH_SIZE = 3;
+
+    private final PatientService patientService = mock(PatientService.class);
+
+    private final ReplicaRoutingDataSource replicaRoutingDataSource = mock(ReplicaRoutingDataSource.class);
+
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    private PatientGroupCommitService patientGroupCommitService;
+
+    @BeforeEach
+    void setup() {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(replicaRoutingDataSource.currentClient()).thenReturn(Optional.empty());
+        @SuppressWarnings("unchecked")
+        ObjectProvider<ReplicaRoutingDataSource> replicaRoutingDataSourceProvider = mock(ObjectProvider.class);
+        when(replicaRoutingDataSourceProvider.getIfAvailable()).thenReturn(replicaRoutingDataSource);
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        // The batches are committed once full
+        applicationProperties.getGroupCommit().setWindowMs(10000);
+        applicationProperties.getGroupCommit().setMaxBatchSize(BATCH_SIZE);
+        applicationProperties.getGroupCommit().setTimeoutMs(20000);
+        patientGroupCommitService =
+            new PatientGroupCommitService(
+                patientService,
+                replicaRoutingDataSourceProvider,
+                transactionManager,
+                new SimpleMeterRegistry(),
+                applicationProperties
+            );
+    }
+
+    @AfterEach
+    void stop() {
+        patientGroupCommitService.stop();
+    }
+
+    @Test
+    void testBatchFailsAtOnceWhileTheDatabaseIsUnavailable() throws Exception {
+        CannotCreateTransactionException unavailable = new CannotCreateTransactionException("Database unavailable");
+        when(patientService.save(any())).thenThrow(unavailable);
+
+        for (Future<Throwable> error : saveConcurrently()) {
+            assertThat(error.get(10, TimeUnit.SECONDS)).isSameAs(unavailable);
+        }
+        // Not saved again one by one
+        verify(patientService, times(1)).save(any());
+    }
+
+    @Test
+    void testWritesAreRecordedForTheirClients() throws Exception {
+        when(replicaRoutingDataSource.currentClient()).thenReturn(Optional.of("medic"));
+        when(patientService.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        for (Future<Throwable> error : saveConcurrently()) {
+            assertThat(error.get(10, TimeUnit.SECONDS)).isNull();
+        }
+        verify(replicaRoutingDataSource, times(BATCH_SIZE)).recordWrite("medic");
+    }
+
+    /**
+     * Save a full batch of patients, from as many threads.
+     *
+     * @return the errors of the saves, {@code null} for the successful ones.
+     */
+    private List<Future<Throwable>> saveConcurrently() {
+        ExecutorService executor = Executors.newFixedThreadPool(BATCH_SIZE);
+        try {
+            List<Future<Throwable>> errors = new ArrayList<>();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                errors.add(
+                    executor.submit(
+                        () -> {
+                            try {
+                                patientGroupCommitService.save(new Patient());
+                                return null;
+                            } catch (RuntimeException e) {
+                                return e;
+                            }
+                        }
+                    )
+                );
+            }
+            return errors;
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
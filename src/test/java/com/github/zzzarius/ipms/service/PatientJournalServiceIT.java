@@ -0,0 +1,156 @@
+package com.github.zzzarius.ipms.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.zzzarius.ipms.IntegrationTest;
+import com.github.zzzarius.ipms.config.ApplicationProperties;
+import com.github.zzzarius.ipms.domain.Incident;
+import com.github.zzzarius.ipms.domain.Patient;
+import com.github.zzzarius.ipms.domain.enumeration.Category;
+import com.github.zzzarius.ipms.repository.IncidentRepository;
+import com.github.zzzarius.ipms.repository.PatientRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLTransientConnectionException;
+import java.time.LocalDate;
+import javax.persistence.PersistenceException;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.jpa.JpaSystemException;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Integration tests for {@link PatientJournalService}.
+ * <p>
+ * Each service opens the journal file of the test, so that a new one simulates a restart after a crash.
+ */
+@IntegrationTest
+@Transactional
+@WithMockUser("medic")
+class PatientJournalServiceIT {
+
+    @TempDir
+    Path directory;
+
+    @Autowired
+    private PatientUploadService patientUploadService;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private IncidentRepository incidentRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private ApplicationProperties applicationProperties;
+
+    private Incident incident;
+
+    @BeforeEach
+    public void init() {
+        applicationProperties = new ApplicationProperties();
+        applicationProperties.getJournal().setEnabled(true);
+        applicationProperties.getJournal().setFile(directory.resolve("patients.journal").toString());
+        applicationProperties.getJournal().setCapacity(64 * 1024);
+        applicationProperties.getJournal().setDeadLetterFile(directory.resolve("patients.dead-letter").toString());
+        incident = incidentRepository.saveAndFlush(new Incident().name("Journaled incident").startDate(LocalDate.now()));
+    }
+
+    @Test
+    void testJournaledCreationsAreReplayedAfterACrash() throws IOException {
+        PatientJournalService journalService = newService(new SimpleMeterRegistry());
+        String firstKey = journalService.append(journalService.toJson(patient("First")), null);
+        String secondKey = journalService.append(journalService.toJson(patient("Second")), "client-key");
+        assertThat(firstKey).isNotBlank();
+        assertThat(secondKey).isEqualTo("client-key");
+        long patientsBefore = patientRepository.count();
+
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        PatientJournalService restartedService = newService(meterRegistry);
+        assertThat(meterRegistry.get("ipms.patient.journal.depth").gauge().value()).isEqualTo(2);
+
+        assertThat(restartedService.replay()).isEqualTo(2);
+        assertThat(patientRepository.count()).isEqualTo(patientsBefore + 2);
+        assertThat(meterRegistry.get("ipms.patient.journal.depth").gauge().value()).isZero();
+        assertThat(newService(new SimpleMeterRegistry()).replay()).isZero();
+        journalService.close();
+        restartedService.close();
+    }
+
+    @Test
+    void testReplayInterruptedBeforeConsumingCreatesThePatientOnce() throws IOException {
+        PatientJournalService journalService = newService(new SimpleMeterRegistry());
+        Patient patient = patient("Once");
+        String key = journalService.append(journalService.toJson(patient), null);
+        long patientsBefore = patientRepository.count();
+        // Applied by a replay which crashed before consuming the entry
+        Patient created = patientUploadService.create(objectMapper.readValue(journalService.toJson(patient), Patient.class), key, "medic");
+
+        assertThat(newService(new SimpleMeterRegistry()).replay()).isEqualTo(1);
+
+        assertThat(patientRepository.count()).isEqualTo(patientsBefore + 1);
+        assertThat(patientRepository.findById(created.getId())).isPresent();
+        journalService.close();
+    }
+
+    @Test
+    void testEntryWhichCantBeReplayedIsMovedToTheDeadLetterFile() throws IOException {
+        PatientJournalService journalService = newService(new SimpleMeterRegistry());
+        journalService.append("not a patient", "invalid-key");
+        journalService.append(journalService.toJson(patient("Valid")), "valid-key");
+        long patientsBefore = patientRepository.count();
+
+        assertThat(journalService.replay()).isEqualTo(2);
+
+        assertThat(patientRepository.count()).isEqualTo(patientsBefore + 1);
+        assertThat(Files.readAllLines(directory.resolve("patients.dead-letter")))
+            .singleElement()
+            .asString()
+            .contains("invalid-key", "not a patient");
+        journalService.close();
+    }
+
+    @Test
+    void testWrappedConnectionTimeoutMeansTheDatabaseIsUnavailable() {
+        assertThat(
+            PatientJournalService.isDatabaseUnavailable(
+                new JpaSystemException(new PersistenceException(new SQLTransientConnectionException("Connection is not available")))
+            )
+        )
+            .isTrue();
+        assertThat(PatientJournalService.isDatabaseUnavailable(new DataIntegrityViolationException("Duplicate key"))).isFalse();
+    }
+
+    private PatientJournalService newService(MeterRegistry meterRegistry) throws IOException {
+        return new PatientJournalService(
+            patientUploadService,
+            objectMapper,
+            meterRegistry,
+            dataSource,
+            transactionManager,
+            applicationProperties
+        );
+    }
+
+    private Patient patient(String firstName) {
+        return new Patient().firstName(firstName).lastName("Journaled").triageCategory(Category.GREEN).incident(incident);
+    }
+}
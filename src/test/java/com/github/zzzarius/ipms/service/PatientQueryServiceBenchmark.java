@@ -0,0 +1,144 @@
+package com.github.zzzarius.ipms.service;
+
+import com.github.zzzarius.ipms.IpmsApp;
+import com.github.zzzarius.ipms.config.TestSecurityConfiguration;
+import com.github.zzzarius.ipms.domain.Incident;
+import com.github.zzzarius.ipms.domain.Patient;
+import com.github.zzzarius.ipms.domain.enumeration.Category;
+import com.github.zzzarius.ipms.repository.IncidentRepository;
+import com.github.zzzarius.ipms.repository.PatientRepository;
+import com.github.zzzarius.ipms.service.criteria.PatientCriteria;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tech.jhipster.service.filter.LongFilter;
+import tech.jhipster.service.filter.StringFilter;
+
+/**
+ * Compares the compiled criteria queries of {@link PatientQueryService} with the specifications they replace.
+ * <p>
+ * The application runs with the test configuration, on an in-memory H2 database, so that the query building and
+ * rendering costs are not hidden by the database. Run the {@link #main(String[])} method with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PatientQueryServiceBenchmark {
+
+    private static final int PATIENTS = 1000;
+
+    private static final Pageable PAGE = PageRequest.of(0, 20, Sort.by(Sort.Direction.DESC, "id"));
+
+    private ConfigurableApplicationContext context;
+
+    private PatientQueryService patientQueryService;
+
+    private PatientRepository patientRepository;
+
+    private TransactionTemplate transactionTemplate;
+
+    private long firstId;
+
+    private long request;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(IpmsApp.class, TestSecurityConfiguration.class).properties("server.port=0").run();
+        patientQueryService = context.getBean(PatientQueryService.class);
+        patientRepository = context.getBean(PatientRepository.class);
+        IncidentRepository incidentRepository = context.getBean(IncidentRepository.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        transactionTemplate.executeWithoutResult(
+            status -> {
+                Incident incident = incidentRepository.save(new Incident().name("Benchmark").startDate(LocalDate.now()));
+                Category[] categories = Category.values();
+                for (int i = 0; i < PATIENTS; i++) {
+                    patientRepository.save(
+                        new Patient()
+                            .firstName("First" + i)
+                            .lastName("Last" + i)
+                            .triageCategory(categories[i % categories.length])
+                            .incident(incident)
+                    );
+                }
+            }
+        );
+        firstId = patientRepository.findAll(Sort.by("id")).get(0).getId();
+        transactionTemplate.setReadOnly(true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * A dashboard filter, whose values change with each request.
+     */
+    private PatientCriteria nextCriteria() {
+        long offset = request++ % 100;
+        PatientCriteria criteria = new PatientCriteria();
+        LongFilter id = new LongFilter();
+        id.setGreaterThan(firstId + offset);
+        criteria.setId(id);
+        StringFilter firstName = new StringFilter();
+        firstName.setContains(String.valueOf(offset % 10));
+        criteria.setFirstName(firstName);
+        PatientCriteria.CategoryFilter triageCategory = new PatientCriteria.CategoryFilter();
+        triageCategory.setNotEquals(Category.BLACK);
+        criteria.setTriageCategory(triageCategory);
+        return criteria;
+    }
+
+    @Benchmark
+    public Page<Patient> specificationPage() {
+        PatientCriteria criteria = nextCriteria();
+        return transactionTemplate.execute(status -> patientRepository.findAll(patientQueryService.createSpecification(criteria), PAGE));
+    }
+
+    @Benchmark
+    public Page<Patient> compiledPage() {
+        PatientCriteria criteria = nextCriteria();
+        return transactionTemplate.execute(status -> patientQueryService.findByCriteria(criteria, PAGE));
+    }
+
+    @Benchmark
+    public Long specificationCount() {
+        PatientCriteria criteria = nextCriteria();
+        return transactionTemplate.execute(status -> patientRepository.count(patientQueryService.createSpecification(criteria)));
+    }
+
+    @Benchmark
+    public Long compiledCount() {
+        PatientCriteria criteria = nextCriteria();
+        return transactionTemplate.execute(status -> patientQueryService.countByCriteria(criteria));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PatientQueryServiceBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.zzzarius.ipms.service.journal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test class for the {@link WriteJournal} utility class.
+ * <p>
+ * A crash is simulated by opening the file again without closing the journal.
+ */
+class WriteJournalTest {
+
+    private static final int CAPACITY = 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testAppendedRecordsSurviveACrash() throws IOException {
+        Path file = directory.resolve("test.journal");
+        WriteJournal journal = new WriteJournal(file, CAPACITY);
+        journal.append(bytes("first"));
+        journal.append(bytes("second"));
+
+        WriteJournal recovered = new WriteJournal(file, CAPACITY);
+
+        assertThat(recovered.getDepth()).isEqualTo(2);
+        assertThat(recovered.peek()).hasValueSatisfying(record -> assertThat(string(record)).isEqualTo("first"));
+        recovered.consume();
+        assertThat(recovered.peek()).hasValueSatisfying(record -> assertThat(string(record)).isEqualTo("second"));
+        recovered.close();
+    }
+
+    @Test
+    void testConsumedRecordsAreNotReplayedAfterACrash() throws IOException {
+        Path file = directory.resolve("test.journal");
+        WriteJournal journal = new WriteJournal(file, CAPACITY);
+        journal.append(bytes("first"));
+        journal.append(bytes("second"));
+        journal.consume();
+
+        WriteJournal recovered = new WriteJournal(file, CAPACITY);
+
+        assertThat(recovered.getDepth()).isEqualTo(1);
+        assertThat(recovered.peek()).hasValueSatisfying(record -> assertThat(string(record)).isEqualTo("second"));
+        recovered.consume();
+        assertThat(recovered.peek()).isEmpty();
+        assertThat(new WriteJournal(file, CAPACITY).getDepth()).isZero();
+    }
+
+    @Test
+    void testTornRecordIsErasedAfterACrash() throws IOException {
+        Path file = directory.resolve("test.journal");
+        WriteJournal journal = new WriteJournal(file, CAPACITY);
+        journal.append(bytes("first"));
+        journal.append(bytes("second"));
+        // The content of the second record was not entirely written when the process died
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            raw.seek(Long.BYTES + 2 * (Integer.BYTES + Long.BYTES) + "first".length() + 1);
+            raw.write('X');
+        }
+
+        WriteJournal recovered = new WriteJournal(file, CAPACITY);
+        assertThat(recovered.getDepth()).isEqualTo(1);
+        recovered.append(bytes("third"));
+
+        WriteJournal recoveredAgain = new WriteJournal(file, CAPACITY);
+        assertThat(recoveredAgain.getDepth()).isEqualTo(2);
+        recoveredAgain.consume();
+        assertThat(recoveredAgain.peek()).hasValueSatisfying(record -> assertThat(string(record)).isEqualTo("third"));
+        recoveredAgain.close();
+    }
+
+    @Test
+    void testFullJournalIsReusedOnceConsumed() throws IOException {
+        WriteJournal journal = new WriteJournal(directory.resolve("test.journal"), CAPACITY);
+        byte[] record = new byte[CAPACITY / 4];
+        record[0] = 1;
+        journal.append(record);
+        journal.append(record);
+        journal.append(record);
+
+        assertThatThrownBy(() -> journal.append(record)).isInstanceOf(IllegalStateException.class);
+
+        journal.consume();
+        journal.consume();
+        journal.consume();
+        journal.append(record);
+        assertThat(journal.getDepth()).isEqualTo(1);
+        journal.close();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.zzzarius.ipms.service.query;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.github.zzzarius.ipms.service.criteria.PatientCriteria;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Test class for the {@link CountCache} utility class.
+ */
+class CountCacheTest {
+
+    private final CountCache<PatientCriteria> countCache = new CountCache<>(Duration.ofMinutes(1), 10);
+
+    private final AtomicInteger counts = new AtomicInteger();
+
+    @AfterEach
+    void cleanup() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void testCountIsCachedForEquivalentCriteria() {
+        PatientCriteria criteria = new PatientCriteria();
+        criteria.incidentId().setIn(List.of(2L, 1L, 2L));
+        criteria.firstName().setContains("abc");
+        PatientCriteria equivalent = new PatientCriteria();
+        equivalent.incidentId().setIn(List.of(1L, 2L));
+        equivalent.firstName().setContains("ABC");
+
+        assertThat(count(criteria)).isEqualTo(1);
+        assertThat(count(equivalent)).isEqualTo(1);
+        assertThat(counts).hasValue(1);
+    }
+
+    @Test
+    void testOnlyAffectedCountsAreEvicted() {
+        PatientCriteria firstIncident = new PatientCriteria();
+        firstIncident.incidentId().setEquals(1L);
+        PatientCriteria secondIncident = new PatientCriteria();
+        secondIncident.incidentId().setIn(List.of(2L, 3L));
+        PatientCriteria allIncidents = new PatientCriteria();
+        count(firstIncident);
+        count(secondIncident);
+        count(allIncidents);
+
+        countCache.evict(criteria -> CountCache.mayMatch(criteria.getIncidentId(), List.of(1L)));
+
+        assertThat(count(firstIncident)).isEqualTo(4);
+        assertThat(count(secondIncident)).isEqualTo(2);
+        assertThat(count(allIncidents)).isEqualTo(5);
+    }
+
+    @Test
+    void testEvictionWaitsForCommit() {
+        PatientCriteria criteria = new PatientCriteria();
+        count(criteria);
+        TransactionSynchronizationManager.initSynchronization();
+
+        countCache.evict(affected -> true);
+
+        assertThat(count(criteria)).isEqualTo(1);
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(count(criteria)).isEqualTo(2);
+    }
+
+    @Test
+    void testCountRunningDuringEvictionIsNotCached() {
+        PatientCriteria criteria = new PatientCriteria();
+        long count = countCache.get(
+            criteria.canonical(),
+            () -> {
+                countCache.clear();
+                return counts.incrementAndGet();
+            }
+        );
+
+        assertThat(count).isEqualTo(1);
+        assertThat(count(criteria)).isEqualTo(2);
+        assertThat(count(criteria)).isEqualTo(2);
+    }
+
+    @Test
+    void testZeroTimeToLiveDisablesTheCache() {
+        CountCache<PatientCriteria> disabled = new CountCache<>(Duration.ZERO, 10);
+        PatientCriteria criteria = new PatientCriteria();
+
+        disabled.get(criteria.canonical(), counts::incrementAndGet);
+        disabled.get(criteria.canonical(), counts::incrementAndGet);
+
+        assertThat(counts).hasValue(2);
+    }
+
+    @Test
+    void testCountReadFromAReplicaIsOnlyCachedOnceTheLagIsOver() throws Exception {
+        CountCache<PatientCriteria> replicated = new CountCache<>(Duration.ofMinutes(1), 10, Duration.ofMillis(100), () -> true);
+        PatientCriteria criteria = new PatientCriteria();
+        replicated.get(criteria.canonical(), counts::incrementAndGet);
+        replicated.get(criteria.canonical(), counts::incrementAndGet);
+        assertThat(counts).hasValue(1);
+
+        replicated.clear();
+        replicated.get(criteria.canonical(), counts::incrementAndGet);
+        replicated.get(criteria.canonical(), counts::incrementAndGet);
+        assertThat(counts).hasValue(3);
+
+        Thread.sleep(150);
+        replicated.get(criteria.canonical(), counts::incrementAndGet);
+        replicated.get(criteria.canonical(), counts::incrementAndGet);
+        assertThat(counts).hasValue(4);
+    }
+
+    private long count(PatientCriteria criteria) {
+        return countCache.get(criteria.canonical(), counts::incrementAndGet);
+    }
+}
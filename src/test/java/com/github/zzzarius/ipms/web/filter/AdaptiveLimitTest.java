@@ -0,0 +1,67 @@
+package com.github.zzzarius.ipms.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for the {@link AdaptiveLimit} utility class.
+ */
+class AdaptiveLimitTest {
+
+    private static final long BASELINE_RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final AdaptiveLimit adaptiveLimit = new AdaptiveLimit(20, 4, 100, 1.5, 0.2);
+
+    @Test
+    void testLimitGrowsWhileTheLatencyIsSteady() {
+        for (int i = 0; i < 100; i++) {
+            adaptiveLimit.onSample(BASELINE_RTT, adaptiveLimit.getLimit());
+        }
+
+        assertThat(adaptiveLimit.getLimit()).isGreaterThan(40).isLessThanOrEqualTo(100);
+        assertThat(adaptiveLimit.getBaselineRttNanos()).isEqualTo(BASELINE_RTT);
+    }
+
+    @Test
+    void testLimitDoesNotGrowWhenItIsNotUsed() {
+        for (int i = 0; i < 100; i++) {
+            adaptiveLimit.onSample(BASELINE_RTT, 1);
+        }
+
+        assertThat(adaptiveLimit.getLimit()).isEqualTo(20);
+    }
+
+    @Test
+    void testLimitShrinksWhenTheLatencyRises() {
+        for (int i = 0; i < 100; i++) {
+            adaptiveLimit.onSample(BASELINE_RTT, adaptiveLimit.getLimit());
+        }
+        int steadyLimit = adaptiveLimit.getLimit();
+
+        for (int i = 0; i < 20; i++) {
+            adaptiveLimit.onSample(10 * BASELINE_RTT, adaptiveLimit.getLimit());
+        }
+
+        assertThat(adaptiveLimit.getLimit()).isLessThan(steadyLimit / 2).isGreaterThanOrEqualTo(4);
+        assertThat(adaptiveLimit.getRttNanos()).isGreaterThan(2.0 * adaptiveLimit.getBaselineRttNanos());
+    }
+
+    @Test
+    void testLimitRecoversAfterAnOverload() {
+        for (int i = 0; i < 100; i++) {
+            adaptiveLimit.onSample(BASELINE_RTT, adaptiveLimit.getLimit());
+        }
+        for (int i = 0; i < 20; i++) {
+            adaptiveLimit.onSample(10 * BASELINE_RTT, adaptiveLimit.getLimit());
+        }
+        int overloadedLimit = adaptiveLimit.getLimit();
+
+        for (int i = 0; i < 50; i++) {
+            adaptiveLimit.onSample(BASELINE_RTT, adaptiveLimit.getLimit());
+        }
+
+        assertThat(adaptiveLimit.getLimit()).isGreaterThan(2 * overloadedLimit);
+    }
+}
@@ -0,0 +1,212 @@
+package com.github.zzzarius.ipms.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.zzzarius.ipms.config.ApplicationProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Test class for the {@link AdmissionControlFilter} and its {@link AdmissionLimiter}s.
+ */
+class AdmissionControlFilterTest {
+
+    private static final String RED_PATIENT = "{\"firstName\":\"A\",\"lastName\":\"B\",\"triageCategory\":\"RED\"}";
+
+    private AdmissionLimiter limiter;
+
+    private MeterRegistry meterRegistry;
+
+    private AdmissionControlFilter filter;
+
+    @AfterEach
+    void cleanup() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @BeforeEach
+    void setup() {
+        ApplicationProperties.AdmissionControl admissionControl = new ApplicationProperties.AdmissionControl();
+        admissionControl.setAdaptive(false);
+        admissionControl.setMaxConcurrentRequests(1);
+        admissionControl.setCriticalMaxQueueMs(0);
+        admissionControl.setWriteMaxQueueMs(0);
+        admissionControl.setReadMaxQueueMs(0);
+        admissionControl.setRetryAfterSeconds(3);
+        limiter = new AdmissionLimiter(1);
+        meterRegistry = new SimpleMeterRegistry();
+        filter = new AdmissionControlFilter(new ObjectMapper(), meterRegistry, admissionControl);
+    }
+
+    @Test
+    void testRequestsAreClassified() {
+        assertThat(filter.classify(request("GET", "/api/patients"))).isEqualTo(AdmissionLimiter.Priority.READ);
+        assertThat(filter.classify(request("GET", "/api/patients/export"))).isEqualTo(AdmissionLimiter.Priority.BULK);
+        assertThat(filter.classify(request("GET", "/api/sync/patients"))).isEqualTo(AdmissionLimiter.Priority.BULK);
+        assertThat(filter.classify(request("POST", "/api/patients/import"))).isEqualTo(AdmissionLimiter.Priority.BULK);
+        assertThat(filter.classify(request("POST", "/api/incidents"))).isEqualTo(AdmissionLimiter.Priority.WRITE);
+        assertThat(filter.isCritical(bytes(RED_PATIENT))).isTrue();
+        assertThat(filter.isCritical(bytes("[{\"triageCategory\":\"GREEN\"},{\"triageCategory\":\"BLACK\"}]"))).isTrue();
+        assertThat(filter.isCritical(bytes("{\"firstName\":\"RED\",\"triageCategory\":\"YELLOW\"}"))).isFalse();
+        assertThat(filter.isCritical(bytes("{not json"))).isFalse();
+        assertThat(filter.group(request("PATCH", "/api/patients/1"))).isEqualTo("patients-write");
+        assertThat(filter.group(request("GET", "/api/sync/patients"))).isEqualTo("patients-read");
+        assertThat(filter.group(request("GET", "/api/incidents/1/triage-summary"))).isEqualTo("incidents-read");
+        assertThat(filter.group(request("GET", "/api/account"))).isEqualTo("other");
+    }
+
+    @Test
+    void testInspectedBodyIsReadByTheController() throws Exception {
+        authenticate();
+        MockHttpServletRequest request = jsonRequest("POST", "/api/patients", RED_PATIENT);
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        String body = StreamUtils.copyToString(chain.getRequest().getInputStream(), StandardCharsets.UTF_8);
+        assertThat(body).isEqualTo(RED_PATIENT);
+        assertThat(filter.limiter("patients-write").getInFlight()).isZero();
+    }
+
+    @Test
+    void testRequestIsShedWhenTheLimitOfItsGroupIsReached() throws Exception {
+        assertThat(filter.limiter("patients-read").acquire(AdmissionLimiter.Priority.CRITICAL, 0, TimeUnit.MILLISECONDS)).isTrue();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request("GET", "/api/patients"), response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE.value());
+        assertThat(response.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("3");
+        assertThat(chain.getRequest()).isNull();
+        assertThat(meterRegistry.get("ipms.admission.shed").tag("group", "patients-read").tag("priority", "read").counter().count())
+            .isEqualTo(1);
+        MockFilterChain otherGroupChain = new MockFilterChain();
+        filter.doFilter(request("GET", "/api/incidents"), new MockHttpServletResponse(), otherGroupChain);
+        assertThat(otherGroupChain.getRequest()).isNotNull();
+    }
+
+    @Test
+    void testOnlyTheAuthenticatedPatientWritesAreInspected() throws Exception {
+        assertThat(filter.limiter("patients-write").acquire(AdmissionLimiter.Priority.CRITICAL, 0, TimeUnit.MILLISECONDS)).isTrue();
+
+        filter.doFilter(jsonRequest("POST", "/api/patients", RED_PATIENT), new MockHttpServletResponse(), new MockFilterChain());
+        assertThat(shedRequests("write")).isEqualTo(1);
+
+        authenticate();
+        filter.doFilter(jsonRequest("POST", "/api/patients", RED_PATIENT), new MockHttpServletResponse(), new MockFilterChain());
+        assertThat(shedRequests("critical")).isEqualTo(1);
+
+        // Bulk whatever their body
+        filter.doFilter(jsonRequest("POST", "/api/patients/import", RED_PATIENT), new MockHttpServletResponse(), new MockFilterChain());
+        assertThat(shedRequests("bulk")).isEqualTo(1);
+        assertThat(shedRequests("critical")).isEqualTo(1);
+    }
+
+    @Test
+    void testWaitingRequestsAreAdmittedByPriority() throws Exception {
+        assertThat(limiter.acquire(AdmissionLimiter.Priority.READ, 0, TimeUnit.MILLISECONDS)).isTrue();
+        List<AdmissionLimiter.Priority> admitted = new CopyOnWriteArrayList<>();
+        Thread read = waiter(AdmissionLimiter.Priority.READ, admitted);
+        awaitQueued(read);
+        Thread critical = waiter(AdmissionLimiter.Priority.CRITICAL, admitted);
+        awaitQueued(critical);
+
+        limiter.release();
+        read.join(5000);
+        critical.join(5000);
+
+        assertThat(admitted).containsExactly(AdmissionLimiter.Priority.CRITICAL, AdmissionLimiter.Priority.READ);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    void testWaitingRequestIsAdmittedWhenTheLimitIsRaised() throws Exception {
+        assertThat(limiter.acquire(AdmissionLimiter.Priority.READ, 0, TimeUnit.MILLISECONDS)).isTrue();
+        List<AdmissionLimiter.Priority> admitted = new CopyOnWriteArrayList<>();
+        Thread write = waiter(AdmissionLimiter.Priority.WRITE, admitted);
+        awaitQueued(write);
+
+        limiter.setLimit(2);
+        write.join(5000);
+
+        assertThat(admitted).containsExactly(AdmissionLimiter.Priority.WRITE);
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+    }
+
+    @Test
+    void testWaitingRequestIsShedAfterItsMaxQueueTime() throws Exception {
+        assertThat(limiter.acquire(AdmissionLimiter.Priority.CRITICAL, 0, TimeUnit.MILLISECONDS)).isTrue();
+
+        assertThat(limiter.acquire(AdmissionLimiter.Priority.WRITE, 50, TimeUnit.MILLISECONDS)).isFalse();
+
+        limiter.release();
+        assertThat(limiter.acquire(AdmissionLimiter.Priority.WRITE, 0, TimeUnit.MILLISECONDS)).isTrue();
+    }
+
+    /**
+     * Start a request which waits for a slot, and releases it once admitted.
+     */
+    private Thread waiter(AdmissionLimiter.Priority priority, List<AdmissionLimiter.Priority> admitted) {
+        Thread thread = new Thread(
+            () -> {
+                try {
+                    if (limiter.acquire(priority, 5, TimeUnit.SECONDS)) {
+                        admitted.add(priority);
+                        limiter.release();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        );
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitQueued(Thread thread) throws InterruptedException {
+        for (int attempt = 0; attempt < 100 && thread.getState() != Thread.State.TIMED_WAITING; attempt++) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static MockHttpServletRequest request(String method, String uri) {
+        return new MockHttpServletRequest(method, uri);
+    }
+
+    private static MockHttpServletRequest jsonRequest(String method, String uri, String body) {
+        MockHttpServletRequest request = request(method, uri);
+        request.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        request.setContent(bytes(body));
+        return request;
+    }
+
+    private static void authenticate() {
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("medic", null, "ROLE_USER"));
+    }
+
+    private double shedRequests(String priority) {
+        return meterRegistry.get("ipms.admission.shed").tag("group", "patients-write").tag("priority", priority).counter().count();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -1,18 +1,27 @@
 package com.github.zzzarius.ipms.web.rest;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.hasItem;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 import com.github.zzzarius.ipms.IntegrationTest;
+import com.jayway.jsonpath.JsonPath;
 import com.github.zzzarius.ipms.domain.Incident;
 import com.github.zzzarius.ipms.domain.Patient;
+import com.github.zzzarius.ipms.domain.enumeration.Category;
 import com.github.zzzarius.ipms.repository.IncidentRepository;
+import com.github.zzzarius.ipms.repository.PatientRepository;
+import com.github.zzzarius.ipms.repository.PatientTombstoneRepository;
+import com.github.zzzarius.ipms.service.IncidentQueryService;
+import com.github.zzzarius.ipms.service.IncidentTriageCounterService;
+import com.github.zzzarius.ipms.service.PatientQueryService;
 import com.github.zzzarius.ipms.service.criteria.IncidentCriteria;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicLong;
@@ -21,9 +30,11 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -50,6 +61,21 @@ class IncidentResourceIT {
     @Autowired
     private IncidentRepository incidentRepository;
 
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private PatientTombstoneRepository patientTombstoneRepository;
+
+    @Autowired
+    private IncidentTriageCounterService incidentTriageCounterService;
+
+    @Autowired
+    private IncidentQueryService incidentQueryService;
+
+    @Autowired
+    private PatientQueryService patientQueryService;
+
     @Autowired
     private EntityManager em;
 
@@ -83,6 +109,9 @@ class IncidentResourceIT {
     @BeforeEach
     public void initTest() {
         incident = createEntity(em);
+        // The tests write the entities through the repositories, which don't evict the counts
+        incidentQueryService.evictAllCounts();
+        patientQueryService.evictAllCounts();
     }
 
     @Test
@@ -206,6 +235,29 @@ class IncidentResourceIT {
             .andExpect(jsonPath("$.startDate").value(DEFAULT_START_DATE.toString()));
     }
 
+    @Test
+    @Transactional
+    void getIncidentNotModified() throws Exception {
+        // Initialize the database
+        incidentRepository.saveAndFlush(incident);
+        String eTag = getIncidentETag();
+        assertThat(eTag).isNotNull();
+
+        // The unchanged incident is not sent again
+        restIncidentMockMvc
+            .perform(get(ENTITY_API_URL_ID, incident.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+            .andExpect(status().isNotModified())
+            .andExpect(content().string(""));
+
+        incident.setName(UPDATED_NAME);
+        incidentRepository.saveAndFlush(incident);
+
+        restIncidentMockMvc
+            .perform(get(ENTITY_API_URL_ID, incident.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.name").value(UPDATED_NAME));
+    }
+
     @Test
     @Transactional
     void getIncidentsByIdFiltering() throws Exception {
@@ -425,6 +477,139 @@ class IncidentResourceIT {
         defaultIncidentShouldNotBeFound("patientId.equals=" + (patientId + 1));
     }
 
+    @Test
+    @Transactional
+    void getAllIncidentsWithKeysetPagination() throws Exception {
+        // Initialize the database
+        Incident older = incidentRepository.saveAndFlush(createEntity(em).startDate(DEFAULT_START_DATE.minusDays(1)));
+        Incident newer = incidentRepository.saveAndFlush(createEntity(em));
+
+        MvcResult result = restIncidentMockMvc
+            .perform(get(ENTITY_API_URL + "?after=&size=1&sort=startDate,desc&name.equals=" + DEFAULT_NAME))
+            .andExpect(status().isOk())
+            .andExpect(header().exists("X-Next-Cursor"))
+            .andExpect(header().doesNotExist("X-Total-Count"))
+            .andExpect(jsonPath("$.[*].id").value(contains(newer.getId().intValue())))
+            .andReturn();
+
+        restIncidentMockMvc
+            .perform(
+                get(ENTITY_API_URL + "?size=1&name.equals=" + DEFAULT_NAME + "&after=" + result.getResponse().getHeader("X-Next-Cursor"))
+            )
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist("X-Next-Cursor"))
+            .andExpect(jsonPath("$.[*].id").value(contains(older.getId().intValue())));
+    }
+
+    @Test
+    @Transactional
+    void getIncidentTriageSummary() throws Exception {
+        // Initialize the database
+        incidentRepository.saveAndFlush(incident);
+        long firstRed = createPatient(Category.RED);
+        createPatient(Category.RED);
+        long black = createPatient(Category.BLACK);
+
+        restIncidentMockMvc
+            .perform(
+                patch("/api/patients/{id}", firstRed)
+                    .with(csrf())
+                    .contentType("application/merge-patch+json")
+                    .content("{\"id\":" + firstRed + ",\"triageCategory\":\"GREEN\"}")
+            )
+            .andExpect(status().isOk());
+        restIncidentMockMvc.perform(delete("/api/patients/{id}", black).with(csrf())).andExpect(status().isNoContent());
+
+        // Get the triage summary
+        restIncidentMockMvc
+            .perform(get(ENTITY_API_URL_ID + "/triage-summary", incident.getId()))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andExpect(jsonPath("$.incidentId").value(incident.getId().intValue()))
+            .andExpect(jsonPath("$.black").value(0))
+            .andExpect(jsonPath("$.red").value(1))
+            .andExpect(jsonPath("$.yellow").value(0))
+            .andExpect(jsonPath("$.green").value(1))
+            .andExpect(jsonPath("$.total").value(2));
+
+        // Embed the same summary in the incident list
+        restIncidentMockMvc
+            .perform(get(ENTITY_API_URL + "?expand=triageSummary&id.equals=" + incident.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[0].triageSummary.red").value(1))
+            .andExpect(jsonPath("$.[0].triageSummary.total").value(2));
+
+        // And in the other incident lists
+        for (String parameters : List.of("count=none", "count=estimate", "after=")) {
+            restIncidentMockMvc
+                .perform(get(ENTITY_API_URL + "?expand=triageSummary&" + parameters + "&id.equals=" + incident.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.ETAG))
+                .andExpect(jsonPath("$.[0].triageSummary.total").value(2));
+        }
+        restIncidentMockMvc.perform(get(ENTITY_API_URL + "?expand=patients")).andExpect(status().isBadRequest());
+        restIncidentMockMvc.perform(get(ENTITY_API_URL + "?expand=patients&count=none")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    void getAllIncidentFields() throws Exception {
+        // Initialize the database
+        incidentRepository.saveAndFlush(incident);
+
+        // Get the requested fields only, with the triage summary
+        restIncidentMockMvc
+            .perform(get(ENTITY_API_URL + "?fields=name&expand=triageSummary&id.equals=" + incident.getId()))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andExpect(header().string("X-Total-Count", "1"))
+            .andExpect(jsonPath("$.[0].id").value(incident.getId().intValue()))
+            .andExpect(jsonPath("$.[0].name").value(DEFAULT_NAME))
+            .andExpect(jsonPath("$.[0].startDate").doesNotExist())
+            .andExpect(jsonPath("$.[0].triageSummary.total").value(0));
+
+        restIncidentMockMvc
+            .perform(get(ENTITY_API_URL + "?fields=startDate&count=none&id.equals=" + incident.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist("X-Total-Count"))
+            .andExpect(jsonPath("$.[0].startDate").value(DEFAULT_START_DATE.toString()))
+            .andExpect(jsonPath("$.[0].name").doesNotExist())
+            .andExpect(jsonPath("$.[0].triageSummary").doesNotExist());
+
+        restIncidentMockMvc
+            .perform(get(ENTITY_API_URL + "?fields=name&count=estimate&id.equals=" + incident.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Total-Count", "1"))
+            .andExpect(jsonPath("$.[0].name").value(DEFAULT_NAME));
+
+        restIncidentMockMvc.perform(get(ENTITY_API_URL + "?fields=patients")).andExpect(status().isBadRequest());
+        restIncidentMockMvc.perform(get(ENTITY_API_URL + "?fields=name&after=")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    void getNonExistingIncidentTriageSummary() throws Exception {
+        restIncidentMockMvc.perform(get(ENTITY_API_URL_ID + "/triage-summary", Long.MAX_VALUE)).andExpect(status().isNotFound());
+    }
+
+    private long createPatient(Category triageCategory) throws Exception {
+        Patient patient = PatientResourceIT.createEntity(em).triageCategory(triageCategory).incident(incident);
+        MvcResult result = restIncidentMockMvc
+            .perform(
+                post("/api/patients")
+                    .with(csrf())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtil.convertObjectToJsonBytes(patient))
+            )
+            .andExpect(status().isCreated())
+            .andReturn();
+        return ((Number) JsonPath.read(result.getResponse().getContentAsString(), "$.id")).longValue();
+    }
+
+    private String getIncidentETag() throws Exception {
+        return restIncidentMockMvc.perform(get(ENTITY_API_URL_ID, incident.getId())).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
     /**
      * Executes the search, and checks that the default entity is returned.
      */
@@ -502,6 +687,30 @@ class IncidentResourceIT {
         assertThat(testIncident.getStartDate()).isEqualTo(UPDATED_START_DATE);
     }
 
+    @Test
+    @Transactional
+    void putIncidentWithStaleETag() throws Exception {
+        // Initialize the database
+        incidentRepository.saveAndFlush(incident);
+        String eTag = getIncidentETag();
+
+        // Another user updates the incident
+        incident.setStartDate(UPDATED_START_DATE);
+        incidentRepository.saveAndFlush(incident);
+
+        Incident updatedIncident = new Incident().id(incident.getId()).name(UPDATED_NAME).startDate(DEFAULT_START_DATE);
+
+        restIncidentMockMvc
+            .perform(
+                put(ENTITY_API_URL_ID, updatedIncident.getId())
+                    .with(csrf())
+                    .header(HttpHeaders.IF_MATCH, eTag)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtil.convertObjectToJsonBytes(updatedIncident))
+            )
+            .andExpect(status().isPreconditionFailed());
+    }
+
     @Test
     @Transactional
     void putNonExistingIncident() throws Exception {
@@ -707,4 +916,129 @@ class IncidentResourceIT {
         List<Incident> incidentList = incidentRepository.findAll();
         assertThat(incidentList).hasSize(databaseSizeBeforeDelete - 1);
     }
+
+    @Test
+    @Transactional
+    void deleteIncidentAndPatients() throws Exception {
+        // Initialize the database, with more patients than the chunk size of the tests
+        incidentRepository.saveAndFlush(incident);
+        List<Long> patientIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            patientIds.add(patientRepository.saveAndFlush(PatientResourceIT.createEntity(em).incident(incident)).getId());
+        }
+        Patient otherPatient = patientRepository.saveAndFlush(PatientResourceIT.createEntity(em));
+        em.clear();
+
+        // Delete the incident
+        restIncidentMockMvc
+            .perform(delete(ENTITY_API_URL_ID + "?patients=delete", incident.getId()).with(csrf()).accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isNoContent());
+
+        // Validate the patients of the incident are deleted with it
+        assertThat(incidentRepository.findById(incident.getId())).isEmpty();
+        assertThat(patientRepository.findAllById(patientIds)).isEmpty();
+        assertThat(patientRepository.findById(otherPatient.getId())).isPresent();
+        // With their tombstones, for the delta sync
+        assertThat(patientTombstoneRepository.findAllById(patientIds))
+            .hasSize(3)
+            .allSatisfy(tombstone -> assertThat(tombstone.getIncidentId()).isEqualTo(incident.getId()));
+    }
+
+    @Test
+    @Transactional
+    void deleteIncidentAndDetachPatients() throws Exception {
+        // Initialize the database, with more patients than the chunk size of the tests
+        incidentRepository.saveAndFlush(incident);
+        List<Long> patientIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            patientIds.add(patientRepository.saveAndFlush(PatientResourceIT.createEntity(em).incident(incident)).getId());
+        }
+        em.clear();
+
+        // Delete the incident
+        restIncidentMockMvc
+            .perform(delete(ENTITY_API_URL_ID + "?patients=detach", incident.getId()).with(csrf()).accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isNoContent());
+
+        // Validate the patients of the incident are kept, without incident
+        assertThat(incidentRepository.findById(incident.getId())).isEmpty();
+        assertThat(patientRepository.findAllById(patientIds)).hasSize(3).allSatisfy(patient -> assertThat(patient.getIncident()).isNull());
+    }
+
+    @Test
+    @Transactional
+    void deleteIncidentWithUnsupportedPatientDeletion() throws Exception {
+        // Initialize the database
+        incidentRepository.saveAndFlush(incident);
+
+        restIncidentMockMvc
+            .perform(delete(ENTITY_API_URL_ID + "?patients=cascade", incident.getId()).with(csrf()).accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isBadRequest());
+
+        assertThat(incidentRepository.findById(incident.getId())).isPresent();
+    }
+
+    @Test
+    void getIncidentEvents() throws Exception {
+        // Initialize the database outside of a test transaction, as the events are published after the commits
+        Incident followedIncident = incidentRepository.saveAndFlush(createEntity(em));
+        Long patientId = null;
+        try {
+            MvcResult events = restIncidentMockMvc
+                .perform(get(ENTITY_API_URL_ID + "/events", followedIncident.getId()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+            Patient patient = PatientResourceIT.createEntity(em).incident(followedIncident).triageCategory(Category.GREEN);
+            byte[] patientJson = TestUtil.convertObjectToJsonBytes(patient);
+            MvcResult created = restIncidentMockMvc
+                .perform(post("/api/patients").with(csrf()).contentType(MediaType.APPLICATION_JSON).content(patientJson))
+                .andExpect(status().isCreated())
+                .andReturn();
+            patientId = ((Number) JsonPath.read(created.getResponse().getContentAsString(), "$.id")).longValue();
+            String createdEvent = "\"type\":\"CREATED\",\"patientId\":" + patientId;
+            awaitEvent(events, createdEvent);
+
+            restIncidentMockMvc
+                .perform(
+                    patch("/api/patients/{id}", patientId)
+                        .with(csrf())
+                        .contentType("application/merge-patch+json")
+                        .content("{\"id\":" + patientId + ",\"triageCategory\":\"RED\"}")
+                )
+                .andExpect(status().isOk());
+            awaitEvent(events, "\"type\":\"TRIAGE_CHANGED\",\"patientId\":" + patientId);
+
+            // A client reconnecting after the creation receives the events it missed only
+            String content = events.getResponse().getContentAsString();
+            String createdEventId = content.substring(content.indexOf("id:") + 3, content.indexOf('\n', content.indexOf("id:")));
+            MvcResult resumed = restIncidentMockMvc
+                .perform(get(ENTITY_API_URL_ID + "/events", followedIncident.getId()).header("Last-Event-ID", createdEventId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+            awaitEvent(resumed, "\"type\":\"TRIAGE_CHANGED\"");
+            assertThat(resumed.getResponse().getContentAsString()).doesNotContain(createdEvent);
+        } finally {
+            if (patientId != null) {
+                patientRepository.deleteById(patientId);
+            }
+            incidentTriageCounterService.deleteCounters(followedIncident.getId());
+            incidentRepository.deleteById(followedIncident.getId());
+        }
+    }
+
+    @Test
+    void getEventsOfNonExistingIncident() throws Exception {
+        restIncidentMockMvc.perform(get(ENTITY_API_URL_ID + "/events", Long.MAX_VALUE)).andExpect(status().isNotFound());
+    }
+
+    private static void awaitEvent(MvcResult events, String expected) throws Exception {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            if (events.getResponse().getContentAsString().contains(expected)) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError("No event " + expected + " in " + events.getResponse().getContentAsString());
+    }
 }
@@ -1,28 +1,65 @@
 package com.github.zzzarius.ipms.web.rest;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 import com.github.zzzarius.ipms.IntegrationTest;
+import com.github.zzzarius.ipms.config.ApplicationProperties;
+import com.github.zzzarius.ipms.config.ReplicaRoutingDataSource;
 import com.github.zzzarius.ipms.domain.Incident;
 import com.github.zzzarius.ipms.domain.Patient;
+import com.github.zzzarius.ipms.domain.PatientTombstone;
 import com.github.zzzarius.ipms.domain.enumeration.Category;
+import com.github.zzzarius.ipms.repository.IncidentRepository;
 import com.github.zzzarius.ipms.repository.PatientRepository;
+import com.github.zzzarius.ipms.repository.PatientTombstoneRepository;
+import com.github.zzzarius.ipms.service.IncidentQueryService;
+import com.github.zzzarius.ipms.service.IncidentTriageCounterService;
+import com.github.zzzarius.ipms.service.PatientGroupCommitService;
+import com.github.zzzarius.ipms.service.PatientQueryService;
+import com.github.zzzarius.ipms.service.PatientService;
+import com.github.zzzarius.ipms.service.PatientSyncService;
 import com.github.zzzarius.ipms.service.criteria.PatientCriteria;
+import com.jayway.jsonpath.JsonPath;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 import javax.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -51,6 +88,42 @@ class PatientResourceIT {
     @Autowired
     private PatientRepository patientRepository;
 
+    @Autowired
+    private IncidentRepository incidentRepository;
+
+    @Autowired
+    private PatientTombstoneRepository patientTombstoneRepository;
+
+    @Autowired
+    private IncidentTriageCounterService incidentTriageCounterService;
+
+    @Autowired
+    private PatientGroupCommitService patientGroupCommitService;
+
+    @Autowired
+    private PatientService patientService;
+
+    @Autowired
+    private PatientSyncService patientSyncService;
+
+    @Autowired
+    private ObjectProvider<ReplicaRoutingDataSource> replicaRoutingDataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private PatientQueryService patientQueryService;
+
+    @Autowired
+    private IncidentQueryService incidentQueryService;
+
     @Autowired
     private EntityManager em;
 
@@ -84,6 +157,9 @@ class PatientResourceIT {
     @BeforeEach
     public void initTest() {
         patient = createEntity(em);
+        // The tests write the entities through the repositories, which don't evict the counts
+        patientQueryService.evictAllCounts();
+        incidentQueryService.evictAllCounts();
     }
 
     @Test
@@ -193,6 +269,117 @@ class PatientResourceIT {
             .andExpect(jsonPath("$.[*].triageCategory").value(hasItem(DEFAULT_TRIAGE_CATEGORY.toString())));
     }
 
+    @Test
+    @Transactional
+    void getAllPatientsWithIncidentInOneStatement() throws Exception {
+        // Initialize the database
+        Incident firstIncident = IncidentResourceIT.createEntity(em);
+        Incident secondIncident = IncidentResourceIT.createEntity(em);
+        em.persist(firstIncident);
+        em.persist(secondIncident);
+        patientRepository.saveAndFlush(createEntity(em).incident(firstIncident));
+        patientRepository.saveAndFlush(createEntity(em).incident(secondIncident));
+        em.clear();
+
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        statistics.setStatisticsEnabled(true);
+        try {
+            // Get the patients, without the count query
+            restPatientMockMvc
+                .perform(
+                    get(ENTITY_API_URL + "?count=none&sort=id,desc&incidentId.in=" + firstIncident.getId() + "," + secondIncident.getId())
+                )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$.[*].incident.id").value(hasItem(secondIncident.getId().intValue())))
+                .andExpect(jsonPath("$.[*].incident.name").value(hasItem(firstIncident.getName())))
+                .andExpect(jsonPath("$.[*].incident.startDate").value(hasSize(0)));
+            assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+
+    @Test
+    @Transactional
+    void getAllPatientsWithSameFilterShapeReusesQueryPlan() throws Exception {
+        // Initialize the database
+        patientRepository.saveAndFlush(patient);
+        Long id = patient.getId();
+
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        statistics.setStatisticsEnabled(true);
+        try {
+            restPatientMockMvc
+                .perform(get(ENTITY_API_URL + "?sort=id,desc&id.greaterThan=" + (id - 1) + "&firstName.contains=" + DEFAULT_FIRST_NAME))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.[*].id").value(hasItem(id.intValue())));
+            long misses = statistics.getQueryPlanCacheMissCount();
+            long hits = statistics.getQueryPlanCacheHitCount();
+
+            // Same filters and operators with other values
+            restPatientMockMvc
+                .perform(get(ENTITY_API_URL + "?sort=id,desc&id.greaterThan=" + id + "&firstName.contains=" + UPDATED_FIRST_NAME))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.[*].id").value(not(hasItem(id.intValue()))));
+            assertThat(statistics.getQueryPlanCacheMissCount()).isEqualTo(misses);
+            assertThat(statistics.getQueryPlanCacheHitCount()).isGreaterThan(hits);
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+
+    @Test
+    @Transactional
+    void getAllPatientFields() throws Exception {
+        // Initialize the database
+        Incident incident = IncidentResourceIT.createEntity(em);
+        em.persist(incident);
+        patient.setIncident(incident);
+        patientRepository.saveAndFlush(patient);
+
+        // Get the requested fields only
+        restPatientMockMvc
+            .perform(get(ENTITY_API_URL + "?fields=lastName,triageCategory&id.equals=" + patient.getId()))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andExpect(header().string("X-Total-Count", "1"))
+            .andExpect(jsonPath("$.[0].id").value(patient.getId().intValue()))
+            .andExpect(jsonPath("$.[0].lastName").value(DEFAULT_LAST_NAME))
+            .andExpect(jsonPath("$.[0].triageCategory").value(DEFAULT_TRIAGE_CATEGORY.toString()))
+            .andExpect(jsonPath("$.[0].firstName").doesNotExist())
+            .andExpect(jsonPath("$.[0].incident").doesNotExist());
+
+        // Expand the incident, without counting the patients
+        restPatientMockMvc
+            .perform(get(ENTITY_API_URL + "?fields=firstName&expand=incident&count=none&id.equals=" + patient.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist("X-Total-Count"))
+            .andExpect(jsonPath("$.[0].firstName").value(DEFAULT_FIRST_NAME))
+            .andExpect(jsonPath("$.[0].lastName").doesNotExist())
+            .andExpect(jsonPath("$.[0].incident.id").value(incident.getId().intValue()))
+            .andExpect(jsonPath("$.[0].incident.name").value(incident.getName()))
+            .andExpect(jsonPath("$.[0].incident.startDate").doesNotExist());
+
+        // Estimate the total
+        restPatientMockMvc
+            .perform(get(ENTITY_API_URL + "?fields=lastName&count=estimate&size=1&incidentId.equals=" + incident.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Total-Count", "1"))
+            .andExpect(jsonPath("$.[0].lastName").value(DEFAULT_LAST_NAME))
+            .andExpect(jsonPath("$.[0].firstName").doesNotExist());
+    }
+
+    @Test
+    @Transactional
+    void getAllPatientFieldsWithUnsupportedField() throws Exception {
+        restPatientMockMvc.perform(get(ENTITY_API_URL + "?fields=firstName,password")).andExpect(status().isBadRequest());
+        restPatientMockMvc.perform(get(ENTITY_API_URL + "?fields=firstName&expand=user")).andExpect(status().isBadRequest());
+        restPatientMockMvc.perform(get(ENTITY_API_URL + "?fields=firstName&after=")).andExpect(status().isBadRequest());
+    }
+
     @Test
     @Transactional
     void getPatient() throws Exception {
@@ -210,6 +397,66 @@ class PatientResourceIT {
             .andExpect(jsonPath("$.triageCategory").value(DEFAULT_TRIAGE_CATEGORY.toString()));
     }
 
+    @Test
+    @Transactional
+    void getPatientNotModified() throws Exception {
+        // Initialize the database
+        patientRepository.saveAndFlush(patient);
+
+        String eTag = restPatientMockMvc
+            .perform(get(ENTITY_API_URL_ID, patient.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.CACHE_CONTROL, containsString("no-cache")))
+            .andReturn()
+            .getResponse()
+            .getHeader(HttpHeaders.ETAG);
+        assertThat(eTag).isNotNull();
+
+        // The unchanged patient is not sent again
+        restPatientMockMvc
+            .perform(get(ENTITY_API_URL_ID, patient.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+            .andExpect(status().isNotModified())
+            .andExpect(content().string(""));
+
+        patient.setFirstName(UPDATED_FIRST_NAME);
+        patientRepository.saveAndFlush(patient);
+
+        restPatientMockMvc
+            .perform(get(ENTITY_API_URL_ID, patient.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, not(eTag)))
+            .andExpect(jsonPath("$.firstName").value(UPDATED_FIRST_NAME));
+    }
+
+    @Test
+    @Transactional
+    void getAllPatientsNotModified() throws Exception {
+        // Initialize the database
+        patientRepository.saveAndFlush(patient);
+
+        String eTag = restPatientMockMvc
+            .perform(get(ENTITY_API_URL + "?sort=id,desc"))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getHeader(HttpHeaders.ETAG);
+        assertThat(eTag).isNotNull();
+
+        restPatientMockMvc
+            .perform(get(ENTITY_API_URL + "?sort=id,desc").header(HttpHeaders.IF_NONE_MATCH, eTag))
+            .andExpect(status().isNotModified())
+            .andExpect(header().exists(HttpHeaders.LINK))
+            .andExpect(content().string(""));
+
+        patient.setTriageCategory(UPDATED_TRIAGE_CATEGORY);
+        patientRepository.saveAndFlush(patient);
+
+        restPatientMockMvc
+            .perform(get(ENTITY_API_URL + "?sort=id,desc").header(HttpHeaders.IF_NONE_MATCH, eTag))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].triageCategory").value(hasItem(UPDATED_TRIAGE_CATEGORY.toString())));
+    }
+
     @Test
     @Transactional
     void getPatientsByIdFiltering() throws Exception {
@@ -455,6 +702,364 @@ class PatientResourceIT {
         defaultPatientShouldNotBeFound("incidentId.equals=" + (incidentId + 1));
     }
 
+    @Test
+    @Transactional
+    void getAllPatientsWithoutTotal() throws Exception {
+        // Initialize the database
+        patientRepository.saveAndFlush(createEntity(em));
+        patientRepository.saveAndFlush(createEntity(em));
+
+        restPatientMockMvc
+            .perform(get(ENTITY_API_URL + "?count=none&page=0&size=1&sort=id,desc&lastName.equals=" + DEFAULT_LAST_NAME))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist("X-Total-Count"))
+            .andExpect(header().string("Link", containsString("rel=\"next\"")))
+            .andExpect(jsonPath("$").value(hasSize(1)));
+
+        restPatientMockMvc
+            .perform(get(ENTITY_API_URL + "?count=none&page=1&size=1&sort=id,desc&lastName.equals=" + DEFAULT_LAST_NAME))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist("X-Total-Count"))
+            .andExpect(header().string("Link", not(containsString("rel=\"next\""))))
+            .andExpect(header().string("Link", containsString("rel=\"prev\"")))
+            .andExpect(jsonPath("$").value(hasSize(1)));
+    }
+
+    @Test
+    @Transactional
+    void getAllPatientsWithEstimatedTotal() throws Exception {
+        // Initialize the database
+        patientRepository.saveAndFlush(createEntity(em));
+        patientRepository.saveAndFlush(createEntity(em));
+
+        restPatientMockMvc
+            .perform(get(ENTITY_API_URL + "?count=estimate&size=1&lastName.equals=" + DEFAULT_LAST_NAME))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Total-Count", "2"));
+
+        // The cached total is served until a write through the services evicts it
+        patientRepository.saveAndFlush(createEntity(em));
+        restPatientMockMvc
+            .perform(get(ENTITY_API_URL + "?count=estimate&size=1&lastName.equals=" + DEFAULT_LAST_NAME))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Total-Count", "2"));
+
+        // The last page knows the exact total
+        restPatientMockMvc
+            .perform(get(ENTITY_API_URL + "?count=estimate&size=5&lastName.equals=" + DEFAULT_LAST_NAME))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Total-Count", "3"));
+    }
+
+    @Test
+    void countPatientsAfterWritesThroughTheApi() throws Exception {
+        // Initialize the database outside of a test transaction, as the counts are evicted once the writes commit
+        Incident committedIncident = incidentRepository.saveAndFlush(IncidentResourceIT.createEntity(em));
+        String ofIncident = "incidentId.equals=" + committedIncident.getId();
+        String red = ofIncident + "&triageCategory.equals=" + Category.RED;
+        Long patientId = null;
+        try {
+            assertPatientCount(ofIncident, 0);
+            assertPatientCount(red, 0);
+
+            MvcResult created = restPatientMockMvc
+                .perform(
+                    post(ENTITY_API_URL)
+                        .with(csrf())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(TestUtil.convertObjectToJsonBytes(createEntity(em).incident(committedIncident)))
+                )
+                .andExpect(status().isCreated())
+                .andReturn();
+            patientId = ((Number) JsonPath.read(created.getResponse().getContentAsString(), "$.id")).longValue();
+            assertPatientCount(ofIncident, 1);
+            assertPatientCount(red, 0);
+
+            restPatientMockMvc
+                .perform(
+                    patch(ENTITY_API_URL_ID, patientId)
+                        .with(csrf())
+                        .contentType("application/merge-patch+json")
+                        .content("{\"id\":" + patientId + ",\"triageCategory\":\"" + Category.RED + "\"}")
+                )
+                .andExpect(status().isOk());
+            assertPatientCount(red, 1);
+
+            restPatientMockMvc
+                .perform(
+                    post(ENTITY_API_URL + "/bulk-update?" + ofIncident)
+                        .with(csrf())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"triageCategory\":\"" + Category.YELLOW + "\"}")
+                )
+                .andExpect(status().isOk())
+                .andExpect(content().string("1"));
+            assertPatientCount(red, 0);
+            assertPatientCount(ofIncident, 1);
+
+            restPatientMockMvc.perform(delete(ENTITY_API_URL_ID, patientId).with(csrf())).andExpect(status().isNoContent());
+            assertPatientCount(ofIncident, 0);
+        } finally {
+            if (patientId != null) {
+                patientRepository.findById(patientId).ifPresent(patientRepository::delete);
+                patientTombstoneRepository.findById(patientId).ifPresent(patientTombstoneRepository::delete);
+            }
+            incidentTriageCounterService.deleteCounters(committedIncident.getId());
+            incidentRepository.deleteById(committedIncident.getId());
+        }
+    }
+
+    private void assertPatientCount(String filter, long expected) throws Exception {
+        restPatientMockMvc
+            .perform(get(ENTITY_API_URL + "/count?" + filter))
+            .andExpect(status().isOk())
+            .andExpect(content().string(String.valueOf(expected)));
+    }
+
+    @Test
+    @Transactional
+    void getAllPatientsWithKeysetPagination() throws Exception {
+        // Initialize the database
+        Patient untriaged = patientRepository.saveAndFlush(createEntity(em).triageCategory(null));
+        Patient red = patientRepository.saveAndFlush(createEntity(em).triageCategory(Category.RED));
+        Patient black = patientRepository.saveAndFlush(createEntity(em).triageCategory(Category.BLACK));
+        Patient otherRed = patientRepository.saveAndFlush(createEntity(em).triageCategory(Category.RED));
+
+        // Walk through all the pages, patients without triage category come first
+        assertThat(getAllPatientIdsWithKeysetPagination("sort=triageCategory,asc&size=1"))
+            .containsExactly(untriaged.getId(), black.getId(), red.getId(), otherRed.getId());
+        assertThat(getAllPatientIdsWithKeysetPagination("sort=triageCategory,desc&sort=id,desc&size=1"))
+            .containsExactly(otherRed.getId(), red.getId(), black.getId(), untriaged.getId());
+        assertThat(getAllPatientIdsWithKeysetPagination("sort=id,desc&size=3"))
+            .containsExactly(otherRed.getId(), black.getId(), red.getId(), untriaged.getId());
+    }
+
+    @Test
+    @Transactional
+    void getAllPatientsWithInvalidKeysetCursor() throws Exception {
+        restPatientMockMvc.perform(get(ENTITY_API_URL + "?after=not-a-cursor")).andExpect(status().isBadRequest());
+        restPatientMockMvc.perform(get(ENTITY_API_URL + "?after=&sort=firstName,asc&sort=lastName,asc")).andExpect(status().isBadRequest());
+        restPatientMockMvc.perform(get(ENTITY_API_URL + "?after=&sort=incident,asc")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void exportPatients() throws Exception {
+        // Initialize the database outside of a test transaction, as the export is streamed from another thread
+        Patient exported = patientRepository.saveAndFlush(createEntity(em).firstName("Export, \"quoted\""));
+        try {
+            MvcResult csvResult = restPatientMockMvc
+                .perform(get(ENTITY_API_URL + "/export?format=csv&id.equals=" + exported.getId()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+            csvResult.getAsyncResult();
+            restPatientMockMvc
+                .perform(asyncDispatch(csvResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                .andExpect(
+                    content()
+                        .string(
+                            "id,firstName,lastName,triageCategory,incidentId,incidentName\n" +
+                            exported.getId() +
+                            ",\"Export, \"\"quoted\"\"\"," +
+                            DEFAULT_LAST_NAME +
+                            "," +
+                            DEFAULT_TRIAGE_CATEGORY +
+                            ",,\n"
+                        )
+                );
+
+            MvcResult ndjsonResult = restPatientMockMvc
+                .perform(get(ENTITY_API_URL + "/export?id.equals=" + exported.getId()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+            ndjsonResult.getAsyncResult();
+            restPatientMockMvc
+                .perform(asyncDispatch(ndjsonResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("application/x-ndjson"))
+                .andExpect(jsonPath("$.id").value(exported.getId().intValue()))
+                .andExpect(jsonPath("$.lastName").value(DEFAULT_LAST_NAME));
+        } finally {
+            patientRepository.deleteById(exported.getId());
+        }
+    }
+
+    @Test
+    void exportPatientsWithUnsupportedFormat() throws Exception {
+        restPatientMockMvc.perform(get(ENTITY_API_URL + "/export?format=xlsx")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void importPatients() throws Exception {
+        // Initialize the database outside of a test transaction, as the import runs in another thread
+        Incident incident = incidentRepository.saveAndFlush(IncidentResourceIT.createEntity(em));
+        String csv =
+            "id,firstName,lastName,triageCategory,incidentId\r\n" +
+            "987654321,Imported,Csv-imported,RED," +
+            incident.getId() +
+            "\r\n" +
+            ",\"Imported, \"\"quoted\"\"\",Csv-imported,,\r\n" +
+            "\r\n" +
+            ",X,Csv-imported,GREEN,\r\n" +
+            ",Invalid,Csv-imported,PURPLE,\r\n" +
+            ",Orphan,Csv-imported,GREEN," +
+            Long.MAX_VALUE +
+            "\r\n";
+        String ndjson =
+            "{\"firstName\":\"Imported\",\"lastName\":\"Ndjson-imported\",\"triageCategory\":\"GREEN\"}\n" +
+            "{\"firstName\":\"Imported\",\n";
+        try {
+            MvcResult csvResult = restPatientMockMvc
+                .perform(post(ENTITY_API_URL + "/import?format=csv").with(csrf()).contentType("text/csv").content(csv))
+                .andExpect(status().isAccepted())
+                .andExpect(header().exists("Location"))
+                .andReturn();
+            awaitImport(csvResult.getResponse().getHeader("Location"))
+                .andExpect(jsonPath("$.status").value("COMPLETED"))
+                .andExpect(jsonPath("$.processedRows").value(5))
+                .andExpect(jsonPath("$.importedRows").value(2))
+                .andExpect(jsonPath("$.failedRows").value(3))
+                .andExpect(jsonPath("$.errors.[*].row").value(contains(3, 4, 5)))
+                .andExpect(jsonPath("$.errors.[0].message").value(containsString("firstName")))
+                .andExpect(jsonPath("$.errors.[1].message").value(containsString("triageCategory")))
+                .andExpect(jsonPath("$.errors.[2].message").value(containsString("incident")));
+
+            List<Patient> imported = findPatientsByLastName("Csv-imported");
+            assertThat(imported).extracting(Patient::getFirstName).containsExactlyInAnyOrder("Imported", "Imported, \"quoted\"");
+            assertThat(imported).extracting(Patient::getId).doesNotContain(987654321L);
+            assertThat(incidentTriageCounterService.getSummary(incident.getId()).getRed()).isEqualTo(1);
+
+            MvcResult ndjsonResult = restPatientMockMvc
+                .perform(post(ENTITY_API_URL + "/import").with(csrf()).contentType("application/x-ndjson").content(ndjson))
+                .andExpect(status().isAccepted())
+                .andReturn();
+            awaitImport(ndjsonResult.getResponse().getHeader("Location"))
+                .andExpect(jsonPath("$.status").value("COMPLETED"))
+                .andExpect(jsonPath("$.importedRows").value(1))
+                .andExpect(jsonPath("$.errors.[*].row").value(contains(2)));
+            assertThat(findPatientsByLastName("Ndjson-imported")).hasSize(1);
+        } finally {
+            findPatientsByLastName("Csv-imported").forEach(patientRepository::delete);
+            findPatientsByLastName("Ndjson-imported").forEach(patientRepository::delete);
+            incidentTriageCounterService.deleteCounters(incident.getId());
+            incidentRepository.deleteById(incident.getId());
+        }
+    }
+
+    @Test
+    void importPatientsWithUnterminatedQuote() throws Exception {
+        String csv = "firstName,lastName\r\nBefore,Quote-imported\r\n\"Broken,Quote-imported\r\nAfter,Quote-imported\r\n";
+        try {
+            MvcResult result = restPatientMockMvc
+                .perform(post(ENTITY_API_URL + "/import?format=csv").with(csrf()).contentType("text/csv").content(csv))
+                .andExpect(status().isAccepted())
+                .andReturn();
+            awaitImport(result.getResponse().getHeader("Location"))
+                .andExpect(jsonPath("$.status").value("COMPLETED"))
+                .andExpect(jsonPath("$.importedRows").value(2))
+                .andExpect(jsonPath("$.errors.[*].row").value(contains(2)))
+                .andExpect(jsonPath("$.errors.[0].message").value(containsString("Unterminated")));
+
+            assertThat(findPatientsByLastName("Quote-imported"))
+                .extracting(Patient::getFirstName)
+                .containsExactlyInAnyOrder("Before", "After");
+        } finally {
+            findPatientsByLastName("Quote-imported").forEach(patientRepository::delete);
+        }
+    }
+
+    @Test
+    void importPatientsWithUnsupportedFormat() throws Exception {
+        restPatientMockMvc
+            .perform(post(ENTITY_API_URL + "/import?format=xlsx").with(csrf()).contentType(MediaType.APPLICATION_OCTET_STREAM).content(""))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getNonExistingPatientImport() throws Exception {
+        restPatientMockMvc.perform(get(ENTITY_API_URL + "/import/{id}", "unknown")).andExpect(status().isNotFound());
+    }
+
+    /**
+     * Polls the progress of an import until it is finished.
+     */
+    private ResultActions awaitImport(String location) throws Exception {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            ResultActions progress = restPatientMockMvc.perform(get(location)).andExpect(status().isOk());
+            String status = JsonPath.read(progress.andReturn().getResponse().getContentAsString(), "$.status");
+            if (!"RUNNING".equals(status)) {
+                return progress;
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError("The import " + location + " did not finish");
+    }
+
+    private ResultActions createPatientWithIdempotencyKey(String idempotencyKey, Patient patient) throws Exception {
+        return restPatientMockMvc.perform(
+            post(ENTITY_API_URL)
+                .with(csrf())
+                .header("Idempotency-Key", idempotencyKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(TestUtil.convertObjectToJsonBytes(patient))
+        );
+    }
+
+    private ResultActions uploadPatients(List<Patient> patients) throws Exception {
+        byte[] patientsJson = TestUtil.convertObjectToJsonBytes(patients);
+        return restPatientMockMvc.perform(
+            post(ENTITY_API_URL + "/batch").with(csrf()).contentType(MediaType.APPLICATION_JSON).content(patientsJson)
+        );
+    }
+
+    /**
+     * Follows the sync tokens until all the changes are read.
+     */
+    private String syncUntilUpToDate(String token) throws Exception {
+        for (int attempt = 0; attempt < 1000; attempt++) {
+            String content = restPatientMockMvc
+                .perform(get("/api/sync/patients" + (token == null ? "" : "?since=" + token)))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+            token = JsonPath.read(content, "$.token");
+            if (!(Boolean) JsonPath.read(content, "$.hasMore")) {
+                return token;
+            }
+        }
+        throw new AssertionError("The sync did not end");
+    }
+
+        private List<Patient> findPatientsByLastName(String lastName) {
+        return patientRepository.findAll().stream().filter(p -> lastName.equals(p.getLastName())).collect(Collectors.toList());
+    }
+
+    /**
+     * Executes the keyset paginated search on the default entities, following the next cursors until the last page.
+     */
+    private List<Long> getAllPatientIdsWithKeysetPagination(String parameters) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        String cursor = "";
+        do {
+            MvcResult result = restPatientMockMvc
+                .perform(get(ENTITY_API_URL + "?lastName.equals=" + DEFAULT_LAST_NAME + "&" + parameters + "&after=" + cursor))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(header().doesNotExist("X-Total-Count"))
+                .andReturn();
+            List<Number> pageIds = JsonPath.read(result.getResponse().getContentAsString(), "$.[*].id");
+            pageIds.forEach(id -> ids.add(id.longValue()));
+            cursor = result.getResponse().getHeader("X-Next-Cursor");
+        } while (cursor != null);
+        return ids;
+    }
+
+    private String getPatientETag() throws Exception {
+        return restPatientMockMvc.perform(get(ENTITY_API_URL_ID, patient.getId())).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
     /**
      * Executes the search, and checks that the default entity is returned.
      */
@@ -502,6 +1107,275 @@ class PatientResourceIT {
         restPatientMockMvc.perform(get(ENTITY_API_URL_ID, Long.MAX_VALUE)).andExpect(status().isNotFound());
     }
 
+    @Test
+    @Transactional
+    void getIncidentPatients() throws Exception {
+        // Initialize the database
+        Incident incident = IncidentResourceIT.createEntity(em);
+        em.persist(incident);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ids.add(patientRepository.saveAndFlush(createEntity(em).incident(incident)).getId());
+        }
+        patientRepository.saveAndFlush(createEntity(em));
+
+        // Get the first page of the patients of the incident, by id
+        restPatientMockMvc
+            .perform(get("/api/incidents/{id}/patients?size=2", incident.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Total-Count", "3"))
+            .andExpect(header().exists(HttpHeaders.ETAG))
+            .andExpect(jsonPath("$.[*].id").value(contains(ids.get(0).intValue(), ids.get(1).intValue())))
+            .andExpect(jsonPath("$.[*].incident.id").value(hasItem(incident.getId().intValue())));
+
+        restPatientMockMvc
+            .perform(get("/api/incidents/{id}/patients?size=2&page=1", incident.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(contains(ids.get(2).intValue())));
+    }
+
+    @Test
+    @Transactional
+    void getPatientsOfNonExistingIncident() throws Exception {
+        restPatientMockMvc.perform(get("/api/incidents/{id}/patients", Long.MAX_VALUE)).andExpect(status().isNotFound());
+    }
+
+    @Test
+    @Transactional
+    void syncPatients() throws Exception {
+        String token = syncUntilUpToDate(null);
+
+        // Create three patients and delete the second one
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            byte[] patientJson = TestUtil.convertObjectToJsonBytes(createEntity(em));
+            MvcResult created = restPatientMockMvc
+                .perform(post(ENTITY_API_URL).with(csrf()).contentType(MediaType.APPLICATION_JSON).content(patientJson))
+                .andExpect(status().isCreated())
+                .andReturn();
+            ids.add(((Number) JsonPath.read(created.getResponse().getContentAsString(), "$.id")).longValue());
+        }
+        restPatientMockMvc.perform(delete(ENTITY_API_URL_ID, ids.get(1)).with(csrf())).andExpect(status().isNoContent());
+
+        // Get the changes, by pages of two in the tests
+        MvcResult firstPage = restPatientMockMvc
+            .perform(get("/api/sync/patients?since=" + token))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.patients.[*].id").value(contains(ids.get(0).intValue())))
+            .andExpect(jsonPath("$.patients.[*].lastName").value(contains(DEFAULT_LAST_NAME)))
+            .andExpect(jsonPath("$.deletedPatientIds").value(contains(ids.get(1).intValue())))
+            .andExpect(jsonPath("$.hasMore").value(true))
+            .andReturn();
+        String nextToken = JsonPath.read(firstPage.getResponse().getContentAsString(), "$.token");
+        MvcResult lastPage = restPatientMockMvc
+            .perform(get("/api/sync/patients?since=" + nextToken))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.patients.[*].id").value(contains(ids.get(2).intValue())))
+            .andExpect(jsonPath("$.deletedPatientIds").isEmpty())
+            .andExpect(jsonPath("$.hasMore").value(false))
+            .andReturn();
+
+        // Nothing changed since
+        String lastToken = JsonPath.read(lastPage.getResponse().getContentAsString(), "$.token");
+        restPatientMockMvc
+            .perform(get("/api/sync/patients?since=" + lastToken))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.patients").isEmpty())
+            .andExpect(jsonPath("$.deletedPatientIds").isEmpty())
+            .andExpect(jsonPath("$.token").value(lastToken));
+    }
+
+    @Test
+    @Transactional
+    void syncPatientsWithMalformedToken() throws Exception {
+        restPatientMockMvc.perform(get("/api/sync/patients?since=not-a-token")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    void syncPatientsWithTheIdOfTheirIncident() throws Exception {
+        Incident incident = IncidentResourceIT.createEntity(em);
+        em.persist(incident);
+        String token = syncUntilUpToDate(null);
+
+        byte[] patientJson = TestUtil.convertObjectToJsonBytes(createEntity(em).incident(incident));
+        restPatientMockMvc
+            .perform(post(ENTITY_API_URL).with(csrf()).contentType(MediaType.APPLICATION_JSON).content(patientJson))
+            .andExpect(status().isCreated());
+
+        // The renames of the incidents are not synced, so their names are not returned
+        restPatientMockMvc
+            .perform(get("/api/sync/patients?since=" + token))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.patients.[0].incident.id").value(incident.getId().intValue()))
+            .andExpect(jsonPath("$.patients.[0].incident.name").doesNotExist());
+    }
+
+    @Test
+    @Transactional
+    void syncPatientsAfterTheTombstonesArePurged() throws Exception {
+        String token = syncUntilUpToDate(null);
+        byte[] patientJson = TestUtil.convertObjectToJsonBytes(createEntity(em));
+        MvcResult created = restPatientMockMvc
+            .perform(post(ENTITY_API_URL).with(csrf()).contentType(MediaType.APPLICATION_JSON).content(patientJson))
+            .andExpect(status().isCreated())
+            .andReturn();
+        Long id = ((Number) JsonPath.read(created.getResponse().getContentAsString(), "$.id")).longValue();
+        restPatientMockMvc.perform(delete(ENTITY_API_URL_ID, id).with(csrf())).andExpect(status().isNoContent());
+
+        // Age the tombstone beyond the maximum token age, and purge it
+        PatientTombstone tombstone = patientTombstoneRepository.findById(id).orElseThrow();
+        tombstone.setDeletedDate(Instant.now().minus(applicationProperties.getSync().getMaxTokenAgeHours() + 1, ChronoUnit.HOURS));
+        patientTombstoneRepository.saveAndFlush(tombstone);
+        patientSyncService.purgeTombstones();
+
+        // The token which could have missed it is expired, unlike the token of a sync from scratch
+        restPatientMockMvc
+            .perform(get("/api/sync/patients?since=" + token))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message").value("error.synctokenexpired"));
+        syncUntilUpToDate(syncUntilUpToDate(null));
+    }
+
+    @Test
+    @Transactional
+    void createPatientWithIdempotencyKey() throws Exception {
+        int databaseSizeBeforeCreate = patientRepository.findAll().size();
+
+        // Create the Patient, then retry the request
+        MvcResult created = createPatientWithIdempotencyKey("retried", patient).andExpect(status().isCreated()).andReturn();
+        createPatientWithIdempotencyKey("retried", patient)
+            .andExpect(status().isCreated())
+            .andExpect(content().string(created.getResponse().getContentAsString()));
+
+        // The patient is created once
+        assertThat(patientRepository.findAll()).hasSize(databaseSizeBeforeCreate + 1);
+
+        // The key can't be reused for another patient
+        createPatientWithIdempotencyKey("retried", createUpdatedEntity(em)).andExpect(status().isBadRequest());
+        assertThat(patientRepository.findAll()).hasSize(databaseSizeBeforeCreate + 1);
+    }
+
+    @Test
+    void createPatientsInGroupCommits() throws Exception {
+        // Initialize the database outside of a test transaction, as the group commits run in their own
+        Incident committedIncident = incidentRepository.saveAndFlush(IncidentResourceIT.createEntity(em));
+        DistributionSummary batchSizes = meterRegistry.get("ipms.patient.group.commit.batch.size").summary();
+        long batchesBefore = batchSizes.count();
+        int registrations = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(registrations);
+        List<Long> patientIds = new ArrayList<>();
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Patient>> results = new ArrayList<>();
+            for (int i = 0; i < registrations; i++) {
+                // The first registration fails, and must not fail the others of its batch
+                Incident incident = i == 0 ? new Incident().id(Long.MAX_VALUE) : committedIncident;
+                Patient registration = createEntity(em).incident(incident);
+                results.add(
+                    executor.submit(
+                        () -> {
+                            start.await();
+                            return patientGroupCommitService.save(registration);
+                        }
+                    )
+                );
+            }
+            start.countDown();
+
+            for (Future<Patient> result : results.subList(1, registrations)) {
+                patientIds.add(result.get().getId());
+            }
+            assertThat(patientIds).doesNotContainNull().doesNotHaveDuplicates();
+            assertThat(patientRepository.findAllById(patientIds)).hasSize(registrations - 1);
+            Future<Patient> failed = results.get(0);
+            assertThatThrownBy(failed::get).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(DataAccessException.class);
+            assertThat(batchSizes.count() - batchesBefore).isLessThan(registrations);
+        } finally {
+            executor.shutdownNow();
+            patientIds.forEach(patientRepository::deleteById);
+            incidentTriageCounterService.deleteCounters(committedIncident.getId());
+            incidentRepository.deleteById(committedIncident.getId());
+        }
+    }
+
+    @Test
+    @Transactional
+    void createPatientAfterGroupCommitStopped() {
+        PatientGroupCommitService stoppedService = new PatientGroupCommitService(
+            patientService,
+            replicaRoutingDataSource,
+            transactionManager,
+            new SimpleMeterRegistry(),
+            applicationProperties
+        );
+        stoppedService.stop();
+
+        // Saved directly, instead of waiting for a writer which is gone
+        Patient saved = stoppedService.save(createEntity(em));
+        assertThat(saved.getId()).isNotNull();
+        assertThat(patientRepository.findById(saved.getId())).isPresent();
+    }
+
+    @Test
+    @Transactional
+    void uploadPatientsWithReservedIds() throws Exception {
+        MvcResult reserved = restPatientMockMvc
+            .perform(post(ENTITY_API_URL + "/id-blocks?size=3").with(csrf()))
+            .andExpect(status().isCreated())
+            .andReturn();
+        long firstId = ((Number) JsonPath.read(reserved.getResponse().getContentAsString(), "$.firstId")).longValue();
+        long lastId = ((Number) JsonPath.read(reserved.getResponse().getContentAsString(), "$.lastId")).longValue();
+        assertThat(lastId - firstId).isEqualTo(2);
+
+        // The generated ids skip the reserved block
+        Long generatedId = patientRepository.saveAndFlush(createEntity(em)).getId();
+        assertThat(generatedId < firstId || generatedId > lastId).isTrue();
+
+        // Upload two patients registered offline, then retry with a change
+        List<Patient> patients = List.of(createEntity(em).id(firstId), createEntity(em).id(firstId + 1));
+        uploadPatients(patients)
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(contains((int) firstId, (int) firstId + 1)));
+        patients.get(1).setLastName(UPDATED_LAST_NAME);
+        uploadPatients(patients).andExpect(status().isOk());
+
+        em.flush();
+        em.clear();
+        assertThat(patientRepository.findById(firstId)).map(Patient::getLastName).hasValue(DEFAULT_LAST_NAME);
+        assertThat(patientRepository.findById(firstId + 1)).map(Patient::getLastName).hasValue(UPDATED_LAST_NAME);
+
+        // An id which was not reserved is rejected
+        uploadPatients(List.of(createEntity(em).id(generatedId))).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    void uploadPatientDeletedBefore() throws Exception {
+        MvcResult reserved = restPatientMockMvc
+            .perform(post(ENTITY_API_URL + "/id-blocks?size=1").with(csrf()))
+            .andExpect(status().isCreated())
+            .andReturn();
+        long id = ((Number) JsonPath.read(reserved.getResponse().getContentAsString(), "$.firstId")).longValue();
+        uploadPatients(List.of(createEntity(em).id(id))).andExpect(status().isOk());
+        restPatientMockMvc.perform(delete(ENTITY_API_URL_ID, id).with(csrf())).andExpect(status().isNoContent());
+        em.flush();
+        assertThat(patientTombstoneRepository.findById(id)).isPresent();
+
+        // The client registers the patient again, which is no longer deleted for the delta sync
+        uploadPatients(List.of(createEntity(em).id(id))).andExpect(status().isOk());
+        em.flush();
+        em.clear();
+        assertThat(patientTombstoneRepository.findById(id)).isEmpty();
+        assertThat(patientRepository.findById(id)).isPresent();
+    }
+
+    @Test
+    @Transactional
+    void reservePatientIdsWithUnsupportedSize() throws Exception {
+        restPatientMockMvc.perform(post(ENTITY_API_URL + "/id-blocks?size=0").with(csrf())).andExpect(status().isBadRequest());
+    }
+
     @Test
     @Transactional
     void putNewPatient() throws Exception {
@@ -534,6 +1408,53 @@ class PatientResourceIT {
         assertThat(testPatient.getTriageCategory()).isEqualTo(UPDATED_TRIAGE_CATEGORY);
     }
 
+    @Test
+    @Transactional
+    void putPatientWithCurrentETag() throws Exception {
+        // Initialize the database
+        patientRepository.saveAndFlush(patient);
+        String eTag = getPatientETag();
+
+        Patient updatedPatient = new Patient().id(patient.getId()).firstName(UPDATED_FIRST_NAME).lastName(UPDATED_LAST_NAME);
+
+        restPatientMockMvc
+            .perform(
+                put(ENTITY_API_URL_ID, updatedPatient.getId())
+                    .with(csrf())
+                    .header(HttpHeaders.IF_MATCH, eTag)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtil.convertObjectToJsonBytes(updatedPatient))
+            )
+            .andExpect(status().isOk())
+            .andExpect(header().exists(HttpHeaders.ETAG));
+
+        assertThat(patientRepository.findById(patient.getId()).get().getFirstName()).isEqualTo(UPDATED_FIRST_NAME);
+    }
+
+    @Test
+    @Transactional
+    void putPatientWithStaleETag() throws Exception {
+        // Initialize the database
+        patientRepository.saveAndFlush(patient);
+        String eTag = getPatientETag();
+
+        // Another medic updates the patient
+        patient.setTriageCategory(UPDATED_TRIAGE_CATEGORY);
+        patientRepository.saveAndFlush(patient);
+
+        Patient updatedPatient = new Patient().id(patient.getId()).firstName(UPDATED_FIRST_NAME).lastName(UPDATED_LAST_NAME);
+
+        restPatientMockMvc
+            .perform(
+                put(ENTITY_API_URL_ID, updatedPatient.getId())
+                    .with(csrf())
+                    .header(HttpHeaders.IF_MATCH, eTag)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtil.convertObjectToJsonBytes(updatedPatient))
+            )
+            .andExpect(status().isPreconditionFailed());
+    }
+
     @Test
     @Transactional
     void putNonExistingPatient() throws Exception {
@@ -658,6 +1579,167 @@ class PatientResourceIT {
         assertThat(testPatient.getTriageCategory()).isEqualTo(UPDATED_TRIAGE_CATEGORY);
     }
 
+    @Test
+    @Transactional
+    void patchPatientWithStaleETag() throws Exception {
+        // Initialize the database
+        patientRepository.saveAndFlush(patient);
+        String eTag = getPatientETag();
+
+        // Another medic updates the patient
+        patient.setTriageCategory(UPDATED_TRIAGE_CATEGORY);
+        patientRepository.saveAndFlush(patient);
+
+        Patient partialUpdatedPatient = new Patient().id(patient.getId()).firstName(UPDATED_FIRST_NAME);
+
+        restPatientMockMvc
+            .perform(
+                patch(ENTITY_API_URL_ID, partialUpdatedPatient.getId())
+                    .with(csrf())
+                    .header(HttpHeaders.IF_MATCH, eTag)
+                    .contentType("application/merge-patch+json")
+                    .content(TestUtil.convertObjectToJsonBytes(partialUpdatedPatient))
+            )
+            .andExpect(status().isPreconditionFailed());
+
+        assertThat(patientRepository.findById(patient.getId()).get().getFirstName()).isEqualTo(DEFAULT_FIRST_NAME);
+    }
+
+    @Test
+    @Transactional
+    void patchPatientWithOneSelectAndOneUpdate() throws Exception {
+        // Initialize the database
+        patientRepository.saveAndFlush(patient);
+        em.clear();
+
+        Patient partialUpdatedPatient = new Patient().id(patient.getId()).triageCategory(UPDATED_TRIAGE_CATEGORY);
+
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        statistics.setStatisticsEnabled(true);
+        try {
+            restPatientMockMvc
+                .perform(
+                    patch(ENTITY_API_URL_ID, partialUpdatedPatient.getId())
+                        .with(csrf())
+                        .contentType("application/merge-patch+json")
+                        .content(TestUtil.convertObjectToJsonBytes(partialUpdatedPatient))
+                )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.triageCategory").value(UPDATED_TRIAGE_CATEGORY.toString()));
+            em.flush();
+
+            // No existence check: the load of the patient, the increment and read of the change sequence, then its versioned update
+            assertThat(statistics.getPrepareStatementCount()).isEqualTo(4);
+            assertThat(statistics.getEntityUpdateCount()).isEqualTo(1);
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+
+    @Test
+    @Transactional
+    void bulkUpdatePatientsIncident() throws Exception {
+        // Initialize the database, with more patients than the chunk size of the tests
+        Incident oldIncident = IncidentResourceIT.createEntity(em);
+        Incident newIncident = IncidentResourceIT.createEntity(em);
+        em.persist(oldIncident);
+        em.persist(newIncident);
+        List<Patient> moved = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            moved.add(patientRepository.saveAndFlush(createEntity(em).incident(oldIncident)));
+        }
+        moved.add(patientRepository.saveAndFlush(createEntity(em).triageCategory(UPDATED_TRIAGE_CATEGORY).incident(oldIncident)));
+        Patient other = patientRepository.saveAndFlush(createEntity(em));
+        em.clear();
+
+        restPatientMockMvc
+            .perform(
+                post(ENTITY_API_URL + "/bulk-update?incidentId.equals=" + oldIncident.getId())
+                    .with(csrf())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"incidentId\":" + newIncident.getId() + "}")
+            )
+            .andExpect(status().isOk())
+            .andExpect(content().string("4"));
+
+        // Validate the Patients in the database
+        for (Patient patient : moved) {
+            Patient updated = patientRepository.findOneWithEagerRelationships(patient.getId()).get();
+            assertThat(updated.getIncident().getId()).isEqualTo(newIncident.getId());
+            assertThat(updated.getTriageCategory()).isEqualTo(patient.getTriageCategory());
+            assertThat(updated.getVersion()).isEqualTo(patient.getVersion() + 1);
+        }
+        assertThat(patientRepository.findOneWithEagerRelationships(other.getId()).get().getIncident()).isNull();
+        assertThat(incidentTriageCounterService.getSummary(newIncident.getId()).getBlack()).isEqualTo(3);
+        assertThat(incidentTriageCounterService.getSummary(newIncident.getId()).getRed()).isEqualTo(1);
+    }
+
+    @Test
+    @Transactional
+    void bulkUpdatePatientsTriageCategory() throws Exception {
+        // Initialize the database
+        patientRepository.saveAndFlush(patient);
+        Patient alreadyUpdated = patientRepository.saveAndFlush(createEntity(em).triageCategory(UPDATED_TRIAGE_CATEGORY));
+        Patient other = patientRepository.saveAndFlush(createEntity(em).firstName(UPDATED_FIRST_NAME));
+        em.clear();
+
+        // The patient already in the requested category is matched, but not updated
+        String ids = patient.getId() + "," + alreadyUpdated.getId() + "," + other.getId();
+        restPatientMockMvc
+            .perform(
+                post(ENTITY_API_URL + "/bulk-update?firstName.equals=" + DEFAULT_FIRST_NAME + "&id.in=" + ids)
+                    .with(csrf())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"triageCategory\":\"" + UPDATED_TRIAGE_CATEGORY + "\"}")
+            )
+            .andExpect(status().isOk())
+            .andExpect(content().string("1"));
+
+        assertThat(patientRepository.findById(patient.getId()).get().getTriageCategory()).isEqualTo(UPDATED_TRIAGE_CATEGORY);
+        assertThat(patientRepository.findById(alreadyUpdated.getId()).get().getVersion()).isEqualTo(alreadyUpdated.getVersion());
+        assertThat(patientRepository.findById(other.getId()).get().getTriageCategory()).isEqualTo(DEFAULT_TRIAGE_CATEGORY);
+    }
+
+    @Test
+    @Transactional
+    void bulkUpdatePatientsWithInvalidRequest() throws Exception {
+        // Initialize the database
+        patientRepository.saveAndFlush(patient);
+
+        // Without filter
+        restPatientMockMvc
+            .perform(
+                post(ENTITY_API_URL + "/bulk-update")
+                    .with(csrf())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"triageCategory\":\"RED\"}")
+            )
+            .andExpect(status().isBadRequest());
+
+        // Without change
+        restPatientMockMvc
+            .perform(
+                post(ENTITY_API_URL + "/bulk-update?id.equals=" + patient.getId())
+                    .with(csrf())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{}")
+            )
+            .andExpect(status().isBadRequest());
+
+        // With an unknown incident
+        restPatientMockMvc
+            .perform(
+                post(ENTITY_API_URL + "/bulk-update?id.equals=" + patient.getId())
+                    .with(csrf())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"incidentId\":" + Long.MAX_VALUE + "}")
+            )
+            .andExpect(status().isBadRequest());
+
+        assertThat(patientRepository.findById(patient.getId()).get().getTriageCategory()).isEqualTo(DEFAULT_TRIAGE_CATEGORY);
+    }
+
     @Test
     @Transactional
     void patchNonExistingPatient() throws Exception {